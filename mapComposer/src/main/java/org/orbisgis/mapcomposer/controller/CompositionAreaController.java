@@ -34,21 +34,36 @@
 
 package org.orbisgis.mapcomposer.controller;
 
+import org.orbisgis.mapcomposer.model.configurationattribute.attribute.MapImageListCA;
+import org.orbisgis.mapcomposer.model.configurationattribute.attribute.OwsContextCA;
+import org.orbisgis.mapcomposer.model.configurationattribute.interfaces.ConfigurationAttribute;
+import org.orbisgis.mapcomposer.model.configurationattribute.interfaces.RefreshCA;
 import org.orbisgis.mapcomposer.model.graphicalelement.element.Document;
+import org.orbisgis.mapcomposer.model.graphicalelement.element.cartographic.MapImage;
 import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GEProperties;
 import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GERefresh;
 import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GraphicalElement;
+import org.orbisgis.mapcomposer.model.graphicalelement.utils.ZOrderList;
+import org.orbisgis.mapcomposer.view.graphicalelement.MapImageRenderer;
 import org.orbisgis.mapcomposer.view.ui.CompositionArea;
 import org.orbisgis.mapcomposer.view.utils.CompositionAreaOverlay;
 import org.orbisgis.mapcomposer.view.utils.CompositionJPanel;
+import org.orbisgis.mapcomposer.view.utils.MapComposerIcon;
+import org.orbisgis.mapcomposer.view.utils.RenderScheduler;
 import org.orbisgis.mapcomposer.view.utils.RenderWorker;
+import org.slf4j.LoggerFactory;
 
 import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.lang.reflect.InvocationTargetException;
 import java.util.*;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.lang.Math.cos;
 import static java.lang.Math.sin;
@@ -64,11 +79,11 @@ public class CompositionAreaController {
     public enum ZIndex{ TO_FRONT, FRONT, BACK, TO_BACK; }
     public enum Align{ LEFT, CENTER, RIGHT, TOP, MIDDLE, BOTTOM; }
 
-    /**GraphicalElement stack giving the Z-index information*/
-    private Stack<GraphicalElement> zIndexStack;
+    /**GraphicalElement list giving the Z-index information, the first element being on the front*/
+    private ZOrderList zIndexList;
 
-    /** Executor used for the RenderWorkers. */
-    private ExecutorService executorService;
+    /** Scheduler running the RenderWorkers according to the GraphicalElement priority. */
+    private RenderScheduler renderScheduler;
 
     /**Map doing the link between GraphicalElements and their CompositionJPanel*/
     private HashMap<GraphicalElement, CompositionJPanel> elementJPanelMap;
@@ -79,14 +94,27 @@ public class CompositionAreaController {
     /** CompositionArea */
     private CompositionArea compositionArea;
 
-    private List<RenderWorker> renderWorkerList;
+    /** Map of the last RenderWorker of each GraphicalElement. The workers are removed once they are done. */
+    private ConcurrentHashMap<GraphicalElement, RenderWorker> renderWorkerMap;
+
+    /** Maximum size in pixels of the side of the thumbnails. */
+    public static final int THUMBNAIL_SIZE = 256;
+
+    /** GraphicalElements which are not refreshed yet. They are displayed with a placeholder until they are visible. */
+    private Set<GraphicalElement> deferredSet;
+
+    /** Placeholder image of each deferred GraphicalElement, i.e. its thumbnail saved with the document. */
+    private Map<GraphicalElement, BufferedImage> placeholderMap;
 
     public CompositionAreaController(MainController mainController){
         this.mainController = mainController;
-        executorService = Executors.newFixedThreadPool(1);
+        //One rendering thread per processor
+        renderScheduler = new RenderScheduler(0);
         elementJPanelMap = new LinkedHashMap<>();
-        zIndexStack = new Stack<>();
-        renderWorkerList = new ArrayList<>();
+        zIndexList = new ZOrderList();
+        renderWorkerMap = new ConcurrentHashMap<>();
+        deferredSet = Collections.newSetFromMap(new ConcurrentHashMap<GraphicalElement, Boolean>());
+        placeholderMap = new HashMap<>();
     }
 
     /**
@@ -94,22 +122,190 @@ public class CompositionAreaController {
      * @param ge GraphicalElement to add.
      */
     public void add(GraphicalElement ge){
-        zIndexStack.push(ge);
+        zIndexList.add(ge);
         elementJPanelMap.put(ge, new CompositionJPanel(ge, mainController));
         compositionArea.addCompositionJPanel(elementJPanelMap.get(ge));
-        if(ge instanceof GERefresh){
+        if(ge instanceof GERefresh && !deferredSet.contains(ge)){
             ((GERefresh)ge).refresh();
         }
     }
 
+    /**
+     * Defers the refresh of a heavy GraphicalElement (i.e. the opening of the OWS-Context of a MapImage) until it
+     * becomes visible in the CompositionArea or is exported. Until then, the given placeholder image is displayed.
+     * Should be called before adding the GraphicalElement.
+     * @param ge GraphicalElement to defer.
+     * @param placeholder Image displayed instead of the rendering, i.e. a thumbnail. Can be null.
+     */
+    public void defer(GraphicalElement ge, BufferedImage placeholder){
+        deferredSet.add(ge);
+        if(placeholder != null) {
+            placeholderMap.put(ge, placeholder);
+        }
+    }
+
+    /**
+     * Returns true if the given GraphicalElement is deferred and isn't refreshed yet.
+     * @param ge GraphicalElement.
+     * @return True if the GraphicalElement is deferred.
+     */
+    public boolean isDeferred(GraphicalElement ge){
+        return deferredSet.contains(ge);
+    }
+
+    /**
+     * Does the refresh of the given deferred GraphicalElement and of its ConfigurationAttributes.
+     * The refresh of the model is done in the EDT, like the edition of the GraphicalElement, and only the opening of
+     * the OwsMapContext of a MapImage is done in the calling thread. As it may be long, it should not be called from
+     * the EDT. If it is running in another thread, waits its end.
+     * @param ge GraphicalElement to refresh.
+     * @return True if the GraphicalElement was deferred, false if there was nothing to do.
+     */
+    public boolean prepare(final GraphicalElement ge){
+        synchronized (ge) {
+            if(!deferredSet.contains(ge)) {
+                return false;
+            }
+            Runnable refresh = new Runnable() {
+                @Override
+                public void run() {
+                    for(ConfigurationAttribute ca : ge.getAllAttributes()) {
+                        if(ca instanceof OwsContextCA) {
+                            ((OwsContextCA) ca).refresh(mainController, false);
+                        }
+                        else if(ca instanceof RefreshCA) {
+                            ((RefreshCA) ca).refresh(mainController);
+                        }
+                    }
+                    if(ge instanceof MapImage) {
+                        ((MapImage) ge).refresh(false);
+                    }
+                    else if(ge instanceof GERefresh) {
+                        ((GERefresh) ge).refresh();
+                    }
+                }
+            };
+            if(SwingUtilities.isEventDispatchThread()) {
+                refresh.run();
+            }
+            else {
+                try {
+                    SwingUtilities.invokeAndWait(refresh);
+                } catch (InterruptedException | InvocationTargetException e) {
+                    LoggerFactory.getLogger(CompositionAreaController.class).error("Unable to refresh the element", e);
+                    return false;
+                }
+            }
+            if(ge instanceof MapImage) {
+                ((MapImage) ge).open();
+            }
+            deferredSet.remove(ge);
+            return true;
+        }
+    }
+
+    /**
+     * Does the refresh of all the deferred GraphicalElements, i.e. before an export, then redraws them.
+     * As it may be long, it should not be called from the EDT.
+     */
+    public void prepareAll(){
+        final List<GraphicalElement> list = new ArrayList<>();
+        for(GraphicalElement ge : new ArrayList<>(deferredSet)) {
+            if(prepare(ge)) {
+                list.add(ge);
+            }
+        }
+        if(!list.isEmpty()) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    for(GraphicalElement ge : list) {
+                        if(elementJPanelMap.containsKey(ge)) {
+                            refreshGE(ge);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Redraws the deferred GraphicalElements which are visible in the CompositionArea, and the maps used by the
+     * visible GraphicalElements (i.e. by a scale).
+     */
+    public void refreshVisibleGE(){
+        if(deferredSet.isEmpty() || compositionArea == null) {
+            return;
+        }
+        Set<GraphicalElement> toRefresh = new LinkedHashSet<>();
+        for(GraphicalElement ge : getGEIn(compositionArea.getVisibleDocumentArea(), false)) {
+            if(deferredSet.contains(ge)) {
+                toRefresh.add(ge);
+            }
+            for(ConfigurationAttribute ca : ge.getAllAttributes()) {
+                if(ca instanceof MapImageListCA) {
+                    MapImage mapImage = ((MapImageListCA) ca).getSelected();
+                    if(mapImage != null && deferredSet.contains(mapImage) && elementJPanelMap.containsKey(mapImage)) {
+                        toRefresh.add(mapImage);
+                    }
+                }
+            }
+        }
+        for(GraphicalElement ge : toRefresh) {
+            if(!renderWorkerMap.containsKey(ge)) {
+                refreshGE(ge);
+            }
+        }
+    }
+
+    /**
+     * Returns the thumbnail of each MapImage, built from its last rendering, to be saved with the document.
+     * The MapImages which aren't rendered yet keep the thumbnail loaded with the document.
+     * @return Map of the thumbnails, without the MapImages which have neither a rendering nor a loaded thumbnail.
+     */
+    public Map<GraphicalElement, BufferedImage> getThumbnails(){
+        Map<GraphicalElement, BufferedImage> thumbnailMap = new HashMap<>();
+        for(Map.Entry<GraphicalElement, CompositionJPanel> entry : elementJPanelMap.entrySet()) {
+            if(!(entry.getKey() instanceof MapImage)) {
+                continue;
+            }
+            BufferedImage image = entry.getValue().getRenderedImage();
+            if(image == null) {
+                BufferedImage placeholder = placeholderMap.get(entry.getKey());
+                if(placeholder != null) {
+                    thumbnailMap.put(entry.getKey(), placeholder);
+                }
+            }
+            else {
+                double ratio = Math.min(1, (double) THUMBNAIL_SIZE / Math.max(image.getWidth(), image.getHeight()));
+                int width = Math.max(1, (int) (image.getWidth() * ratio));
+                int height = Math.max(1, (int) (image.getHeight() * ratio));
+                BufferedImage thumbnail = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+                Graphics2D graph = thumbnail.createGraphics();
+                graph.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graph.drawImage(image, 0, 0, width, height, null);
+                graph.dispose();
+                thumbnailMap.put(entry.getKey(), thumbnail);
+            }
+        }
+        return thumbnailMap;
+    }
+
     /**
      * Removes from the CompositionArea a GraphicalElement.
      * @param ge GraphicalElement to remove.
      */
     public void remove(GraphicalElement ge){
+        renderScheduler.cancel(ge);
+        RenderWorker worker = renderWorkerMap.remove(ge);
+        if(worker != null) {
+            worker.cancel();
+        }
         compositionArea.removeGE(elementJPanelMap.get(ge));
         elementJPanelMap.remove(ge);
-        zIndexStack.remove(ge);
+        deferredSet.remove(ge);
+        placeholderMap.remove(ge);
+        zIndexList.remove(ge);
         compositionArea.refresh();
     }
 
@@ -121,16 +317,19 @@ public class CompositionAreaController {
         for(GraphicalElement ge : listGE) {
             remove(ge);
         }
-        setZIndex(zIndexStack);
+        setZIndex(zIndexList.asList());
     }
 
     /**
      * Removes all the graphicalElement from the CompositionArea.
      */
     public void removeAll(){
+        cancelRendering();
         compositionArea.removeAllGE();
         elementJPanelMap = new HashMap<>();
-        zIndexStack = new Stack<>();
+        deferredSet.clear();
+        placeholderMap.clear();
+        zIndexList.clear();
     }
 
     /**
@@ -138,107 +337,50 @@ public class CompositionAreaController {
      * @param z Change of the Z-index.
      */
     public void changeZIndex(ZIndex z){
-        List<GraphicalElement> selectedGE = mainController.getGEController().getSelectedGE();
-
-        Stack<GraphicalElement> temp = new Stack<>();
-        Stack<GraphicalElement> tempBack = new Stack<>();
-        Stack<GraphicalElement> tempFront = new Stack<>();
-        //Get the GE implementing the GEProperties interface and which are always on the back
-        for(GraphicalElement ge : zIndexStack){
+        List<GraphicalElement> selectedGE = new ArrayList<>();
+        List<GraphicalElement> tempBack = new ArrayList<>();
+        List<GraphicalElement> tempFront = new ArrayList<>();
+        //Get the GE implementing the GEProperties interface and which are always on the back or on the front
+        for(GraphicalElement ge : zIndexList){
             if(ge instanceof GEProperties && ((GEProperties)ge).isAlwaysOnBack()){
-                tempBack.push(ge);
-                temp.add(ge);
+                tempBack.add(ge);
             }
-        }
-        //Get the GE implementing the GEProperties interface and which are always on the front
-        for(GraphicalElement ge : zIndexStack){
-            if(ge instanceof  GEProperties && ((GEProperties)ge).isAlwaysOnTop()){
-                tempFront.push(ge);
-                temp.add(ge);
+            else if(ge instanceof GEProperties && ((GEProperties)ge).isAlwaysOnTop()){
+                tempFront.add(ge);
             }
         }
         //Remove the previous detected elements
-        for(GraphicalElement ge : temp){
-            zIndexStack.remove(ge);
+        zIndexList.removeAll(tempBack);
+        zIndexList.removeAll(tempFront);
+        //The elements always on the back or on the front are not moved
+        for(GraphicalElement ge : mainController.getGEController().getSelectedGE()){
+            if(zIndexList.contains(ge)) {
+                selectedGE.add(ge);
+            }
         }
-        temp = new Stack<>();
 
-        //Move the others GE
-        //In each cases : first sort the GE from the selectedGE list,
-        //Then place each GE at the good index in the stack.
+        //Move the others GE, each move is done in one pass over the list
         switch (z){
             case TO_FRONT:
-                Collections.sort(selectedGE, new Comparator<GraphicalElement>() {
-                    @Override
-                    public int compare(GraphicalElement ge1, GraphicalElement ge2) {
-                        if(zIndexStack.indexOf(ge1)>zIndexStack.indexOf(ge2)) return -1;
-                        if(zIndexStack.indexOf(ge1)<zIndexStack.indexOf(ge2)) return 1;
-                        return 0;
-                    }
-                });
-                for(GraphicalElement ge : selectedGE) {
-                    zIndexStack.remove(ge);
-                    zIndexStack.add(0, ge);
-                }
+                zIndexList.moveToFront(selectedGE);
                 break;
             case FRONT:
-                Collections.sort(selectedGE, new Comparator<GraphicalElement>() {
-                    @Override
-                    public int compare(GraphicalElement ge1, GraphicalElement ge2) {
-                        if(zIndexStack.indexOf(ge1)>zIndexStack.indexOf(ge2)) return 1;
-                        if(zIndexStack.indexOf(ge1)<zIndexStack.indexOf(ge2)) return -1;
-                        return 0;
-                    }
-                });
-                temp.addAll(zIndexStack);
-                for(GraphicalElement ge : selectedGE) {
-                    if (zIndexStack.indexOf(ge) > 0) {
-                        int index = temp.indexOf(ge) - 1;
-                        zIndexStack.remove(ge);
-                        zIndexStack.add(index, ge);
-                    }
-                }
+                zIndexList.moveForward(selectedGE);
                 break;
             case BACK:
-                Collections.sort(selectedGE, new Comparator<GraphicalElement>() {
-                    @Override
-                    public int compare(GraphicalElement ge1, GraphicalElement ge2) {
-                        if(zIndexStack.indexOf(ge1)>zIndexStack.indexOf(ge2)) return -1;
-                        if(zIndexStack.indexOf(ge1)<zIndexStack.indexOf(ge2)) return 1;
-                        return 0;
-                    }
-                });
-                temp.addAll(zIndexStack);
-                for(GraphicalElement ge : selectedGE) {
-                    if (zIndexStack.indexOf(ge) < zIndexStack.size() - 1) {
-                        int index = temp.indexOf(ge) + 1;
-                        zIndexStack.remove(ge);
-                        zIndexStack.add(index, ge);
-                    }
-                }
+                zIndexList.moveBackward(selectedGE);
                 break;
             case TO_BACK:
-                Collections.sort(selectedGE, new Comparator<GraphicalElement>() {
-                    @Override
-                    public int compare(GraphicalElement ge1, GraphicalElement ge2) {
-                        if(zIndexStack.indexOf(ge1)>zIndexStack.indexOf(ge2)) return 1;
-                        if(zIndexStack.indexOf(ge1)<zIndexStack.indexOf(ge2)) return -1;
-                        return 0;
-                    }
-                });
-                for(GraphicalElement ge : selectedGE) {
-                    zIndexStack.remove(ge);
-                    zIndexStack.add(ge);
-                }
+                zIndexList.moveToBack(selectedGE);
                 break;
         }
 
-        //Add to the stack the GE of the front
-        zIndexStack.addAll(tempFront);
-        //Add to the stack the GE of the back
-        zIndexStack.addAll(tempBack);
-        //Set the z-index of the GE from their stack position
-        setZIndex(zIndexStack);
+        //Add to the list the GE of the front
+        zIndexList.addAll(tempFront);
+        //Add to the list the GE of the back
+        zIndexList.addAll(tempBack);
+        //Set the z-index of the GE from their list position
+        setZIndex(zIndexList.asList());
         mainController.getGEController().modifySelectedGE();
     }
 
@@ -287,27 +429,145 @@ public class CompositionAreaController {
      * Redraws the given GraphicalElement.
      * It does the refresh of the GE and the actualization of the GE representation in the CompositionArea.
      * The GE representation is completely re-renderer.
+     * Only the last rendering of the GE is kept : the previous one is cancelled if it is waiting or running.
+     * A deferred GE is only displayed with its placeholder if it isn't visible. Else its refresh is done in the
+     * rendering thread, then the GEs using it are redrawn.
      * @param ge GraphicalElement to validate
      */
-    public void refreshGE(GraphicalElement ge){
-        if(ge instanceof GERefresh)
+    public void refreshGE(final GraphicalElement ge){
+        final boolean deferred = deferredSet.contains(ge);
+        if(deferred && !compositionArea.getVisibleDocumentArea().intersects(getRotatedBounds(ge))) {
+            showPlaceholder(ge);
+            return;
+        }
+        if(ge instanceof GERefresh && !deferred)
             ((GERefresh)ge).refresh();
-        RenderWorker worker = new RenderWorker(elementJPanelMap.get(ge), mainController.getGEManager().getRenderer(ge.getClass()), ge);
-        renderWorkerList.add(worker);
-        executorService.submit(worker);
+        //The data of the map layers may have been edited since the last rendering
+        if(ge instanceof MapImage)
+            MapImageRenderer.invalidateCaches();
+        final RenderWorker worker = new RenderWorker(elementJPanelMap.get(ge), mainController.getGEManager().getRenderer(ge.getClass()), ge);
+        worker.setWorkerMap(renderWorkerMap);
+        if(deferred) {
+            worker.setPreparation(new Runnable() {
+                @Override
+                public void run() {
+                    prepare(ge);
+                }
+            });
+        }
+        //Removes the worker from the map once it is done
+        worker.addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                if("state".equals(evt.getPropertyName()) && evt.getNewValue() == SwingWorker.StateValue.DONE) {
+                    renderWorkerMap.remove(ge, worker);
+                    if(deferred && !deferredSet.contains(ge)) {
+                        placeholderMap.remove(ge);
+                        refreshDependentGE(ge);
+                    }
+                }
+            }
+        });
+        RenderWorker previous = renderWorkerMap.put(ge, worker);
+        if(previous != null) {
+            previous.cancel();
+        }
+        renderScheduler.schedule(ge, worker);
         if(ge instanceof Document) {
             compositionArea.setDocumentDimension(new Dimension(ge.getWidth(), ge.getHeight()));
             compositionArea.setInchOrCom(((Document)ge).getUnit());
         }
     }
 
+    /**
+     * Displays the placeholder of a deferred GraphicalElement, or the MapImage icon if it has no placeholder.
+     * The icon isn't registered as a placeholder, so it is never saved as a thumbnail.
+     * @param ge Deferred GraphicalElement.
+     */
+    private void showPlaceholder(GraphicalElement ge){
+        BufferedImage placeholder = placeholderMap.get(ge);
+        if(placeholder == null) {
+            placeholder = new BufferedImage(Math.max(1, ge.getWidth()), Math.max(1, ge.getHeight()),
+                    BufferedImage.TYPE_INT_ARGB);
+            Graphics2D graph = placeholder.createGraphics();
+            graph.drawImage(MapComposerIcon.getIcon("add_map").getImage(), 0, 0, ge.getWidth(), ge.getHeight(), null);
+            graph.dispose();
+        }
+        elementJPanelMap.get(ge).refreshPlaceholder(placeholder);
+    }
+
+    /**
+     * Redraws the GraphicalElements using the given MapImage, i.e. once it is refreshed.
+     * @param mapImage MapImage used.
+     */
+    private void refreshDependentGE(GraphicalElement mapImage){
+        List<GraphicalElement> list = new ArrayList<>();
+        for(GraphicalElement ge : elementJPanelMap.keySet()) {
+            for(ConfigurationAttribute ca : ge.getAllAttributes()) {
+                if(ca instanceof MapImageListCA && ((MapImageListCA) ca).getSelected() == mapImage) {
+                    list.add(ge);
+                }
+            }
+        }
+        refreshGE(list);
+    }
+
+    /**
+     * Returns the bounding box of the given GraphicalElement after its rotation, in the document coordinates.
+     * @param ge GraphicalElement.
+     * @return The bounding box of the rotated GraphicalElement.
+     */
+    private static Rectangle getRotatedBounds(GraphicalElement ge){
+        double rad = Math.toRadians(ge.getRotation());
+        //Width and Height of the rectangle containing the rotated GraphicalElement
+        int newWidth = (int) (Math.abs(cos(rad) * ge.getWidth()) + Math.abs(sin(rad) * ge.getHeight()));
+        int newHeight = (int) (Math.abs(cos(rad) * ge.getHeight()) + Math.abs(sin(rad) * ge.getWidth()));
+        return new Rectangle(ge.getX() + (ge.getWidth() - newWidth) / 2, ge.getY() + (ge.getHeight() - newHeight) / 2,
+                newWidth, newHeight);
+    }
+
+    /**
+     * Returns the GraphicalElements which rotated bounds intersect or are contained in the given document area.
+     * @param documentArea Area in the document coordinates.
+     * @param contained If true, only returns the GraphicalElements fully contained in the area.
+     * @return The list of the GraphicalElements found.
+     */
+    public List<GraphicalElement> getGEIn(Rectangle documentArea, boolean contained){
+        List<GraphicalElement> list = new ArrayList<>();
+        for(GraphicalElement ge : elementJPanelMap.keySet()) {
+            Rectangle bounds = getRotatedBounds(ge);
+            if(contained ? documentArea.contains(bounds) : documentArea.intersects(bounds)) {
+                list.add(ge);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Sets the number of threads used to render the GraphicalElements.
+     * @param threadCount Number of rendering threads. If it is lower than 1, one thread per processor is used.
+     */
+    public void setRenderThreadCount(int threadCount){
+        renderScheduler.setThreadCount(threadCount);
+    }
+
+    /**
+     * Returns the RenderScheduler used to render the GraphicalElements (e.g. to set the rendering priorities).
+     * @return The RenderScheduler.
+     */
+    public RenderScheduler getRenderScheduler(){
+        return renderScheduler;
+    }
+
     /**
      * Cancel all the rendering processes.
      */
     public void cancelRendering(){
-        for(RenderWorker rw : renderWorkerList){
+        renderScheduler.cancelAll();
+        for(RenderWorker rw : renderWorkerMap.values()){
             rw.cancel();
         }
+        renderWorkerMap.clear();
     }
 
     /**
@@ -442,12 +702,19 @@ public class CompositionAreaController {
      * @param listGE List of GraphicalElement that the z index was modified.
      */
     public void setZIndex(List<GraphicalElement> listGE){
-        zIndexStack = new Stack<>();
-        zIndexStack.addAll(listGE);
-        for(GraphicalElement ge : listGE){
-            ge.setZ(elementJPanelMap.size() + 1 - listGE.indexOf(ge));
-            compositionArea.setZIndex(elementJPanelMap.get(ge), listGE.indexOf(ge));
+        //Copy the list first as it can be a view of the zIndexList
+        List<GraphicalElement> order = new ArrayList<>(listGE);
+        zIndexList.clear();
+        zIndexList.addAll(order);
+        List<CompositionJPanel> panels = new ArrayList<>(order.size());
+        int index = 0;
+        for(GraphicalElement ge : order){
+            ge.setZ(elementJPanelMap.size() + 1 - index);
+            panels.add(elementJPanelMap.get(ge));
+            index++;
         }
+        //The layered pane is reordered in one pass, only the panels which changed of index are moved
+        compositionArea.setZOrder(panels);
     }
 
     /**
@@ -529,9 +796,7 @@ public class CompositionAreaController {
      */
     public Stack<GraphicalElement> getOrderedByZindexGeList(){
         Stack<GraphicalElement> geStack = new Stack<>();
-        for(int i=zIndexStack.size()-1; i>=0; i--) {
-            geStack.add(zIndexStack.get(i));
-        }
+        geStack.addAll(zIndexList.toBackToFrontList());
         return geStack;
     }
 }
@@ -0,0 +1,392 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+
+package org.orbisgis.mapcomposer.controller;
+
+import org.orbisgis.corejdbc.DataManager;
+import org.orbisgis.mapcomposer.controller.utils.exportThreads.Atlas;
+import org.orbisgis.mapcomposer.controller.utils.exportThreads.ExportImageThread;
+import org.orbisgis.mapcomposer.controller.utils.exportThreads.ExportJob;
+import org.orbisgis.mapcomposer.controller.utils.exportThreads.ExportPDFThread;
+import org.orbisgis.mapcomposer.controller.utils.exportThreads.ExportPipeline;
+import org.orbisgis.mapcomposer.controller.utils.exportThreads.ExportSVGThread;
+import org.orbisgis.mapcomposer.controller.utils.exportThreads.ExportThread;
+import org.orbisgis.mapcomposer.model.configurationattribute.attribute.MapImageListCA;
+import org.orbisgis.mapcomposer.model.configurationattribute.attribute.OwsContextCA;
+import org.orbisgis.mapcomposer.model.configurationattribute.interfaces.ConfigurationAttribute;
+import org.orbisgis.mapcomposer.model.configurationattribute.interfaces.RefreshCA;
+import org.orbisgis.mapcomposer.model.configurationattribute.utils.CAManager;
+import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GERefresh;
+import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GraphicalElement;
+import org.orbisgis.mapcomposer.model.graphicalelement.utils.GEManager;
+import org.orbisgis.mapcomposer.model.utils.BinaryProjectHandler;
+import org.orbisgis.mapcomposer.model.utils.SaveAndLoadHandler;
+import org.orbisgis.mapcomposer.view.graphicalelement.GERenderer;
+import org.orbisgis.mapcomposer.view.graphicalelement.MapImageRenderer;
+import org.orbisgis.mapcomposer.view.graphicalelement.RendererRaster;
+import org.orbisgis.mapcomposer.view.graphicalelement.RendererVector;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Exports saved documents without any UI, i.e. on a server.
+ * Each ExportJob loads a saved document, refreshes its GraphicalElements and runs the ExportThread corresponding to
+ * its format with its overrides (resolution, vector or raster rendering of each GraphicalElement class).
+ * The jobs are run concurrently on a bounded thread pool.
+ * The command line entry point is in the map-composer-cli artifact, so this bundle doesn't depend on the
+ * implementation of the DataManager.
+ *
+ * @author Sylvain PALOMINOS
+ */
+public class HeadlessExporter {
+
+    /** GEManager giving the rendering methods. */
+    private GEManager geManager;
+
+    /** CAManager used to load the documents. */
+    private CAManager caManager;
+
+    /** DataManager used to open the OwsMapContexts of the MapImages, can be null. */
+    private DataManager dataManager;
+
+    /** Number of documents exported at the same time. */
+    private int threadCount;
+
+    /** Default rendering in the PDF export, null to keep the one of the export. */
+    private Boolean defaultVector;
+
+    /** Maximum number of documents being rendered or waiting to be written, lower than 1 for the default one. */
+    private int queueDepth;
+
+    /**
+     * Main constructor.
+     * @param dataManager DataManager used to open the OwsMapContexts of the MapImages. If null, the MapImages are
+     *                    drawn as an icon.
+     */
+    public HeadlessExporter(DataManager dataManager){
+        this.geManager = new GEManager();
+        this.caManager = new CAManager();
+        this.dataManager = dataManager;
+        this.threadCount = Runtime.getRuntime().availableProcessors();
+        this.defaultVector = null;
+        this.queueDepth = 0;
+    }
+
+    /**
+     * Sets the number of documents exported at the same time.
+     * @param threadCount Number of threads, a value lower than 1 means one thread per processor.
+     */
+    public void setThreadCount(int threadCount){
+        this.threadCount = threadCount < 1 ? Runtime.getRuntime().availableProcessors() : threadCount;
+    }
+
+    /**
+     * Sets the rendering of the GraphicalElement classes which are not set in the ExportJob.
+     * @param defaultVector True for the vector rendering, false for the raster one, null for the export default one.
+     */
+    public void setDefaultVector(Boolean defaultVector){
+        this.defaultVector = defaultVector;
+    }
+
+    /**
+     * Returns the GEManager used for the export, to register other GraphicalElements.
+     * @return The GEManager.
+     */
+    public GEManager getGEManager(){
+        return geManager;
+    }
+
+    /**
+     * Runs all the jobs concurrently and waits for their end.
+     * @param jobs List of the ExportJob to run.
+     * @return The list of the jobs which failed.
+     */
+    public List<ExportJob> exportAll(final List<ExportJob> jobs){
+        //The documents are exported with the current data of the map layers
+        MapImageRenderer.invalidateCaches();
+        List<ExportJob> failedJobs = new ArrayList<>();
+        int count = Math.max(1, Math.min(threadCount, jobs.size()));
+        //The processors are shared between the documents
+        final int workerCount = Math.max(1, Runtime.getRuntime().availableProcessors() / count);
+        //The documents are rendered by the pipeline threads and written by this one
+        //By default each thread renders a document while the previous one is written
+        ExportPipeline<RenderedDocument> pipeline = new ExportPipeline<>(count, queueDepth < 1 ? count + 1 : queueDepth);
+        List<Callable<RenderedDocument>> renderTasks = new ArrayList<>();
+        for(final ExportJob job : jobs) {
+            renderTasks.add(new Callable<RenderedDocument>() {
+                @Override
+                public RenderedDocument call() throws Exception {
+                    return render(job, workerCount);
+                }
+            });
+        }
+        boolean[] result;
+        try {
+            result = pipeline.run(renderTasks, new ExportPipeline.Encoder<RenderedDocument>() {
+                @Override
+                public void encode(int index, RenderedDocument document) throws IOException {
+                    write(document);
+                }
+            });
+        } catch (InterruptedException ex) {
+            LoggerFactory.getLogger(HeadlessExporter.class).error(ex.getMessage());
+            result = new boolean[jobs.size()];
+        }
+        for(int i = 0; i < jobs.size(); i++) {
+            if(!result[i]) {
+                failedJobs.add(jobs.get(i));
+            }
+        }
+        return failedJobs;
+    }
+
+    /**
+     * Sets the maximum number of documents being rendered, waiting to be written or being written by exportAll(),
+     * which bounds the memory used by the rendered images. A rendering only starts once a previous document is
+     * written if this number is reached, so a value lower than the thread count also limits the concurrent renderings.
+     * @param queueDepth Maximum number of documents in memory, lower than 1 for one more than the thread count.
+     */
+    public void setQueueDepth(int queueDepth){
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * Runs the given job in the current thread.
+     * @param job ExportJob to run.
+     * @return True if the export file was written, false otherwise.
+     */
+    public boolean export(ExportJob job){
+        //The document is exported with the current data of the map layers
+        MapImageRenderer.invalidateCaches();
+        try {
+            write(render(job, Runtime.getRuntime().availableProcessors()));
+            return true;
+        } catch (IOException|IllegalStateException|InterruptedException|ExecutionException ex) {
+            LoggerFactory.getLogger(HeadlessExporter.class).error(job + " : " + ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Renders the document of the job. The image of the document is returned to be written later, the PDF documents
+     * and the images written by bands are directly written because their rendering and writing are interleaved.
+     * @param job ExportJob to render.
+     * @param workerCount Number of threads rendering the GraphicalElements of the document.
+     * @return The rendered document.
+     * @throws InterruptedException Exception thrown if the rendering is interrupted.
+     * @throws ExecutionException Exception thrown if the rendering of a GraphicalElement failed.
+     */
+    private RenderedDocument render(ExportJob job, int workerCount) throws InterruptedException, ExecutionException {
+        ExportThread exportThread = prepare(job, workerCount);
+        if(exportThread == null) {
+            throw new IllegalStateException(job + " : the document can't be exported.");
+        }
+        if(exportThread instanceof ExportImageThread && !((ExportImageThread) exportThread).isBandExport()) {
+            return new RenderedDocument(job, exportThread, ((ExportImageThread) exportThread).renderImage());
+        }
+        exportThread.run();
+        return new RenderedDocument(job, exportThread, null);
+    }
+
+    /**
+     * Writes the rendered document, if not already done, and checks the export file.
+     * @param document Rendered document.
+     * @throws IOException Exception thrown if the export file can't be written.
+     */
+    private void write(RenderedDocument document) throws IOException {
+        if(document.image != null) {
+            ((ExportImageThread) document.exportThread).writeImage(document.image);
+        }
+        File file = new File(document.job.getExportPath());
+        if(!file.exists() || file.length() == 0) {
+            throw new IOException(document.job + " : the export file wasn't written.");
+        }
+    }
+
+    /**
+     * Loads the document of the job and returns the ExportThread configured to export it.
+     * @param job ExportJob to prepare.
+     * @param workerCount Number of threads rendering the GraphicalElements of the document.
+     * @return The configured ExportThread, or null if the document can't be exported.
+     */
+    private ExportThread prepare(ExportJob job, int workerCount){
+        //The PDF and SVG exports embed the raster elements at the screen resolution
+        if(("pdf".equals(job.getFormat()) || "svg".equals(job.getFormat())) && job.getDPI() > 0) {
+            LoggerFactory.getLogger(HeadlessExporter.class).error(job + " : the resolution is only available for " +
+                    "the image exports.");
+            return null;
+        }
+        List<GraphicalElement> listGE;
+        try {
+            if(BinaryProjectHandler.isBinaryProject(job.getDocumentPath())) {
+                listGE = new BinaryProjectHandler(geManager, caManager).load(job.getDocumentPath());
+            }
+            else {
+                //The SaveAndLoadHandler keeps the state of the parsing, so one is used per document
+                listGE = new SaveAndLoadHandler(geManager, caManager).load(job.getDocumentPath());
+            }
+        } catch (ParserConfigurationException|SAXException|IOException ex) {
+            LoggerFactory.getLogger(HeadlessExporter.class).error(job + " : " + ex.getMessage());
+            return null;
+        }
+        if(listGE == null) {
+            return null;
+        }
+        listGE = IOController.orderByZIndex(listGE);
+        refresh(listGE);
+
+        ExportThread exportThread;
+        if("pdf".equals(job.getFormat())) {
+            ExportPDFThread exportPDFThread = new ExportPDFThread();
+            exportPDFThread.setResourceInterning(job.isResourceInterning());
+            if(job.getAtlasQuery() != null) {
+                if(dataManager == null) {
+                    LoggerFactory.getLogger(HeadlessExporter.class).error(job + " : an atlas needs a DataManager.");
+                    return null;
+                }
+                Atlas atlas = new Atlas(dataManager.getDataSource(), job.getAtlasQuery());
+                atlas.bindTemplate(listGE, job.getAtlasGeometryColumn());
+                exportPDFThread.setAtlas(atlas);
+            }
+            exportThread = exportPDFThread;
+        }
+        else if("svg".equals(job.getFormat())) {
+            exportThread = new ExportSVGThread();
+        }
+        else {
+            ExportImageThread exportImageThread = new ExportImageThread();
+            exportImageThread.setImageType(job.getFormat());
+            exportImageThread.setDPI(job.getDPI());
+            exportImageThread.setBandExport(job.isBandExport());
+            exportImageThread.setWorkerCount(workerCount);
+            exportThread = exportImageThread;
+        }
+        for(GraphicalElement ge : listGE) {
+            Boolean isVector = job.isVector(ge.getClass());
+            if(isVector == null) {
+                isVector = defaultVector;
+            }
+            if(isVector != null) {
+                exportThread.addData(ge, isRenderable(ge, isVector) ? isVector : !isVector);
+            }
+        }
+        Stack<GraphicalElement> stack = new Stack<>();
+        stack.addAll(listGE);
+        exportThread.setGEStack(stack);
+        exportThread.setGEManager(geManager);
+        exportThread.setProgressBar(null);
+        exportThread.setProgressMonitor(null);
+
+        File file = new File(job.getExportPath());
+        if(file.exists() && !file.delete()) {
+            LoggerFactory.getLogger(HeadlessExporter.class).error(job + " : unable to replace the export file.");
+            return null;
+        }
+        exportThread.setPath(file.getAbsolutePath());
+        return exportThread;
+    }
+
+    /**
+     * Returns true if the GraphicalElement can be rendered with the given rendering.
+     * @param ge GraphicalElement to render.
+     * @param isVector True for the vector rendering, false for the raster one.
+     * @return True if the renderer of the GraphicalElement supports the rendering.
+     */
+    private boolean isRenderable(GraphicalElement ge, boolean isVector){
+        GERenderer renderer = geManager.getRenderer(ge.getClass());
+        return isVector ? renderer instanceof RendererVector : renderer instanceof RendererRaster;
+    }
+
+    /**
+     * Refreshes the ConfigurationAttributes and the GraphicalElements of a loaded document, as done on loading a
+     * document in the MainController, but without it.
+     * @param listGE GraphicalElements of the document.
+     */
+    private void refresh(List<GraphicalElement> listGE){
+        for(GraphicalElement ge : listGE) {
+            for(ConfigurationAttribute ca : ge.getAllAttributes()) {
+                if(ca instanceof OwsContextCA) {
+                    if(dataManager != null) {
+                        ((OwsContextCA) ca).setDataManager(dataManager);
+                    }
+                }
+                else if(ca instanceof MapImageListCA) {
+                    ((MapImageListCA) ca).refresh(listGE);
+                }
+                else if(ca instanceof RefreshCA) {
+                    ((RefreshCA) ca).refresh(null);
+                }
+            }
+        }
+        for(GraphicalElement ge : listGE) {
+            if(ge instanceof GERefresh) {
+                ((GERefresh) ge).refresh();
+            }
+        }
+    }
+
+    /**
+     * Document rendered by the first stage of the export pipeline.
+     */
+    private static class RenderedDocument {
+        /** Job of the document. */
+        private final ExportJob job;
+        /** ExportThread which rendered the document. */
+        private final ExportThread exportThread;
+        /** Image of the document to write, null if the document is already written. */
+        private final BufferedImage image;
+
+        /**
+         * Main constructor.
+         * @param job Job of the document.
+         * @param exportThread ExportThread which rendered the document.
+         * @param image Image of the document to write, null if the document is already written.
+         */
+        private RenderedDocument(ExportJob job, ExportThread exportThread, BufferedImage image){
+            this.job = job;
+            this.exportThread = exportThread;
+            this.image = image;
+        }
+    }
+}
@@ -34,13 +34,18 @@
 
 package org.orbisgis.mapcomposer.controller;
 
+import org.orbisgis.commons.progress.ProgressMonitor;
+import org.orbisgis.commons.progress.RootProgressMonitor;
 import org.orbisgis.mapcomposer.controller.utils.exportThreads.ExportThread;
 import org.orbisgis.mapcomposer.model.configurationattribute.utils.CAManager;
 import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GraphicalElement;
 import org.orbisgis.mapcomposer.model.graphicalelement.utils.GEManager;
+import org.orbisgis.mapcomposer.model.utils.BinaryProjectHandler;
 import org.orbisgis.mapcomposer.model.utils.SaveAndLoadHandler;
+import org.orbisgis.mapcomposer.view.graphicalelement.MapImageRenderer;
 import org.orbisgis.mapcomposer.view.utils.UIDialogExportConfiguration;
 import org.orbisgis.sif.UIFactory;
+import org.orbisgis.sif.components.OpenFilePanel;
 import org.orbisgis.sif.components.SaveFilePanel;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
@@ -49,9 +54,12 @@ import org.xnap.commons.i18n.I18nFactory;
 
 import javax.swing.JProgressBar;
 import javax.xml.parsers.ParserConfigurationException;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Stack;
 
 /**
@@ -65,46 +73,130 @@ public class IOController {
     /** SaveAndLoadHandler which manage saving as xml and loading the GraphicalElements*/
     private SaveAndLoadHandler saveNLoadHandler;
 
+    /** BinaryProjectHandler which manage saving and loading the GraphicalElements in the binary format*/
+    private BinaryProjectHandler binaryHandler;
+
     /** Object for the translation*/
     private static final I18n i18n = I18nFactory.getI18n(IOController.class);
 
     /** GEManager */
     private GEManager geManager;
 
+    /** ProgressMonitor of the running export, null if there is none */
+    private volatile ProgressMonitor exportProgressMonitor;
+
     public IOController(GEManager geManager, CAManager caManager){
         this.geManager = geManager;
         saveNLoadHandler = new SaveAndLoadHandler(geManager, caManager);
+        binaryHandler = new BinaryProjectHandler(geManager, caManager);
     }
 
     /**
-     * Runs saveProject function of the SaveHandler.
+     * Opens a file chooser and saves the document in the xml or in the binary format, according to the file extension.
      * @param listGEToSave List of GraphicalElements to save.
      * @return True if the document is successfully saved, false otherwise.
      */
     public boolean saveDocument(List<GraphicalElement> listGEToSave){
+        return saveDocument(listGEToSave, Collections.<GraphicalElement, BufferedImage>emptyMap());
+    }
+
+    /**
+     * Opens a file chooser and saves the document in the xml or in the binary format, according to the file extension.
+     * The thumbnails are only saved in the binary format.
+     * @param listGEToSave List of GraphicalElements to save.
+     * @param thumbnailMap Thumbnail of the GraphicalElements which have one.
+     * @return True if the document is successfully saved, false otherwise.
+     */
+    public boolean saveDocument(List<GraphicalElement> listGEToSave, Map<GraphicalElement, BufferedImage> thumbnailMap){
+        SaveFilePanel saveFilePanel = new SaveFilePanel("SaveAndLoadHandler", i18n.tr("Save document"));
+        saveFilePanel.addFilter(new String[]{"xml"}, i18n.tr("XML save files"));
+        saveFilePanel.addFilter(new String[]{BinaryProjectHandler.EXTENSION}, i18n.tr("Binary save files"));
+        saveFilePanel.loadState();
+        if(!UIFactory.showDialog(saveFilePanel)) {
+            return false;
+        }
+        String path = saveFilePanel.getSelectedFile().getAbsolutePath();
         try {
-            return saveNLoadHandler.saveProject(listGEToSave);
-        } catch (NoSuchMethodException|IOException ex) {
+            if(path.endsWith("." + BinaryProjectHandler.EXTENSION)) {
+                binaryHandler.save(listGEToSave, path, thumbnailMap);
+            }
+            else {
+                saveNLoadHandler.save(listGEToSave, path);
+            }
+            return true;
+        } catch (IOException ex) {
             LoggerFactory.getLogger(MainController.class).error(ex.getMessage());
         }
         return false;
     }
 
     /**
-     * Run loadProject function from the SaveHandler and draw loaded GE.
+     * Opens a file chooser and loads the selected document, saved in the xml or in the binary format.
      * @return The list of GraphicalElements just loaded.
      */
     public List<GraphicalElement> loadDocument(){
+        return loadDocument(null);
+    }
+
+    /**
+     * Opens a file chooser and loads the selected document, saved in the xml or in the binary format.
+     * @param thumbnailMap Map where the thumbnails saved with the document are put. Can be null.
+     * @return The list of GraphicalElements just loaded.
+     */
+    public List<GraphicalElement> loadDocument(Map<GraphicalElement, BufferedImage> thumbnailMap){
+        OpenFilePanel loadFilePanel = new OpenFilePanel("SaveAndLoadHandler", i18n.tr("Load document"));
+        loadFilePanel.addFilter(new String[]{"xml", BinaryProjectHandler.EXTENSION}, i18n.tr("Save files"));
+        loadFilePanel.addFilter(new String[]{"xml"}, i18n.tr("XML save files"));
+        loadFilePanel.addFilter(new String[]{BinaryProjectHandler.EXTENSION}, i18n.tr("Binary save files"));
+        loadFilePanel.loadState();
+        if(!UIFactory.showDialog(loadFilePanel)) {
+            return null;
+        }
         List<GraphicalElement> listGE;
         try {
-            listGE =  saveNLoadHandler.loadProject();
+            listGE = load(loadFilePanel.getSelectedFile().getAbsolutePath(), thumbnailMap);
         } catch (ParserConfigurationException |SAXException |IOException ex) {
             LoggerFactory.getLogger(MainController.class).error(ex.getMessage());
             return null;
         }
-        if(listGE == null){
-            return null;
+        return orderByZIndex(listGE);
+    }
+
+    /**
+     * Loads the document saved in the file of the given path, in the xml or in the binary format.
+     * @param path Path of the file to load.
+     * @return The list of GraphicalElements loaded, not ordered.
+     * @throws ParserConfigurationException
+     * @throws SAXException
+     * @throws IOException
+     */
+    public List<GraphicalElement> load(String path) throws ParserConfigurationException, SAXException, IOException {
+        return load(path, null);
+    }
+
+    /**
+     * Loads the document saved in the file of the given path, in the xml or in the binary format.
+     * @param path Path of the file to load.
+     * @param thumbnailMap Map where the thumbnails saved with the document are put. Can be null.
+     * @return The list of GraphicalElements loaded, not ordered.
+     * @throws ParserConfigurationException
+     * @throws SAXException
+     * @throws IOException
+     */
+    public List<GraphicalElement> load(String path, Map<GraphicalElement, BufferedImage> thumbnailMap)
+            throws ParserConfigurationException, SAXException, IOException {
+        if(BinaryProjectHandler.isBinaryProject(path)) {
+            return binaryHandler.load(path, thumbnailMap);
         }
+        return saveNLoadHandler.load(path);
+    }
+
+    /**
+     * Returns the given GraphicalElements ordered by z-index, the minimal z-index first.
+     * @param listGE List of GraphicalElements, i.e. just loaded.
+     * @return The ordered list of GraphicalElements.
+     */
+    public static List<GraphicalElement> orderByZIndex(List<GraphicalElement> listGE){
         List<GraphicalElement> listGEOrdered = new ArrayList<>();
         //first get the minimum z-index of the loaded GraphicalElement list
         int miniZ = -1;
@@ -130,6 +222,17 @@ public class IOController {
      * @param progressBar Progress bar where should be shown the progression. Can be null.
      */
     public void export(Stack<GraphicalElement> stackGEToExport, JProgressBar progressBar){
+        export(stackGEToExport, progressBar, null);
+    }
+
+    /**
+     * Exports the document into the format selected in the export dialog window (SaveFilePanel class)
+     * @param stackGEToExport Stack of GraphicalElement to export.
+     * @param progressBar Progress bar where should be shown the progression. Can be null.
+     * @param preparation Task done in the export thread before the export, i.e. the opening of the deferred maps.
+     *                    Can be null.
+     */
+    public void export(Stack<GraphicalElement> stackGEToExport, JProgressBar progressBar, final Runnable preparation){
         //Display the export configuration dialog
         UIDialogExportConfiguration uiDialogExportConfiguration = new UIDialogExportConfiguration(stackGEToExport, geManager);
         //If the export configuration dialog is closed without validating it, exit the export
@@ -154,7 +257,38 @@ public class IOController {
             String path = saveFilePanel.getSelectedFile().getAbsolutePath();
             exportThread.setPath(path);
             exportThread.setProgressBar(progressBar);
-            new Thread(exportThread).start();
+            final ProgressMonitor progressMonitor = new RootProgressMonitor(1);
+            exportThread.setProgressMonitor(progressMonitor);
+            exportProgressMonitor = progressMonitor;
+            final ExportThread thread = exportThread;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        //The document is exported with the current data of the map layers
+                        MapImageRenderer.invalidateCaches();
+                        if(preparation != null) {
+                            preparation.run();
+                        }
+                        thread.run();
+                    } finally {
+                        //Another export may have been started in the meantime
+                        if(exportProgressMonitor == progressMonitor) {
+                            exportProgressMonitor = null;
+                        }
+                    }
+                }
+            }).start();
+        }
+    }
+
+    /**
+     * Cancels the running export. The export stops within the rendering of one layer and its file is removed.
+     */
+    public void cancelExport(){
+        ProgressMonitor progressMonitor = exportProgressMonitor;
+        if(progressMonitor != null) {
+            progressMonitor.setCancelled(true);
         }
     }
 }
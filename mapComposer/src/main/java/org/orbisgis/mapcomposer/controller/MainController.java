@@ -40,18 +40,27 @@ import org.orbisgis.mapcomposer.model.configurationattribute.interfaces.Configur
 import org.orbisgis.mapcomposer.model.configurationattribute.interfaces.RefreshCA;
 import org.orbisgis.mapcomposer.model.configurationattribute.utils.CAManager;
 import org.orbisgis.mapcomposer.model.graphicalelement.element.Document;
+import org.orbisgis.mapcomposer.model.graphicalelement.element.cartographic.MapImage;
 import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.*;
 import org.orbisgis.mapcomposer.model.graphicalelement.utils.GEManager;
+import org.orbisgis.mapcomposer.model.utils.AutosaveJournal;
+import org.orbisgis.mapcomposer.model.utils.BinaryProjectHandler;
 import org.orbisgis.mapcomposer.view.ui.MainWindow;
 import org.orbisgis.mapeditorapi.MapEditorExtension;
 import org.orbisgis.wkguiapi.ViewWorkspace;
+import org.slf4j.LoggerFactory;
 import org.xnap.commons.i18n.I18n;
 import org.xnap.commons.i18n.I18nFactory;
 
 import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
 import java.beans.EventHandler;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.*;
 import javax.swing.undo.*;
@@ -92,6 +101,12 @@ public class MainController{
     private Timer waitEndWheelTimer;
     /** Time after which it's considered that the user has stopped to use the mouse wheel. */
     private static final int waitEndWheelTime = 1000;
+    /** Journal where the changes of the document are autosaved. */
+    private AutosaveJournal autosaveJournal;
+    /** Timer doing the autosave checkpoints. */
+    private Timer autosaveTimer;
+    /** Time between two autosave checkpoints. */
+    private static final int autosaveTime = 10000;
 
     /** Object for the translation*/
     private final static I18n i18n = I18nFactory.getI18n(MainController.class);
@@ -119,11 +134,71 @@ public class MainController{
         undoingRedoing = false;
         mouseWheelChangedProp = null;
         waitEndWheelTimer = new Timer(waitEndWheelTime, EventHandler.create(ActionListener.class, this, "wheelEnd"));
+        autosaveJournal = createAutosaveJournal();
+        autosaveTimer = new Timer(autosaveTime, EventHandler.create(ActionListener.class, this, "autosave"));
     }
 
     public void setMainWindow(MainWindow mainWindow){
         this.mainWindow = mainWindow;
         compositionAreaController.setCompositionArea(mainWindow.getCompositionArea());
+        //Once the window is built, propose to recover the document of a previous crash, then start the autosave
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if(autosaveJournal.isRecoverable()) {
+                    uiController.recoverDocument();
+                }
+                autosaveTimer.start();
+            }
+        });
+    }
+
+    /**
+     * Returns the autosave journal of this window, locked in the autosave folder of the user so it is neither shared
+     * with the other windows nor with the other users. If no journal can be locked, a new journal file is used.
+     * @return The autosave journal.
+     */
+    private AutosaveJournal createAutosaveJournal(){
+        BinaryProjectHandler binaryHandler = new BinaryProjectHandler(geManager, caManager);
+        File folder = new File(System.getProperty("user.home"), ".mapcomposer" + File.separator + "autosave");
+        try {
+            return AutosaveJournal.open(folder, binaryHandler);
+        } catch (IOException e) {
+            LoggerFactory.getLogger(MainController.class).error(e.getMessage());
+        }
+        try {
+            //The temporary file is created exclusively, so it is never shared
+            return new AutosaveJournal(File.createTempFile("mapcomposer_autosave", ".mcj"), binaryHandler);
+        } catch (IOException e) {
+            LoggerFactory.getLogger(MainController.class).error(e.getMessage());
+            return new AutosaveJournal(new File(folder, "autosave.mcj"), binaryHandler);
+        }
+    }
+
+    /**
+     * Appends the GraphicalElements changed since the last autosave to the autosave journal.
+     * Only the changed GraphicalElements are encoded on the EDT, the journal is written in background.
+     */
+    public void autosave(){
+        autosaveJournal.checkpoint();
+    }
+
+    /**
+     * Stops the autosave. The autosave journal is kept for a recovery if the document wasn't saved.
+     */
+    public void stopAutosave(){
+        autosaveTimer.stop();
+        autosaveJournal.checkpoint();
+        autosaveJournal.close();
+    }
+
+    /**
+     * Returns the autosave journal of the document, where should be registered the modifications of the
+     * GraphicalElements which are not done through the MainController.
+     * @return The autosave journal.
+     */
+    public AutosaveJournal getAutosaveJournal(){
+        return autosaveJournal;
     }
 
     /**
@@ -225,6 +300,9 @@ public class MainController{
                 flag = false;
             }
         }
+        for(GraphicalElement ge : geController.getSelectedGE()) {
+            autosaveJournal.elementRemoved(ge);
+        }
         compositionAreaController.remove(geController.getSelectedGE());
         geController.removeSelectedGE();
         mainWindow.getCompositionArea().refresh();
@@ -249,6 +327,9 @@ public class MainController{
                 flag = false;
             }
         }
+        for(GraphicalElement ge : geController.getGEList()) {
+            autosaveJournal.elementRemoved(ge);
+        }
         compositionAreaController.removeAll();
         geController.removeAllGE();
     }
@@ -261,6 +342,7 @@ public class MainController{
         if(!undoingRedoing) {
             undoManager.addEdit(new RemoveGEUndoableEdit(this, ge, true));
         }
+        autosaveJournal.elementRemoved(ge);
         compositionAreaController.remove(ge);
         geController.removeGE(ge);
     }
@@ -275,6 +357,7 @@ public class MainController{
         }
         compositionAreaController.add(ge);
         geController.addGE(ge);
+        autosaveJournal.elementAdded(ge);
     }
 
     /**
@@ -286,6 +369,9 @@ public class MainController{
         if(!undoingRedoing) {
             undoManager.addEdit(new ConfigurationGEUndoableEdit(this, geController.getToBeSet(), true));
         }
+        for(GraphicalElement ge : geController.getToBeSet()) {
+            autosaveJournal.elementModified(ge);
+        }
         //Apply the configuration
         geController.validateCAList(listCA);
     }
@@ -332,6 +418,7 @@ public class MainController{
         original.setWidth(modifiedCopy.getWidth());
         original.setHeight(modifiedCopy.getHeight());
         original.setRotation(modifiedCopy.getRotation());
+        autosaveJournal.elementModified(original);
 
         if(original instanceof GEProperties)
             if(((GEProperties)original).isAlwaysRefreshed())
@@ -365,8 +452,10 @@ public class MainController{
      * Saves the document (Save all the GE contained by the document).
      */
     public void saveDocument(){
-        if(ioController.saveDocument(geController.getGEList())){
+        if(ioController.saveDocument(geController.getGEList(), compositionAreaController.getThumbnails())){
             mainWindow.setModified(false);
+            autosaveJournal.checkpoint();
+            autosaveJournal.markSaved();
         }
     }
 
@@ -374,30 +463,67 @@ public class MainController{
      * Loads the document save file.
      */
     public void loadDocument(){
-        List<GraphicalElement> list = ioController.loadDocument();
+        Map<GraphicalElement, BufferedImage> thumbnailMap = new HashMap<>();
+        List<GraphicalElement> list = ioController.loadDocument(thumbnailMap);
         //Test if the file was successfully loaded (i.e. if the list of GraphicalElement is not null).
         if(list != null) {
-            removeAllGE();
-            //Adds all the GraphicalElements loaded
-            for (GraphicalElement ge : list) {
-                addGE(ge);
+            openDocument(list, thumbnailMap);
+            mainWindow.setModified(false);
+            //The loaded document is already saved, so there is nothing to recover
+            autosaveJournal.checkpoint();
+            autosaveJournal.markSaved();
+        }
+    }
+
+    /**
+     * Loads the document recovered from the autosave journal.
+     */
+    public void recoverDocument(){
+        List<GraphicalElement> list;
+        try {
+            list = IOController.orderByZIndex(autosaveJournal.recover());
+        } catch (IOException ex) {
+            LoggerFactory.getLogger(MainController.class).error(ex.getMessage());
+            return;
+        }
+        openDocument(list, new HashMap<GraphicalElement, BufferedImage>());
+        mainWindow.setModified(true);
+    }
+
+    /**
+     * Replaces the GraphicalElements of the document by the given ones.
+     * The maps having a thumbnail saved with the document (binary format only) are displayed with it and their
+     * OWS-Context is only opened once they are visible or exported. The other ones are opened at once.
+     * @param list List of GraphicalElements ordered by z-index.
+     * @param thumbnailMap Thumbnails saved with the document, displayed until the deferred maps are rendered.
+     */
+    private void openDocument(List<GraphicalElement> list, Map<GraphicalElement, BufferedImage> thumbnailMap){
+        removeAllGE();
+        //Adds all the GraphicalElements loaded
+        for (GraphicalElement ge : list) {
+            if(ge instanceof MapImage && thumbnailMap.containsKey(ge)) {
+                compositionAreaController.defer(ge, thumbnailMap.get(ge));
             }
+            addGE(ge);
+        }
 
-            //Then refresh the GraphicalElements and their ConfigurationAttributes
-            for (GraphicalElement ge : list) {
-                if(ge instanceof GERefresh){
-                    ((GERefresh)ge).refresh();
-                }
-                for(ConfigurationAttribute ca : ge.getAllAttributes()){
-                    if(ca instanceof RefreshCA){
-                        ((RefreshCA)ca).refresh(this);
-                    }
-                }
+        //Then refresh the GraphicalElements and their ConfigurationAttributes, the deferred ones are refreshed later
+        for (GraphicalElement ge : list) {
+            if(compositionAreaController.isDeferred(ge)){
+                continue;
             }
-            for (GraphicalElement ge : list) {
-                //To finish redraw the GraphicalElements
-                compositionAreaController.refreshGE(ge);
+            if(ge instanceof GERefresh){
+                ((GERefresh)ge).refresh();
             }
+            for(ConfigurationAttribute ca : ge.getAllAttributes()){
+                if(ca instanceof RefreshCA){
+                    ((RefreshCA)ca).refresh(this);
+                }
+            }
+        }
+        for (GraphicalElement ge : list) {
+            //To finish redraw the GraphicalElements
+            compositionAreaController.refreshGE(ge);
         }
     }
 
@@ -405,7 +531,21 @@ public class MainController{
      * Export the actual document into PNG, PDF or HTML after refreshing all the GE
      */
     public void export(){
-        ioController.export(compositionAreaController.getOrderedByZindexGeList(), mainWindow.getCompositionArea().getProgressionBar());
+        ioController.export(compositionAreaController.getOrderedByZindexGeList(), mainWindow.getCompositionArea().getProgressionBar(),
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        //The deferred maps are opened in the export thread
+                        compositionAreaController.prepareAll();
+                    }
+                });
+    }
+
+    /**
+     * Cancels the running export.
+     */
+    public void cancelExport(){
+        ioController.cancelExport();
     }
 
     /**
@@ -109,6 +109,18 @@ public class UIController {
         mainController.loadDocument();
     }
 
+    /**
+     * Proposes to the user to recover the document autosaved before the last crash of the MapComposer.
+     */
+    public void recoverDocument(){
+        MultiInputPanel panel = new MultiInputPanel(i18n.tr("Recover document"));
+        panel.addText(i18n.tr("The last document wasn't saved before the MapComposer was closed."));
+        panel.addText(i18n.tr("Do you want to recover it ?"));
+        if(UIFactory.showDialog(panel)) {
+            mainController.recoverDocument();
+        }
+    }
+
     public void createMap(){
         mainController.getCompositionAreaController().setOverlayRatio(-1);
         mainController.getGEController().instantiateNewGE(MapImage.class);
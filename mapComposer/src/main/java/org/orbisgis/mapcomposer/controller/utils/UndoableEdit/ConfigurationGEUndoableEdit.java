@@ -104,6 +104,7 @@ public class ConfigurationGEUndoableEdit implements UndoableEdit {
             //Save its new attributes (thank to its copy)
             mapGECopy.remove(ge);
             mapGECopy.put(ge, copy.getAllAttributes());
+            mainController.getAutosaveJournal().elementModified(ge);
 
             mainController.getCompositionAreaController().refreshGE(ge);
         }
@@ -133,6 +134,7 @@ public class ConfigurationGEUndoableEdit implements UndoableEdit {
             //Save its new attributes (thank to its copy)
             mapGECopy.remove(ge);
             mapGECopy.put(ge, copy.getAllAttributes());
+            mainController.getAutosaveJournal().elementModified(ge);
 
             mainController.getCompositionAreaController().refreshGE(ge);
         }
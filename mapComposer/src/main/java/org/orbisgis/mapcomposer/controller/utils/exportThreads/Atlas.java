@@ -0,0 +1,294 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+
+package org.orbisgis.mapcomposer.controller.utils.exportThreads;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import org.orbisgis.mapcomposer.model.configurationattribute.attribute.MapImageListCA;
+import org.orbisgis.mapcomposer.model.configurationattribute.interfaces.ConfigurationAttribute;
+import org.orbisgis.mapcomposer.model.graphicalelement.element.cartographic.MapImage;
+import org.orbisgis.mapcomposer.model.graphicalelement.element.text.TextElement;
+import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GraphicalElement;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Atlas generating one page per row of a query on a template document.
+ * For each row, the bound MapImages are centered on the geometry of the row and the bound TextElements have their
+ * {COLUMN} placeholders replaced by the values of the row. The template is restored once the atlas is closed.
+ * The GraphicalElements which are not bound and don't depend on a MapImage are the same on all the pages, so their
+ * rendering can be reused from one page to the other.
+ *
+ * @author Sylvain PALOMINOS
+ */
+public class Atlas {
+
+    /** DataSource where the query is executed. */
+    private DataSource dataSource;
+
+    /** Query giving the rows of the pages. */
+    private String query;
+
+    /** Bound MapImages and the name of the geometry column giving their extent. */
+    private Map<MapImage, String> extentMap;
+
+    /** Margin added around the geometry, as a ratio of its size. */
+    private double margin;
+
+    /** Bound TextElements and their template text containing the placeholders. */
+    private Map<TextElement, String> textMap;
+
+    /** Extent of the bound MapImages in the template, restored on closing. */
+    private Map<MapImage, Envelope> templateExtentMap;
+
+    /** Connection, statement and result set of the query while the atlas is open. */
+    private Connection connection;
+    private Statement statement;
+    private ResultSet resultSet;
+
+    /** Labels of the columns of the query. */
+    private List<String> columnList;
+
+    /** Index of the current page, starting from 0, -1 before the first page. */
+    private int pageIndex;
+
+    /**
+     * Main constructor.
+     * @param dataSource DataSource where the query is executed.
+     * @param query Query giving one row per page.
+     */
+    public Atlas(DataSource dataSource, String query){
+        this.dataSource = dataSource;
+        this.query = query;
+        this.extentMap = new HashMap<>();
+        this.textMap = new HashMap<>();
+        this.templateExtentMap = new HashMap<>();
+        this.columnList = new ArrayList<>();
+        this.margin = 0.05;
+        this.pageIndex = -1;
+    }
+
+    /**
+     * Sets the margin added around the geometry of a row to get the extent of the bound MapImages.
+     * @param margin Margin as a ratio of the geometry size (i.e. 0.05 for 5%).
+     */
+    public void setMargin(double margin){
+        this.margin = margin;
+    }
+
+    /**
+     * Binds the extent of the MapImage to the geometry of the given column.
+     * @param mapImage MapImage to bind.
+     * @param geometryColumn Label of the geometry column.
+     */
+    public void bindExtent(MapImage mapImage, String geometryColumn){
+        extentMap.put(mapImage, geometryColumn);
+    }
+
+    /**
+     * Binds the text of the TextElement : its {COLUMN} placeholders are replaced by the values of the row.
+     * @param textElement TextElement to bind.
+     */
+    public void bindText(TextElement textElement){
+        textMap.put(textElement, textElement.getText());
+    }
+
+    /**
+     * Binds all the MapImages of the template to the geometry column and all the TextElements containing a
+     * placeholder.
+     * @param listGE GraphicalElements of the template.
+     * @param geometryColumn Label of the geometry column, null to not bind the MapImages.
+     */
+    public void bindTemplate(List<GraphicalElement> listGE, String geometryColumn){
+        for(GraphicalElement ge : listGE) {
+            if(ge instanceof MapImage && geometryColumn != null) {
+                bindExtent((MapImage) ge, geometryColumn);
+            }
+            if(ge instanceof TextElement && ((TextElement) ge).getText() != null &&
+                    ((TextElement) ge).getText().matches("(?s).*\\{[^}]+\\}.*")) {
+                bindText((TextElement) ge);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the GraphicalElement is the same on all the pages, i.e. if it isn't bound and doesn't depend
+     * on a MapImage.
+     * @param ge GraphicalElement to test.
+     * @return True if the GraphicalElement doesn't change from one page to the other.
+     */
+    public boolean isStatic(GraphicalElement ge){
+        if(extentMap.containsKey(ge) || textMap.containsKey(ge)) {
+            return false;
+        }
+        for(ConfigurationAttribute ca : ge.getAllAttributes()) {
+            if(ca instanceof MapImageListCA) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Executes the query. Should be called before the first page.
+     * @throws SQLException Exception thrown on executing the query.
+     */
+    public void open() throws SQLException {
+        for(MapImage mapImage : extentMap.keySet()) {
+            templateExtentMap.put(mapImage, mapImage.getMapTransform().getExtent());
+        }
+        connection = dataSource.getConnection();
+        statement = connection.createStatement();
+        resultSet = statement.executeQuery(query);
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        columnList.clear();
+        for(int i = 1; i <= metaData.getColumnCount(); i++) {
+            columnList.add(metaData.getColumnLabel(i));
+        }
+        pageIndex = -1;
+    }
+
+    /**
+     * Moves to the next row and applies its values to the bound GraphicalElements.
+     * @return True if there is a new page, false if all the rows have been read.
+     * @throws SQLException Exception thrown on reading the row.
+     */
+    public boolean nextPage() throws SQLException {
+        if(!resultSet.next()) {
+            return false;
+        }
+        pageIndex++;
+        for(Map.Entry<TextElement, String> entry : textMap.entrySet()) {
+            String text = entry.getValue();
+            for(String column : columnList) {
+                Object value = resultSet.getObject(column);
+                text = text.replace("{" + column + "}", value == null ? "" : value.toString());
+            }
+            entry.getKey().setText(text);
+        }
+        for(Map.Entry<MapImage, String> entry : extentMap.entrySet()) {
+            Object value = resultSet.getObject(entry.getValue());
+            if(value instanceof Geometry && !((Geometry) value).isEmpty()) {
+                entry.getKey().getMapTransform().setExtent(getExtent(((Geometry) value).getEnvelopeInternal(),
+                        templateExtentMap.get(entry.getKey())));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the extent centered on the envelope of a geometry, plus the margin.
+     * A flat envelope (i.e. of a horizontal or vertical line) takes its length as width and height. The envelope of a
+     * point takes the size of the template extent, or a size of 1 if there is no template extent, so the extent
+     * never has a null width or height.
+     * @param geometryEnvelope Envelope of the geometry.
+     * @param templateExtent Extent of the MapImage in the template, can be null.
+     * @return The extent of the page.
+     */
+    Envelope getExtent(Envelope geometryEnvelope, Envelope templateExtent){
+        double width = geometryEnvelope.getWidth();
+        double height = geometryEnvelope.getHeight();
+        if(width == 0 && height == 0) {
+            if(templateExtent != null && !templateExtent.isNull() && templateExtent.getWidth() > 0 &&
+                    templateExtent.getHeight() > 0) {
+                width = templateExtent.getWidth();
+                height = templateExtent.getHeight();
+            }
+            else {
+                width = 1;
+                height = 1;
+            }
+        }
+        else if(width == 0) {
+            width = height;
+        }
+        else if(height == 0) {
+            height = width;
+        }
+        Envelope envelope = new Envelope(geometryEnvelope);
+        envelope.expandBy((width - geometryEnvelope.getWidth()) / 2 + width * margin,
+                (height - geometryEnvelope.getHeight()) / 2 + height * margin);
+        return envelope;
+    }
+
+    /**
+     * Returns the index of the current page, starting from 0.
+     * @return The index of the current page.
+     */
+    public int getPageIndex(){
+        return pageIndex;
+    }
+
+    /**
+     * Closes the query and restores the template.
+     */
+    public void close(){
+        for(Map.Entry<TextElement, String> entry : textMap.entrySet()) {
+            entry.getKey().setText(entry.getValue());
+        }
+        for(Map.Entry<MapImage, Envelope> entry : templateExtentMap.entrySet()) {
+            if(entry.getValue() != null) {
+                entry.getKey().getMapTransform().setExtent(entry.getValue());
+            }
+        }
+        templateExtentMap.clear();
+        try {
+            if(resultSet != null) {
+                resultSet.close();
+            }
+            if(statement != null) {
+                statement.close();
+            }
+            if(connection != null) {
+                connection.close();
+            }
+        } catch (SQLException ex) {
+            LoggerFactory.getLogger(Atlas.class).error(ex.getMessage());
+        }
+        resultSet = null;
+        statement = null;
+        connection = null;
+    }
+}
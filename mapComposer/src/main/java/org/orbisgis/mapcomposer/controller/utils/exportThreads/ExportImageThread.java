@@ -35,27 +35,54 @@
 package org.orbisgis.mapcomposer.controller.utils.exportThreads;
 
 import net.miginfocom.swing.MigLayout;
+import org.orbisgis.commons.progress.NullProgressMonitor;
+import org.orbisgis.commons.progress.ProgressMonitor;
 import org.orbisgis.mapcomposer.model.graphicalelement.element.Document;
 import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GraphicalElement;
 import org.orbisgis.mapcomposer.model.graphicalelement.utils.GEManager;
+import org.orbisgis.mapcomposer.model.utils.Resolution;
+import org.orbisgis.mapcomposer.view.graphicalelement.GERenderer;
 import org.orbisgis.mapcomposer.view.graphicalelement.RendererRaster;
+import org.orbisgis.mapcomposer.view.graphicalelement.RendererVector;
+import org.orbisgis.mapcomposer.view.graphicalelement.RendererVectorMonitored;
+import org.orbisgis.mapcomposer.view.graphicalelement.RendererVectorPartial;
 import org.slf4j.LoggerFactory;
 import org.xnap.commons.i18n.I18n;
 import org.xnap.commons.i18n.I18nFactory;
 
 import javax.imageio.ImageIO;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JComponent;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JProgressBar;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
+import java.awt.AlphaComposite;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static java.lang.Math.cos;
 import static java.lang.Math.sin;
@@ -70,6 +97,8 @@ public class ExportImageThread implements ExportThread {
     private String path;
     /** Progress bar where the progression is shown */
     private JProgressBar progressBar;
+    /** ProgressMonitor of the export, also used to cancel it */
+    private ProgressMonitor progressMonitor;
     /** GeManager used to get the GraphicalElement rendering methods. */
     private GEManager geManager;
 
@@ -77,7 +106,8 @@ public class ExportImageThread implements ExportThread {
     private static final I18n i18n = I18nFactory.getI18n(ExportImageThread.class);
 
     /**Map of GraphicalElement and boolean.
-     * The boolean tells if the vector rendering should be use or not (if not use the raster rendering)
+     * The boolean tells if the vector rendering should be use or not (if not use the raster rendering). A null value
+     * means the default rendering : raster at the screen resolution, vector at the other ones.
      **/
     private Map<GraphicalElement, Boolean> geIsVectorMap;
 
@@ -87,69 +117,483 @@ public class ExportImageThread implements ExportThread {
     /** JComboBox component containing the selected image type */
     private JComboBox<String> imageType;
 
+    /** Image type used when there is no export panel */
+    private String format;
+
+    /** JCheckBox component telling if the document should be exported by bands */
+    private JCheckBox bandExport;
+
+    /** Tells if the document should be exported by bands when there is no export panel */
+    private boolean byBands;
+
+    /** Maximum number of pixels of a band when the document is exported by bands (16 MB of ARGB pixels). */
+    private static final int BAND_PIXELS = 4 * 1024 * 1024;
+
+    /** JSpinner component containing the number of threads used for the export */
+    private JSpinner workerSpinner;
+
+    /** Number of threads rasterizing the GraphicalElements during the export. */
+    private int workerCount;
+
+    /** JSpinner component containing the resolution of the exported image */
+    private JSpinner dpiSpinner;
+
+    /** Resolution of the exported image in dot per inch. */
+    private int dpi;
+
     /**
      * Main constructor
      */
     public ExportImageThread(){
         this.geIsVectorMap = new HashMap<>();
         this.geStack = new Stack<>();
+        this.workerCount = Runtime.getRuntime().availableProcessors();
+        this.dpi = Resolution.getScreenDPI();
+        this.format = "png";
+        this.byBands = false;
+        this.progressMonitor = new NullProgressMonitor();
+    }
+
+    /**
+     * Sets the type of the exported image ("png", "jpg" or "gif"). Used when there is no export panel.
+     * @param format Type of the image.
+     */
+    public void setImageType(String format) {
+        this.format = format;
+    }
+
+    /**
+     * Returns the type of the exported image.
+     * @return The type of the image.
+     */
+    public String getImageType() {
+        if(imageType != null) {
+            return (String) imageType.getSelectedItem();
+        }
+        return format;
+    }
+
+    /**
+     * Sets if the document should be written by bands (only for the PNG images). Used when there is no export panel.
+     * @param byBands True to write the image by bands.
+     */
+    public void setBandExport(boolean byBands) {
+        this.byBands = byBands;
+    }
+
+    /**
+     * Sets the resolution of the exported image. The GraphicalElements are rendered through a scaled Graphics2D, so
+     * the vector renderers draw at this resolution instead of enlarging the screen rendering.
+     * @param dpi Resolution in dot per inch, a value lower than 1 means the screen resolution.
+     */
+    public void setDPI(int dpi) {
+        if(dpi < 1) {
+            this.dpi = Resolution.getScreenDPI();
+        }
+        else {
+            this.dpi = dpi;
+        }
+    }
+
+    /**
+     * Returns the resolution of the exported image in dot per inch.
+     * @return The resolution of the exported image.
+     */
+    public int getDPI() {
+        if(dpiSpinner != null) {
+            return (Integer) dpiSpinner.getValue();
+        }
+        return dpi;
+    }
+
+    /**
+     * Sets the number of threads rasterizing the GraphicalElements during the export.
+     * The images are always drawn in the document in the z-index order, so the result doesn't depend on this value.
+     * @param workerCount Number of threads, a value lower than 1 means one thread per processor.
+     */
+    public void setWorkerCount(int workerCount) {
+        if(workerCount < 1) {
+            this.workerCount = Runtime.getRuntime().availableProcessors();
+        }
+        else {
+            this.workerCount = workerCount;
+        }
+    }
+
+    /**
+     * Returns the number of threads rasterizing the GraphicalElements during the export.
+     * @return The number of threads.
+     */
+    public int getWorkerCount() {
+        if(workerSpinner != null) {
+            return (Integer) workerSpinner.getValue();
+        }
+        return workerCount;
     }
 
     @Override
     public void run() {
+        ProgressBarListener progress = new ProgressBarListener(progressBar, progressMonitor);
         try{
-            BufferedImage bi = null;
-            //Find the Document GE to create the BufferedImage where all the GE will be drawn
-            for(GraphicalElement ge : geIsVectorMap.keySet()){
-                if(ge instanceof Document){
-                    bi = new BufferedImage(ge.getWidth(), ge.getHeight(), BufferedImage.TYPE_INT_ARGB);
+            progress.start(i18n.tr("Exporting the document ..."));
+            try {
+                if(isBandExport()) {
+                    //Ratio between the screen pixels of the GraphicalElements and the pixels of the exported image
+                    double scale = Resolution.getScaleTo(getDPI());
+                    Rectangle documentBounds = getDocumentBounds(scale);
+                    exportByBands(documentBounds.width, documentBounds.height, scale);
+                }
+                else {
+                    writeImage(renderImage());
                 }
+            } catch (InterruptedException|ExecutionException ex) {
+                throw new IllegalArgumentException(i18n.tr("Error on export : {0}", ex.getMessage()), ex);
             }
-            //If no Document was created, throw an exception
-            if(bi == null){
-                throw new IllegalArgumentException(i18n.tr("Error on export : The list of GraphicalElement to export does not contain any Document GE."));
+
+            progress.finish(i18n.tr("Document successfully exported."));
+        } catch (CancellationException ex) {
+            deleteExportFile();
+            progress.finish(i18n.tr("Export cancelled."));
+        } catch (IllegalArgumentException|IOException ex) {
+            deleteExportFile();
+            LoggerFactory.getLogger(ExportImageThread.class).error(ex.getMessage());
+            progress.reset();
+            return;
+        }
+        progress.resetLater();
+    }
+
+    /**
+     * Removes the partially written export file after a cancellation or an error.
+     */
+    private void deleteExportFile(){
+        File file = new File(path);
+        if(file.exists() && !file.delete()) {
+            LoggerFactory.getLogger(ExportImageThread.class).error(i18n.tr("Unable to remove the file {0}.", path));
+        }
+    }
+
+    /**
+     * Throws a CancellationException if the export was cancelled through the ProgressMonitor.
+     */
+    private void checkCancelled(){
+        if(progressMonitor.isCancelled()) {
+            throw new CancellationException(i18n.tr("Export cancelled."));
+        }
+    }
+
+    /**
+     * Draws the GraphicalElement with its RendererVector, following the given ProgressMonitor if the renderer
+     * supports it.
+     * @param renderer RendererVector of the GraphicalElement.
+     * @param graphics2D Graphics2D where the GraphicalElement is drawn.
+     * @param ge GraphicalElement to draw.
+     * @param pm ProgressMonitor of the drawing.
+     */
+    private static void drawGE(RendererVector renderer, Graphics2D graphics2D, GraphicalElement ge, ProgressMonitor pm){
+        if(renderer instanceof RendererVectorMonitored) {
+            ((RendererVectorMonitored) renderer).drawGE(graphics2D, ge, pm);
+        }
+        else {
+            renderer.drawGE(graphics2D, ge);
+        }
+    }
+
+    /**
+     * Returns the bounds of the exported image, from the Document GraphicalElement.
+     * @param scale Ratio between the GraphicalElement sizes and the exported image pixels.
+     * @return The bounds of the exported image.
+     */
+    private Rectangle getDocumentBounds(double scale){
+        GraphicalElement document = null;
+        //Find the Document GE giving the size of the image where all the GE will be drawn
+        for(GraphicalElement ge : geIsVectorMap.keySet()){
+            if(ge instanceof Document){
+                document = ge;
             }
+        }
+        //If no Document was found, throw an exception
+        if(document == null){
+            throw new IllegalArgumentException(i18n.tr("Error on export : The list of GraphicalElement to export does not contain any Document GE."));
+        }
+        return scaleBounds(new Rectangle(0, 0, document.getWidth(), document.getHeight()), scale);
+    }
 
-            progressBar.setIndeterminate(true);
-            progressBar.setStringPainted(true);
-            progressBar.setString(i18n.tr("Exporting the document ..."));
-            int geCount = 0;
-            //Draw each GraphicalElement in the BufferedImage
-            Graphics2D graphics2D = bi.createGraphics();
-            for(GraphicalElement ge : geStack){
-                double rad = Math.toRadians(ge.getRotation());
-                //Width and Height of the rectangle containing the rotated bufferedImage
-                final double newWidth = Math.abs(cos(rad)*ge.getWidth())+Math.abs(sin(rad)*ge.getHeight());
-                final double newHeight = Math.abs(cos(rad)*ge.getHeight())+Math.abs(sin(rad)*ge.getWidth());
-                final int maxWidth = Math.max((int)newWidth, ge.getWidth());
-                final int maxHeight = Math.max((int)newHeight, ge.getHeight());
-                //Draw the GraphicalElement in a Graphics2D
-                BufferedImage bufferedImage = ((RendererRaster)geManager.getRenderer(ge.getClass()))
-                        .createGEImage(ge, null);
-                graphics2D.drawImage(bufferedImage, ge.getX() + (ge.getWidth() - maxWidth) / 2, ge.getY() + (ge.getHeight() - maxHeight) / 2, null);
-                //Set the progress bar value
-                progressBar.setIndeterminate(false);
-                progressBar.setValue((geCount * 100) / geIsVectorMap.keySet().size());
-                progressBar.revalidate();
-                geCount ++;
+    /**
+     * Draws all the GraphicalElements in one BufferedImage of the document size, at the export resolution.
+     * The GraphicalElements are rasterized in parallel and drawn in the z-index order.
+     * The rendering is separated from the writing of the image (writeImage()) so both can be run in different
+     * threads.
+     * @return The image of the document.
+     * @throws InterruptedException Exception thrown if the export is interrupted.
+     * @throws ExecutionException Exception thrown if the rendering of a GraphicalElement failed.
+     * @throws CancellationException Exception thrown if the export is cancelled through the ProgressMonitor.
+     */
+    public BufferedImage renderImage() throws InterruptedException, ExecutionException {
+        //Ratio between the screen pixels of the GraphicalElements and the pixels of the exported image
+        double scale = Resolution.getScaleTo(getDPI());
+        Rectangle documentBounds = getDocumentBounds(scale);
+        int width = documentBounds.width;
+        int height = documentBounds.height;
+        BufferedImage bi = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics2D = bi.createGraphics();
+        List<GraphicalElement> geList = new ArrayList<>(geStack);
+        int threadCount = Math.max(1, Math.min(getWorkerCount(), geList.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        //Limits the number of images rendered but not drawn yet to bound the memory use
+        int window = threadCount * 2;
+        List<Future<BufferedImage>> futureList = new ArrayList<>(geList.size());
+        //Each GraphicalElement is a step of the export
+        ProgressMonitor exportPm = progressMonitor.startTask(i18n.tr("Exporting the document ..."), geList.size());
+        List<ProgressMonitor> gePmList = new ArrayList<>(geList.size());
+        try {
+            for (int geCount = 0; geCount < geList.size(); geCount++) {
+                while (futureList.size() < geList.size() && futureList.size() < geCount + window) {
+                    GraphicalElement ge = geList.get(futureList.size());
+                    ProgressMonitor gePm = exportPm.startTask(ge.getGEName(), 1);
+                    gePmList.add(gePm);
+                    futureList.add(executor.submit(new RasterizeTask(ge, scale, gePm)));
+                }
+                GraphicalElement ge = geList.get(geCount);
+                Rectangle imageBounds = scaleBounds(getImageBounds(ge), scale);
+                //Wait for the GraphicalElement image and release it once drawn
+                BufferedImage bufferedImage = futureList.get(geCount).get();
+                futureList.set(geCount, null);
+                //A cancelled rendering stops within one layer, so its image is incomplete
+                checkCancelled();
+                graphics2D.drawImage(bufferedImage, imageBounds.x, imageBounds.y, null);
+                gePmList.get(geCount).endTask();
             }
+        } finally {
+            executor.shutdownNow();
             graphics2D.dispose();
-            //Write the BufferedImage
-            ImageIO.write(bi, (String)imageType.getSelectedItem(), new File(path));
+        }
+        return bi;
+    }
 
-            progressBar.setValue(progressBar.getMaximum());
-            progressBar.setString(i18n.tr("Document successfully exported."));
-            //Wait a bit before erasing the progress bar
-            try {
-                Thread.sleep(1500);
-            } catch (InterruptedException e) {
-                LoggerFactory.getLogger(ExportImageThread.class).error(e.getMessage());
+    /**
+     * Writes the image of the document in the export file.
+     * @param bi Image of the document, returned by renderImage().
+     * @throws IOException Exception thrown on writing the image.
+     */
+    public void writeImage(BufferedImage bi) throws IOException {
+        ImageIO.write(bi, getImageType(), new File(path));
+    }
+
+    /**
+     * Draws the document by horizontal bands, each band being encoded in the PNG file once drawn, so only one band
+     * is in memory instead of the whole document image.
+     * The image of a GraphicalElement is rendered once, when the first band containing it is drawn, and released
+     * after the last one. The GraphicalElements too big to be kept in memory are drawn again for each band with their
+     * RendererVector, which only renders the part in the band if it is a RendererVectorPartial.
+     * @param width Width of the exported image.
+     * @param height Height of the exported image.
+     * @param scale Ratio between the GraphicalElement sizes and the exported image pixels.
+     * @throws IOException Exception thrown on writing the image.
+     * @throws InterruptedException Exception thrown if the export is interrupted.
+     * @throws ExecutionException Exception thrown if the rendering of a GraphicalElement failed.
+     * @throws CancellationException Exception thrown if the export is cancelled through the ProgressMonitor.
+     */
+    private void exportByBands(int width, int height, double scale) throws IOException, InterruptedException, ExecutionException {
+        int bandHeight = Math.max(1, Math.min(height, BAND_PIXELS / Math.max(1, width)));
+        BufferedImage band = new BufferedImage(width, bandHeight, BufferedImage.TYPE_INT_ARGB);
+        List<GraphicalElement> geList = new ArrayList<>(geStack);
+        Map<GraphicalElement, Rectangle> boundsMap = new HashMap<>();
+        for(GraphicalElement ge : geList) {
+            boundsMap.put(ge, scaleBounds(getImageBounds(ge), scale));
+        }
+        Map<GraphicalElement, Future<BufferedImage>> futureMap = new HashMap<>();
+        int threadCount = Math.max(1, Math.min(getWorkerCount(), geList.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        //Each band is a step of the export
+        ProgressMonitor exportPm = progressMonitor.startTask(i18n.tr("Exporting the document ..."),
+                (height + bandHeight - 1) / bandHeight);
+        //The output stream is closed before the removal of the file in case of cancellation
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(path))) {
+            PNGStreamWriter writer = new PNGStreamWriter(out, width, height, getDPI());
+            for(int bandY = 0; bandY < height; bandY += bandHeight) {
+                int rows = Math.min(bandHeight, height - bandY);
+                ProgressMonitor bandPm = exportPm.startTask(i18n.tr("Exporting the document ..."), 1);
+                //Starts the rendering of the GraphicalElements appearing in this band
+                for(GraphicalElement ge : geList) {
+                    Rectangle bounds = boundsMap.get(ge);
+                    if(bounds.y < bandY + rows && bounds.y + bounds.height > bandY && !futureMap.containsKey(ge) &&
+                            !isDrawnByBand(ge, bounds)) {
+                        futureMap.put(ge, executor.submit(new RasterizeTask(ge, scale, bandPm.startTask(ge.getGEName(), 1))));
+                    }
+                }
+                Graphics2D graphics2D = band.createGraphics();
+                graphics2D.setComposite(AlphaComposite.Clear);
+                graphics2D.fillRect(0, 0, width, bandHeight);
+                graphics2D.setComposite(AlphaComposite.SrcOver);
+                graphics2D.translate(0, -bandY);
+                //Draw the GraphicalElements in the z-index order
+                for(GraphicalElement ge : geList) {
+                    Rectangle bounds = boundsMap.get(ge);
+                    if(bounds.y >= bandY + rows || bounds.y + bounds.height <= bandY) {
+                        continue;
+                    }
+                    if(isDrawnByBand(ge, bounds)) {
+                        Graphics2D geGraphics = (Graphics2D) graphics2D.create();
+                        geGraphics.clipRect(0, bandY, width, rows);
+                        geGraphics.translate(bounds.x, bounds.y);
+                        geGraphics.scale(scale, scale);
+                        RendererVector renderer = (RendererVector)geManager.getRenderer(ge.getClass());
+                        ProgressMonitor gePm = bandPm.startTask(ge.getGEName(), 1);
+                        if(renderer instanceof RendererVectorPartial) {
+                            //Only the part of the GraphicalElement in the band is rendered
+                            Rectangle2D part = new Rectangle2D.Double(0, (bandY - bounds.y) / scale,
+                                    bounds.width / scale, rows / scale);
+                            ((RendererVectorPartial) renderer).drawGE(geGraphics, ge, part, gePm);
+                        }
+                        else {
+                            drawGE(renderer, geGraphics, ge, gePm);
+                        }
+                        geGraphics.dispose();
+                        checkCancelled();
+                    }
+                    else {
+                        BufferedImage image = futureMap.get(ge).get();
+                        checkCancelled();
+                        graphics2D.drawImage(image, bounds.x, bounds.y, null);
+                        //Release the image once its last band is drawn
+                        if(bounds.y + bounds.height <= bandY + rows) {
+                            futureMap.put(ge, null);
+                        }
+                    }
+                }
+                graphics2D.dispose();
+                writer.writeRows(band, rows);
+                bandPm.endTask();
             }
-            progressBar.setValue(0);
-            progressBar.setStringPainted(false);
+            writer.finish();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-        } catch (IllegalArgumentException|IOException ex) {
-            LoggerFactory.getLogger(ExportImageThread.class).error(ex.getMessage());
+    /**
+     * Returns true if the GraphicalElement should be drawn again for each band instead of being rendered once as an
+     * image, i.e. if its image would be bigger than a band and it has a vector renderer.
+     * @param ge GraphicalElement to test.
+     * @param bounds Bounds of the image of the GraphicalElement.
+     * @return True if the GraphicalElement is drawn for each band.
+     */
+    private boolean isDrawnByBand(GraphicalElement ge, Rectangle bounds){
+        GERenderer renderer = geManager.getRenderer(ge.getClass());
+        return (long)bounds.width * bounds.height > BAND_PIXELS && renderer instanceof RendererVector &&
+                (!(renderer instanceof RendererRaster) || !Boolean.FALSE.equals(geIsVectorMap.get(ge)));
+    }
+
+    /**
+     * Returns true if the GraphicalElement should be rendered with its RendererVector, false if it should be
+     * rendered with its RendererRaster. The rendering set with addData() is used if the renderer supports both.
+     * @param ge GraphicalElement to render.
+     * @param renderer Renderer of the GraphicalElement.
+     * @param scale Ratio between the GraphicalElement sizes and the exported image pixels.
+     * @return True for the vector rendering.
+     */
+    private boolean isVector(GraphicalElement ge, GERenderer renderer, double scale){
+        if(!(renderer instanceof RendererRaster)) {
+            return true;
+        }
+        if(!(renderer instanceof RendererVector)) {
+            return false;
+        }
+        Boolean isVector = geIsVectorMap.get(ge);
+        return isVector != null ? isVector : scale != 1;
+    }
+
+    /**
+     * Returns the bounds in the document of the image of the GraphicalElement, which contains the rotated element.
+     * @param ge GraphicalElement.
+     * @return The bounds of the image of the GraphicalElement.
+     */
+    static Rectangle getImageBounds(GraphicalElement ge){
+        double rad = Math.toRadians(ge.getRotation());
+        //Width and Height of the rectangle containing the rotated bufferedImage
+        final double newWidth = Math.abs(cos(rad)*ge.getWidth())+Math.abs(sin(rad)*ge.getHeight());
+        final double newHeight = Math.abs(cos(rad)*ge.getHeight())+Math.abs(sin(rad)*ge.getWidth());
+        final int maxWidth = Math.max((int)newWidth, ge.getWidth());
+        final int maxHeight = Math.max((int)newHeight, ge.getHeight());
+        return new Rectangle(ge.getX() + (ge.getWidth() - maxWidth) / 2, ge.getY() + (ge.getHeight() - maxHeight) / 2,
+                maxWidth, maxHeight);
+    }
+
+    /**
+     * Returns the bounds in the exported image pixels of the given bounds in the GraphicalElement pixels.
+     * The bounds are enlarged to whole pixels.
+     * @param bounds Bounds in the GraphicalElement pixels.
+     * @param scale Ratio between the GraphicalElement sizes and the exported image pixels.
+     * @return The scaled bounds.
+     */
+    private static Rectangle scaleBounds(Rectangle bounds, double scale){
+        if(scale == 1) {
+            return new Rectangle(bounds);
+        }
+        int x = (int) Math.floor(bounds.x * scale);
+        int y = (int) Math.floor(bounds.y * scale);
+        int maxX = (int) Math.ceil((bounds.x + bounds.width) * scale);
+        int maxY = (int) Math.ceil((bounds.y + bounds.height) * scale);
+        return new Rectangle(x, y, Math.max(1, maxX - x), Math.max(1, maxY - y));
+    }
+
+    /**
+     * Returns true if the document should be exported by bands, which is only available for the PNG images.
+     * @return True if the export is done by bands.
+     */
+    public boolean isBandExport(){
+        boolean selected = bandExport != null ? bandExport.isSelected() : byBands;
+        return selected && "png".equals(getImageType());
+    }
+
+    /**
+     * Task rendering the image of a GraphicalElement at the export resolution.
+     * With the vector rendering, the RendererVector draws the GraphicalElement in a scaled Graphics2D. With the raster
+     * one, the image of the RendererRaster is resized if not at the screen resolution.
+     */
+    private class RasterizeTask implements Callable<BufferedImage> {
+        /** GraphicalElement to render. */
+        private GraphicalElement ge;
+        /** Ratio between the GraphicalElement sizes and the exported image pixels. */
+        private double scale;
+        /** ProgressMonitor of the rendering. */
+        private ProgressMonitor pm;
+
+        /**
+         * Main constructor.
+         * @param ge GraphicalElement to render.
+         * @param scale Ratio between the GraphicalElement sizes and the exported image pixels.
+         * @param pm ProgressMonitor of the rendering.
+         */
+        public RasterizeTask(GraphicalElement ge, double scale, ProgressMonitor pm){
+            this.ge = ge;
+            this.scale = scale;
+            this.pm = pm;
+        }
+
+        @Override
+        public BufferedImage call() {
+            GERenderer renderer = geManager.getRenderer(ge.getClass());
+            boolean vector = isVector(ge, renderer, scale);
+            if(!vector && scale == 1) {
+                return ((RendererRaster)renderer).createGEImage(ge, pm);
+            }
+            Rectangle imageBounds = getImageBounds(ge);
+            Rectangle scaledBounds = scaleBounds(imageBounds, scale);
+            BufferedImage bi = new BufferedImage(scaledBounds.width, scaledBounds.height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D graphics2D = bi.createGraphics();
+            if(vector) {
+                graphics2D.scale(scale, scale);
+                drawGE((RendererVector)renderer, graphics2D, ge, pm);
+            }
+            else {
+                BufferedImage image = ((RendererRaster)renderer).createGEImage(ge, pm);
+                graphics2D.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+                graphics2D.drawImage(image, 0, 0, scaledBounds.width, scaledBounds.height, null);
+            }
+            graphics2D.dispose();
+            return bi;
         }
     }
 
@@ -173,18 +617,33 @@ public class ExportImageThread implements ExportThread {
 
     @Override
     public void setProgressBar(JProgressBar progressBar) {
-        if(progressBar != null) {
-            this.progressBar = progressBar;
+        this.progressBar = progressBar;
+    }
+
+    @Override
+    public void setProgressMonitor(ProgressMonitor progressMonitor) {
+        if(progressMonitor != null) {
+            this.progressMonitor = progressMonitor;
         }
         else {
-            this.progressBar = new JProgressBar();
+            this.progressMonitor = new NullProgressMonitor();
         }
     }
 
+    @Override
+    public void setGEStack(Stack<GraphicalElement> stackGEToExport) {
+        for(GraphicalElement ge : stackGEToExport){
+            if(!geIsVectorMap.containsKey(ge)) {
+                addData(ge, null);
+            }
+        }
+        geStack = stackGEToExport;
+    }
+
     @Override
     public JComponent constructExportPanel(Stack<GraphicalElement> stackGEToExport) {
         for(GraphicalElement ge : stackGEToExport){
-            addData(ge, true);
+            addData(ge, null);
         }
         geStack = stackGEToExport;
 
@@ -195,6 +654,21 @@ public class ExportImageThread implements ExportThread {
         imageType.addItem(i18n.tr("jpg"));
         imageType.addItem(i18n.tr("gif"));
         panelPNG.add(imageType, "wrap");
+        panelPNG.add(new JLabel(i18n.tr("Rendering threads : ")));
+        workerSpinner = new JSpinner(new SpinnerNumberModel(workerCount, 1, 64, 1));
+        panelPNG.add(workerSpinner, "wrap");
+        panelPNG.add(new JLabel(i18n.tr("Resolution (dpi) : ")));
+        dpiSpinner = new JSpinner(new SpinnerNumberModel(dpi, 10, 2400, 1));
+        panelPNG.add(dpiSpinner, "wrap");
+        bandExport = new JCheckBox(i18n.tr("Write the image by bands (large documents, png only)"));
+        bandExport.setToolTipText(i18n.tr("Bounds the memory used by the export to the size of a band instead of the whole document."));
+        imageType.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                bandExport.setEnabled("png".equals(imageType.getSelectedItem()));
+            }
+        });
+        panelPNG.add(bandExport, "span 2, wrap");
         return panelPNG;
     }
 
@@ -211,7 +685,7 @@ public class ExportImageThread implements ExportThread {
     @Override
     public Map<String, String> getFileFilters() {
         Map<String, String> ret = new HashMap<>();
-        ret.put((String)imageType.getSelectedItem(), i18n.tr(imageType.getSelectedItem() + " image file"));
+        ret.put(getImageType(), i18n.tr(getImageType() + " image file"));
         return ret;
     }
 }
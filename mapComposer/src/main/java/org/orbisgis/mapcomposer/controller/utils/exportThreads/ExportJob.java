@@ -0,0 +1,223 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+
+package org.orbisgis.mapcomposer.controller.utils.exportThreads;
+
+import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GraphicalElement;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Description of the export of a saved document without UI : the document to load, the file to create and the
+ * overrides of the export configuration.
+ *
+ * @author Sylvain PALOMINOS
+ */
+public class ExportJob {
+
+    /** Path of the saved document (.xml file). */
+    private String documentPath;
+
+    /** Path of the export file. */
+    private String exportPath;
+
+    /** Format of the export ("pdf", "svg", "png", "jpg" or "gif"). */
+    private String format;
+
+    /** Resolution of the exported images in dot per inch, lower than 1 for the screen resolution. */
+    private int dpi;
+
+    /** Tells if the png images are written by bands. */
+    private boolean bandExport;
+
+    /** Tells if the identical templates are written only once in the PDF. */
+    private boolean resourceInterning;
+
+    /** Query giving one row per page of an atlas, null to export a single page. */
+    private String atlasQuery;
+
+    /** Label of the geometry column of the atlas query giving the extent of the maps. */
+    private String atlasGeometryColumn;
+
+    /** Vector (true) or raster (false) rendering of each GraphicalElement class in the PDF export. */
+    private Map<Class<? extends GraphicalElement>, Boolean> vectorMap;
+
+    /**
+     * Main constructor. The format is deduced from the extension of the export file.
+     * @param documentPath Path of the saved document.
+     * @param exportPath Path of the export file.
+     */
+    public ExportJob(String documentPath, String exportPath){
+        this.documentPath = documentPath;
+        this.exportPath = exportPath;
+        int dot = exportPath.lastIndexOf('.');
+        this.format = dot == -1 ? "png" : exportPath.substring(dot + 1).toLowerCase();
+        this.dpi = 0;
+        this.bandExport = false;
+        this.resourceInterning = false;
+        this.vectorMap = new HashMap<>();
+    }
+
+    /**
+     * Returns the path of the saved document.
+     * @return The path of the saved document.
+     */
+    public String getDocumentPath() {
+        return documentPath;
+    }
+
+    /**
+     * Returns the path of the export file.
+     * @return The path of the export file.
+     */
+    public String getExportPath() {
+        return exportPath;
+    }
+
+    /**
+     * Returns the format of the export.
+     * @return The format of the export.
+     */
+    public String getFormat() {
+        return format;
+    }
+
+    /**
+     * Sets the format of the export ("pdf", "svg", "png", "jpg" or "gif").
+     * @param format The format of the export.
+     */
+    public void setFormat(String format) {
+        this.format = format.toLowerCase();
+    }
+
+    /**
+     * Returns the resolution of the exported images.
+     * @return The resolution in dot per inch.
+     */
+    public int getDPI() {
+        return dpi;
+    }
+
+    /**
+     * Sets the resolution of the exported images. Only available for the image formats, a PDF or SVG job with a
+     * resolution fails.
+     * @param dpi Resolution in dot per inch, lower than 1 for the screen resolution.
+     */
+    public void setDPI(int dpi) {
+        this.dpi = dpi;
+    }
+
+    /**
+     * Returns true if the png images are written by bands.
+     * @return True if the png images are written by bands.
+     */
+    public boolean isBandExport() {
+        return bandExport;
+    }
+
+    /**
+     * Sets if the png images are written by bands.
+     * @param bandExport True to write the png images by bands.
+     */
+    public void setBandExport(boolean bandExport) {
+        this.bandExport = bandExport;
+    }
+
+    /**
+     * Returns true if the identical templates are written only once in the PDF.
+     * @return True if the resource interning is enabled.
+     */
+    public boolean isResourceInterning() {
+        return resourceInterning;
+    }
+
+    /**
+     * Sets if the identical templates are written only once in the PDF, only used by the PDF export.
+     * @param resourceInterning True to share the identical templates.
+     */
+    public void setResourceInterning(boolean resourceInterning) {
+        this.resourceInterning = resourceInterning;
+    }
+
+    /**
+     * Sets the atlas query of the export, only used by the PDF export. Each row of the query gives a page : the maps
+     * are centered on the geometry of the row and the {COLUMN} placeholders of the texts are replaced by its values.
+     * @param query Query giving one row per page, null to export a single page.
+     * @param geometryColumn Label of the geometry column giving the extent of the maps, can be null.
+     */
+    public void setAtlas(String query, String geometryColumn) {
+        this.atlasQuery = query;
+        this.atlasGeometryColumn = geometryColumn;
+    }
+
+    /**
+     * Returns the atlas query of the export.
+     * @return The atlas query, null for a single page export.
+     */
+    public String getAtlasQuery() {
+        return atlasQuery;
+    }
+
+    /**
+     * Returns the label of the geometry column of the atlas query.
+     * @return The label of the geometry column.
+     */
+    public String getAtlasGeometryColumn() {
+        return atlasGeometryColumn;
+    }
+
+    /**
+     * Sets the rendering of the given GraphicalElement class in the PDF export.
+     * @param geClass Class of GraphicalElement.
+     * @param isVector True for the vector rendering, false for the raster one.
+     */
+    public void setVector(Class<? extends GraphicalElement> geClass, boolean isVector) {
+        vectorMap.put(geClass, isVector);
+    }
+
+    /**
+     * Returns the rendering of the given GraphicalElement class set for this job, or null if it isn't set.
+     * @param geClass Class of GraphicalElement.
+     * @return True for the vector rendering, false for the raster one, null if not set.
+     */
+    public Boolean isVector(Class<? extends GraphicalElement> geClass) {
+        return vectorMap.get(geClass);
+    }
+
+    @Override
+    public String toString() {
+        return documentPath + " -> " + exportPath;
+    }
+}
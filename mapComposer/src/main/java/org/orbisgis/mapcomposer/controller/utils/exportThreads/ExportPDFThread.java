@@ -37,22 +37,33 @@ import com.itextpdf.text.Document;
 import com.itextpdf.text.DocumentException;
 import com.itextpdf.text.Image;
 import com.itextpdf.text.Rectangle;
+import com.itextpdf.awt.DefaultFontMapper;
+import com.itextpdf.awt.FontMapper;
 import com.itextpdf.text.pdf.PdfContentByte;
+import com.itextpdf.text.pdf.PdfGState;
 import com.itextpdf.text.pdf.PdfLayer;
+import com.itextpdf.text.pdf.PdfStream;
 import com.itextpdf.text.pdf.PdfTemplate;
 import com.itextpdf.text.pdf.PdfWriter;
 import net.miginfocom.swing.MigLayout;
+import org.orbisgis.commons.progress.NullProgressMonitor;
+import org.orbisgis.commons.progress.ProgressMonitor;
 import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GraphicalElement;
 import org.orbisgis.mapcomposer.model.graphicalelement.utils.GEManager;
 import org.orbisgis.mapcomposer.view.graphicalelement.RendererRaster;
 import org.orbisgis.mapcomposer.view.graphicalelement.RendererVector;
+import org.orbisgis.mapcomposer.view.graphicalelement.RendererVectorMonitored;
 import org.orbisgis.mapcomposer.view.utils.MapComposerIcon;
 import org.orbisgis.sif.SIFDialog;
 import org.slf4j.LoggerFactory;
 import org.xnap.commons.i18n.I18n;
 import org.xnap.commons.i18n.I18nFactory;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
 import javax.swing.BorderFactory;
 import javax.swing.ButtonGroup;
 import javax.swing.JCheckBox;
@@ -61,18 +72,32 @@ import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JProgressBar;
 import javax.swing.JRadioButton;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
+import java.awt.AlphaComposite;
+import java.awt.Composite;
 import java.awt.Graphics2D;
+import java.awt.Shape;
 import java.awt.event.ActionListener;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
 import java.awt.image.BufferedImage;
 import java.beans.EventHandler;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.CancellationException;
 
 import static java.lang.Math.cos;
 import static java.lang.Math.sin;
@@ -87,6 +112,8 @@ public class ExportPDFThread implements ExportThread {
     private String path;
     /** Progress bar where the progression is shown */
     private JProgressBar progressBar;
+    /** ProgressMonitor of the export, also used to cancel it */
+    private ProgressMonitor progressMonitor;
     /** GeManager used to get the GraphicalElement rendering methods. */
     private GEManager geManager;
 
@@ -119,6 +146,31 @@ public class ExportPDFThread implements ExportThread {
     private JCheckBox expand;
     private List<Class<? extends GraphicalElement>> listGEOnlyRaster;
     private List<Class<? extends GraphicalElement>> listGEOnlyVector;
+    /** Radio button selecting the JPEG compression of the raster images instead of the Flate one */
+    private JRadioButton jpegCompression;
+    /** JSpinner containing the quality of the JPEG compression */
+    private JSpinner jpegQuality;
+    /** Default quality of the JPEG compression */
+    private static final int DEFAULT_JPEG_QUALITY = 90;
+    /** Atlas generating the pages, null for a single page export */
+    private Atlas atlas;
+    /** Images already written in the PDF, identified by the digest of their pixels */
+    private Map<String, Image> imageMap;
+    /** Layer of each GraphicalElement, shared by all the pages */
+    private Map<GraphicalElement, PdfLayer> layerMap;
+    /** Templates of the GraphicalElements which are the same on all the pages of an atlas */
+    private Map<GraphicalElement, PdfTemplate> staticTemplateMap;
+    /** Font mapper shared by all the templates, so the fonts are only embedded once */
+    private FontMapper fontMapper;
+    /** Templates already written in the PDF, identified by their size and the digest of their drawing */
+    private Map<String, PdfTemplate> templateMap;
+    /** Number of templates and images reused instead of being written again */
+    private int sharedTemplates;
+    private int sharedImages;
+    /** True if the identical templates are written only once, used if the export panel is not constructed */
+    private boolean resourceInterning;
+    /** Check box enabling the sharing of the identical templates */
+    private JCheckBox resourceInterningCheckBox;
 
     /**
      * Main constructor
@@ -128,10 +180,14 @@ public class ExportPDFThread implements ExportThread {
         this.geStack = new Stack<>();
         this.listGEOnlyRaster = new ArrayList<>();
         this.listGEOnlyVector = new ArrayList<>();
+        this.progressMonitor = new NullProgressMonitor();
     }
 
     @Override
     public void run() {
+        ProgressBarListener progress = new ProgressBarListener(progressBar, progressMonitor);
+        FileOutputStream out = null;
+        long startTime = System.nanoTime();
         try{
             Document pdfDocument = null;
             //Find the Document GE to create the BufferedImage where all the GE will be drawn
@@ -146,86 +202,477 @@ public class ExportPDFThread implements ExportThread {
                 throw new IllegalArgumentException(i18n.tr("Error on export : The list of GraphicalElement to export does not contain any Document GE."));
             }
             //Open the document
-            PdfWriter writer = PdfWriter.getInstance(pdfDocument, new FileOutputStream(path));
+            out = new FileOutputStream(path);
+            PdfWriter writer = PdfWriter.getInstance(pdfDocument, out);
             writer.setUserProperties(true);
             writer.setRgbTransparencyBlending(true);
             writer.setTagged();
+            if(isResourceInterning()) {
+                //The object streams and the compressed cross-reference table reduce the cost of the shared objects
+                writer.setFullCompression();
+            }
             pdfDocument.open();
 
             PdfContentByte cb = writer.getDirectContent();
 
-            progressBar.setIndeterminate(true);
-            progressBar.setStringPainted(true);
-            progressBar.setString(i18n.tr("Exporting the document ..."));
+            progress.start(i18n.tr("Exporting the document ..."));
+
+            //Resources shared by all the pages
+            imageMap = new HashMap<>();
+            layerMap = new HashMap<>();
+            staticTemplateMap = new HashMap<>();
+            templateMap = new HashMap<>();
+            sharedTemplates = 0;
+            sharedImages = 0;
+            fontMapper = new DefaultFontMapper();
+            if(atlas == null) {
+                drawPage(writer, cb, i18n.tr("Exporting the document ..."));
+            }
+            else {
+                try {
+                    atlas.open();
+                    while (atlas.nextPage()) {
+                        if (atlas.getPageIndex() > 0) {
+                            pdfDocument.newPage();
+                        }
+                        //The number of pages is unknown, so the progression is the one of the current page
+                        drawPage(writer, cb, i18n.tr("Exporting the page {0} ...", atlas.getPageIndex() + 1));
+                    }
+                } catch (SQLException ex) {
+                    throw new IllegalArgumentException(i18n.tr("Error on the atlas query : {0}", ex.getMessage()), ex);
+                } finally {
+                    atlas.close();
+                }
+            }
+            pdfDocument.close();
+            LoggerFactory.getLogger(ExportPDFThread.class).info(i18n.tr("PDF exported in {0} ms : {1} bytes, {2} " +
+                    "templates and {3} images shared.", (System.nanoTime() - startTime) / 1000000,
+                    new File(path).length(), sharedTemplates, sharedImages));
+            progress.finish(i18n.tr("Document successfully exported."));
+        } catch (CancellationException ex) {
+            deleteExportFile(out);
+            progress.finish(i18n.tr("Export cancelled."));
+        } catch (IllegalArgumentException|IOException|DocumentException ex) {
+            deleteExportFile(out);
+            LoggerFactory.getLogger(ExportPDFThread.class).error(ex.getMessage());
+            progress.reset();
+            return;
+        } finally {
+            imageMap = null;
+            layerMap = null;
+            staticTemplateMap = null;
+            templateMap = null;
+        }
+        progress.resetLater();
+    }
 
-            int geCount = 0;
-            int numberOfGe[] = new int[geManager.getRegisteredGEClasses().size()];
-            for(int i=0; i<numberOfGe.length; i++) {numberOfGe[i] = 0;}
-            //Draw each GraphicalElement in the BufferedImage
-            for(GraphicalElement ge : geStack){
-                if((ge instanceof org.orbisgis.mapcomposer.model.graphicalelement.element.Document))
-                    continue;
+    /**
+     * Closes the output stream of the unfinished PDF and removes the partially written file after a cancellation or
+     * an error.
+     * @param out Output stream of the PDF, null if not opened yet.
+     */
+    private void deleteExportFile(FileOutputStream out){
+        if(out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                LoggerFactory.getLogger(ExportPDFThread.class).error(e.getMessage());
+            }
+        }
+        File file = new File(path);
+        if(file.exists() && !file.delete()) {
+            LoggerFactory.getLogger(ExportPDFThread.class).error(i18n.tr("Unable to remove the file {0}.", path));
+        }
+    }
 
-                double rad = Math.toRadians(ge.getRotation());
-                double newHeight = Math.abs(sin(rad)*ge.getWidth())+Math.abs(cos(rad)*ge.getHeight());
-                double newWidth = Math.abs(sin(rad)*ge.getHeight())+Math.abs(cos(rad)*ge.getWidth());
+    /**
+     * Draws all the GraphicalElements in the current page of the PDF.
+     * For an atlas, the GraphicalElements which are the same on all the pages are only drawn for the first one, their
+     * template is then reused. If the resource interning is enabled, the templates drawing exactly the same thing are
+     * also written only once, whatever their GraphicalElement or their page.
+     * @param writer PdfWriter of the document.
+     * @param cb PdfContentByte of the document.
+     * @param taskName Name of the page in the ProgressMonitor.
+     * @throws IOException Exception thrown on the compression of an image.
+     * @throws DocumentException Exception thrown on adding an element to the PDF.
+     * @throws CancellationException Exception thrown if the export is cancelled through the ProgressMonitor.
+     */
+    private void drawPage(PdfWriter writer, PdfContentByte cb, String taskName) throws IOException, DocumentException {
+        //Each GraphicalElement is a step of the page
+        ProgressMonitor pagePm = progressMonitor.startTask(taskName, geStack.size());
+        int numberOfGe[] = new int[geManager.getRegisteredGEClasses().size()];
+        for(int i=0; i<numberOfGe.length; i++) {numberOfGe[i] = 0;}
+        //Draw each GraphicalElement in the page
+        for(GraphicalElement ge : geStack){
+            if((ge instanceof org.orbisgis.mapcomposer.model.graphicalelement.element.Document))
+                continue;
+
+            double rad = Math.toRadians(ge.getRotation());
+            double newHeight = Math.abs(sin(rad)*ge.getWidth())+Math.abs(cos(rad)*ge.getHeight());
+            double newWidth = Math.abs(sin(rad)*ge.getHeight())+Math.abs(cos(rad)*ge.getWidth());
+
+            int maxWidth = Math.max((int)newWidth, ge.getWidth());
+            int maxHeight = Math.max((int)newHeight, ge.getHeight());
+
+            //The layer of a GraphicalElement is the same on all the pages
+            PdfLayer layer = layerMap.get(ge);
+            if(layer == null) {
+                String layerName = ge.getGEName() + numberOfGe[geManager.getRegisteredGEClasses().indexOf(ge.getClass())];
+                layer = new PdfLayer(layerName, writer);
+                layerMap.put(ge, layer);
+            }
+            boolean isStatic = atlas != null && atlas.isStatic(ge);
+            ProgressMonitor gePm = pagePm.startTask(ge.getGEName(), 1);
+
+            if(geIsVectorMap.get(ge)) {
+                PdfTemplate pdfTemplate = isStatic ? staticTemplateMap.get(ge) : null;
+                if(pdfTemplate == null) {
+                    //The drawing is recorded to compute its digest before creating a template, so the identical
+                    //drawings are written once in the PDF
+                    RecordingGraphics2D recorder = isResourceInterning() ? createRecorder(writer, maxWidth,
+                            maxHeight) : null;
+                    Graphics2D g2d = recorder;
+                    if(recorder == null) {
+                        pdfTemplate = cb.createTemplate(maxWidth, maxHeight);
+                        g2d = pdfTemplate.createGraphics(maxWidth, maxHeight, fontMapper);
+                    }
+                    RendererVector renderer = (RendererVector)geManager.getRenderer(ge.getClass());
+                    if(renderer instanceof RendererVectorMonitored) {
+                        ((RendererVectorMonitored) renderer).drawGE(g2d, ge, gePm);
+                    }
+                    else {
+                        renderer.drawGE(g2d, ge);
+                    }
+                    g2d.dispose();
+                    //A cancelled rendering stops within one layer, so its template is incomplete
+                    checkCancelled();
+                    if(recorder != null) {
+                        String key = maxWidth + "x" + maxHeight + ":" + recorder.getDigest();
+                        pdfTemplate = templateMap.get(key);
+                        if(pdfTemplate != null) {
+                            sharedTemplates++;
+                        }
+                        else {
+                            pdfTemplate = cb.createTemplate(maxWidth, maxHeight);
+                            Graphics2D g2dTemplate = pdfTemplate.createGraphics(maxWidth, maxHeight, fontMapper);
+                            recorder.replay(g2dTemplate, new TemplateImageDrawer(pdfTemplate, maxWidth, maxHeight))
+                                    .dispose();
+                            templateMap.put(key, pdfTemplate);
+                        }
+                    }
+                    if(isStatic) {
+                        staticTemplateMap.put(ge, pdfTemplate);
+                    }
+                }
+                cb.beginLayer(layer);
+                cb.addTemplate(pdfTemplate, ge.getX() + (ge.getWidth() - maxWidth) / 2, -ge.getY() + height - ge
+                        .getHeight() + (ge.getHeight() - maxHeight) / 2);
+                cb.endLayer();
+            }
 
-                int maxWidth = Math.max((int)newWidth, ge.getWidth());
-                int maxHeight = Math.max((int)newHeight, ge.getHeight());
+            else {
+                BufferedImage bi = ((RendererRaster)geManager.getRenderer(ge.getClass())).createGEImage(ge, gePm);
+                checkCancelled();
+                //The pixels are written once in an image XObject, shared by the identical images of all the pages
+                Image image = getPdfImage(bi, imageMap);
+                cb.beginLayer(layer);
+                cb.addImage(image, bi.getWidth(), 0, 0, bi.getHeight(), ge.getX() + (ge.getWidth() - maxWidth) / 2,
+                        -ge.getY() + height - ge.getHeight() + (ge.getHeight() - maxHeight) / 2);
+                cb.endLayer();
+            }
+            numberOfGe[geManager.getRegisteredGEClasses().indexOf(ge.getClass())] ++;
+            gePm.endTask();
+        }
+    }
 
-                String layerName = ge.getGEName() + numberOfGe[geManager.getRegisteredGEClasses().indexOf(ge.getClass())];
+    /**
+     * Throws a CancellationException if the export was cancelled through the ProgressMonitor.
+     */
+    private void checkCancelled(){
+        if(progressMonitor.isCancelled()) {
+            throw new CancellationException(i18n.tr("Export cancelled."));
+        }
+    }
 
-                if(geIsVectorMap.get(ge)) {
-                    PdfTemplate pdfTemplate = cb.createTemplate(maxWidth, maxHeight);
-                    Graphics2D g2dTemplate = pdfTemplate.createGraphics(maxWidth, maxHeight);
-                    PdfLayer layer = new PdfLayer(layerName, writer);
-                    cb.beginLayer(layer);
-                    ((RendererVector)geManager.getRenderer(ge.getClass())).drawGE(g2dTemplate, ge);
-                    cb.addTemplate(pdfTemplate, ge.getX() + (ge.getWidth() - maxWidth) / 2, -ge.getY() + height - ge
-                            .getHeight() + (ge.getHeight() - maxHeight) / 2);
-                    g2dTemplate.dispose();
-                    cb.endLayer();
-                }
+    /**
+     * Sets the atlas generating the pages of the document. Each row of the atlas query gives a page of the PDF.
+     * @param atlas Atlas to use, null to export only one page.
+     */
+    public void setAtlas(Atlas atlas) {
+        this.atlas = atlas;
+    }
+
+    /**
+     * Returns the PDF image containing the pixels of the given BufferedImage, compressed according to the export
+     * configuration. The RGB pixels are compressed with Flate or JPEG and the alpha channel, if any, is written as a
+     * Flate compressed soft mask.
+     * If an identical image was already written, the same PDF image is returned so the XObject is written only once.
+     * @param bi BufferedImage to convert.
+     * @param imageMap Map of the images already converted, identified by the digest of their pixels.
+     * @return The PDF image.
+     * @throws IOException Exception thrown on the JPEG compression.
+     * @throws DocumentException Exception thrown on the creation of the PDF image.
+     */
+    private Image getPdfImage(BufferedImage bi, Map<String, Image> imageMap) throws IOException, DocumentException {
+        int width = bi.getWidth();
+        int height = bi.getHeight();
+        int[] pixels = bi.getRGB(0, 0, width, height, null, 0, width);
+        boolean jpeg = isJpegCompression();
+        String key = getImageDigest(pixels, width, height, jpeg);
+        if(key != null && imageMap.containsKey(key)) {
+            sharedImages++;
+            return imageMap.get(key);
+        }
+
+        byte[] rgb = new byte[pixels.length * 3];
+        byte[] alpha = new byte[pixels.length];
+        boolean opaque = true;
+        for(int i = 0; i < pixels.length; i++) {
+            int argb = pixels[i];
+            rgb[i * 3] = (byte)(argb >> 16);
+            rgb[i * 3 + 1] = (byte)(argb >> 8);
+            rgb[i * 3 + 2] = (byte)argb;
+            alpha[i] = (byte)(argb >>> 24);
+            opaque &= (argb >>> 24) == 0xFF;
+        }
+
+        Image image;
+        if(jpeg) {
+            BufferedImage rgbImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            rgbImage.setRGB(0, 0, width, height, pixels, 0, width);
+            image = Image.getInstance(encodeJpeg(rgbImage, getJpegQuality()));
+        }
+        else {
+            image = Image.getInstance(width, height, 3, 8, rgb);
+            image.setCompressionLevel(PdfStream.BEST_COMPRESSION);
+        }
+        if(!opaque) {
+            Image mask = Image.getInstance(width, height, 1, 8, alpha);
+            mask.setCompressionLevel(PdfStream.BEST_COMPRESSION);
+            mask.makeMask();
+            image.setImageMask(mask);
+        }
+        if(key != null) {
+            imageMap.put(key, image);
+        }
+        return image;
+    }
+
+    /**
+     * Returns a new RecordingGraphics2D for a template of the given size, or null if the digest can't be computed.
+     * The state of the recorder is kept by a PDF Graphics2D which is never added to the document.
+     * @param writer PdfWriter of the document.
+     * @param width Width of the template.
+     * @param height Height of the template.
+     * @return The RecordingGraphics2D or null.
+     */
+    private RecordingGraphics2D createRecorder(PdfWriter writer, int width, int height){
+        try {
+            return new RecordingGraphics2D(new PdfContentByte(writer).createGraphics(width, height, fontMapper));
+        } catch (NoSuchAlgorithmException e) {
+            LoggerFactory.getLogger(ExportPDFThread.class).error(e.getMessage());
+            return null;
+        }
+    }
 
+    /**
+     * ImageDrawer writing the images replayed in a template as shared PDF images, so the images of the symbols
+     * repeated in the templates are written once.
+     */
+    private class TemplateImageDrawer implements RecordingGraphics2D.ImageDrawer {
+        private final PdfTemplate template;
+        private final int width;
+        private final int height;
+        /** Transform from the Graphics2D device space to the PDF space of the template. */
+        private final AffineTransform flip;
+
+        /**
+         * Main constructor.
+         * @param template Template where the images are drawn.
+         * @param width Width of the template.
+         * @param height Height of the template.
+         */
+        private TemplateImageDrawer(PdfTemplate template, int width, int height){
+            this.template = template;
+            this.width = width;
+            this.height = height;
+            this.flip = new AffineTransform(1, 0, 0, -1, 0, height);
+        }
+
+        @Override
+        public Graphics2D drawImage(Graphics2D g, BufferedImage image, AffineTransform transform, Shape clip,
+                                    Composite composite) throws IOException {
+            Image pdfImage;
+            try {
+                pdfImage = getPdfImage(image, imageMap);
+            } catch (DocumentException e) {
+                throw new IOException(e);
+            }
+            //The content drawn before is flushed in the template
+            g.dispose();
+            template.saveState();
+            if(clip != null) {
+                writePath(flip.createTransformedShape(clip));
+                if(clip.getPathIterator(null).getWindingRule() == PathIterator.WIND_EVEN_ODD) {
+                    template.eoClip();
+                }
                 else {
-                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                    BufferedImage bi = ((RendererRaster)geManager.getRenderer(ge.getClass())).createGEImage(ge, null);
-                    ImageIO.write(bi, "png", baos);
-                    Image image = Image.getInstance(baos.toByteArray());
-                    image.setAbsolutePosition(ge.getX() + (ge.getWidth() - maxWidth) / 2, -ge.getY() + height - ge.getHeight() + (ge.getHeight() - maxHeight) / 2);
-
-                    PdfTemplate pdfTemplate = cb.createTemplate(maxWidth, maxHeight);
-                    Graphics2D g2dTemplate = pdfTemplate.createGraphics(maxWidth, maxHeight);
-                    PdfLayer layer = new PdfLayer(layerName, writer);
-                    cb.beginLayer(layer);
-                    g2dTemplate.drawImage(bi, 0, 0, null);
-                    cb.addTemplate(pdfTemplate, ge.getX() + (ge.getWidth() - maxWidth) / 2, -ge.getY() + height - ge.getHeight() + (ge.getHeight() - maxHeight) / 2);
-                    g2dTemplate.dispose();
-                    cb.endLayer();
+                    template.clip();
                 }
-                numberOfGe[geManager.getRegisteredGEClasses().indexOf(ge.getClass())] ++;
+                template.newPath();
+            }
+            if(composite instanceof AlphaComposite && ((AlphaComposite) composite).getAlpha() < 1) {
+                PdfGState gState = new PdfGState();
+                gState.setFillOpacity(((AlphaComposite) composite).getAlpha());
+                template.setGState(gState);
+            }
+            //Maps the unit square of the PDF image to the image pixels, then to the template
+            AffineTransform matrix = new AffineTransform(flip);
+            matrix.concatenate(transform);
+            matrix.concatenate(new AffineTransform(image.getWidth(), 0, 0, -image.getHeight(), 0, image.getHeight()));
+            try {
+                template.addImage(pdfImage, (float) matrix.getScaleX(), (float) matrix.getShearY(),
+                        (float) matrix.getShearX(), (float) matrix.getScaleY(), (float) matrix.getTranslateX(),
+                        (float) matrix.getTranslateY());
+            } catch (DocumentException e) {
+                throw new IOException(e);
+            }
+            template.restoreState();
+            return template.createGraphics(width, height, fontMapper);
+        }
 
-                progressBar.setIndeterminate(false);
-                progressBar.setValue((geCount * 100) / geIsVectorMap.keySet().size());
-                progressBar.revalidate();
-                geCount ++;
+        /**
+         * Writes the given shape as the current path of the template.
+         * @param shape Shape in the PDF space.
+         */
+        private void writePath(Shape shape){
+            PathIterator it = shape.getPathIterator(null);
+            float[] coords = new float[6];
+            float lastX = 0;
+            float lastY = 0;
+            while(!it.isDone()) {
+                switch(it.currentSegment(coords)) {
+                    case PathIterator.SEG_MOVETO:
+                        template.moveTo(coords[0], coords[1]);
+                        lastX = coords[0];
+                        lastY = coords[1];
+                        break;
+                    case PathIterator.SEG_LINETO:
+                        template.lineTo(coords[0], coords[1]);
+                        lastX = coords[0];
+                        lastY = coords[1];
+                        break;
+                    case PathIterator.SEG_QUADTO:
+                        //The PDF paths only have cubic curves
+                        template.curveTo(lastX + 2f / 3f * (coords[0] - lastX), lastY + 2f / 3f * (coords[1] - lastY),
+                                coords[2] + 2f / 3f * (coords[0] - coords[2]),
+                                coords[3] + 2f / 3f * (coords[1] - coords[3]), coords[2], coords[3]);
+                        lastX = coords[2];
+                        lastY = coords[3];
+                        break;
+                    case PathIterator.SEG_CUBICTO:
+                        template.curveTo(coords[0], coords[1], coords[2], coords[3], coords[4], coords[5]);
+                        lastX = coords[4];
+                        lastY = coords[5];
+                        break;
+                    case PathIterator.SEG_CLOSE:
+                        template.closePath();
+                        break;
+                }
+                it.next();
             }
+        }
+    }
 
-            pdfDocument.close();
-            //Wait a bit before erasing the progress bar
-            progressBar.setValue(progressBar.getMaximum());
-            progressBar.setString(i18n.tr("Document successfully exported."));
-            try {
-                Thread.sleep(1500);
-            } catch (InterruptedException e) {
-                LoggerFactory.getLogger(ExportPDFThread.class).error(e.getMessage());
+    /**
+     * Returns the SHA-256 digest of the image pixels and of the compression used, or null if the digest can't be
+     * computed.
+     * @param pixels ARGB pixels of the image.
+     * @param width Width of the image.
+     * @param height Height of the image.
+     * @param jpeg True if the image is compressed as JPEG.
+     * @return The digest as a string or null.
+     */
+    private String getImageDigest(int[] pixels, int width, int height, boolean jpeg){
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteBuffer buffer = ByteBuffer.allocate(4 * 1024);
+            buffer.putInt(width).putInt(height).putInt(jpeg ? getJpegQuality() : -1);
+            for(int pixel : pixels) {
+                if(!buffer.hasRemaining()) {
+                    digest.update(buffer.array(), 0, buffer.position());
+                    buffer.clear();
+                }
+                buffer.putInt(pixel);
             }
-            progressBar.setValue(0);
-            progressBar.setStringPainted(false);
+            digest.update(buffer.array(), 0, buffer.position());
+            return new BigInteger(1, digest.digest()).toString(16);
+        } catch (NoSuchAlgorithmException e) {
+            LoggerFactory.getLogger(ExportPDFThread.class).error(e.getMessage());
+            return null;
+        }
+    }
 
-        } catch (IllegalArgumentException|IOException|DocumentException ex) {
-            LoggerFactory.getLogger(ExportPDFThread.class).error(ex.getMessage());
+    /**
+     * Encodes the given image as a JPEG with the given quality.
+     * @param bi Image to encode.
+     * @param quality Quality of the compression, from 0 to 100.
+     * @return The JPEG bytes.
+     * @throws IOException Exception thrown on the encoding.
+     */
+    private static byte[] encodeJpeg(BufferedImage bi, int quality) throws IOException {
+        ImageWriter imageWriter = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = imageWriter.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality / 100f);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(baos)) {
+            imageWriter.setOutput(ios);
+            imageWriter.write(null, new IIOImage(bi, null, null), param);
+        } finally {
+            imageWriter.dispose();
         }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Returns true if the raster images are compressed as JPEG, false if they use the lossless Flate compression.
+     * @return True for the JPEG compression.
+     */
+    private boolean isJpegCompression(){
+        return jpegCompression != null && jpegCompression.isSelected();
+    }
+
+    /**
+     * Returns true if the templates drawing exactly the same thing are written only once in the PDF.
+     * @return True if the resource interning is enabled.
+     */
+    private boolean isResourceInterning(){
+        if(resourceInterningCheckBox != null) {
+            return resourceInterningCheckBox.isSelected();
+        }
+        return resourceInterning;
+    }
+
+    /**
+     * Enables or disables the sharing of the identical templates, used if the export panel is not constructed.
+     * Drawing the vector GraphicalElements is a bit slower as their digest is computed, but the repeated ones are
+     * written only once.
+     * @param resourceInterning True to share the identical templates.
+     */
+    public void setResourceInterning(boolean resourceInterning) {
+        this.resourceInterning = resourceInterning;
+    }
+
+    /**
+     * Returns the quality of the JPEG compression, from 0 to 100.
+     * @return The JPEG quality.
+     */
+    private int getJpegQuality(){
+        if(jpegQuality != null) {
+            return (Integer) jpegQuality.getValue();
+        }
+        return DEFAULT_JPEG_QUALITY;
     }
 
     @Override
@@ -248,12 +695,27 @@ public class ExportPDFThread implements ExportThread {
 
     @Override
     public void setProgressBar(JProgressBar progressBar) {
-        if(progressBar != null) {
-            this.progressBar = progressBar;
+        this.progressBar = progressBar;
+    }
+
+    @Override
+    public void setProgressMonitor(ProgressMonitor progressMonitor) {
+        if(progressMonitor != null) {
+            this.progressMonitor = progressMonitor;
         }
         else {
-            this.progressBar = new JProgressBar();
+            this.progressMonitor = new NullProgressMonitor();
+        }
+    }
+
+    @Override
+    public void setGEStack(Stack<GraphicalElement> stackGEToExport) {
+        for(GraphicalElement ge : stackGEToExport){
+            if(!geIsVectorMap.containsKey(ge)) {
+                addData(ge, false);
+            }
         }
+        geStack = stackGEToExport;
     }
 
     @Override
@@ -270,7 +732,27 @@ public class ExportPDFThread implements ExportThread {
         JPanel panelRasterVector = new JPanel(new MigLayout("hidemode 3"));
         panelRasterVector.setBorder(BorderFactory.createTitledBorder("Vector/Raster"));
         JPanel panelPDF = new JPanel(new MigLayout());
-        panelPDF.add(panelRasterVector);
+        panelPDF.add(panelRasterVector, "wrap");
+
+        //Construct the raster compression panel
+        JPanel panelCompression = new JPanel(new MigLayout());
+        panelCompression.setBorder(BorderFactory.createTitledBorder(i18n.tr("Raster compression")));
+        JRadioButton flateCompression = new JRadioButton(i18n.tr("lossless (Flate)"));
+        flateCompression.setSelected(true);
+        jpegCompression = new JRadioButton(i18n.tr("JPEG"));
+        ButtonGroup compressionGroup = new ButtonGroup();
+        compressionGroup.add(flateCompression);
+        compressionGroup.add(jpegCompression);
+        jpegQuality = new JSpinner(new SpinnerNumberModel(DEFAULT_JPEG_QUALITY, 1, 100, 1));
+        panelCompression.add(flateCompression, "wrap");
+        panelCompression.add(jpegCompression);
+        panelCompression.add(new JLabel(i18n.tr("quality : ")));
+        panelCompression.add(jpegQuality);
+        panelPDF.add(panelCompression, "wrap");
+
+        resourceInterningCheckBox = new JCheckBox(i18n.tr("Share the identical elements and resources"));
+        resourceInterningCheckBox.setSelected(resourceInterning);
+        panelPDF.add(resourceInterningCheckBox);
 
         //Construct the raster/vector panel
         //Adds the expand button and the main radio button
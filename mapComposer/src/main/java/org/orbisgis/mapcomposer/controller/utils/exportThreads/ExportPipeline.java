@@ -0,0 +1,179 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+
+package org.orbisgis.mapcomposer.controller.utils.exportThreads;
+
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Two stages pipeline for the export of several documents or pages : the rendering tasks are run on a thread pool
+ * and their results are encoded and written by the calling thread, through a queue.
+ * So the CPU bound rendering of the next items is done while the current one is compressed and written.
+ * A rendering task takes a permit before starting, which is given back once its item is encoded, so the number of
+ * items being rendered, waiting or being encoded, i.e. the memory used, is bounded by the queue depth.
+ * The items are encoded in the order of the end of their rendering.
+ *
+ * @param <T> Type of the rendered items.
+ * @author Sylvain PALOMINOS
+ */
+public class ExportPipeline<T> {
+
+    /**
+     * Second stage of the pipeline, encoding and writing a rendered item.
+     * @param <T> Type of the rendered items.
+     */
+    public interface Encoder<T> {
+        /**
+         * Encodes and writes the rendered item.
+         * @param index Index of the rendering task which produced the item.
+         * @param item Rendered item.
+         * @throws Exception Exception thrown if the encoding failed.
+         */
+        void encode(int index, T item) throws Exception;
+    }
+
+    /** Number of threads of the rendering stage. */
+    private int renderThreadCount;
+
+    /** Maximum number of items being rendered, waiting to be encoded or being encoded. */
+    private int queueDepth;
+
+    /**
+     * Main constructor.
+     * @param renderThreadCount Number of threads of the rendering stage, lower than 1 for one per processor.
+     * @param queueDepth Maximum number of items being rendered, waiting to be encoded or being encoded, at least 1.
+     *                   The rendering threads above this number are useless.
+     */
+    public ExportPipeline(int renderThreadCount, int queueDepth){
+        this.renderThreadCount = renderThreadCount < 1 ? Runtime.getRuntime().availableProcessors() : renderThreadCount;
+        this.queueDepth = Math.max(1, queueDepth);
+    }
+
+    /**
+     * Runs all the rendering tasks and encodes their results, and waits for the end of all of them.
+     * A failed task or encoding doesn't stop the others.
+     * @param renderTasks Rendering tasks.
+     * @param encoder Encoder of the rendered items.
+     * @return For each task, true if it was rendered and encoded, false otherwise.
+     * @throws InterruptedException Exception thrown if the calling thread is interrupted.
+     */
+    public boolean[] run(List<? extends Callable<T>> renderTasks, Encoder<T> encoder) throws InterruptedException {
+        boolean[] result = new boolean[renderTasks.size()];
+        if(renderTasks.isEmpty()) {
+            return result;
+        }
+        final BlockingQueue<Rendered<T>> queue = new LinkedBlockingQueue<>();
+        final Semaphore permits = new Semaphore(queueDepth);
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(Math.min(renderThreadCount, queueDepth), renderTasks.size()));
+        try {
+            for (int i = 0; i < renderTasks.size(); i++) {
+                final int index = i;
+                final Callable<T> task = renderTasks.get(i);
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        Rendered<T> rendered = new Rendered<>(index);
+                        //Waits for the encoding of a previous item before rendering a new one
+                        try {
+                            permits.acquire();
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                            rendered.failed = true;
+                            queue.add(rendered);
+                            return;
+                        }
+                        try {
+                            rendered.item = task.call();
+                        } catch (Throwable ex) {
+                            //An Error, i.e. an OutOfMemoryError, is also a failed rendering
+                            LoggerFactory.getLogger(ExportPipeline.class).error("Rendering failed", ex);
+                            rendered.failed = true;
+                        } finally {
+                            //The result is always queued, otherwise the encoding stage would wait for it forever
+                            queue.add(rendered);
+                        }
+                    }
+                });
+            }
+            for (int i = 0; i < renderTasks.size(); i++) {
+                Rendered<T> rendered = queue.take();
+                try {
+                    if (!rendered.failed) {
+                        encoder.encode(rendered.index, rendered.item);
+                        result[rendered.index] = true;
+                    }
+                } catch (Exception ex) {
+                    LoggerFactory.getLogger(ExportPipeline.class).error("Encoding failed", ex);
+                } finally {
+                    //The item is released, so a new one can be rendered
+                    permits.release();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    /**
+     * Result of a rendering task.
+     * @param <T> Type of the rendered item.
+     */
+    private static class Rendered<T> {
+        /** Index of the rendering task. */
+        private final int index;
+        /** Rendered item. */
+        private T item;
+        /** True if the rendering failed. */
+        private boolean failed;
+
+        /**
+         * Main constructor.
+         * @param index Index of the rendering task.
+         */
+        private Rendered(int index){
+            this.index = index;
+            this.failed = false;
+        }
+    }
+}
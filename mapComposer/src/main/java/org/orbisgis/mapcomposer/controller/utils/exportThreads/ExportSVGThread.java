@@ -0,0 +1,289 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+
+package org.orbisgis.mapcomposer.controller.utils.exportThreads;
+
+import net.miginfocom.swing.MigLayout;
+import org.orbisgis.commons.progress.NullProgressMonitor;
+import org.orbisgis.commons.progress.ProgressMonitor;
+import org.orbisgis.mapcomposer.model.graphicalelement.element.Document;
+import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GraphicalElement;
+import org.orbisgis.mapcomposer.model.graphicalelement.utils.GEManager;
+import org.orbisgis.mapcomposer.view.graphicalelement.GERenderer;
+import org.orbisgis.mapcomposer.view.graphicalelement.RendererRaster;
+import org.orbisgis.mapcomposer.view.graphicalelement.RendererVector;
+import org.orbisgis.mapcomposer.view.graphicalelement.RendererVectorMonitored;
+import org.slf4j.LoggerFactory;
+import org.xnap.commons.i18n.I18n;
+import org.xnap.commons.i18n.I18nFactory;
+
+import javax.swing.JCheckBox;
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Stack;
+import java.util.concurrent.CancellationException;
+
+/**
+ * This thread exports the document as a SVG file.
+ * Each GraphicalElement having a RendererVector is drawn in a SVGGraphics2D, which writes the shapes and the texts as
+ * SVG elements as soon as they are drawn, so a dense map is exported without building the whole document in memory.
+ * The other GraphicalElements are embedded as PNG images. Each GraphicalElement is written in its own SVG group.
+ * @author Sylvain PALOMINOS
+ */
+
+public class ExportSVGThread implements ExportThread {
+    /** Path of the export file */
+    private String path;
+    /** Progress bar where the progression is shown */
+    private JProgressBar progressBar;
+    /** ProgressMonitor of the export, also used to cancel it */
+    private ProgressMonitor progressMonitor;
+    /** GeManager used to get the GraphicalElement rendering methods. */
+    private GEManager geManager;
+
+    /** Translation*/
+    private static final I18n i18n = I18nFactory.getI18n(ExportSVGThread.class);
+
+    /**Map of GraphicalElement and boolean.
+     * The boolean tells if the vector rendering should be use or not (if not use the raster rendering)
+     **/
+    private Map<GraphicalElement, Boolean> geIsVectorMap;
+
+    /** Stack of the GraphicalElement ordered by z index */
+    private Stack<GraphicalElement> geStack;
+
+    /** JCheckBox component telling if all the GraphicalElements should be embedded as images */
+    private JCheckBox rasterExport;
+
+    /**
+     * Main constructor
+     */
+    public ExportSVGThread(){
+        this.geIsVectorMap = new HashMap<>();
+        this.geStack = new Stack<>();
+        this.progressMonitor = new NullProgressMonitor();
+    }
+
+    @Override
+    public void run() {
+        ProgressBarListener progress = new ProgressBarListener(progressBar, progressMonitor);
+        try{
+            progress.start(i18n.tr("Exporting the document ..."));
+            GraphicalElement document = null;
+            //Find the Document GE giving the size of the SVG document
+            for(GraphicalElement ge : geIsVectorMap.keySet()){
+                if(ge instanceof Document){
+                    document = ge;
+                }
+            }
+            //If no Document was found, throw an exception
+            if(document == null){
+                throw new IllegalArgumentException(i18n.tr("Error on export : The list of GraphicalElement to export does not contain any Document GE."));
+            }
+            //The writer is closed before the removal of the file in case of cancellation
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path), StandardCharsets.UTF_8))) {
+                SVGGraphics2D svg = new SVGGraphics2D(writer, document.getWidth(), document.getHeight());
+                drawDocument(svg);
+                svg.finish();
+            }
+            progress.finish(i18n.tr("Document successfully exported."));
+        } catch (CancellationException ex) {
+            deleteExportFile();
+            progress.finish(i18n.tr("Export cancelled."));
+        } catch (IllegalArgumentException|IOException ex) {
+            deleteExportFile();
+            LoggerFactory.getLogger(ExportSVGThread.class).error(ex.getMessage());
+            progress.reset();
+            return;
+        }
+        progress.resetLater();
+    }
+
+    /**
+     * Draws all the GraphicalElements in the z-index order, each one in its own group.
+     * @param svg SVGGraphics2D of the document.
+     * @throws CancellationException Exception thrown if the export is cancelled through the ProgressMonitor.
+     */
+    private void drawDocument(SVGGraphics2D svg){
+        //Each GraphicalElement is a step of the export
+        ProgressMonitor exportPm = progressMonitor.startTask(i18n.tr("Exporting the document ..."), geStack.size());
+        int geCount = 0;
+        for(GraphicalElement ge : geStack) {
+            ProgressMonitor gePm = exportPm.startTask(ge.getGEName(), 1);
+            Rectangle bounds = ExportImageThread.getImageBounds(ge);
+            GERenderer renderer = geManager.getRenderer(ge.getClass());
+            svg.startGroup(ge.getGEName() + geCount);
+            Graphics2D graphics2D = (Graphics2D) svg.create();
+            graphics2D.translate(bounds.x, bounds.y);
+            if(isVector(ge, renderer)) {
+                if(renderer instanceof RendererVectorMonitored) {
+                    ((RendererVectorMonitored) renderer).drawGE(graphics2D, ge, gePm);
+                }
+                else {
+                    ((RendererVector) renderer).drawGE(graphics2D, ge);
+                }
+            }
+            else {
+                BufferedImage bi = ((RendererRaster) renderer).createGEImage(ge, gePm);
+                graphics2D.drawImage(bi, 0, 0, null);
+            }
+            graphics2D.dispose();
+            svg.endGroup();
+            //A cancelled rendering stops within one layer, so the element is incomplete
+            if(progressMonitor.isCancelled()) {
+                throw new CancellationException(i18n.tr("Export cancelled."));
+            }
+            gePm.endTask();
+            geCount++;
+        }
+    }
+
+    /**
+     * Returns true if the GraphicalElement should be drawn as vector graphics, false if it should be embedded as an
+     * image.
+     * @param ge GraphicalElement to draw.
+     * @param renderer Renderer of the GraphicalElement.
+     * @return True for the vector rendering.
+     */
+    private boolean isVector(GraphicalElement ge, GERenderer renderer){
+        if(!(renderer instanceof RendererVector)) {
+            return false;
+        }
+        if(!(renderer instanceof RendererRaster)) {
+            return true;
+        }
+        if(rasterExport != null && rasterExport.isSelected()) {
+            return false;
+        }
+        Boolean isVector = geIsVectorMap.get(ge);
+        return isVector == null || isVector;
+    }
+
+    /**
+     * Removes the partially written export file after a cancellation or an error.
+     */
+    private void deleteExportFile(){
+        File file = new File(path);
+        if(file.exists() && !file.delete()) {
+            LoggerFactory.getLogger(ExportSVGThread.class).error(i18n.tr("Unable to remove the file {0}.", path));
+        }
+    }
+
+    @Override
+    public void addData(GraphicalElement ge, Boolean isVector) {
+        if(geIsVectorMap.containsKey(ge)) {
+            geIsVectorMap.remove(ge);
+        }
+        geIsVectorMap.put(ge, isVector);
+    }
+
+    @Override
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    @Override
+    public void setGEManager(GEManager geManager) {
+        this.geManager = geManager;
+    }
+
+    @Override
+    public void setProgressBar(JProgressBar progressBar) {
+        this.progressBar = progressBar;
+    }
+
+    @Override
+    public void setProgressMonitor(ProgressMonitor progressMonitor) {
+        if(progressMonitor != null) {
+            this.progressMonitor = progressMonitor;
+        }
+        else {
+            this.progressMonitor = new NullProgressMonitor();
+        }
+    }
+
+    @Override
+    public void setGEStack(Stack<GraphicalElement> stackGEToExport) {
+        for(GraphicalElement ge : stackGEToExport){
+            if(!geIsVectorMap.containsKey(ge)) {
+                addData(ge, true);
+            }
+        }
+        geStack = stackGEToExport;
+    }
+
+    @Override
+    public JComponent constructExportPanel(Stack<GraphicalElement> stackGEToExport) {
+        for(GraphicalElement ge : stackGEToExport){
+            addData(ge, true);
+        }
+        geStack = stackGEToExport;
+
+        JPanel panelSVG = new JPanel(new MigLayout());
+        rasterExport = new JCheckBox(i18n.tr("Embed all the elements as images"));
+        rasterExport.setToolTipText(i18n.tr("By default, the elements are exported as vector graphics when possible."));
+        panelSVG.add(rasterExport, "wrap");
+        return panelSVG;
+    }
+
+    @Override
+    public String getName() {
+        return i18n.tr("SVG");
+    }
+
+    @Override
+    public String getDescription() {
+        return i18n.tr("Export the document as a SVG vector image.");
+    }
+
+    @Override
+    public Map<String, String> getFileFilters() {
+        Map<String, String> ret = new HashMap<>();
+        ret.put("svg", i18n.tr("SVG vector image file"));
+        return ret;
+    }
+}
@@ -34,6 +34,7 @@
 
 package org.orbisgis.mapcomposer.controller.utils.exportThreads;
 
+import org.orbisgis.commons.progress.ProgressMonitor;
 import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GraphicalElement;
 import org.orbisgis.mapcomposer.model.graphicalelement.utils.GEManager;
 
@@ -47,8 +48,9 @@ import java.util.Stack;
  * The method constructExportPanel() return the UI for configuring the export.
  * It also should use the addData method to register the GraphicalElement to export and if the export should use vector rendering.
  * Then, once the GraphicalElement registered, the file chooser dialog is display and the path to the new file is set.
- * Then, the MapComposer sets the GEManager (access to the rendering methods), and to the progress bar.
- * To finish, the method run() is called to do the export.
+ * Then, the MapComposer sets the GEManager (access to the rendering methods), the progress bar and the ProgressMonitor.
+ * To finish, the method run() is called to do the export. The export stops once the ProgressMonitor is cancelled and
+ * the partially written file is removed.
  *
  * @author Sylvain PALOMINOS
  */
@@ -77,10 +79,24 @@ public interface ExportThread extends Runnable {
 
     /**
      * Sets the progressBar to use to display the export state.
-     * @param progressBar ProgressBar where the export state is displayed.
+     * @param progressBar ProgressBar where the export state is displayed, null to export without progress bar.
      */
     public void setProgressBar(JProgressBar progressBar);
 
+    /**
+     * Sets the ProgressMonitor receiving the export progression, down to the layers of the maps.
+     * Cancelling it stops the export within the rendering of one layer.
+     * @param progressMonitor ProgressMonitor of the export, null to export without following it.
+     */
+    public void setProgressMonitor(ProgressMonitor progressMonitor);
+
+    /**
+     * Sets the GraphicalElements to export without constructing the export panel (i.e. for an export without UI).
+     * The GraphicalElements which were not registered with addData() use the default rendering of the export.
+     * @param stackGEToExport Stack of GraphicalElements to export, ordered by z index.
+     */
+    public void setGEStack(Stack<GraphicalElement> stackGEToExport);
+
     /**
      * Constructs the UI for the export configuration which will be displayed before the file chooser.
      * This methods should construct an user interface to allow him to configure the different aspects of the export.
@@ -0,0 +1,238 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+
+package org.orbisgis.mapcomposer.controller.utils.exportThreads;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writer encoding a RGBA PNG image row by row into a stream.
+ * The rows are compressed as soon as they are given, so an image can be written by bands without ever having the
+ * whole image in memory.
+ * The header is written on the creation of the writer, the image is complete once all the rows have been written and
+ * the writer closed.
+ *
+ * @author Sylvain PALOMINOS
+ */
+public class PNGStreamWriter implements Closeable {
+
+    /** Signature starting all the PNG files. */
+    private static final byte[] SIGNATURE = {(byte)137, 80, 78, 71, 13, 10, 26, 10};
+
+    /** Maximum size of the data of an IDAT chunk. */
+    private static final int IDAT_SIZE = 64 * 1024;
+
+    /** Stream where the PNG is written. */
+    private final DataOutputStream out;
+
+    /** Stream compressing the rows, writing IDAT chunks into the output stream. */
+    private final DeflaterOutputStream deflaterOut;
+
+    /** Deflater used to compress the rows. */
+    private final Deflater deflater;
+
+    /** Width of the image. */
+    private final int width;
+
+    /** Height of the image. */
+    private final int height;
+
+    /** Number of rows already written. */
+    private int rowCount;
+
+    /** Buffer of one row : the filter type byte followed by the RGBA bytes of each pixel. */
+    private final byte[] rowBuffer;
+
+    /**
+     * Main constructor. Writes the header of the PNG.
+     * @param out Stream where the PNG will be written.
+     * @param width Width of the image.
+     * @param height Height of the image.
+     * @throws IOException Exception thrown on writing the header.
+     */
+    public PNGStreamWriter(OutputStream out, int width, int height) throws IOException {
+        this(out, width, height, 0);
+    }
+
+    /**
+     * Constructor writing the header of the PNG with its physical resolution.
+     * @param out Stream where the PNG will be written.
+     * @param width Width of the image.
+     * @param height Height of the image.
+     * @param dpi Resolution of the image in dot per inch, not written if lower than 1.
+     * @throws IOException Exception thrown on writing the header.
+     */
+    public PNGStreamWriter(OutputStream out, int width, int height, int dpi) throws IOException {
+        if(width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("The image size should be positive : " + width + "x" + height);
+        }
+        this.out = new DataOutputStream(out);
+        this.width = width;
+        this.height = height;
+        this.rowCount = 0;
+        this.rowBuffer = new byte[1 + width * 4];
+
+        this.out.write(SIGNATURE);
+        ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        DataOutputStream headerData = new DataOutputStream(header);
+        headerData.writeInt(width);
+        headerData.writeInt(height);
+        //Bit depth 8, color type 6 (RGBA), default compression, filter and no interlace
+        headerData.writeByte(8);
+        headerData.writeByte(6);
+        headerData.writeByte(0);
+        headerData.writeByte(0);
+        headerData.writeByte(0);
+        writeChunk("IHDR", header.toByteArray(), 0, header.size());
+        if(dpi > 0) {
+            //Pixels per meter on both axis, the unit being the meter
+            int pixelsPerMeter = (int) Math.round(dpi / 0.0254);
+            ByteArrayOutputStream physical = new ByteArrayOutputStream(9);
+            DataOutputStream physicalData = new DataOutputStream(physical);
+            physicalData.writeInt(pixelsPerMeter);
+            physicalData.writeInt(pixelsPerMeter);
+            physicalData.writeByte(1);
+            writeChunk("pHYs", physical.toByteArray(), 0, physical.size());
+        }
+
+        deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        deflaterOut = new DeflaterOutputStream(new IDATOutputStream(), deflater, IDAT_SIZE);
+    }
+
+    /**
+     * Returns the number of rows already written.
+     * @return The number of rows written.
+     */
+    public int getRowCount(){
+        return rowCount;
+    }
+
+    /**
+     * Writes the rows of the given image. The image width should be the same as the PNG one.
+     * @param image Image containing the rows to write.
+     * @param rows Number of rows of the image to write, starting from the top.
+     * @throws IOException Exception thrown on writing the rows.
+     */
+    public void writeRows(BufferedImage image, int rows) throws IOException {
+        if(image.getWidth() != width) {
+            throw new IllegalArgumentException("The image width should be " + width + " instead of " + image.getWidth());
+        }
+        if(rows > image.getHeight() || rowCount + rows > height) {
+            throw new IllegalArgumentException("Too many rows to write : " + rows);
+        }
+        int[] pixels = new int[width];
+        for(int y = 0; y < rows; y++) {
+            image.getRGB(0, y, width, 1, pixels, 0, width);
+            //Filter type 0 : none
+            rowBuffer[0] = 0;
+            int index = 1;
+            for(int argb : pixels) {
+                rowBuffer[index++] = (byte)(argb >> 16);
+                rowBuffer[index++] = (byte)(argb >> 8);
+                rowBuffer[index++] = (byte)argb;
+                rowBuffer[index++] = (byte)(argb >> 24);
+            }
+            deflaterOut.write(rowBuffer);
+        }
+        rowCount += rows;
+    }
+
+    /**
+     * Finishes the image data and writes the end of the PNG. All the rows should have been written before.
+     * The underlying stream is not closed.
+     * @throws IOException Exception thrown on writing the end of the image.
+     */
+    public void finish() throws IOException {
+        if(rowCount != height) {
+            throw new IllegalStateException("Only " + rowCount + " rows of " + height + " were written");
+        }
+        deflaterOut.finish();
+        deflaterOut.flush();
+        writeChunk("IEND", new byte[0], 0, 0);
+        out.flush();
+        deflater.end();
+    }
+
+    @Override
+    public void close() throws IOException {
+        deflater.end();
+        out.close();
+    }
+
+    /**
+     * Writes a chunk with its length, type, data and CRC.
+     * @param type Type of the chunk.
+     * @param data Array containing the data of the chunk.
+     * @param offset Offset of the data in the array.
+     * @param length Length of the data.
+     * @throws IOException Exception thrown on writing the chunk.
+     */
+    private void writeChunk(String type, byte[] data, int offset, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, offset, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, offset, length);
+        out.writeInt((int)crc.getValue());
+    }
+
+    /**
+     * Stream writing the compressed data as IDAT chunks.
+     */
+    private class IDATOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte)b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if(len <= 0) {
+                return;
+            }
+            writeChunk("IDAT", b, off, len);
+        }
+    }
+}
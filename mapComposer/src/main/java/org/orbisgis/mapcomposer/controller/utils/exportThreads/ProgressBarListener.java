@@ -0,0 +1,172 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+
+package org.orbisgis.mapcomposer.controller.utils.exportThreads;
+
+import org.orbisgis.commons.progress.ProgressMonitor;
+
+import javax.swing.JProgressBar;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+
+/**
+ * Shows the state of the ProgressMonitor of an export in a JProgressBar.
+ * The export threads only report their progression to the ProgressMonitor, the JProgressBar is updated by this
+ * listener in the Event Dispatch Thread.
+ * Without JProgressBar, as for the headless exports, the listener does nothing.
+ *
+ * @author Sylvain PALOMINOS
+ */
+
+public class ProgressBarListener implements PropertyChangeListener {
+    /** Delay in milliseconds before erasing the progress bar at the end of an export */
+    private static final int RESET_DELAY = 1500;
+    /** Progress bar where the progression is shown */
+    private JProgressBar progressBar;
+    /** ProgressMonitor of the export */
+    private ProgressMonitor progressMonitor;
+
+    /**
+     * Main constructor. Listens to the progression and to the task name of the ProgressMonitor.
+     * @param progressBar Progress bar where the progression is shown, can be null.
+     * @param progressMonitor ProgressMonitor of the export.
+     */
+    public ProgressBarListener(JProgressBar progressBar, ProgressMonitor progressMonitor){
+        this.progressBar = progressBar;
+        this.progressMonitor = progressMonitor;
+        if(progressBar == null) {
+            return;
+        }
+        progressMonitor.addPropertyChangeListener(ProgressMonitor.PROP_PROGRESSION, this);
+        progressMonitor.addPropertyChangeListener(ProgressMonitor.PROP_TASKNAME, this);
+    }
+
+    /**
+     * Shows the progress bar with the given message until the first progression.
+     * @param message Message to display.
+     */
+    public void start(final String message){
+        if(progressBar == null) {
+            return;
+        }
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                progressBar.setIndeterminate(true);
+                progressBar.setStringPainted(true);
+                progressBar.setString(message);
+            }
+        });
+    }
+
+    /**
+     * Fills the progress bar and displays the given message.
+     * @param message Message to display.
+     */
+    public void finish(final String message){
+        if(progressBar == null) {
+            return;
+        }
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                progressBar.setIndeterminate(false);
+                progressBar.setValue(progressBar.getMaximum());
+                progressBar.setString(message);
+            }
+        });
+    }
+
+    /**
+     * Erases the progress bar.
+     */
+    public void reset(){
+        if(progressBar == null) {
+            return;
+        }
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                progressBar.setIndeterminate(false);
+                progressBar.setValue(0);
+                progressBar.setStringPainted(false);
+            }
+        });
+    }
+
+    /**
+     * Erases the progress bar after a delay, letting the user read the final message without blocking the export
+     * thread.
+     */
+    public void resetLater(){
+        if(progressBar == null) {
+            return;
+        }
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                Timer timer = new Timer(RESET_DELAY, new ActionListener() {
+                    @Override
+                    public void actionPerformed(ActionEvent e) {
+                        reset();
+                    }
+                });
+                timer.setRepeats(false);
+                timer.start();
+            }
+        });
+    }
+
+    @Override
+    public void propertyChange(PropertyChangeEvent evt) {
+        final double progress = progressMonitor.getOverallProgress();
+        final String taskName = ProgressMonitor.PROP_TASKNAME.equals(evt.getPropertyName()) ?
+                progressMonitor.getCurrentTaskName() : null;
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                progressBar.setIndeterminate(false);
+                progressBar.setValue(progressBar.getMinimum() +
+                        (int)(progress * (progressBar.getMaximum() - progressBar.getMinimum())));
+                if(taskName != null) {
+                    progressBar.setString(taskName);
+                }
+            }
+        });
+    }
+}
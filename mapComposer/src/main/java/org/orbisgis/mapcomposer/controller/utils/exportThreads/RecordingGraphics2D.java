@@ -0,0 +1,1213 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+
+package org.orbisgis.mapcomposer.controller.utils.exportThreads;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.GradientPaint;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.LinearGradientPaint;
+import java.awt.MultipleGradientPaint;
+import java.awt.Paint;
+import java.awt.Polygon;
+import java.awt.RadialGradientPaint;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.TexturePaint;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.AttributedCharacterIterator;
+import java.text.AttributedString;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Graphics2D recording the drawing operations, to compute a digest of the drawing and to replay it later, i.e. to
+ * find the identical templates of a PDF before writing them.
+ *
+ * The state (transform, clip, paint, font ...) is kept by a shadow Graphics2D, which gives the values returned to the
+ * renderers, so they get the font metrics of the real output. Each drawing operation is recorded with a snapshot of
+ * the state. The digest is computed from the state and the arguments of the operations without any loss : the
+ * content of the gradients, of the textures and of the images is digested. The paints, strokes and composites which
+ * can't be digested get a unique value, so a drawing using them is never considered identical to another one.
+ *
+ * On the replay, the images are given as BufferedImages to an ImageDrawer, so they can be shared in the output.
+ *
+ * @author Sylvain PALOMINOS
+ */
+public class RecordingGraphics2D extends Graphics2D {
+
+    /**
+     * Draws the images of a replay instead of the replayed Graphics2D.
+     */
+    public interface ImageDrawer {
+        /**
+         * Draws the given image.
+         * @param g Graphics2D of the replay.
+         * @param image Image to draw.
+         * @param transform Transform from the image pixels to the device space of the Graphics2D.
+         * @param clip Clip in the device space, null if there is none.
+         * @param composite Composite of the drawing.
+         * @return The Graphics2D to use for the following operations, which can replace the given one.
+         * @throws IOException Exception thrown on the writing of the image.
+         */
+        Graphics2D drawImage(Graphics2D g, BufferedImage image, AffineTransform transform, Shape clip,
+                             Composite composite) throws IOException;
+    }
+
+    /** Counter giving a unique value to the objects which can't be digested. */
+    private static final AtomicLong UNIQUE = new AtomicLong();
+
+    /** Graphics2D keeping the state and giving the returned values. */
+    private final Graphics2D shadow;
+    /** Recording shared with the Graphics2D created from this one. */
+    private final Recording recording;
+    /** Snapshot of the current state, null if the state has changed since the last snapshot. */
+    private State state;
+    /** Color of the XOR mode, null in paint mode. */
+    private Color xorColor;
+
+    /**
+     * Main constructor.
+     * @param shadow Graphics2D keeping the state, i.e. a Graphics2D of the output which isn't drawn.
+     * @throws NoSuchAlgorithmException Exception thrown if the digest algorithm isn't available.
+     */
+    public RecordingGraphics2D(Graphics2D shadow) throws NoSuchAlgorithmException {
+        this(shadow, new Recording(), null);
+    }
+
+    private RecordingGraphics2D(Graphics2D shadow, Recording recording, Color xorColor){
+        this.shadow = shadow;
+        this.recording = recording;
+        this.xorColor = xorColor;
+    }
+
+    /**
+     * Returns the digest of all the operations recorded, including the ones of the Graphics2D created from this one.
+     * No operation should be recorded after.
+     * @return The SHA-256 digest as an hexadecimal string.
+     */
+    public String getDigest(){
+        return recording.getDigest();
+    }
+
+    /**
+     * Replays all the recorded operations in the given Graphics2D.
+     * @param g Graphics2D where the operations are replayed.
+     * @param imageDrawer ImageDrawer drawing the images, null to draw them in the Graphics2D.
+     * @return The Graphics2D used for the last operations, which should be disposed.
+     * @throws IOException Exception thrown by the ImageDrawer.
+     */
+    public Graphics2D replay(Graphics2D g, ImageDrawer imageDrawer) throws IOException {
+        State applied = null;
+        for(int i = 0; i < recording.ops.size(); i++) {
+            State opState = recording.states.get(i);
+            if(opState != applied) {
+                opState.apply(g);
+                applied = opState;
+            }
+            Graphics2D next = recording.ops.get(i).replay(g, opState, imageDrawer);
+            if(next != g) {
+                g = next;
+                applied = null;
+            }
+        }
+        return g;
+    }
+
+    /**
+     * Returns the snapshot of the current state.
+     * @return The current state.
+     */
+    private State getState(){
+        if(state == null) {
+            state = new State(shadow, xorColor);
+        }
+        return state;
+    }
+
+    /**
+     * Records an operation with the current state.
+     * @param op Operation to record.
+     */
+    private void record(Op op){
+        recording.add(getState(), op);
+    }
+
+    /**
+     * Records the drawing or the filling of the given shape.
+     * @param shape Shape to draw, copied as it can be modified later.
+     * @param fill True to fill it, false to draw its outline.
+     */
+    private void recordShape(Shape shape, boolean fill){
+        record(new ShapeOp(new Path2D.Double(shape), fill));
+    }
+
+    /**
+     * Records the drawing of an image. If it can't be converted into a BufferedImage, i.e. if it isn't loaded yet, it
+     * is drawn as it is on the replay and never considered identical.
+     * @param img Image to draw.
+     * @param xform Transform of the image pixels into the user space.
+     * @param bgcolor Color of the background of the image, can be null.
+     * @param observer ImageObserver of the image.
+     * @return True if the image was recorded as a BufferedImage.
+     */
+    private boolean recordImage(final Image img, final AffineTransform xform, Color bgcolor,
+                                final ImageObserver observer){
+        BufferedImage bi = copyImage(img, observer);
+        if(bgcolor != null && bi != null) {
+            Path2D.Double background = new Path2D.Double(new Rectangle(0, 0, bi.getWidth(), bi.getHeight()));
+            background.transform(xform);
+            recording.add(getState().withPaint(bgcolor), new ShapeOp(background, true));
+        }
+        if(bi == null) {
+            record(new UniqueOp() {
+                @Override
+                Graphics2D replay(Graphics2D g, State state, ImageDrawer imageDrawer) {
+                    g.drawImage(img, xform, observer);
+                    return g;
+                }
+            });
+            return false;
+        }
+        record(new ImageOp(bi, xform));
+        return true;
+    }
+
+    /**
+     * Returns an ARGB copy of the given image, or null if its size isn't known yet or if it isn't loaded.
+     * @param img Image to copy.
+     * @param observer ImageObserver of the image.
+     * @return The copy or null.
+     */
+    private static BufferedImage copyImage(Image img, ImageObserver observer){
+        int width = img.getWidth(observer);
+        int height = img.getHeight(observer);
+        if(width <= 0 || height <= 0) {
+            return null;
+        }
+        BufferedImage copy = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = copy.createGraphics();
+        boolean loaded = g.drawImage(img, 0, 0, observer);
+        g.dispose();
+        return loaded ? copy : null;
+    }
+
+    @Override
+    public void draw(Shape s) {
+        recordShape(s, false);
+    }
+
+    @Override
+    public void fill(Shape s) {
+        recordShape(s, true);
+    }
+
+    @Override
+    public boolean drawImage(Image img, AffineTransform xform, ImageObserver obs) {
+        return recordImage(img, xform == null ? new AffineTransform() : new AffineTransform(xform), null, obs);
+    }
+
+    @Override
+    public void drawImage(BufferedImage img, BufferedImageOp op, int x, int y) {
+        BufferedImage filtered = op == null ? img : op.filter(img, null);
+        recordImage(filtered, AffineTransform.getTranslateInstance(x, y), null, null);
+    }
+
+    @Override
+    public void drawRenderedImage(final RenderedImage img, AffineTransform xform) {
+        final AffineTransform transform = xform == null ? new AffineTransform() : new AffineTransform(xform);
+        if(img instanceof BufferedImage) {
+            recordImage((BufferedImage) img, transform, null, null);
+        }
+        else {
+            record(new UniqueOp() {
+                @Override
+                Graphics2D replay(Graphics2D g, State state, ImageDrawer imageDrawer) {
+                    g.drawRenderedImage(img, transform);
+                    return g;
+                }
+            });
+        }
+    }
+
+    @Override
+    public void drawRenderableImage(final RenderableImage img, AffineTransform xform) {
+        final AffineTransform transform = xform == null ? new AffineTransform() : new AffineTransform(xform);
+        record(new UniqueOp() {
+            @Override
+            Graphics2D replay(Graphics2D g, State state, ImageDrawer imageDrawer) {
+                g.drawRenderableImage(img, transform);
+                return g;
+            }
+        });
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, ImageObserver observer) {
+        return recordImage(img, AffineTransform.getTranslateInstance(x, y), null, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, int width, int height, ImageObserver observer) {
+        return drawImage(img, x, y, width, height, null, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, Color bgcolor, ImageObserver observer) {
+        return recordImage(img, AffineTransform.getTranslateInstance(x, y), bgcolor, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, int width, int height, Color bgcolor, ImageObserver observer) {
+        int imageWidth = img.getWidth(observer);
+        int imageHeight = img.getHeight(observer);
+        if(imageWidth <= 0 || imageHeight <= 0) {
+            return false;
+        }
+        AffineTransform xform = AffineTransform.getTranslateInstance(x, y);
+        xform.scale((double) width / imageWidth, (double) height / imageHeight);
+        return recordImage(img, xform, bgcolor, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2,
+                             ImageObserver observer) {
+        return drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, null, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2,
+                             Color bgcolor, ImageObserver observer) {
+        if(sx1 == sx2 || sy1 == sy2 || dx1 == dx2 || dy1 == dy2) {
+            return true;
+        }
+        BufferedImage bi = copyImage(img, observer);
+        int minX = Math.min(sx1, sx2);
+        int minY = Math.min(sy1, sy2);
+        if(bi == null || minX < 0 || minY < 0 || Math.max(sx1, sx2) > bi.getWidth() ||
+                Math.max(sy1, sy2) > bi.getHeight()) {
+            return false;
+        }
+        //The source point (sx1, sy1) is drawn at (dx1, dy1) and (sx2, sy2) at (dx2, dy2)
+        BufferedImage source = bi.getSubimage(minX, minY, Math.abs(sx2 - sx1), Math.abs(sy2 - sy1));
+        AffineTransform xform = AffineTransform.getTranslateInstance(dx1, dy1);
+        xform.scale((double) (dx2 - dx1) / (sx2 - sx1), (double) (dy2 - dy1) / (sy2 - sy1));
+        xform.translate(minX - sx1, minY - sy1);
+        return recordImage(source, xform, bgcolor, observer);
+    }
+
+    @Override
+    public void drawString(String str, int x, int y) {
+        drawString(str, (float) x, (float) y);
+    }
+
+    @Override
+    public void drawString(String str, float x, float y) {
+        record(new StringOp(str, x, y));
+    }
+
+    @Override
+    public void drawString(AttributedCharacterIterator iterator, int x, int y) {
+        drawString(iterator, (float) x, (float) y);
+    }
+
+    @Override
+    public void drawString(AttributedCharacterIterator iterator, float x, float y) {
+        record(new AttributedStringOp(new AttributedString(iterator), x, y));
+    }
+
+    @Override
+    public void drawGlyphVector(GlyphVector g, float x, float y) {
+        record(new GlyphOp(g, x, y));
+    }
+
+    @Override
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        draw(new Line2D.Float(x1, y1, x2, y2));
+    }
+
+    @Override
+    public void fillRect(int x, int y, int width, int height) {
+        fill(new Rectangle(x, y, width, height));
+    }
+
+    @Override
+    public void clearRect(final int x, final int y, final int width, final int height) {
+        record(new Op() {
+            @Override
+            void write(DataOutputStream out) throws IOException {
+                out.writeByte(7);
+                out.writeInt(x);
+                out.writeInt(y);
+                out.writeInt(width);
+                out.writeInt(height);
+            }
+
+            @Override
+            Graphics2D replay(Graphics2D g, State state, ImageDrawer imageDrawer) {
+                g.clearRect(x, y, width, height);
+                return g;
+            }
+        });
+    }
+
+    @Override
+    public void copyArea(final int x, final int y, final int width, final int height, final int dx, final int dy) {
+        record(new UniqueOp() {
+            @Override
+            Graphics2D replay(Graphics2D g, State state, ImageDrawer imageDrawer) {
+                g.copyArea(x, y, width, height, dx, dy);
+                return g;
+            }
+        });
+    }
+
+    @Override
+    public void drawRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+        draw(new RoundRectangle2D.Float(x, y, width, height, arcWidth, arcHeight));
+    }
+
+    @Override
+    public void fillRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+        fill(new RoundRectangle2D.Float(x, y, width, height, arcWidth, arcHeight));
+    }
+
+    @Override
+    public void drawOval(int x, int y, int width, int height) {
+        draw(new Ellipse2D.Float(x, y, width, height));
+    }
+
+    @Override
+    public void fillOval(int x, int y, int width, int height) {
+        fill(new Ellipse2D.Float(x, y, width, height));
+    }
+
+    @Override
+    public void drawArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+        draw(new Arc2D.Float(x, y, width, height, startAngle, arcAngle, Arc2D.OPEN));
+    }
+
+    @Override
+    public void fillArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+        fill(new Arc2D.Float(x, y, width, height, startAngle, arcAngle, Arc2D.PIE));
+    }
+
+    @Override
+    public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints) {
+        if(nPoints > 0) {
+            Path2D.Float path = new Path2D.Float();
+            path.moveTo(xPoints[0], yPoints[0]);
+            for(int i = 1; i < nPoints; i++) {
+                path.lineTo(xPoints[i], yPoints[i]);
+            }
+            draw(path);
+        }
+    }
+
+    @Override
+    public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+        draw(new Polygon(xPoints, yPoints, nPoints));
+    }
+
+    @Override
+    public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+        fill(new Polygon(xPoints, yPoints, nPoints));
+    }
+
+    @Override
+    public boolean hit(Rectangle rect, Shape s, boolean onStroke) {
+        return shadow.hit(rect, s, onStroke);
+    }
+
+    @Override
+    public GraphicsConfiguration getDeviceConfiguration() {
+        return shadow.getDeviceConfiguration();
+    }
+
+    @Override
+    public void setComposite(Composite comp) {
+        shadow.setComposite(comp);
+        state = null;
+    }
+
+    @Override
+    public void setPaint(Paint paint) {
+        shadow.setPaint(paint);
+        state = null;
+    }
+
+    @Override
+    public void setStroke(Stroke s) {
+        shadow.setStroke(s);
+        state = null;
+    }
+
+    @Override
+    public void setRenderingHint(RenderingHints.Key hintKey, Object hintValue) {
+        shadow.setRenderingHint(hintKey, hintValue);
+        state = null;
+    }
+
+    @Override
+    public Object getRenderingHint(RenderingHints.Key hintKey) {
+        return shadow.getRenderingHint(hintKey);
+    }
+
+    @Override
+    public void setRenderingHints(Map<?, ?> hints) {
+        shadow.setRenderingHints(hints);
+        state = null;
+    }
+
+    @Override
+    public void addRenderingHints(Map<?, ?> hints) {
+        shadow.addRenderingHints(hints);
+        state = null;
+    }
+
+    @Override
+    public RenderingHints getRenderingHints() {
+        return shadow.getRenderingHints();
+    }
+
+    @Override
+    public void translate(int x, int y) {
+        shadow.translate(x, y);
+        state = null;
+    }
+
+    @Override
+    public void translate(double tx, double ty) {
+        shadow.translate(tx, ty);
+        state = null;
+    }
+
+    @Override
+    public void rotate(double theta) {
+        shadow.rotate(theta);
+        state = null;
+    }
+
+    @Override
+    public void rotate(double theta, double x, double y) {
+        shadow.rotate(theta, x, y);
+        state = null;
+    }
+
+    @Override
+    public void scale(double sx, double sy) {
+        shadow.scale(sx, sy);
+        state = null;
+    }
+
+    @Override
+    public void shear(double shx, double shy) {
+        shadow.shear(shx, shy);
+        state = null;
+    }
+
+    @Override
+    public void transform(AffineTransform tx) {
+        shadow.transform(tx);
+        state = null;
+    }
+
+    @Override
+    public void setTransform(AffineTransform tx) {
+        shadow.setTransform(tx);
+        state = null;
+    }
+
+    @Override
+    public AffineTransform getTransform() {
+        return shadow.getTransform();
+    }
+
+    @Override
+    public Paint getPaint() {
+        return shadow.getPaint();
+    }
+
+    @Override
+    public Composite getComposite() {
+        return shadow.getComposite();
+    }
+
+    @Override
+    public void setBackground(Color color) {
+        shadow.setBackground(color);
+        state = null;
+    }
+
+    @Override
+    public Color getBackground() {
+        return shadow.getBackground();
+    }
+
+    @Override
+    public Stroke getStroke() {
+        return shadow.getStroke();
+    }
+
+    @Override
+    public void clip(Shape s) {
+        shadow.clip(s);
+        state = null;
+    }
+
+    @Override
+    public FontRenderContext getFontRenderContext() {
+        return shadow.getFontRenderContext();
+    }
+
+    @Override
+    public Graphics create() {
+        return new RecordingGraphics2D((Graphics2D) shadow.create(), recording, xorColor);
+    }
+
+    @Override
+    public Color getColor() {
+        return shadow.getColor();
+    }
+
+    @Override
+    public void setColor(Color c) {
+        shadow.setColor(c);
+        state = null;
+    }
+
+    @Override
+    public void setPaintMode() {
+        shadow.setPaintMode();
+        xorColor = null;
+        state = null;
+    }
+
+    @Override
+    public void setXORMode(Color c1) {
+        shadow.setXORMode(c1);
+        xorColor = c1;
+        state = null;
+    }
+
+    @Override
+    public Font getFont() {
+        return shadow.getFont();
+    }
+
+    @Override
+    public void setFont(Font font) {
+        shadow.setFont(font);
+        state = null;
+    }
+
+    @Override
+    public FontMetrics getFontMetrics(Font f) {
+        return shadow.getFontMetrics(f);
+    }
+
+    @Override
+    public Rectangle getClipBounds() {
+        return shadow.getClipBounds();
+    }
+
+    @Override
+    public void clipRect(int x, int y, int width, int height) {
+        shadow.clipRect(x, y, width, height);
+        state = null;
+    }
+
+    @Override
+    public void setClip(int x, int y, int width, int height) {
+        shadow.setClip(x, y, width, height);
+        state = null;
+    }
+
+    @Override
+    public Shape getClip() {
+        return shadow.getClip();
+    }
+
+    @Override
+    public void setClip(Shape clip) {
+        shadow.setClip(clip);
+        state = null;
+    }
+
+    @Override
+    public void dispose() {
+        shadow.dispose();
+    }
+
+    /**
+     * Operations and states recorded by a RecordingGraphics2D and the ones created from it, with their digest.
+     */
+    private static final class Recording {
+        private final List<Op> ops = new ArrayList<>();
+        private final List<State> states = new ArrayList<>();
+        private final MessageDigest digest;
+        private final DataOutputStream out;
+        /** Last state written in the digest. */
+        private State lastState;
+        private String digestValue;
+
+        private Recording() throws NoSuchAlgorithmException {
+            digest = MessageDigest.getInstance("SHA-256");
+            out = new DataOutputStream(new DigestOutputStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+            }, digest));
+        }
+
+        /**
+         * Adds an operation and writes it in the digest, preceded by its state if it has changed.
+         * @param state State of the operation.
+         * @param op Operation.
+         */
+        private void add(State state, Op op){
+            try {
+                if(state != lastState) {
+                    out.writeByte(0);
+                    state.write(out);
+                    lastState = state;
+                }
+                op.write(out);
+            } catch (IOException e) {
+                //The output only updates the digest
+                throw new IllegalStateException(e);
+            }
+            ops.add(op);
+            states.add(state);
+        }
+
+        private String getDigest(){
+            if(digestValue == null) {
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                digestValue = new BigInteger(1, digest.digest()).toString(16);
+            }
+            return digestValue;
+        }
+    }
+
+    /**
+     * Snapshot of the state of a Graphics2D.
+     */
+    private static final class State {
+        private final AffineTransform transform;
+        /** Clip in the device space */
+        private final Shape clip;
+        private final Paint paint;
+        private final Stroke stroke;
+        private final Font font;
+        private final Composite composite;
+        private final RenderingHints hints;
+        private final Color background;
+        private final Color xorColor;
+
+        private State(Graphics2D g, Color xorColor){
+            transform = g.getTransform();
+            Shape userClip = g.getClip();
+            clip = userClip == null ? null : transform.createTransformedShape(userClip);
+            paint = g.getPaint();
+            stroke = g.getStroke();
+            font = g.getFont();
+            composite = g.getComposite();
+            hints = (RenderingHints) g.getRenderingHints().clone();
+            background = g.getBackground();
+            this.xorColor = xorColor;
+        }
+
+        private State(State state, Paint paint){
+            transform = state.transform;
+            clip = state.clip;
+            this.paint = paint;
+            stroke = state.stroke;
+            font = state.font;
+            composite = state.composite;
+            hints = state.hints;
+            background = state.background;
+            xorColor = state.xorColor;
+        }
+
+        /**
+         * Returns a copy of this state with another paint.
+         * @param paint Paint of the copy.
+         * @return The copy.
+         */
+        private State withPaint(Paint paint){
+            return new State(this, paint);
+        }
+
+        /**
+         * Applies this state to the given Graphics2D.
+         * @param g Graphics2D to set.
+         */
+        private void apply(Graphics2D g){
+            g.setTransform(new AffineTransform());
+            g.setClip(clip);
+            g.setTransform(transform);
+            g.setPaint(paint);
+            g.setStroke(stroke);
+            g.setFont(font);
+            g.setRenderingHints(hints);
+            g.setBackground(background);
+            //The XOR mode is the composite of the Graphics2D, so it replaces the composite
+            if(xorColor != null) {
+                g.setXORMode(xorColor);
+            }
+            else {
+                g.setComposite(composite);
+            }
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            writeTransform(out, transform);
+            writeShape(out, clip);
+            writePaint(out, paint);
+            if(stroke instanceof BasicStroke) {
+                BasicStroke basicStroke = (BasicStroke) stroke;
+                out.writeByte(1);
+                out.writeFloat(basicStroke.getLineWidth());
+                out.writeInt(basicStroke.getEndCap());
+                out.writeInt(basicStroke.getLineJoin());
+                out.writeFloat(basicStroke.getMiterLimit());
+                float[] dash = basicStroke.getDashArray();
+                out.writeInt(dash == null ? -1 : dash.length);
+                if(dash != null) {
+                    for(float f : dash) {
+                        out.writeFloat(f);
+                    }
+                }
+                out.writeFloat(basicStroke.getDashPhase());
+            }
+            else {
+                writeUnique(out, stroke);
+            }
+            writeFont(out, font);
+            if(composite instanceof AlphaComposite) {
+                out.writeByte(1);
+                out.writeInt(((AlphaComposite) composite).getRule());
+                out.writeFloat(((AlphaComposite) composite).getAlpha());
+            }
+            else {
+                writeUnique(out, composite);
+            }
+            //The hints are sorted to not depend on the order of their setting
+            Map<String, String> sortedHints = new TreeMap<>();
+            for(Map.Entry<Object, Object> entry : hints.entrySet()) {
+                sortedHints.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+            }
+            out.writeInt(sortedHints.size());
+            for(Map.Entry<String, String> entry : sortedHints.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+            writePaint(out, background);
+            writePaint(out, xorColor);
+        }
+    }
+
+    /**
+     * Recorded operation.
+     */
+    private abstract static class Op {
+        /**
+         * Writes the operation and its arguments in the digest.
+         * @param out Output of the digest.
+         * @throws IOException
+         */
+        abstract void write(DataOutputStream out) throws IOException;
+
+        /**
+         * Replays the operation, the state being already applied to the Graphics2D.
+         * @param g Graphics2D of the replay.
+         * @param state State of the operation.
+         * @param imageDrawer ImageDrawer drawing the images, can be null.
+         * @return The Graphics2D to use for the following operations.
+         * @throws IOException Exception thrown by the ImageDrawer.
+         */
+        abstract Graphics2D replay(Graphics2D g, State state, ImageDrawer imageDrawer) throws IOException;
+    }
+
+    /**
+     * Operation which can't be digested, so it gets a unique value.
+     */
+    private abstract static class UniqueOp extends Op {
+        @Override
+        void write(DataOutputStream out) throws IOException {
+            writeUnique(out, this);
+        }
+    }
+
+    private static final class ShapeOp extends Op {
+        private final Shape shape;
+        private final boolean fill;
+
+        private ShapeOp(Shape shape, boolean fill){
+            this.shape = shape;
+            this.fill = fill;
+        }
+
+        @Override
+        void write(DataOutputStream out) throws IOException {
+            out.writeByte(fill ? 2 : 3);
+            writeShape(out, shape);
+        }
+
+        @Override
+        Graphics2D replay(Graphics2D g, State state, ImageDrawer imageDrawer) {
+            if(fill) {
+                g.fill(shape);
+            }
+            else {
+                g.draw(shape);
+            }
+            return g;
+        }
+    }
+
+    private static final class StringOp extends Op {
+        private final String str;
+        private final float x;
+        private final float y;
+
+        private StringOp(String str, float x, float y){
+            this.str = str;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        void write(DataOutputStream out) throws IOException {
+            out.writeByte(4);
+            out.writeInt(str.length());
+            out.writeChars(str);
+            out.writeFloat(x);
+            out.writeFloat(y);
+        }
+
+        @Override
+        Graphics2D replay(Graphics2D g, State state, ImageDrawer imageDrawer) {
+            g.drawString(str, x, y);
+            return g;
+        }
+    }
+
+    private static final class AttributedStringOp extends Op {
+        private final AttributedString str;
+        private final float x;
+        private final float y;
+
+        private AttributedStringOp(AttributedString str, float x, float y){
+            this.str = str;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        void write(DataOutputStream out) throws IOException {
+            out.writeByte(5);
+            AttributedCharacterIterator iterator = str.getIterator();
+            for(char c = iterator.first(); c != AttributedCharacterIterator.DONE; c = iterator.next()) {
+                if(iterator.getIndex() == iterator.getRunStart()) {
+                    Map<String, Object> sortedAttributes = new TreeMap<>();
+                    for(Map.Entry<AttributedCharacterIterator.Attribute, Object> entry :
+                            iterator.getAttributes().entrySet()) {
+                        sortedAttributes.put(entry.getKey().toString(), entry.getValue());
+                    }
+                    out.writeInt(sortedAttributes.size());
+                    for(Map.Entry<String, Object> entry : sortedAttributes.entrySet()) {
+                        out.writeUTF(entry.getKey());
+                        if(entry.getValue() instanceof Paint) {
+                            writePaint(out, (Paint) entry.getValue());
+                        }
+                        else if(entry.getValue() instanceof Font) {
+                            writeFont(out, (Font) entry.getValue());
+                        }
+                        else {
+                            writeUnique(out, entry.getValue());
+                        }
+                    }
+                }
+                out.writeChar(c);
+            }
+            out.writeInt(-1);
+            out.writeFloat(x);
+            out.writeFloat(y);
+        }
+
+        @Override
+        Graphics2D replay(Graphics2D g, State state, ImageDrawer imageDrawer) {
+            g.drawString(str.getIterator(), x, y);
+            return g;
+        }
+    }
+
+    private static final class GlyphOp extends Op {
+        private final GlyphVector glyphVector;
+        private final float x;
+        private final float y;
+
+        private GlyphOp(GlyphVector glyphVector, float x, float y){
+            this.glyphVector = glyphVector;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        void write(DataOutputStream out) throws IOException {
+            out.writeByte(6);
+            writeFont(out, glyphVector.getFont());
+            FontRenderContext frc = glyphVector.getFontRenderContext();
+            writeTransform(out, frc.getTransform());
+            out.writeUTF(String.valueOf(frc.getAntiAliasingHint()));
+            out.writeUTF(String.valueOf(frc.getFractionalMetricsHint()));
+            int count = glyphVector.getNumGlyphs();
+            out.writeInt(count);
+            for(int code : glyphVector.getGlyphCodes(0, count, null)) {
+                out.writeInt(code);
+            }
+            for(float position : glyphVector.getGlyphPositions(0, count + 1, null)) {
+                out.writeFloat(position);
+            }
+            for(int i = 0; i < count; i++) {
+                writeTransform(out, glyphVector.getGlyphTransform(i));
+            }
+            out.writeFloat(x);
+            out.writeFloat(y);
+        }
+
+        @Override
+        Graphics2D replay(Graphics2D g, State state, ImageDrawer imageDrawer) {
+            g.drawGlyphVector(glyphVector, x, y);
+            return g;
+        }
+    }
+
+    private static final class ImageOp extends Op {
+        private final BufferedImage image;
+        private final AffineTransform xform;
+
+        private ImageOp(BufferedImage image, AffineTransform xform){
+            this.image = image;
+            this.xform = xform;
+        }
+
+        @Override
+        void write(DataOutputStream out) throws IOException {
+            out.writeByte(8);
+            writeImage(out, image);
+            writeTransform(out, xform);
+        }
+
+        @Override
+        Graphics2D replay(Graphics2D g, State state, ImageDrawer imageDrawer) throws IOException {
+            if(imageDrawer == null) {
+                g.drawImage(image, xform, null);
+                return g;
+            }
+            AffineTransform transform = new AffineTransform(state.transform);
+            transform.concatenate(xform);
+            return imageDrawer.drawImage(g, image, transform, state.clip, state.composite);
+        }
+    }
+
+    private static void writeUnique(DataOutputStream out, Object o) throws IOException {
+        out.writeByte(-1);
+        out.writeLong(UNIQUE.incrementAndGet());
+    }
+
+    private static void writeTransform(DataOutputStream out, AffineTransform transform) throws IOException {
+        if(transform == null) {
+            out.writeByte(0);
+            return;
+        }
+        out.writeByte(1);
+        double[] matrix = new double[6];
+        transform.getMatrix(matrix);
+        for(double d : matrix) {
+            out.writeDouble(d);
+        }
+    }
+
+    private static void writeShape(DataOutputStream out, Shape shape) throws IOException {
+        if(shape == null) {
+            out.writeByte(0);
+            return;
+        }
+        PathIterator it = shape.getPathIterator(null);
+        out.writeByte(it.getWindingRule() == PathIterator.WIND_EVEN_ODD ? 1 : 2);
+        double[] coords = new double[6];
+        while(!it.isDone()) {
+            int type = it.currentSegment(coords);
+            out.writeByte(type);
+            int count = type == PathIterator.SEG_CLOSE ? 0 :
+                    type == PathIterator.SEG_QUADTO ? 4 : type == PathIterator.SEG_CUBICTO ? 6 : 2;
+            for(int i = 0; i < count; i++) {
+                out.writeDouble(coords[i]);
+            }
+            it.next();
+        }
+        out.writeByte(-1);
+    }
+
+    private static void writeFont(DataOutputStream out, Font font) throws IOException {
+        if(font == null) {
+            out.writeByte(0);
+            return;
+        }
+        out.writeByte(1);
+        Map<String, String> sortedAttributes = new TreeMap<>();
+        for(Map.Entry<?, ?> entry : font.getAttributes().entrySet()) {
+            sortedAttributes.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+        }
+        out.writeUTF(font.getFontName());
+        out.writeUTF(sortedAttributes.toString());
+        writeTransform(out, font.getTransform());
+    }
+
+    private static void writeImage(DataOutputStream out, BufferedImage image) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        out.writeInt(width);
+        out.writeInt(height);
+        int[] row = new int[width];
+        for(int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for(int pixel : row) {
+                out.writeInt(pixel);
+            }
+        }
+    }
+
+    private static void writePaint(DataOutputStream out, Paint paint) throws IOException {
+        if(paint == null) {
+            out.writeByte(0);
+        }
+        else if(paint instanceof Color) {
+            out.writeByte(1);
+            out.writeInt(((Color) paint).getRGB());
+        }
+        else if(paint instanceof GradientPaint) {
+            GradientPaint gradient = (GradientPaint) paint;
+            out.writeByte(2);
+            writePoint(out, gradient.getPoint1());
+            writePoint(out, gradient.getPoint2());
+            out.writeInt(gradient.getColor1().getRGB());
+            out.writeInt(gradient.getColor2().getRGB());
+            out.writeBoolean(gradient.isCyclic());
+        }
+        else if(paint instanceof LinearGradientPaint || paint instanceof RadialGradientPaint) {
+            MultipleGradientPaint gradient = (MultipleGradientPaint) paint;
+            if(paint instanceof LinearGradientPaint) {
+                out.writeByte(3);
+                writePoint(out, ((LinearGradientPaint) paint).getStartPoint());
+                writePoint(out, ((LinearGradientPaint) paint).getEndPoint());
+            }
+            else {
+                out.writeByte(4);
+                writePoint(out, ((RadialGradientPaint) paint).getCenterPoint());
+                writePoint(out, ((RadialGradientPaint) paint).getFocusPoint());
+                out.writeFloat(((RadialGradientPaint) paint).getRadius());
+            }
+            float[] fractions = gradient.getFractions();
+            Color[] colors = gradient.getColors();
+            out.writeInt(fractions.length);
+            for(int i = 0; i < fractions.length; i++) {
+                out.writeFloat(fractions[i]);
+                out.writeInt(colors[i].getRGB());
+            }
+            out.writeInt(gradient.getCycleMethod().ordinal());
+            out.writeInt(gradient.getColorSpace().ordinal());
+            writeTransform(out, gradient.getTransform());
+        }
+        else if(paint instanceof TexturePaint) {
+            out.writeByte(5);
+            Rectangle2D anchor = ((TexturePaint) paint).getAnchorRect();
+            out.writeDouble(anchor.getX());
+            out.writeDouble(anchor.getY());
+            out.writeDouble(anchor.getWidth());
+            out.writeDouble(anchor.getHeight());
+            writeImage(out, ((TexturePaint) paint).getImage());
+        }
+        else {
+            writeUnique(out, paint);
+        }
+    }
+
+    private static void writePoint(DataOutputStream out, Point2D point) throws IOException {
+        out.writeDouble(point.getX());
+        out.writeDouble(point.getY());
+    }
+}
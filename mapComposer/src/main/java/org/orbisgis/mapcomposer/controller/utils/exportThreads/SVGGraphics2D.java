@@ -0,0 +1,1346 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+
+package org.orbisgis.mapcomposer.controller.utils.exportThreads;
+
+import javax.imageio.ImageIO;
+import javax.xml.bind.DatatypeConverter;
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.GradientPaint;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.LinearGradientPaint;
+import java.awt.MultipleGradientPaint;
+import java.awt.Paint;
+import java.awt.Polygon;
+import java.awt.RadialGradientPaint;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.TexturePaint;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.font.TextLayout;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.AttributedCharacterIterator;
+import java.util.Map;
+
+/**
+ * Graphics2D writing what is drawn in it as SVG elements into a stream.
+ * Each drawing operation is written as soon as it is done, so the memory used doesn't depend on the number of drawn
+ * shapes, unlike a DOM based SVG generation. The shapes and the texts stay vector, the images are embedded as PNG.
+ *
+ * The header is written on the creation of the root Graphics2D and the document is complete once finish() is called.
+ * As the Graphics2D methods can't throw an IOException, the first writing error is kept and thrown by finish().
+ * The colors, the gradients and the TexturePaint are written as SVG paints. The shapes filled with another paint are
+ * rasterized and embedded as images. The XOR mode and copyArea() are not supported.
+ *
+ * @author Sylvain PALOMINOS
+ */
+public class SVGGraphics2D extends Graphics2D {
+
+    /** Number of decimals of the coordinates. */
+    private static final int COORDINATE_DECIMALS = 3;
+
+    /** Number of decimals of the transformation coefficients. */
+    private static final int MATRIX_DECIMALS = 6;
+
+    /** Output shared by the root Graphics2D and all the ones created from it. */
+    private final Output output;
+
+    /** Transformation from the user space to the SVG space. */
+    private AffineTransform transform;
+
+    /** Clip in the SVG space, null if there is no clip. */
+    private Shape clip;
+
+    /** Identifier of the clipPath of the current clip, null if not written yet. */
+    private String clipId;
+
+    private Paint paint;
+    private Color color;
+    private Color background;
+    private Stroke stroke;
+    private Font font;
+    private Composite composite;
+    private RenderingHints hints;
+
+    /**
+     * Main constructor. Writes the header of the SVG document.
+     * @param writer Writer where the SVG document is written.
+     * @param width Width of the document.
+     * @param height Height of the document.
+     * @throws IOException Exception thrown on writing the header.
+     */
+    public SVGGraphics2D(Writer writer, int width, int height) throws IOException {
+        this.output = new Output(writer);
+        this.transform = new AffineTransform();
+        this.clip = null;
+        this.clipId = null;
+        this.color = Color.BLACK;
+        this.paint = color;
+        this.background = Color.WHITE;
+        this.stroke = new BasicStroke();
+        this.font = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
+        this.composite = AlphaComposite.SrcOver;
+        this.hints = new RenderingHints(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        writer.write("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\" " +
+                "version=\"1.1\" width=\"" + width + "\" height=\"" + height + "\" viewBox=\"0 0 " + width + " " +
+                height + "\">\n");
+    }
+
+    /**
+     * Copy constructor used by create().
+     * @param g2 SVGGraphics2D to copy.
+     */
+    private SVGGraphics2D(SVGGraphics2D g2){
+        this.output = g2.output;
+        this.transform = new AffineTransform(g2.transform);
+        this.clip = g2.clip;
+        this.clipId = g2.clipId;
+        this.paint = g2.paint;
+        this.color = g2.color;
+        this.background = g2.background;
+        this.stroke = g2.stroke;
+        this.font = g2.font;
+        this.composite = g2.composite;
+        this.hints = (RenderingHints) g2.hints.clone();
+    }
+
+    /**
+     * Starts a group of elements, i.e. the elements of one GraphicalElement. The groups can be nested.
+     * @param id Identifier of the group, made unique if needed.
+     */
+    public void startGroup(String id){
+        output.closeClipGroup();
+        output.write("<g id=\"" + output.uniqueId(id) + "\">\n");
+    }
+
+    /**
+     * Ends the last started group.
+     */
+    public void endGroup(){
+        output.closeClipGroup();
+        output.write("</g>\n");
+    }
+
+    /**
+     * Ends the SVG document and flushes the writer. The writer is not closed.
+     * @throws IOException The first exception thrown while writing the document.
+     */
+    public void finish() throws IOException {
+        output.closeClipGroup();
+        output.write("</svg>\n");
+        if(output.error == null) {
+            try {
+                output.writer.flush();
+            } catch (IOException ex) {
+                output.error = ex;
+            }
+        }
+        if(output.error != null) {
+            throw output.error;
+        }
+    }
+
+    @Override
+    public void draw(Shape s) {
+        if(!(stroke instanceof BasicStroke) || !isSVGPaint()) {
+            fill(stroke.createStrokedShape(s));
+            return;
+        }
+        BasicStroke basicStroke = (BasicStroke) stroke;
+        StringBuilder sb = new StringBuilder();
+        String strokePaint = getPaintReference();
+        sb.append("<path fill=\"none\" stroke=\"").append(strokePaint).append('"');
+        appendOpacity(sb, "stroke-opacity", getPaintAlpha());
+        if(basicStroke.getLineWidth() == 0) {
+            //A zero width line is drawn as thin as possible
+            sb.append(" stroke-width=\"1\" vector-effect=\"non-scaling-stroke\"");
+        }
+        else if(basicStroke.getLineWidth() != 1) {
+            sb.append(" stroke-width=\"");
+            appendNumber(sb, basicStroke.getLineWidth(), COORDINATE_DECIMALS);
+            sb.append('"');
+        }
+        switch(basicStroke.getEndCap()) {
+            case BasicStroke.CAP_ROUND: sb.append(" stroke-linecap=\"round\""); break;
+            case BasicStroke.CAP_SQUARE: sb.append(" stroke-linecap=\"square\""); break;
+            default: break;
+        }
+        switch(basicStroke.getLineJoin()) {
+            case BasicStroke.JOIN_ROUND: sb.append(" stroke-linejoin=\"round\""); break;
+            case BasicStroke.JOIN_BEVEL: sb.append(" stroke-linejoin=\"bevel\""); break;
+            default:
+                if(basicStroke.getMiterLimit() != 4) {
+                    sb.append(" stroke-miterlimit=\"");
+                    appendNumber(sb, Math.max(1, basicStroke.getMiterLimit()), COORDINATE_DECIMALS);
+                    sb.append('"');
+                }
+                break;
+        }
+        float[] dash = basicStroke.getDashArray();
+        if(dash != null && dash.length > 0) {
+            sb.append(" stroke-dasharray=\"");
+            for(int i = 0; i < dash.length; i++) {
+                if(i > 0) {
+                    sb.append(',');
+                }
+                appendNumber(sb, dash[i], COORDINATE_DECIMALS);
+            }
+            sb.append('"');
+            if(basicStroke.getDashPhase() != 0) {
+                sb.append(" stroke-dashoffset=\"");
+                appendNumber(sb, basicStroke.getDashPhase(), COORDINATE_DECIMALS);
+                sb.append('"');
+            }
+        }
+        appendTransform(sb, transform);
+        sb.append(" d=\"");
+        if(!appendPath(sb, s.getPathIterator(null))) {
+            return;
+        }
+        sb.append("\"/>\n");
+        writeElement(sb);
+    }
+
+    @Override
+    public void fill(Shape s) {
+        if(!isSVGPaint()) {
+            fillWithImage(s);
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        String fillPaint = getPaintReference();
+        sb.append("<path fill=\"").append(fillPaint).append('"');
+        appendOpacity(sb, "fill-opacity", getPaintAlpha());
+        PathIterator pathIterator = s.getPathIterator(null);
+        if(pathIterator.getWindingRule() == PathIterator.WIND_EVEN_ODD) {
+            sb.append(" fill-rule=\"evenodd\"");
+        }
+        appendTransform(sb, transform);
+        sb.append(" d=\"");
+        if(!appendPath(sb, pathIterator)) {
+            return;
+        }
+        sb.append("\"/>\n");
+        writeElement(sb);
+    }
+
+    @Override
+    public void drawString(String str, float x, float y) {
+        if(str == null || str.isEmpty()) {
+            return;
+        }
+        if(!isSVGPaint()) {
+            drawGlyphVector(font.createGlyphVector(getFontRenderContext(), str), x, y);
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        String fillPaint = getPaintReference();
+        sb.append("<text x=\"");
+        appendNumber(sb, x, COORDINATE_DECIMALS);
+        sb.append("\" y=\"");
+        appendNumber(sb, y, COORDINATE_DECIMALS);
+        sb.append("\" fill=\"").append(fillPaint).append('"');
+        appendOpacity(sb, "fill-opacity", getPaintAlpha());
+        sb.append(" font-family=\"");
+        appendEscaped(sb, getFontFamily(font));
+        sb.append("\" font-size=\"");
+        appendNumber(sb, font.getSize2D(), COORDINATE_DECIMALS);
+        sb.append('"');
+        if(font.isBold()) {
+            sb.append(" font-weight=\"bold\"");
+        }
+        if(font.isItalic()) {
+            sb.append(" font-style=\"italic\"");
+        }
+        appendTransform(sb, transform);
+        sb.append(" xml:space=\"preserve\">");
+        appendEscaped(sb, str);
+        sb.append("</text>\n");
+        writeElement(sb);
+    }
+
+    @Override
+    public void drawString(String str, int x, int y) {
+        drawString(str, (float) x, (float) y);
+    }
+
+    @Override
+    public void drawString(AttributedCharacterIterator iterator, int x, int y) {
+        drawString(iterator, (float) x, (float) y);
+    }
+
+    @Override
+    public void drawString(AttributedCharacterIterator iterator, float x, float y) {
+        if(iterator.getEndIndex() > iterator.getBeginIndex()) {
+            //The styled text is drawn as glyph outlines
+            new TextLayout(iterator, getFontRenderContext()).draw(this, x, y);
+        }
+    }
+
+    @Override
+    public void drawGlyphVector(GlyphVector g, float x, float y) {
+        fill(g.getOutline(x, y));
+    }
+
+    @Override
+    public boolean drawImage(Image img, AffineTransform xform, ImageObserver obs) {
+        BufferedImage bi = toBufferedImage(img, obs);
+        if(bi == null) {
+            return false;
+        }
+        AffineTransform imageTransform = new AffineTransform(transform);
+        if(xform != null) {
+            imageTransform.concatenate(xform);
+        }
+        writeImage(bi, imageTransform);
+        return true;
+    }
+
+    @Override
+    public void drawImage(BufferedImage img, BufferedImageOp op, int x, int y) {
+        BufferedImage bi = op != null ? op.filter(img, null) : img;
+        drawImage(bi, AffineTransform.getTranslateInstance(x, y), null);
+    }
+
+    @Override
+    public void drawRenderedImage(RenderedImage img, AffineTransform xform) {
+        BufferedImage bi;
+        if(img instanceof BufferedImage) {
+            bi = (BufferedImage) img;
+        }
+        else {
+            bi = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2 = bi.createGraphics();
+            g2.drawRenderedImage(img, new AffineTransform());
+            g2.dispose();
+        }
+        drawImage(bi, xform, null);
+    }
+
+    @Override
+    public void drawRenderableImage(RenderableImage img, AffineTransform xform) {
+        drawRenderedImage(img.createDefaultRendering(), xform);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, ImageObserver observer) {
+        return drawImage(img, AffineTransform.getTranslateInstance(x, y), observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, int width, int height, ImageObserver observer) {
+        int imageWidth = img.getWidth(observer);
+        int imageHeight = img.getHeight(observer);
+        if(imageWidth <= 0 || imageHeight <= 0) {
+            return false;
+        }
+        AffineTransform xform = AffineTransform.getTranslateInstance(x, y);
+        xform.scale((double) width / imageWidth, (double) height / imageHeight);
+        return drawImage(img, xform, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, Color bgcolor, ImageObserver observer) {
+        return drawImage(img, x, y, img.getWidth(observer), img.getHeight(observer), bgcolor, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, int width, int height, Color bgcolor, ImageObserver observer) {
+        fillBackground(new Rectangle(x, y, width, height), bgcolor);
+        return drawImage(img, x, y, width, height, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2,
+                             ImageObserver observer) {
+        BufferedImage bi = toBufferedImage(img, observer);
+        if(bi == null) {
+            return false;
+        }
+        int x = Math.max(0, Math.min(sx1, sx2));
+        int y = Math.max(0, Math.min(sy1, sy2));
+        int width = Math.min(bi.getWidth(), Math.max(sx1, sx2)) - x;
+        int height = Math.min(bi.getHeight(), Math.max(sy1, sy2)) - y;
+        if(width <= 0 || height <= 0) {
+            return true;
+        }
+        //The source and destination corners may be swapped to flip the image
+        AffineTransform xform = AffineTransform.getTranslateInstance(dx1, dy1);
+        xform.scale((double) (dx2 - dx1) / (sx2 - sx1), (double) (dy2 - dy1) / (sy2 - sy1));
+        xform.translate(x - sx1, y - sy1);
+        return drawImage(bi.getSubimage(x, y, width, height), xform, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2,
+                             Color bgcolor, ImageObserver observer) {
+        fillBackground(new Rectangle(Math.min(dx1, dx2), Math.min(dy1, dy2), Math.abs(dx2 - dx1), Math.abs(dy2 - dy1)),
+                bgcolor);
+        return drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, observer);
+    }
+
+    @Override
+    public boolean hit(Rectangle rect, Shape s, boolean onStroke) {
+        Shape shape = transform.createTransformedShape(onStroke ? stroke.createStrokedShape(s) : s);
+        if(clip != null && !clip.intersects(rect)) {
+            return false;
+        }
+        return shape.intersects(rect);
+    }
+
+    @Override
+    public GraphicsConfiguration getDeviceConfiguration() {
+        Graphics2D g2 = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+        try {
+            return g2.getDeviceConfiguration();
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    @Override
+    public void setComposite(Composite comp) {
+        if(comp != null) {
+            this.composite = comp;
+        }
+    }
+
+    @Override
+    public void setPaint(Paint paint) {
+        if(paint != null) {
+            this.paint = paint;
+            if(paint instanceof Color) {
+                this.color = (Color) paint;
+            }
+        }
+    }
+
+    @Override
+    public void setStroke(Stroke s) {
+        if(s != null) {
+            this.stroke = s;
+        }
+    }
+
+    @Override
+    public void setRenderingHint(RenderingHints.Key hintKey, Object hintValue) {
+        hints.put(hintKey, hintValue);
+    }
+
+    @Override
+    public Object getRenderingHint(RenderingHints.Key hintKey) {
+        return hints.get(hintKey);
+    }
+
+    @Override
+    public void setRenderingHints(Map<?, ?> hints) {
+        this.hints.clear();
+        this.hints.putAll(hints);
+    }
+
+    @Override
+    public void addRenderingHints(Map<?, ?> hints) {
+        this.hints.putAll(hints);
+    }
+
+    @Override
+    public RenderingHints getRenderingHints() {
+        return (RenderingHints) hints.clone();
+    }
+
+    @Override
+    public void translate(int x, int y) {
+        transform.translate(x, y);
+    }
+
+    @Override
+    public void translate(double tx, double ty) {
+        transform.translate(tx, ty);
+    }
+
+    @Override
+    public void rotate(double theta) {
+        transform.rotate(theta);
+    }
+
+    @Override
+    public void rotate(double theta, double x, double y) {
+        transform.rotate(theta, x, y);
+    }
+
+    @Override
+    public void scale(double sx, double sy) {
+        transform.scale(sx, sy);
+    }
+
+    @Override
+    public void shear(double shx, double shy) {
+        transform.shear(shx, shy);
+    }
+
+    @Override
+    public void transform(AffineTransform tx) {
+        transform.concatenate(tx);
+    }
+
+    @Override
+    public void setTransform(AffineTransform tx) {
+        transform = new AffineTransform(tx);
+    }
+
+    @Override
+    public AffineTransform getTransform() {
+        return new AffineTransform(transform);
+    }
+
+    @Override
+    public Paint getPaint() {
+        return paint;
+    }
+
+    @Override
+    public Composite getComposite() {
+        return composite;
+    }
+
+    @Override
+    public void setBackground(Color color) {
+        this.background = color;
+    }
+
+    @Override
+    public Color getBackground() {
+        return background;
+    }
+
+    @Override
+    public Stroke getStroke() {
+        return stroke;
+    }
+
+    @Override
+    public void clip(Shape s) {
+        if(s == null) {
+            setClip(null);
+            return;
+        }
+        Shape deviceShape = transform.createTransformedShape(s);
+        if(clip == null) {
+            clip = deviceShape;
+        }
+        else if(clip instanceof Rectangle2D && deviceShape instanceof Rectangle2D) {
+            Rectangle2D intersection = new Rectangle2D.Double();
+            Rectangle2D.intersect((Rectangle2D) clip, (Rectangle2D) deviceShape, intersection);
+            clip = intersection;
+        }
+        else {
+            Area area = new Area(clip);
+            area.intersect(new Area(deviceShape));
+            clip = area;
+        }
+        clipId = null;
+    }
+
+    @Override
+    public FontRenderContext getFontRenderContext() {
+        return new FontRenderContext(null, true, true);
+    }
+
+    @Override
+    public Graphics create() {
+        return new SVGGraphics2D(this);
+    }
+
+    @Override
+    public Color getColor() {
+        return color;
+    }
+
+    @Override
+    public void setColor(Color c) {
+        if(c != null) {
+            this.color = c;
+            this.paint = c;
+        }
+    }
+
+    /**
+     * The XOR mode is not supported by the SVG export, the elements are drawn normally.
+     */
+    @Override
+    public void setPaintMode() {
+    }
+
+    /**
+     * The XOR mode is not supported by the SVG export, the elements are drawn normally.
+     * @param c1 XOR alternation color.
+     */
+    @Override
+    public void setXORMode(Color c1) {
+    }
+
+    @Override
+    public Font getFont() {
+        return font;
+    }
+
+    @Override
+    public void setFont(Font font) {
+        if(font != null) {
+            this.font = font;
+        }
+    }
+
+    @Override
+    public FontMetrics getFontMetrics(Font f) {
+        Graphics2D g2 = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+        try {
+            g2.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+            g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            return g2.getFontMetrics(f);
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    @Override
+    public Rectangle getClipBounds() {
+        Shape userClip = getClip();
+        return userClip == null ? null : userClip.getBounds();
+    }
+
+    @Override
+    public void clipRect(int x, int y, int width, int height) {
+        clip(new Rectangle(x, y, width, height));
+    }
+
+    @Override
+    public void setClip(int x, int y, int width, int height) {
+        setClip(new Rectangle(x, y, width, height));
+    }
+
+    @Override
+    public Shape getClip() {
+        if(clip == null) {
+            return null;
+        }
+        try {
+            return transform.createInverse().createTransformedShape(clip);
+        } catch (NoninvertibleTransformException ex) {
+            return null;
+        }
+    }
+
+    @Override
+    public void setClip(Shape clip) {
+        this.clip = clip == null ? null : transform.createTransformedShape(clip);
+        this.clipId = null;
+    }
+
+    /**
+     * The SVG export can't read back what was drawn, so the area is not copied.
+     */
+    @Override
+    public void copyArea(int x, int y, int width, int height, int dx, int dy) {
+    }
+
+    @Override
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        draw(new Line2D.Float(x1, y1, x2, y2));
+    }
+
+    @Override
+    public void drawRect(int x, int y, int width, int height) {
+        if(width >= 0 && height >= 0) {
+            draw(new Rectangle(x, y, width, height));
+        }
+    }
+
+    @Override
+    public void fillRect(int x, int y, int width, int height) {
+        fill(new Rectangle(x, y, width, height));
+    }
+
+    @Override
+    public void clearRect(int x, int y, int width, int height) {
+        fillBackground(new Rectangle(x, y, width, height), background);
+    }
+
+    @Override
+    public void drawRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+        draw(new RoundRectangle2D.Float(x, y, width, height, arcWidth, arcHeight));
+    }
+
+    @Override
+    public void fillRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+        fill(new RoundRectangle2D.Float(x, y, width, height, arcWidth, arcHeight));
+    }
+
+    @Override
+    public void drawOval(int x, int y, int width, int height) {
+        draw(new Ellipse2D.Float(x, y, width, height));
+    }
+
+    @Override
+    public void fillOval(int x, int y, int width, int height) {
+        fill(new Ellipse2D.Float(x, y, width, height));
+    }
+
+    @Override
+    public void drawArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+        draw(new Arc2D.Float(x, y, width, height, startAngle, arcAngle, Arc2D.OPEN));
+    }
+
+    @Override
+    public void fillArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+        fill(new Arc2D.Float(x, y, width, height, startAngle, arcAngle, Arc2D.PIE));
+    }
+
+    @Override
+    public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints) {
+        if(nPoints < 2) {
+            return;
+        }
+        Path2D path = new Path2D.Float();
+        path.moveTo(xPoints[0], yPoints[0]);
+        for(int i = 1; i < nPoints; i++) {
+            path.lineTo(xPoints[i], yPoints[i]);
+        }
+        draw(path);
+    }
+
+    @Override
+    public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+        draw(new Polygon(xPoints, yPoints, nPoints));
+    }
+
+    @Override
+    public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+        fill(new Polygon(xPoints, yPoints, nPoints));
+    }
+
+    /**
+     * The state of the Graphics2D is only kept in memory, so there is nothing to release.
+     */
+    @Override
+    public void dispose() {
+    }
+
+    /**
+     * Fills the given shape with the given color, keeping the current paint.
+     * @param shape Shape to fill.
+     * @param fillColor Color of the background, nothing is drawn if null.
+     */
+    private void fillBackground(Shape shape, Color fillColor){
+        if(fillColor == null) {
+            return;
+        }
+        Paint currentPaint = paint;
+        paint = fillColor;
+        fill(shape);
+        paint = currentPaint;
+    }
+
+    /**
+     * Writes the element, inside a group applying the current clip if any.
+     * @param element SVG element to write.
+     */
+    private void writeElement(CharSequence element){
+        startElement();
+        output.write(element);
+    }
+
+    /**
+     * Writes the clipPath of the current clip if not written yet, and opens the group applying it.
+     */
+    private void startElement(){
+        if(clip != null && clipId == null) {
+            StringBuilder sb = new StringBuilder();
+            clipId = output.newId("clip");
+            sb.append("<clipPath id=\"").append(clipId).append("\"><path d=\"");
+            appendPath(sb, clip.getPathIterator(null));
+            sb.append("\"/></clipPath>\n");
+            output.write(sb);
+        }
+        output.openClipGroup(clipId);
+    }
+
+    /**
+     * Writes the image as a PNG embedded in an image element.
+     * @param bi Image to write.
+     * @param imageTransform Transformation from the image pixels to the SVG space.
+     */
+    private void writeImage(BufferedImage bi, AffineTransform imageTransform){
+        byte[] png = encodePNG(bi);
+        if(png == null) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("<image width=\"").append(bi.getWidth()).append("\" height=\"").append(bi.getHeight())
+                .append("\" preserveAspectRatio=\"none\"");
+        appendOpacity(sb, "opacity", getCompositeAlpha());
+        appendTransform(sb, imageTransform);
+        sb.append(" xlink:href=\"data:image/png;base64,");
+        startElement();
+        output.write(sb);
+        writeBase64(png);
+        output.write("\"/>\n");
+    }
+
+    /**
+     * Returns the image encoded as PNG, or null if the encoding failed.
+     * @param bi Image to encode.
+     * @return The PNG bytes or null.
+     */
+    private byte[] encodePNG(BufferedImage bi){
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(bi, "png", png);
+        } catch (IOException ex) {
+            output.setError(ex);
+            return null;
+        }
+        return png.toByteArray();
+    }
+
+    /**
+     * Writes the given bytes encoded in base64.
+     * @param bytes Bytes to write.
+     */
+    private void writeBase64(byte[] bytes){
+        //The encoded image is written by chunks to avoid a second copy of the whole image in memory
+        int chunk = 3 * 16 * 1024;
+        for(int offset = 0; offset < bytes.length; offset += chunk) {
+            byte[] part = new byte[Math.min(chunk, bytes.length - offset)];
+            System.arraycopy(bytes, offset, part, 0, part.length);
+            output.write(DatatypeConverter.printBase64Binary(part));
+        }
+    }
+
+    /**
+     * Rasterizes the shape filled with the current paint, which has no SVG equivalent, and writes it as an image.
+     * @param s Shape to fill.
+     */
+    private void fillWithImage(Shape s){
+        Rectangle bounds = transform.createTransformedShape(s).getBounds();
+        if(clip != null) {
+            bounds = bounds.intersection(clip.getBounds());
+        }
+        if(bounds.isEmpty()) {
+            return;
+        }
+        BufferedImage bi = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = bi.createGraphics();
+        g2.setRenderingHints(hints);
+        g2.translate(-bounds.x, -bounds.y);
+        g2.transform(transform);
+        g2.setPaint(paint);
+        g2.fill(s);
+        g2.dispose();
+        writeImage(bi, AffineTransform.getTranslateInstance(bounds.x, bounds.y));
+    }
+
+    /**
+     * Returns the given image as a BufferedImage.
+     * @param img Image to convert.
+     * @param observer Observer of the image loading.
+     * @return The BufferedImage or null if the image isn't loaded.
+     */
+    private static BufferedImage toBufferedImage(Image img, ImageObserver observer){
+        if(img instanceof BufferedImage) {
+            return (BufferedImage) img;
+        }
+        int width = img.getWidth(observer);
+        int height = img.getHeight(observer);
+        if(width <= 0 || height <= 0) {
+            return null;
+        }
+        BufferedImage bi = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = bi.createGraphics();
+        g2.drawImage(img, 0, 0, observer);
+        g2.dispose();
+        return bi;
+    }
+
+    /**
+     * Returns the SVG value of the current paint, writing its definition if needed.
+     * @return The SVG paint value.
+     */
+    private String getPaintReference(){
+        if(paint instanceof GradientPaint) {
+            GradientPaint gradient = (GradientPaint) paint;
+            String id = output.newId("gradient");
+            StringBuilder sb = new StringBuilder();
+            sb.append("<linearGradient id=\"").append(id).append("\" gradientUnits=\"userSpaceOnUse\"");
+            appendPoint(sb, " x1=\"", " y1=\"", gradient.getPoint1());
+            appendPoint(sb, " x2=\"", " y2=\"", gradient.getPoint2());
+            if(gradient.isCyclic()) {
+                sb.append(" spreadMethod=\"reflect\"");
+            }
+            //The user space of the gradient is the one of the element, which already has the transformation
+            sb.append('>');
+            appendStop(sb, "0", gradient.getColor1());
+            appendStop(sb, "1", gradient.getColor2());
+            sb.append("</linearGradient>\n");
+            //The definition isn't clipped but must be written before its use
+            output.write(sb);
+            return "url(#" + id + ")";
+        }
+        if(paint instanceof LinearGradientPaint || paint instanceof RadialGradientPaint) {
+            MultipleGradientPaint gradient = (MultipleGradientPaint) paint;
+            String id = output.newId("gradient");
+            StringBuilder sb = new StringBuilder();
+            String element;
+            if(paint instanceof LinearGradientPaint) {
+                element = "linearGradient";
+                sb.append('<').append(element).append(" id=\"").append(id).append('"');
+                appendPoint(sb, " x1=\"", " y1=\"", ((LinearGradientPaint) paint).getStartPoint());
+                appendPoint(sb, " x2=\"", " y2=\"", ((LinearGradientPaint) paint).getEndPoint());
+            }
+            else {
+                RadialGradientPaint radial = (RadialGradientPaint) paint;
+                element = "radialGradient";
+                sb.append('<').append(element).append(" id=\"").append(id).append('"');
+                appendPoint(sb, " cx=\"", " cy=\"", radial.getCenterPoint());
+                appendPoint(sb, " fx=\"", " fy=\"", radial.getFocusPoint());
+                sb.append(" r=\"");
+                appendNumber(sb, radial.getRadius(), COORDINATE_DECIMALS);
+                sb.append('"');
+            }
+            sb.append(" gradientUnits=\"userSpaceOnUse\"");
+            if(gradient.getCycleMethod() == MultipleGradientPaint.CycleMethod.REFLECT) {
+                sb.append(" spreadMethod=\"reflect\"");
+            }
+            else if(gradient.getCycleMethod() == MultipleGradientPaint.CycleMethod.REPEAT) {
+                sb.append(" spreadMethod=\"repeat\"");
+            }
+            if(gradient.getColorSpace() == MultipleGradientPaint.ColorSpaceType.LINEAR_RGB) {
+                sb.append(" color-interpolation=\"linearRGB\"");
+            }
+            appendTransform(sb, "gradientTransform", gradient.getTransform());
+            sb.append('>');
+            float[] fractions = gradient.getFractions();
+            Color[] colors = gradient.getColors();
+            for(int i = 0; i < fractions.length; i++) {
+                StringBuilder offset = new StringBuilder();
+                appendNumber(offset, fractions[i], COORDINATE_DECIMALS + 1);
+                appendStop(sb, offset.toString(), colors[i]);
+            }
+            sb.append("</").append(element).append(">\n");
+            output.write(sb);
+            return "url(#" + id + ")";
+        }
+        if(paint instanceof TexturePaint) {
+            TexturePaint texture = (TexturePaint) paint;
+            BufferedImage image = texture.getImage();
+            Rectangle2D anchor = texture.getAnchorRect();
+            byte[] png = encodePNG(image);
+            if(png == null) {
+                return "none";
+            }
+            String id = output.newId("pattern");
+            StringBuilder sb = new StringBuilder();
+            sb.append("<pattern id=\"").append(id).append("\" patternUnits=\"userSpaceOnUse\"");
+            appendPoint(sb, " x=\"", " y=\"", new Point2D.Double(anchor.getX(), anchor.getY()));
+            appendPoint(sb, " width=\"", " height=\"", new Point2D.Double(anchor.getWidth(), anchor.getHeight()));
+            //The image is scaled to the anchor rectangle, the position is the one of the tile
+            sb.append("><image width=\"").append(image.getWidth()).append("\" height=\"").append(image.getHeight())
+                    .append("\" preserveAspectRatio=\"none\"");
+            appendTransform(sb, AffineTransform.getScaleInstance(anchor.getWidth() / image.getWidth(),
+                    anchor.getHeight() / image.getHeight()));
+            sb.append(" xlink:href=\"data:image/png;base64,");
+            output.write(sb);
+            writeBase64(png);
+            output.write("\"/></pattern>\n");
+            return "url(#" + id + ")";
+        }
+        Color c = paint instanceof Color ? (Color) paint : color;
+        return String.format("#%02x%02x%02x", c.getRed(), c.getGreen(), c.getBlue());
+    }
+
+    /**
+     * Returns true if the current paint can be written as an SVG paint.
+     * @return True for the colors, the gradients and the TexturePaint.
+     */
+    private boolean isSVGPaint(){
+        return paint instanceof Color || paint instanceof GradientPaint || paint instanceof LinearGradientPaint ||
+                paint instanceof RadialGradientPaint || paint instanceof TexturePaint;
+    }
+
+    /**
+     * Returns the opacity of the current paint, combined with the one of the composite. The opacity of the gradients
+     * and of the textures is in their definition.
+     * @return The opacity, from 0 to 1.
+     */
+    private double getPaintAlpha(){
+        double alpha = 1;
+        if(paint instanceof Color) {
+            alpha = ((Color) paint).getAlpha() / 255.0;
+        }
+        return alpha * getCompositeAlpha();
+    }
+
+    /**
+     * Returns the opacity of the current composite.
+     * @return The opacity, from 0 to 1.
+     */
+    private double getCompositeAlpha(){
+        if(composite instanceof AlphaComposite) {
+            return ((AlphaComposite) composite).getAlpha();
+        }
+        return 1;
+    }
+
+    /**
+     * Returns the SVG font family of the given font, the logical Java fonts are replaced by the generic families.
+     * @param font Font.
+     * @return The SVG font family.
+     */
+    private static String getFontFamily(Font font){
+        String family = font.getFamily();
+        switch(family) {
+            case Font.SERIF: return "serif";
+            case Font.MONOSPACED: return "monospace";
+            case Font.SANS_SERIF:
+            case Font.DIALOG:
+            case Font.DIALOG_INPUT: return "sans-serif";
+            default: return "'" + family.replace("'", "") + "', sans-serif";
+        }
+    }
+
+    /**
+     * Appends the path data of the given path.
+     * @param sb StringBuilder where the path data is appended.
+     * @param pathIterator Iterator of the path.
+     * @return False if the path is empty.
+     */
+    private static boolean appendPath(StringBuilder sb, PathIterator pathIterator){
+        double[] coords = new double[6];
+        boolean empty = true;
+        for(; !pathIterator.isDone(); pathIterator.next()) {
+            int count;
+            switch(pathIterator.currentSegment(coords)) {
+                case PathIterator.SEG_MOVETO: sb.append('M'); count = 2; break;
+                case PathIterator.SEG_LINETO: sb.append('L'); count = 2; break;
+                case PathIterator.SEG_QUADTO: sb.append('Q'); count = 4; break;
+                case PathIterator.SEG_CUBICTO: sb.append('C'); count = 6; break;
+                default: sb.append('Z'); count = 0; break;
+            }
+            for(int i = 0; i < count; i++) {
+                if(i > 0) {
+                    sb.append(' ');
+                }
+                appendNumber(sb, coords[i], COORDINATE_DECIMALS);
+            }
+            empty = false;
+        }
+        return !empty;
+    }
+
+    /**
+     * Appends the transform attribute if the transformation isn't the identity.
+     * @param sb StringBuilder where the attribute is appended.
+     * @param at Transformation.
+     */
+    private static void appendTransform(StringBuilder sb, AffineTransform at){
+        appendTransform(sb, "transform", at);
+    }
+
+    /**
+     * Appends the given transform attribute if the transformation isn't the identity.
+     * @param sb StringBuilder where the attribute is appended.
+     * @param attribute Name of the attribute.
+     * @param at Transformation.
+     */
+    private static void appendTransform(StringBuilder sb, String attribute, AffineTransform at){
+        if(at.isIdentity()) {
+            return;
+        }
+        sb.append(' ').append(attribute).append("=\"");
+        if(at.getType() == AffineTransform.TYPE_TRANSLATION) {
+            sb.append("translate(");
+            appendNumber(sb, at.getTranslateX(), COORDINATE_DECIMALS);
+            sb.append(' ');
+            appendNumber(sb, at.getTranslateY(), COORDINATE_DECIMALS);
+        }
+        else {
+            sb.append("matrix(");
+            appendNumber(sb, at.getScaleX(), MATRIX_DECIMALS);
+            sb.append(' ');
+            appendNumber(sb, at.getShearY(), MATRIX_DECIMALS);
+            sb.append(' ');
+            appendNumber(sb, at.getShearX(), MATRIX_DECIMALS);
+            sb.append(' ');
+            appendNumber(sb, at.getScaleY(), MATRIX_DECIMALS);
+            sb.append(' ');
+            appendNumber(sb, at.getTranslateX(), COORDINATE_DECIMALS);
+            sb.append(' ');
+            appendNumber(sb, at.getTranslateY(), COORDINATE_DECIMALS);
+        }
+        sb.append(")\"");
+    }
+
+    /**
+     * Appends an opacity attribute if the opacity is lower than 1.
+     * @param sb StringBuilder where the attribute is appended.
+     * @param attribute Name of the attribute.
+     * @param alpha Opacity.
+     */
+    private static void appendOpacity(StringBuilder sb, String attribute, double alpha){
+        if(alpha < 1) {
+            sb.append(' ').append(attribute).append("=\"");
+            appendNumber(sb, Math.max(0, alpha), COORDINATE_DECIMALS);
+            sb.append('"');
+        }
+    }
+
+    /**
+     * Appends the two attributes of a point.
+     * @param sb StringBuilder where the attributes are appended.
+     * @param x Start of the x attribute.
+     * @param y Start of the y attribute.
+     * @param point Point.
+     */
+    private static void appendPoint(StringBuilder sb, String x, String y, Point2D point){
+        sb.append(x);
+        appendNumber(sb, point.getX(), COORDINATE_DECIMALS);
+        sb.append('"').append(y);
+        appendNumber(sb, point.getY(), COORDINATE_DECIMALS);
+        sb.append('"');
+    }
+
+    /**
+     * Appends a stop element of a gradient.
+     * @param sb StringBuilder where the element is appended.
+     * @param offset Offset of the stop.
+     * @param c Color of the stop.
+     */
+    private static void appendStop(StringBuilder sb, String offset, Color c){
+        sb.append("<stop offset=\"").append(offset).append("\" stop-color=\"")
+                .append(String.format("#%02x%02x%02x", c.getRed(), c.getGreen(), c.getBlue())).append('"');
+        appendOpacity(sb, "stop-opacity", c.getAlpha() / 255.0);
+        sb.append("/>");
+    }
+
+    /**
+     * Appends the number with at most the given number of decimals, without exponent nor trailing zeros.
+     * @param sb StringBuilder where the number is appended.
+     * @param value Number to append.
+     * @param decimals Maximum number of decimals.
+     */
+    static void appendNumber(StringBuilder sb, double value, int decimals){
+        if(Double.isNaN(value) || Double.isInfinite(value)) {
+            sb.append('0');
+            return;
+        }
+        long factor = 1;
+        for(int i = 0; i < decimals; i++) {
+            factor *= 10;
+        }
+        long scaled = Math.round(Math.abs(value) * factor);
+        if(scaled == 0) {
+            sb.append('0');
+            return;
+        }
+        if(value < 0) {
+            sb.append('-');
+        }
+        sb.append(scaled / factor);
+        long fraction = scaled % factor;
+        if(fraction != 0) {
+            sb.append('.');
+            for(long digit = factor / 10; digit > fraction; digit /= 10) {
+                sb.append('0');
+            }
+            while(fraction % 10 == 0) {
+                fraction /= 10;
+            }
+            sb.append(fraction);
+        }
+    }
+
+    /**
+     * Appends the text with the XML special characters escaped. The characters not allowed in XML are removed.
+     * @param sb StringBuilder where the text is appended.
+     * @param text Text to append.
+     */
+    static void appendEscaped(StringBuilder sb, String text){
+        for(int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch(c) {
+                case '&': sb.append("&amp;"); break;
+                case '<': sb.append("&lt;"); break;
+                case '>': sb.append("&gt;"); break;
+                case '"': sb.append("&quot;"); break;
+                case '\'': sb.append("&apos;"); break;
+                default:
+                    if(c >= 0x20 || c == '\t' || c == '\n' || c == '\r') {
+                        sb.append(c);
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Output of the SVG document, shared by all the Graphics2D created from the root one.
+     */
+    private static class Output {
+        /** Writer of the document. */
+        private final Writer writer;
+        /** Counter used to generate the identifiers. */
+        private int nextId;
+        /** Identifier of the clipPath of the open clip group, null if no clip group is open. */
+        private String openClipId;
+        /** First exception thrown while writing. */
+        private IOException error;
+
+        /**
+         * Main constructor.
+         * @param writer Writer of the document.
+         */
+        private Output(Writer writer){
+            this.writer = writer;
+            this.nextId = 0;
+            this.openClipId = null;
+            this.error = null;
+        }
+
+        /**
+         * Writes the text, unless a previous writing failed.
+         * @param text Text to write.
+         */
+        private void write(CharSequence text){
+            if(error != null) {
+                return;
+            }
+            try {
+                writer.append(text);
+            } catch (IOException ex) {
+                error = ex;
+            }
+        }
+
+        /**
+         * Keeps the first writing error.
+         * @param ex Exception.
+         */
+        private void setError(IOException ex){
+            if(error == null) {
+                error = ex;
+            }
+        }
+
+        /**
+         * Returns a new identifier.
+         * @param prefix Prefix of the identifier.
+         * @return The identifier.
+         */
+        private String newId(String prefix){
+            return prefix + (nextId++);
+        }
+
+        /**
+         * Returns a unique identifier made of the allowed characters of the given name.
+         * @param name Name to convert.
+         * @return The identifier.
+         */
+        private String uniqueId(String name){
+            StringBuilder sb = new StringBuilder();
+            for(int i = 0; i < name.length(); i++) {
+                char c = name.charAt(i);
+                sb.append(Character.isLetterOrDigit(c) || c == '-' || c == '_' ? c : '_');
+            }
+            if(sb.length() == 0 || !Character.isLetter(sb.charAt(0))) {
+                sb.insert(0, "g");
+            }
+            return newId(sb.toString() + "-");
+        }
+
+        /**
+         * Opens the group applying the given clip, so the consecutive elements with the same clip share one group.
+         * @param clipId Identifier of the clipPath, null for no clip.
+         */
+        private void openClipGroup(String clipId){
+            if(clipId == null ? openClipId == null : clipId.equals(openClipId)) {
+                return;
+            }
+            closeClipGroup();
+            if(clipId != null) {
+                write("<g clip-path=\"url(#" + clipId + ")\">\n");
+                openClipId = clipId;
+            }
+        }
+
+        /**
+         * Closes the open clip group, if any.
+         */
+        private void closeClipGroup(){
+            if(openClipId != null) {
+                write("</g>\n");
+                openClipId = null;
+            }
+        }
+    }
+}
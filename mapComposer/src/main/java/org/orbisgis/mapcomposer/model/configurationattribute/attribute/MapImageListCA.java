@@ -119,9 +119,17 @@ public class MapImageListCA extends BaseListCA<MapImage> implements RefreshCA{
      */
     @Override
     public void refresh(MainController uic) {
+        refresh(uic.getGEList());
+    }
+
+    /**
+     * Refreshes the list of MapImages from the given GraphicalElements and selects the saved one.
+     * @param listGE List of the GraphicalElements of the document.
+     */
+    public void refresh(List<GraphicalElement> listGE) {
         list = new ArrayList<>();
         MapImage choice = null;
-        for(GraphicalElement ge : uic.getGEList()){
+        for(GraphicalElement ge : listGE){
             if(ge instanceof MapImage){
                 this.add((MapImage)ge);
                 if(((MapImage)ge).getIdentifier().equals(mapImageId)) {
@@ -72,6 +72,12 @@ public class OwsContextCA extends BaseListCA<String> implements RefreshCA{
     /** OwsMapContext corresponding to the path selected in the list.*/
     private OwsMapContext omc;
 
+    /** Path of the OWS-Context file read in the OwsMapContext. */
+    private String loadedPath;
+
+    /** Modification date of the OWS-Context file when it was read. */
+    private long loadedModification;
+
     private DataManager dataManager;
     private ViewWorkspace viewWorkspace;
     private MapEditorExtension mapEditorExtension;
@@ -108,6 +114,15 @@ public class OwsContextCA extends BaseListCA<String> implements RefreshCA{
 
     @Override
     public void refresh(MainController mainController) {
+        refresh(mainController, true);
+    }
+
+    /**
+     * Refreshes the list of OWS-Context files and reads the selected one.
+     * @param mainController MainController giving the workspace, can be null.
+     * @param open True to also open the OwsMapContext, false to leave its opening to the method open().
+     */
+    public void refresh(MainController mainController, boolean open) {
         if(mainController!= null) {
             if (dataManager == null)
                 dataManager = mainController.getDataManager();
@@ -123,20 +138,68 @@ public class OwsContextCA extends BaseListCA<String> implements RefreshCA{
         //Refresh of the selected file
         if(omc==null)
             omc = new OwsMapContext(dataManager);
-        reloadSelectedOMC();
+        reloadSelectedOMC(open);
+    }
+
+    /**
+     * Opens the read OwsMapContext if it isn't open yet. As it loads all the layers, it may be long and should not be
+     * called from the EDT.
+     */
+    public void open(){
+        if(omc == null || loadedPath == null || omc.isOpen())
+            return;
+        try {
+            omc.open(new NullProgressMonitor());
+        } catch (LayerException ex) {
+            LoggerFactory.getLogger(OwsContextCA.class).error(ex.getMessage());
+        }
     }
     
     /**
-     * Reload the OWS-Context corresponding to the value of ConfigurationAttribute. 
+     * Sets the DataManager used to open the OwsMapContext without the MainController, i.e. for an export without UI.
+     * The list of OWS-Context files is then the saved one instead of the one of the workspace.
+     * @param dataManager DataManager used to open the OwsMapContext.
+     */
+    public void setDataManager(DataManager dataManager){
+        this.dataManager = dataManager;
+        if(dataManager != null && omc == null) {
+            omc = new OwsMapContext(dataManager);
+        }
+        if(omc != null) {
+            reloadSelectedOMC();
+        }
+    }
+
+    /**
+     * Reload the OWS-Context corresponding to the value of ConfigurationAttribute.
+     * If the file was already read and hasn't been modified since, the opened OwsMapContext is kept. So its layers
+     * and styles stay the same and their renderings can be reused.
      * @throws FileNotFoundException 
      */
     public void reloadSelectedOMC(){
+        reloadSelectedOMC(true);
+    }
+
+    /**
+     * Reload the OWS-Context corresponding to the value of ConfigurationAttribute.
+     * @param open True to also open the OwsMapContext, false to only read it.
+     */
+    private void reloadSelectedOMC(boolean open){
         if (index != -1) {
+            File file = new File(getSelected());
+            if ((omc.isOpen() || !open) && file.getPath().equals(loadedPath) && file.lastModified() == loadedModification)
+                return;
             try {
-                if (omc.isOpen())
-                    omc.close(new NullProgressMonitor());
-                omc.read(new FileInputStream(new File(getSelected())));
-                omc.open(new NullProgressMonitor());
+                if (!file.getPath().equals(loadedPath) || file.lastModified() != loadedModification) {
+                    if (omc.isOpen())
+                        omc.close(new NullProgressMonitor());
+                    loadedPath = null;
+                    omc.read(new FileInputStream(file));
+                    loadedPath = file.getPath();
+                    loadedModification = file.lastModified();
+                }
+                if (open)
+                    omc.open(new NullProgressMonitor());
             } catch (LayerException|FileNotFoundException ex) {
                 LoggerFactory.getLogger(OwsContextCA.class).error(ex.getMessage());
             }
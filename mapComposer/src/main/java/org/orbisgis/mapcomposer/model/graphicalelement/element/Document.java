@@ -39,12 +39,11 @@ import org.orbisgis.mapcomposer.model.configurationattribute.attribute.StringCA;
 import org.orbisgis.mapcomposer.model.configurationattribute.interfaces.ConfigurationAttribute;
 import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GEProperties;
 import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GraphicalElement;
+import org.orbisgis.mapcomposer.model.utils.Resolution;
 import org.xnap.commons.i18n.I18n;
 import org.xnap.commons.i18n.I18nFactory;
 
 import java.awt.Dimension;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -279,18 +278,8 @@ public class Document extends SimpleGE implements GEProperties {
             this.w = w;
             this.h = h;
 
-            //To be run on a server (no GUI), try to get the default Toolkit.
-            //If it is not possible use a default value for the screen resolution.
-            try {
-                //Get the method getDefaultToolkit
-                Method m = Class.forName("java.awt.Toolkit").getDeclaredMethod("getDefaultToolkit", null);
-                //Get the ToolKit return by the previous method
-                Object o = m.invoke(null, null);
-                //Get the screen resolution
-                dpi = (Integer)o.getClass().getDeclaredMethod("getScreenResolution").invoke(o);
-            } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException | ClassNotFoundException e) {
-                dpi = 96;
-            }
+            //Headless safe screen resolution
+            dpi = Resolution.getScreenDPI();
         }
 
         /**
@@ -330,18 +319,8 @@ public class Document extends SimpleGE implements GEProperties {
          * Main constructor.
          */
         private Unit(double ratioToPixel) {
-            //To be run on a server (no GUI), try to get the default Toolkit.
-            //If it is not possible use a default value for the screen resolution.
-            try {
-                //Get the method getDefaultToolkit
-                Method m = Class.forName("java.awt.Toolkit").getDeclaredMethod("getDefaultToolkit", null);
-                //Get the ToolKit return by the previous method
-                Object o = m.invoke(null, null);
-                //Get the screen resolution
-                dpi = (double) (Integer) o.getClass().getDeclaredMethod("getScreenResolution").invoke(o);
-            } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException | ClassNotFoundException e) {
-                dpi = 96;
-            }
+            //Headless safe screen resolution
+            dpi = Resolution.getScreenDPI();
             if (ratioToPixel != 0) {
                 this.ratioToPixel = ratioToPixel * dpi;
             } else {
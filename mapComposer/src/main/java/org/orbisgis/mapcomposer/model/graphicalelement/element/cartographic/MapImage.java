@@ -83,12 +83,23 @@ public class MapImage extends SimpleCartoGE implements GERefresh, GEIdentifier {
     
     @Override
     public void refresh() {
+        refresh(true);
+    }
+
+    /**
+     * Refreshes the map with its OWS-Context.
+     * @param open True to also open the OwsMapContext, false to leave the loading of its layers to the method open().
+     */
+    public void refresh(boolean open) {
         if(getOwsMapContext()!=null && getOwsMapContext().getBoundingBox()!=null) {
             try {
-                owsc.refresh(null);
+                owsc.refresh(null, open);
                 mapTransform.setExtent(this.getOwsMapContext().getBoundingBox());
-                mapTransform.setImage(new BufferedImage(this.getWidth(), this.getHeight(), BufferedImage.TYPE_INT_ARGB));
-                if (!this.getOwsMapContext().isOpen())
+                //The image of the MapTransform is only used for its size, so it is only replaced on resizing
+                BufferedImage image = mapTransform.getImage();
+                if (image == null || image.getWidth() != this.getWidth() || image.getHeight() != this.getHeight())
+                    mapTransform.setImage(new BufferedImage(this.getWidth(), this.getHeight(), BufferedImage.TYPE_INT_ARGB));
+                if (open && !this.getOwsMapContext().isOpen())
                     this.getOwsMapContext().open(new NullProgressMonitor());
             } catch (LayerException ex) {
                 LoggerFactory.getLogger(MapImage.class).error(ex.getMessage());
@@ -98,6 +109,14 @@ public class MapImage extends SimpleCartoGE implements GERefresh, GEIdentifier {
             mapTransform.setImage(null);
     }
     
+    /**
+     * Opens the OwsMapContext of the map if it isn't open yet. As it loads all the layers, it may be long and should
+     * not be called from the EDT.
+     */
+    public void open() {
+        owsc.open();
+    }
+
     /**
      * Returns the MapTransform of the map.
      * @return The MapTransform of the map.
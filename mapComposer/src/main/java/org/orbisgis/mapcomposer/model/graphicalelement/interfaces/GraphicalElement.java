@@ -73,7 +73,7 @@ public interface GraphicalElement {
     
     /**
      * Sets the z position.
-     * Only used on saveProject and loadProject to keep the z position.
+     * Only used on saving and loading the document to keep the z position.
      * @param z The z position.
      */
     public void setZ(int z);
@@ -110,7 +110,7 @@ public interface GraphicalElement {
     
     /**
      * Returns the z position.
-     * Only used on saveProject and loadProject to keep the z position.
+     * Only used on saving and loading the document to keep the z position.
      * @return The z position.
      */
     public int getZ();
@@ -0,0 +1,365 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+
+package org.orbisgis.mapcomposer.model.graphicalelement.utils;
+
+import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GraphicalElement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Ordered list of the GraphicalElements giving their z-order : the index 0 is the GraphicalElement on the front and
+ * the last index is the one on the back.
+ * The position of each GraphicalElement is stored in a map, so getting it is done in constant time, and the moves of
+ * a set of GraphicalElements (to the front, forward, backward, to the back) are done in one pass over the list.
+ * This class is not synchronized.
+ *
+ * @author Sylvain PALOMINOS
+ */
+public class ZOrderList implements Iterable<GraphicalElement> {
+
+    /** GraphicalElements ordered from the front to the back. */
+    private final List<GraphicalElement> list;
+
+    /** Position of each GraphicalElement in the list. */
+    private final Map<GraphicalElement, Integer> positionMap;
+
+    /** Index of the first position of the map which should be updated, or -1 if the map is up to date. */
+    private int dirtyFrom;
+
+    /**
+     * Main constructor.
+     */
+    public ZOrderList(){
+        list = new ArrayList<>();
+        positionMap = new HashMap<>();
+        dirtyFrom = -1;
+    }
+
+    /**
+     * Constructor initializing the order with the given GraphicalElements, from the front to the back.
+     * @param order GraphicalElements ordered from the front to the back.
+     */
+    public ZOrderList(Collection<GraphicalElement> order){
+        this();
+        addAll(order);
+    }
+
+    /**
+     * Returns the number of GraphicalElements.
+     * @return The number of GraphicalElements.
+     */
+    public int size(){
+        return list.size();
+    }
+
+    /**
+     * Returns true if there is no GraphicalElement.
+     * @return True if the list is empty.
+     */
+    public boolean isEmpty(){
+        return list.isEmpty();
+    }
+
+    /**
+     * Returns the GraphicalElement at the given position.
+     * @param index Position of the GraphicalElement, 0 being the front.
+     * @return The GraphicalElement.
+     */
+    public GraphicalElement get(int index){
+        return list.get(index);
+    }
+
+    /**
+     * Returns true if the GraphicalElement is in the list.
+     * @param ge GraphicalElement to test.
+     * @return True if the GraphicalElement is in the list.
+     */
+    public boolean contains(GraphicalElement ge){
+        return positionMap.containsKey(ge);
+    }
+
+    /**
+     * Returns the position of the GraphicalElement, 0 being the front, or -1 if it is not in the list.
+     * @param ge GraphicalElement.
+     * @return The position of the GraphicalElement or -1.
+     */
+    public int indexOf(GraphicalElement ge){
+        updatePositions();
+        Integer position = positionMap.get(ge);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * Adds the GraphicalElement on the back. If it is already in the list, nothing is done.
+     * @param ge GraphicalElement to add.
+     */
+    public void add(GraphicalElement ge){
+        if(positionMap.containsKey(ge)) {
+            return;
+        }
+        positionMap.put(ge, list.size());
+        list.add(ge);
+    }
+
+    /**
+     * Adds the GraphicalElements on the back, keeping their order.
+     * @param collection GraphicalElements to add.
+     */
+    public void addAll(Collection<GraphicalElement> collection){
+        for(GraphicalElement ge : collection) {
+            add(ge);
+        }
+    }
+
+    /**
+     * Removes the GraphicalElement from the list.
+     * @param ge GraphicalElement to remove.
+     * @return True if the GraphicalElement was in the list.
+     */
+    public boolean remove(GraphicalElement ge){
+        int index = indexOf(ge);
+        if(index == -1) {
+            return false;
+        }
+        list.remove(index);
+        positionMap.remove(ge);
+        markDirty(index);
+        return true;
+    }
+
+    /**
+     * Removes the GraphicalElements from the list in one pass.
+     * @param collection GraphicalElements to remove.
+     */
+    public void removeAll(Collection<GraphicalElement> collection){
+        Set<GraphicalElement> set = new HashSet<>(collection);
+        int first = -1;
+        int j = 0;
+        for(int i = 0; i < list.size(); i++) {
+            GraphicalElement ge = list.get(i);
+            if(set.contains(ge)) {
+                positionMap.remove(ge);
+                if(first == -1) {
+                    first = i;
+                }
+            }
+            else {
+                list.set(j++, ge);
+            }
+        }
+        truncate(j);
+        if(first != -1) {
+            markDirty(first);
+        }
+    }
+
+    /**
+     * Removes all the GraphicalElements.
+     */
+    public void clear(){
+        list.clear();
+        positionMap.clear();
+        dirtyFrom = -1;
+    }
+
+    /**
+     * Moves the given GraphicalElements to the front, keeping their relative order.
+     * @param collection GraphicalElements to move.
+     */
+    public void moveToFront(Collection<GraphicalElement> collection){
+        Set<GraphicalElement> set = toContainedSet(collection);
+        if(set.isEmpty()) {
+            return;
+        }
+        List<GraphicalElement> moved = new ArrayList<>(set.size());
+        List<GraphicalElement> others = new ArrayList<>(list.size() - set.size());
+        for(GraphicalElement ge : list) {
+            if(set.contains(ge)) {
+                moved.add(ge);
+            }
+            else {
+                others.add(ge);
+            }
+        }
+        list.clear();
+        list.addAll(moved);
+        list.addAll(others);
+        markDirty(0);
+    }
+
+    /**
+     * Moves the given GraphicalElements to the back, keeping their relative order.
+     * @param collection GraphicalElements to move.
+     */
+    public void moveToBack(Collection<GraphicalElement> collection){
+        Set<GraphicalElement> set = toContainedSet(collection);
+        if(set.isEmpty()) {
+            return;
+        }
+        List<GraphicalElement> moved = new ArrayList<>(set.size());
+        List<GraphicalElement> others = new ArrayList<>(list.size() - set.size());
+        for(GraphicalElement ge : list) {
+            if(set.contains(ge)) {
+                moved.add(ge);
+            }
+            else {
+                others.add(ge);
+            }
+        }
+        list.clear();
+        list.addAll(others);
+        list.addAll(moved);
+        markDirty(0);
+    }
+
+    /**
+     * Moves each of the given GraphicalElements one position toward the front, over the previous GraphicalElement
+     * which is not moved. A GraphicalElement already on the front, or behind moved GraphicalElements on the front,
+     * doesn't move.
+     * @param collection GraphicalElements to move.
+     */
+    public void moveForward(Collection<GraphicalElement> collection){
+        Set<GraphicalElement> set = toContainedSet(collection);
+        int first = -1;
+        for(int i = 1; i < list.size(); i++) {
+            if(set.contains(list.get(i)) && !set.contains(list.get(i - 1))) {
+                Collections.swap(list, i - 1, i);
+                if(first == -1) {
+                    first = i - 1;
+                }
+            }
+        }
+        if(first != -1) {
+            markDirty(first);
+        }
+    }
+
+    /**
+     * Moves each of the given GraphicalElements one position toward the back, over the next GraphicalElement which is
+     * not moved. A GraphicalElement already on the back, or in front of moved GraphicalElements on the back, doesn't
+     * move.
+     * @param collection GraphicalElements to move.
+     */
+    public void moveBackward(Collection<GraphicalElement> collection){
+        Set<GraphicalElement> set = toContainedSet(collection);
+        int first = -1;
+        for(int i = list.size() - 2; i >= 0; i--) {
+            if(set.contains(list.get(i)) && !set.contains(list.get(i + 1))) {
+                Collections.swap(list, i, i + 1);
+                first = i;
+            }
+        }
+        if(first != -1) {
+            markDirty(first);
+        }
+    }
+
+    /**
+     * Returns an unmodifiable view of the GraphicalElements ordered from the front to the back.
+     * @return The GraphicalElements from the front to the back.
+     */
+    public List<GraphicalElement> asList(){
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Returns a new list of the GraphicalElements ordered from the back to the front (i.e. in the drawing order).
+     * @return The GraphicalElements from the back to the front.
+     */
+    public List<GraphicalElement> toBackToFrontList(){
+        List<GraphicalElement> reversed = new ArrayList<>(list);
+        Collections.reverse(reversed);
+        return reversed;
+    }
+
+    @Override
+    public Iterator<GraphicalElement> iterator() {
+        return asList().iterator();
+    }
+
+    /**
+     * Returns the GraphicalElements of the collection which are in the list.
+     * @param collection GraphicalElements.
+     * @return The set of the GraphicalElements contained in the list.
+     */
+    private Set<GraphicalElement> toContainedSet(Collection<GraphicalElement> collection){
+        Set<GraphicalElement> set = new HashSet<>();
+        for(GraphicalElement ge : collection) {
+            if(positionMap.containsKey(ge)) {
+                set.add(ge);
+            }
+        }
+        return set;
+    }
+
+    /**
+     * Removes the end of the list from the given size.
+     * @param size New size of the list.
+     */
+    private void truncate(int size){
+        list.subList(size, list.size()).clear();
+    }
+
+    /**
+     * Marks the positions from the given index as outdated.
+     * @param index First outdated position.
+     */
+    private void markDirty(int index){
+        if(dirtyFrom == -1 || index < dirtyFrom) {
+            dirtyFrom = index;
+        }
+    }
+
+    /**
+     * Updates the outdated positions of the map.
+     */
+    private void updatePositions(){
+        if(dirtyFrom == -1) {
+            return;
+        }
+        for(int i = dirtyFrom; i < list.size(); i++) {
+            positionMap.put(list.get(i), i);
+        }
+        dirtyFrom = -1;
+    }
+}
@@ -0,0 +1,545 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+
+package org.orbisgis.mapcomposer.model.utils;
+
+import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GraphicalElement;
+import org.slf4j.LoggerFactory;
+import org.xnap.commons.i18n.I18n;
+import org.xnap.commons.i18n.I18nFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Journal of the document used for the autosave. Instead of saving the whole document, each checkpoint appends to
+ * the journal only the GraphicalElements added, modified or removed since the previous one.
+ *
+ * The edits are registered on the EDT with elementAdded(), elementModified() and elementRemoved(). On a checkpoint,
+ * only the changed GraphicalElements are encoded, with the record format of the {@link BinaryProjectHandler}, and
+ * the records are written to the file by a background thread, so the EDT never waits for the disk. When the journal
+ * becomes more than twice as big as the live records, it is compacted by the background thread into a new file
+ * containing only the last record of each GraphicalElement, which then atomically replaces the journal.
+ *
+ * Each record of the file is shaped like that :
+ *
+ * type, GraphicalElement journal identifier, payload length, payload, CRC32
+ *
+ * A record which was not completely written when the application crashed is ignored on the recovery.
+ *
+ * Each MapComposer window uses its own journal of the autosave folder, which it locks with a lock file while it is
+ * open. So a journal is only recovered by a window once the one which wrote it is closed or has crashed.
+ *
+ * @author Sylvain PALOMINOS
+ */
+public class AutosaveJournal {
+
+    /** Magic number starting the journal files ("MCJL") */
+    private static final int MAGIC = 0x4D434A4C;
+    /** Version of the journal format written */
+    private static final short FORMAT_VERSION = 1;
+    /** Size of the journal header */
+    private static final int HEADER_SIZE = 6;
+    /** Size of a record without its payload */
+    private static final int RECORD_OVERHEAD = 13;
+    /** Record containing the new state of a GraphicalElement */
+    private static final byte RECORD_PUT = 1;
+    /** Record of the removal of a GraphicalElement */
+    private static final byte RECORD_REMOVE = 2;
+    /** Record marking that the document was saved, so there is nothing to recover */
+    private static final byte RECORD_SAVED = 3;
+    /** Size under which the journal is never compacted */
+    private static final long MIN_COMPACTION_SIZE = 64 * 1024;
+    /** Maximum number of journals in the autosave folder, i.e. of MapComposer windows open at the same time */
+    private static final int MAX_JOURNALS = 100;
+
+    /** Object for the translation*/
+    private static final I18n i18n = I18nFactory.getI18n(AutosaveJournal.class);
+
+    /** Journal file */
+    private final File file;
+    /** BinaryProjectHandler encoding and decoding the GraphicalElements */
+    private final BinaryProjectHandler binaryHandler;
+    /** Executor writing the journal */
+    private final ExecutorService executor;
+
+    /** Journal identifier of each GraphicalElement of the document. Only used on the EDT. */
+    private final Map<GraphicalElement, Integer> idMap = new IdentityHashMap<>();
+    /** Position, size, rotation and z-index of each GraphicalElement at the last checkpoint. Only used on the EDT. */
+    private final Map<GraphicalElement, int[]> stateMap = new IdentityHashMap<>();
+    /** GraphicalElements modified since the last checkpoint. Only used on the EDT. */
+    private final Set<GraphicalElement> modifiedSet =
+            Collections.newSetFromMap(new IdentityHashMap<GraphicalElement, Boolean>());
+    /** Journal identifiers of the GraphicalElements removed since the last checkpoint. Only used on the EDT. */
+    private List<Integer> removedList = new ArrayList<>();
+    /** Next journal identifier. Only used on the EDT. */
+    private int nextId = 0;
+
+    /** Last record of each GraphicalElement in the journal. Only used by the executor. */
+    private final Map<Integer, byte[]> recordMap = new LinkedHashMap<>();
+    /** Output of the journal, null if the journal is not started. Only used by the executor. */
+    private FileOutputStream out;
+    /** Size of the journal file and size of the last records. Only used by the executor. */
+    private long journalSize;
+    private long liveSize;
+    /** True if the last record is a RECORD_SAVED one. Only used by the executor. */
+    private boolean saved;
+    /** Lock of the journal file, null if the journal isn't locked. */
+    private FileLock lock;
+
+    /**
+     * Main constructor. The journal file is not modified until the first checkpoint, so a previous journal can be
+     * recovered before.
+     * @param file Journal file.
+     * @param binaryHandler BinaryProjectHandler encoding and decoding the GraphicalElements.
+     */
+    public AutosaveJournal(File file, BinaryProjectHandler binaryHandler){
+        this.file = file;
+        this.binaryHandler = binaryHandler;
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "MapComposer autosave");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns the first journal of the given folder which isn't locked by another MapComposer window, and locks it
+     * until the journal is closed. If the window which used it has crashed, the journal can be recovered.
+     * @param folder Autosave folder, created if needed.
+     * @param binaryHandler BinaryProjectHandler encoding and decoding the GraphicalElements.
+     * @return The locked journal.
+     * @throws IOException Exception thrown if the folder can't be created or if all the journals are locked.
+     */
+    public static AutosaveJournal open(File folder, BinaryProjectHandler binaryHandler) throws IOException {
+        if(!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException(i18n.tr("Unable to create the folder {0}.", folder.getPath()));
+        }
+        for(int i = 0; i < MAX_JOURNALS; i++) {
+            FileChannel channel = FileChannel.open(new File(folder, "autosave" + i + ".lock").toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                //Locked by another window of this JVM
+                lock = null;
+            }
+            if(lock == null) {
+                channel.close();
+                continue;
+            }
+            AutosaveJournal journal = new AutosaveJournal(new File(folder, "autosave" + i + ".mcj"), binaryHandler);
+            journal.lock = lock;
+            return journal;
+        }
+        throw new IOException(i18n.tr("All the autosave journals of the folder {0} are locked.", folder.getPath()));
+    }
+
+    /**
+     * Returns the journal file.
+     * @return The journal file.
+     */
+    public File getFile(){
+        return file;
+    }
+
+    /**
+     * Registers a GraphicalElement added to the document.
+     * @param ge GraphicalElement added.
+     */
+    public void elementAdded(GraphicalElement ge){
+        if(!idMap.containsKey(ge)) {
+            idMap.put(ge, nextId++);
+        }
+        modifiedSet.add(ge);
+    }
+
+    /**
+     * Registers a modification of a GraphicalElement of the document. The changes of position, size, rotation and
+     * z-index are detected on the checkpoint, so only the other modifications need to be registered.
+     * @param ge GraphicalElement modified.
+     */
+    public void elementModified(GraphicalElement ge){
+        if(idMap.containsKey(ge)) {
+            modifiedSet.add(ge);
+        }
+    }
+
+    /**
+     * Registers a GraphicalElement removed from the document.
+     * @param ge GraphicalElement removed.
+     */
+    public void elementRemoved(GraphicalElement ge){
+        Integer id = idMap.remove(ge);
+        if(id != null) {
+            stateMap.remove(ge);
+            modifiedSet.remove(ge);
+            removedList.add(id);
+        }
+    }
+
+    /**
+     * Encodes the GraphicalElements changed since the last checkpoint and appends them to the journal in background.
+     * Should be called on the EDT, like the registering of the edits.
+     * @return The Future of the writing, or null if nothing has changed.
+     */
+    public Future<?> checkpoint(){
+        final Map<Integer, byte[]> puts = new LinkedHashMap<>();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream recordOut = new DataOutputStream(buffer);
+        for(Map.Entry<GraphicalElement, Integer> entry : idMap.entrySet()) {
+            GraphicalElement ge = entry.getKey();
+            int[] state = new int[]{ge.getX(), ge.getY(), ge.getWidth(), ge.getHeight(), ge.getRotation(), ge.getZ()};
+            if(modifiedSet.contains(ge) || !Arrays.equals(state, stateMap.get(ge))) {
+                buffer.reset();
+                try {
+                    binaryHandler.writeRecord(ge, recordOut);
+                    recordOut.flush();
+                } catch (IOException e) {
+                    LoggerFactory.getLogger(AutosaveJournal.class).error(e.getMessage());
+                    continue;
+                }
+                puts.put(entry.getValue(), buffer.toByteArray());
+                stateMap.put(ge, state);
+            }
+        }
+        modifiedSet.clear();
+        final List<Integer> removed = removedList;
+        removedList = new ArrayList<>();
+        if(puts.isEmpty() && removed.isEmpty()) {
+            return null;
+        }
+        return executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    append(puts, removed);
+                } catch (IOException e) {
+                    LoggerFactory.getLogger(AutosaveJournal.class).error(
+                            i18n.tr("Unable to write the autosave journal : {0}", e.getMessage()));
+                    closeOutput();
+                }
+            }
+        });
+    }
+
+    /**
+     * Marks the current state as saved in the journal, so it isn't proposed for recovery. A checkpoint should be
+     * done before, so the journal contains the saved state.
+     * @return The Future of the writing.
+     */
+    public Future<?> markSaved(){
+        return executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if(!saved) {
+                        openOutput();
+                        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out));
+                        journalSize += writeRecord(dos, RECORD_SAVED, 0, new byte[0]);
+                        dos.flush();
+                        out.getFD().sync();
+                        saved = true;
+                    }
+                } catch (IOException e) {
+                    LoggerFactory.getLogger(AutosaveJournal.class).error(
+                            i18n.tr("Unable to write the autosave journal : {0}", e.getMessage()));
+                    closeOutput();
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops the journal. The pending writings are finished and the file is closed, but kept for a recovery.
+     */
+    public void close(){
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                closeOutput();
+                releaseLock();
+            }
+        });
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            LoggerFactory.getLogger(AutosaveJournal.class).error(e.getMessage());
+        }
+    }
+
+    /**
+     * Appends the records of the given GraphicalElements to the journal and compacts it if needed.
+     * @param puts New record of each modified GraphicalElement.
+     * @param removed Journal identifiers of the removed GraphicalElements.
+     * @throws IOException
+     */
+    private void append(Map<Integer, byte[]> puts, List<Integer> removed) throws IOException {
+        openOutput();
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out));
+        for(Integer id : removed) {
+            byte[] previous = recordMap.remove(id);
+            if(previous != null) {
+                liveSize -= RECORD_OVERHEAD + previous.length;
+            }
+            journalSize += writeRecord(dos, RECORD_REMOVE, id, new byte[0]);
+        }
+        for(Map.Entry<Integer, byte[]> entry : puts.entrySet()) {
+            byte[] previous = recordMap.put(entry.getKey(), entry.getValue());
+            if(previous != null) {
+                liveSize -= RECORD_OVERHEAD + previous.length;
+            }
+            liveSize += RECORD_OVERHEAD + entry.getValue().length;
+            journalSize += writeRecord(dos, RECORD_PUT, entry.getKey(), entry.getValue());
+        }
+        dos.flush();
+        out.getFD().sync();
+        saved = false;
+        if(journalSize > MIN_COMPACTION_SIZE && journalSize > 2 * (HEADER_SIZE + liveSize)) {
+            //Compaction : the journal is rewritten with only the last record of each GraphicalElement
+            rewrite();
+        }
+    }
+
+    /**
+     * Opens the journal file if needed. The first opening replaces the previous journal.
+     * @throws IOException
+     */
+    private void openOutput() throws IOException {
+        if(out == null) {
+            //The journal starts again, so it contains all the known records
+            rewrite();
+        }
+    }
+
+    /**
+     * Writes the last record of each GraphicalElement in a new file, created exclusively, which then atomically
+     * replaces the journal, and opens it to append the next records.
+     * @throws IOException
+     */
+    private void rewrite() throws IOException {
+        File tempFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            try (FileOutputStream fos = new FileOutputStream(tempFile)) {
+                DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(fos));
+                dos.writeInt(MAGIC);
+                dos.writeShort(FORMAT_VERSION);
+                for(Map.Entry<Integer, byte[]> entry : recordMap.entrySet()) {
+                    writeRecord(dos, RECORD_PUT, entry.getKey(), entry.getValue());
+                }
+                dos.flush();
+                fos.getFD().sync();
+            }
+            closeOutput();
+            SaveAndLoadHandler.replaceFile(tempFile, file);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+        out = new FileOutputStream(file, true);
+        journalSize = HEADER_SIZE + liveSize;
+    }
+
+    /**
+     * Closes the journal file.
+     */
+    private void closeOutput(){
+        if(out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                LoggerFactory.getLogger(AutosaveJournal.class).error(e.getMessage());
+            }
+            out = null;
+        }
+    }
+
+    /**
+     * Releases the lock of the journal file, if any.
+     */
+    private void releaseLock(){
+        if(lock != null) {
+            try {
+                lock.release();
+                lock.channel().close();
+            } catch (IOException e) {
+                LoggerFactory.getLogger(AutosaveJournal.class).error(e.getMessage());
+            }
+            lock = null;
+        }
+    }
+
+    /**
+     * Writes a record.
+     * @param dos Output
+     * @param type Type of the record
+     * @param id Journal identifier of the GraphicalElement
+     * @param payload Payload of the record
+     * @return The size of the record
+     * @throws IOException
+     */
+    private static int writeRecord(DataOutputStream dos, byte type, int id, byte[] payload) throws IOException {
+        dos.writeByte(type);
+        dos.writeInt(id);
+        dos.writeInt(payload.length);
+        dos.write(payload);
+        dos.writeInt(getChecksum(type, id, payload));
+        return RECORD_OVERHEAD + payload.length;
+    }
+
+    /**
+     * Returns the CRC32 of a record.
+     * @param type Type of the record
+     * @param id Journal identifier of the GraphicalElement
+     * @param payload Payload of the record
+     * @return The CRC32
+     */
+    private static int getChecksum(byte type, int id, byte[] payload){
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(id >>> 24);
+        crc.update(id >>> 16);
+        crc.update(id >>> 8);
+        crc.update(id);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Reads the last record of each GraphicalElement of the journal file, stopping at the first incomplete or
+     * corrupted record.
+     * @param saved Array of one boolean set to true if the journal ends with a RECORD_SAVED.
+     * @return The last record of each GraphicalElement.
+     * @throws IOException
+     */
+    private Map<Integer, byte[]> readJournal(boolean[] saved) throws IOException {
+        Map<Integer, byte[]> records = new LinkedHashMap<>();
+        saved[0] = false;
+        if(!file.exists()) {
+            return records;
+        }
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if(dis.readInt() != MAGIC || dis.readShort() != FORMAT_VERSION) {
+                throw new IOException(i18n.tr("The file {0} isn't an autosave journal.", file.getPath()));
+            }
+            while(true) {
+                byte type = dis.readByte();
+                int id = dis.readInt();
+                int length = dis.readInt();
+                if(length < 0 || length > file.length()) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                dis.readFully(payload);
+                if(dis.readInt() != getChecksum(type, id, payload)) {
+                    break;
+                }
+                saved[0] = type == RECORD_SAVED;
+                if(type == RECORD_PUT) {
+                    records.put(id, payload);
+                }
+                else if(type == RECORD_REMOVE) {
+                    records.remove(id);
+                }
+            }
+        } catch (EOFException e) {
+            //The last record is incomplete, i.e. the application crashed while writing it
+        }
+        return records;
+    }
+
+    /**
+     * Returns true if the journal file contains changes which were not saved, i.e. after a crash.
+     * Should be called before the first checkpoint, which replaces the journal file.
+     * @return True if there is a document to recover.
+     */
+    public boolean isRecoverable(){
+        boolean[] saved = new boolean[1];
+        try {
+            return !readJournal(saved).isEmpty() && !saved[0];
+        } catch (IOException e) {
+            LoggerFactory.getLogger(AutosaveJournal.class).error(e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Returns the GraphicalElements of the document contained by the journal file.
+     * Should be called before the first checkpoint, which replaces the journal file.
+     * @return The list of GraphicalElements, not ordered.
+     * @throws IOException
+     */
+    public List<GraphicalElement> recover() throws IOException {
+        List<GraphicalElement> listGE = new ArrayList<>();
+        for(byte[] record : readJournal(new boolean[1]).values()) {
+            GraphicalElement ge = binaryHandler.readRecord(new DataInputStream(new ByteArrayInputStream(record)));
+            if(ge != null) {
+                listGE.add(ge);
+            }
+        }
+        return listGE;
+    }
+}
@@ -0,0 +1,733 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+
+package org.orbisgis.mapcomposer.model.utils;
+
+import org.orbisgis.mapcomposer.model.configurationattribute.interfaces.ConfigurationAttribute;
+import org.orbisgis.mapcomposer.model.configurationattribute.utils.CAManager;
+import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GEIdentifier;
+import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GraphicalElement;
+import org.orbisgis.mapcomposer.model.graphicalelement.utils.GEManager;
+import org.xml.sax.SAXException;
+import org.xnap.commons.i18n.I18n;
+import org.xnap.commons.i18n.I18nFactory;
+
+import javax.imageio.ImageIO;
+import javax.xml.parsers.ParserConfigurationException;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class saves and loads the documents in a compact binary format, as an alternative to the xml format of the
+ * SaveAndLoadHandler. Both formats contain the same data, so a document can be converted from one to the other.
+ *
+ * The file is shaped like that :
+ *
+ * MAGIC FORMAT_VERSION
+ * section 1
+ * section 2
+ * ...
+ * string table : count, then the UTF-8 bytes of each string
+ * index : count, then the kind, key, identifier, offset and length of each section
+ * offset of the string table, MAGIC
+ *
+ * Each GraphicalElement is written in its own section, keyed by its class name, which contains its
+ * ConfigurationAttributes with typed fields (boolean, integer or string). All the strings (class names, field names
+ * and string values such as the paths) are written once in the string table and referenced by their index.
+ * As the index is at the end of the file, the sections can be loaded lazily with {@link #open(String)}. The readers
+ * ignore the kinds of section they don't know, so new kinds can be added without breaking the older files.
+ *
+ * The thumbnails of the GraphicalElements (i.e. the last rendering of the maps) are written as PNG in their own
+ * sections, keyed by the index of the GraphicalElement in the document. They are displayed on opening the document,
+ * until the GraphicalElements are rendered.
+ *
+ * @author Sylvain PALOMINOS
+ */
+public class BinaryProjectHandler {
+
+    /** Extension of the binary save files */
+    public static final String EXTENSION = "mcb";
+    /** Magic number starting and ending the binary save files ("MCBP") */
+    private static final int MAGIC = 0x4D434250;
+    /** Version of the binary format written */
+    private static final short FORMAT_VERSION = 1;
+    /** Kind of the sections containing a GraphicalElement, their key is the class name */
+    static final byte SECTION_ELEMENT = 1;
+    /** Kind of the sections containing a thumbnail, their key is the index of the GraphicalElement */
+    static final byte SECTION_THUMBNAIL = 2;
+    /** Types of the ConfigurationAttribute fields */
+    private static final byte TYPE_BOOLEAN = 1;
+    private static final byte TYPE_INTEGER = 2;
+    private static final byte TYPE_STRING = 3;
+    /** Size of the file trailer : the offset of the string table and the magic number */
+    private static final int TRAILER_SIZE = 12;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** Object for the translation*/
+    private static final I18n i18n = I18nFactory.getI18n(BinaryProjectHandler.class);
+
+    /** GEManager and CAManager used for the conversion from and to the xml format */
+    private GEManager geManager;
+    private CAManager caManager;
+    /** Constructor of each class of GraphicalElement that can be used, indexed by the class name **/
+    private Map<String, Constructor<? extends GraphicalElement>> geConstructorMap;
+    /** Constructor of each class of ConfigurationAttribute that can be used, indexed by the class name **/
+    private Map<String, Constructor<? extends ConfigurationAttribute>> caConstructorMap;
+
+    /**
+     * BinaryProjectHandler constructor.
+     * It needs the GEManager and the CAManager to ge the list of GE and CA class registered.
+     * @param geManager GEManager
+     * @param caManager CAManager
+     */
+    public BinaryProjectHandler(GEManager geManager, CAManager caManager){
+        this.geManager = geManager;
+        this.caManager = caManager;
+        geConstructorMap = SaveAndLoadHandler.getConstructorMap(geManager.getRegisteredGEClasses());
+        caConstructorMap = SaveAndLoadHandler.getConstructorMap(caManager.getRegisteredGEClasses());
+    }
+
+    /**
+     * Returns true if the file of the given path is a binary save file.
+     * @param path Path of the file
+     * @return True if the file starts with the binary format magic number
+     */
+    public static boolean isBinaryProject(String path){
+        try (DataInputStream in = new DataInputStream(new FileInputStream(path))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Save into a binary file the given list of GraphicalElements.
+     * The document is written into a temporary file of the same folder, which then replaces the save file.
+     * @param list List of GraphicalElement to save
+     * @param path Path of the binary save
+     * @throws IOException
+     */
+    public void save(List<GraphicalElement> list, String path) throws IOException {
+        save(list, path, Collections.<GraphicalElement, BufferedImage>emptyMap());
+    }
+
+    /**
+     * Save into a binary file the given list of GraphicalElements with their thumbnails.
+     * The document is written into a temporary file of the same folder, which then replaces the save file.
+     * @param list List of GraphicalElement to save
+     * @param path Path of the binary save
+     * @param thumbnailMap Thumbnail of the GraphicalElements which have one
+     * @throws IOException
+     */
+    public void save(List<GraphicalElement> list, String path, Map<GraphicalElement, BufferedImage> thumbnailMap)
+            throws IOException {
+        if(!path.contains("." + EXTENSION)) path += "." + EXTENSION;
+        File file = new File(path).getAbsoluteFile();
+        File tempFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        try {
+            try (FileOutputStream fos = new FileOutputStream(tempFile)) {
+                OutputStream out = new BufferedOutputStream(fos);
+                write(list, thumbnailMap, out);
+                out.flush();
+                //The content is forced on the disk before replacing the save file
+                fos.getFD().sync();
+            }
+            SaveAndLoadHandler.replaceFile(tempFile, file);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    /**
+     * Writes the given list of GraphicalElements in the binary format into the given stream.
+     * @param list List of GraphicalElement to write
+     * @param thumbnailMap Thumbnail of the GraphicalElements which have one
+     * @param outputStream Stream where the document is written
+     * @throws IOException
+     */
+    private void write(List<GraphicalElement> list, Map<GraphicalElement, BufferedImage> thumbnailMap,
+                       OutputStream outputStream) throws IOException {
+        StringTable strings = new StringTable();
+        List<Section> sections = new ArrayList<>();
+        DataOutputStream out = new DataOutputStream(outputStream);
+        out.writeInt(MAGIC);
+        out.writeShort(FORMAT_VERSION);
+        long offset = 6;
+        //Each GraphicalElement is encoded in memory to get the length of its section
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream sectionOut = new DataOutputStream(buffer);
+        for(GraphicalElement ge : list) {
+            buffer.reset();
+            writeElement(ge, sectionOut, strings);
+            sectionOut.flush();
+            String id = ge instanceof GEIdentifier ? ((GEIdentifier) ge).getIdentifier() : null;
+            sections.add(new Section(SECTION_ELEMENT, strings.intern(ge.getClass().getName()),
+                    id == null ? -1 : strings.intern(id), offset, buffer.size()));
+            buffer.writeTo(out);
+            offset += buffer.size();
+        }
+        for(int i = 0; i < list.size(); i++) {
+            BufferedImage thumbnail = thumbnailMap.get(list.get(i));
+            if(thumbnail != null) {
+                buffer.reset();
+                ImageIO.write(thumbnail, "png", buffer);
+                sections.add(new Section(SECTION_THUMBNAIL, i, -1, offset, buffer.size()));
+                buffer.writeTo(out);
+                offset += buffer.size();
+            }
+        }
+        //Write the string table, then the index of the sections and the trailer
+        writeVarInt(out, strings.list.size());
+        for(String s : strings.list) {
+            byte[] bytes = s.getBytes(UTF8);
+            writeVarInt(out, bytes.length);
+            out.write(bytes);
+        }
+        writeVarInt(out, sections.size());
+        for(Section section : sections) {
+            out.writeByte(section.kind);
+            writeVarInt(out, section.key);
+            writeVarInt(out, section.id + 1);
+            out.writeLong(section.offset);
+            writeVarInt(out, section.length);
+        }
+        out.writeLong(offset);
+        out.writeInt(MAGIC);
+        out.flush();
+    }
+
+    /**
+     * Writes the ConfigurationAttributes of the given GraphicalElement.
+     * @param ge GraphicalElement to write
+     * @param out Output of its section
+     * @param strings Table of the strings of the document
+     * @throws IOException
+     */
+    private static void writeElement(GraphicalElement ge, DataOutput out, StringTable strings) throws IOException {
+        List<ConfigurationAttribute> listCA = ge.getSavableAttributes();
+        writeVarInt(out, listCA.size());
+        for(ConfigurationAttribute ca : listCA) {
+            writeVarInt(out, strings.intern(ca.getClass().getName()));
+            //Null fields are not written and keep their default value, as in the xml format
+            List<Map.Entry<String, Object>> fields = new ArrayList<>();
+            Iterator<Map.Entry<String, Object>> it =  ca.getAllFields().entrySet().iterator();
+            while(it.hasNext()){
+                Map.Entry<String, Object> entry = it.next();
+                if(entry.getValue() != null) {
+                    fields.add(entry);
+                }
+            }
+            writeVarInt(out, fields.size());
+            for(Map.Entry<String, Object> entry : fields) {
+                writeVarInt(out, strings.intern(entry.getKey()));
+                Object value = entry.getValue();
+                if(value instanceof Boolean) {
+                    out.writeByte(TYPE_BOOLEAN);
+                    out.writeBoolean((Boolean) value);
+                }
+                else if(value instanceof Integer) {
+                    out.writeByte(TYPE_INTEGER);
+                    int i = (Integer) value;
+                    //Zigzag encoding, so the small negative values are also short
+                    writeVarInt(out, (i << 1) ^ (i >> 31));
+                }
+                else {
+                    out.writeByte(TYPE_STRING);
+                    writeVarInt(out, strings.intern(value.toString()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads and returns all the GraphicalElements of the binary save file corresponding to the given path.
+     * @param path Path of the file to load
+     * @return The list of GraphicalElement saved
+     * @throws IOException
+     */
+    public List<GraphicalElement> load(String path) throws IOException {
+        return load(path, null);
+    }
+
+    /**
+     * Loads and returns all the GraphicalElements of the binary save file corresponding to the given path, and puts
+     * their thumbnails into the given map.
+     * @param path Path of the file to load
+     * @param thumbnailMap Map where the thumbnail of the GraphicalElements are put. Can be null.
+     * @return The list of GraphicalElement saved
+     * @throws IOException
+     */
+    public List<GraphicalElement> load(String path, Map<GraphicalElement, BufferedImage> thumbnailMap)
+            throws IOException {
+        try (Project project = open(path)) {
+            List<GraphicalElement> listGE = new ArrayList<>();
+            for(int i = 0; i < project.getElementCount(); i++) {
+                GraphicalElement ge = project.loadElement(i);
+                if(ge != null) {
+                    listGE.add(ge);
+                    BufferedImage thumbnail = thumbnailMap == null ? null : project.loadThumbnail(i);
+                    if(thumbnail != null) {
+                        thumbnailMap.put(ge, thumbnail);
+                    }
+                }
+            }
+            return listGE;
+        }
+    }
+
+    /**
+     * Opens the binary save file corresponding to the given path. Only its string table and its index are read, the
+     * GraphicalElements are loaded on demand from the returned Project, which should be closed after use.
+     * @param path Path of the file to open
+     * @return The opened Project
+     * @throws IOException
+     */
+    public Project open(String path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            return new Project(file);
+        } catch (IOException|RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Converts the given xml save file into a binary one.
+     * @param xmlPath Path of the xml file to convert
+     * @param binaryPath Path of the binary file
+     * @throws IOException
+     * @throws ParserConfigurationException
+     * @throws SAXException
+     */
+    public void convertFromXml(String xmlPath, String binaryPath)
+            throws IOException, ParserConfigurationException, SAXException {
+        save(new SaveAndLoadHandler(geManager, caManager).load(xmlPath), binaryPath);
+    }
+
+    /**
+     * Converts the given binary save file into an xml one.
+     * @param binaryPath Path of the binary file to convert
+     * @param xmlPath Path of the xml file
+     * @throws IOException
+     */
+    public void convertToXml(String binaryPath, String xmlPath) throws IOException {
+        new SaveAndLoadHandler(geManager, caManager).save(load(binaryPath), xmlPath);
+    }
+
+    /**
+     * Writes the given unsigned integer with 7 bits per byte, the smallest values first.
+     * @param out Output
+     * @param value Value to write
+     * @throws IOException
+     */
+    static void writeVarInt(DataOutput out, int value) throws IOException {
+        while((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Reads an unsigned integer written by {@link #writeVarInt(DataOutput, int)}.
+     * @param in Input
+     * @return The value read
+     * @throws IOException
+     */
+    static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for(int shift = 0; shift < 35; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException(i18n.tr("Malformed binary save file."));
+    }
+
+    /**
+     * Binary save file opened for a lazy loading of its GraphicalElements.
+     */
+    public class Project implements Closeable {
+
+        /** Opened file */
+        private RandomAccessFile file;
+        /** String table of the document */
+        private String[] strings;
+        /** Sections of the GraphicalElements, in the document order */
+        private List<Section> elements;
+        /** Sections of the thumbnails, indexed by the index of their GraphicalElement */
+        private Map<Integer, Section> thumbnails;
+
+        /**
+         * Reads the header, the string table and the index of the given file.
+         * @param file Opened file
+         * @throws IOException
+         */
+        private Project(RandomAccessFile file) throws IOException {
+            this.file = file;
+            long length = file.length();
+            if(length < 6 + TRAILER_SIZE || file.readInt() != MAGIC) {
+                throw new IOException(i18n.tr("The file isn't a binary save file."));
+            }
+            short version = file.readShort();
+            if(version != FORMAT_VERSION) {
+                throw new IOException(i18n.tr("Binary save format version {0} isn't compatible with the " +
+                        "MapComposer version. Should be {1}.", version, FORMAT_VERSION));
+            }
+            file.seek(length - TRAILER_SIZE);
+            long indexOffset = file.readLong();
+            if(file.readInt() != MAGIC || indexOffset < 6 || indexOffset > length - TRAILER_SIZE) {
+                throw new IOException(i18n.tr("Malformed binary save file."));
+            }
+            //The string table and the index are read at once
+            byte[] bytes = new byte[(int) (length - TRAILER_SIZE - indexOffset)];
+            file.seek(indexOffset);
+            file.readFully(bytes);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            strings = new String[readVarInt(in)];
+            for(int i = 0; i < strings.length; i++) {
+                byte[] string = new byte[readVarInt(in)];
+                in.readFully(string);
+                strings[i] = new String(string, UTF8);
+            }
+            int sectionCount = readVarInt(in);
+            elements = new ArrayList<>();
+            thumbnails = new HashMap<>();
+            for(int i = 0; i < sectionCount; i++) {
+                Section section = new Section(in.readByte(), readVarInt(in), readVarInt(in) - 1, in.readLong(),
+                        readVarInt(in));
+                if(section.kind == SECTION_ELEMENT) {
+                    elements.add(section);
+                }
+                else if(section.kind == SECTION_THUMBNAIL) {
+                    thumbnails.put(section.key, section);
+                }
+            }
+        }
+
+        /**
+         * Returns the number of GraphicalElements of the document.
+         * @return The number of GraphicalElements
+         */
+        public int getElementCount(){
+            return elements.size();
+        }
+
+        /**
+         * Returns the class name of the GraphicalElement at the given index, without loading it.
+         * @param index Index of the GraphicalElement
+         * @return The class name
+         */
+        public String getElementClassName(int index){
+            return strings[elements.get(index).key];
+        }
+
+        /**
+         * Returns the identifier of the GraphicalElement at the given index, without loading it.
+         * @param index Index of the GraphicalElement
+         * @return The identifier, or null if the GraphicalElement has none
+         */
+        public String getElementIdentifier(int index){
+            int id = elements.get(index).id;
+            return id == -1 ? null : strings[id];
+        }
+
+        /**
+         * Loads the GraphicalElement at the given index.
+         * @param index Index of the GraphicalElement
+         * @return The GraphicalElement, or null if its class isn't registered
+         * @throws IOException
+         */
+        public GraphicalElement loadElement(int index) throws IOException {
+            Section section = elements.get(index);
+            Constructor<? extends GraphicalElement> constructor = geConstructorMap.get(strings[section.key]);
+            if(constructor == null) {
+                return null;
+            }
+            return readElement(constructor, section.id == -1 ? null : strings[section.id],
+                    new DataInputStream(new ByteArrayInputStream(readSection(section))), strings);
+        }
+
+        /**
+         * Loads the thumbnail of the GraphicalElement at the given index.
+         * @param index Index of the GraphicalElement
+         * @return The thumbnail, or null if the GraphicalElement has none
+         * @throws IOException
+         */
+        public BufferedImage loadThumbnail(int index) throws IOException {
+            Section section = thumbnails.get(index);
+            if(section == null) {
+                return null;
+            }
+            return ImageIO.read(new ByteArrayInputStream(readSection(section)));
+        }
+
+        /**
+         * Reads the content of the given section.
+         * @param section Section to read
+         * @return The bytes of the section
+         * @throws IOException
+         */
+        private synchronized byte[] readSection(Section section) throws IOException {
+            byte[] bytes = new byte[section.length];
+            file.seek(section.offset);
+            file.readFully(bytes);
+            return bytes;
+        }
+
+        /**
+         * Loads all the GraphicalElements of the document.
+         * @return The list of GraphicalElements, without the ones whose class isn't registered
+         * @throws IOException
+         */
+        public List<GraphicalElement> loadElements() throws IOException {
+            List<GraphicalElement> listGE = new ArrayList<>();
+            for(int i = 0; i < elements.size(); i++) {
+                GraphicalElement ge = loadElement(i);
+                if(ge != null) {
+                    listGE.add(ge);
+                }
+            }
+            return listGE;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            file.close();
+        }
+    }
+
+    /**
+     * Writes the given GraphicalElement as a standalone record, with its own string table, i.e. for a journal.
+     * @param ge GraphicalElement to write
+     * @param out Output of the record
+     * @throws IOException
+     */
+    void writeRecord(GraphicalElement ge, DataOutput out) throws IOException {
+        StringTable strings = new StringTable();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream elementOut = new DataOutputStream(buffer);
+        writeElement(ge, elementOut, strings);
+        elementOut.flush();
+        String id = ge instanceof GEIdentifier ? ((GEIdentifier) ge).getIdentifier() : null;
+        writeVarInt(out, strings.intern(ge.getClass().getName()));
+        writeVarInt(out, id == null ? 0 : strings.intern(id) + 1);
+        writeVarInt(out, strings.list.size());
+        for(String s : strings.list) {
+            byte[] bytes = s.getBytes(UTF8);
+            writeVarInt(out, bytes.length);
+            out.write(bytes);
+        }
+        out.write(buffer.toByteArray());
+    }
+
+    /**
+     * Reads a GraphicalElement written by {@link #writeRecord(GraphicalElement, DataOutput)}.
+     * @param in Input of the record
+     * @return The GraphicalElement, or null if its class isn't registered
+     * @throws IOException
+     */
+    GraphicalElement readRecord(DataInput in) throws IOException {
+        int classIndex = readVarInt(in);
+        int idIndex = readVarInt(in) - 1;
+        String[] strings = new String[readVarInt(in)];
+        for(int i = 0; i < strings.length; i++) {
+            byte[] string = new byte[readVarInt(in)];
+            in.readFully(string);
+            strings[i] = new String(string, UTF8);
+        }
+        if(classIndex >= strings.length || idIndex >= strings.length) {
+            throw new IOException(i18n.tr("Malformed binary save file."));
+        }
+        Constructor<? extends GraphicalElement> constructor = geConstructorMap.get(strings[classIndex]);
+        if(constructor == null) {
+            return null;
+        }
+        return readElement(constructor, idIndex == -1 ? null : strings[idIndex], in, strings);
+    }
+
+    /**
+     * Reads the ConfigurationAttributes of a GraphicalElement and returns it.
+     * @param constructor Constructor of the GraphicalElement class
+     * @param id Identifier of the GraphicalElement, can be null
+     * @param in Input of its section
+     * @param strings String table of the document
+     * @return The GraphicalElement
+     * @throws IOException
+     */
+    private GraphicalElement readElement(Constructor<? extends GraphicalElement> constructor, String id, DataInput in,
+                                         String[] strings) throws IOException {
+        GraphicalElement ge = newInstance(constructor);
+        if(id != null && ge instanceof GEIdentifier) {
+            ((GEIdentifier) ge).setIdentifier(id);
+        }
+        int caCount = readVarInt(in);
+        for(int i = 0; i < caCount; i++) {
+            Constructor<? extends ConfigurationAttribute> caConstructor = caConstructorMap.get(readString(in, strings));
+            //The fields of an unknown ConfigurationAttribute are read and ignored
+            ConfigurationAttribute ca = caConstructor == null ? null : newInstance(caConstructor);
+            int fieldCount = readVarInt(in);
+            for(int j = 0; j < fieldCount; j++) {
+                String name = readString(in, strings);
+                String value;
+                byte type = in.readByte();
+                switch (type) {
+                    case TYPE_BOOLEAN:
+                        value = Boolean.toString(in.readBoolean());
+                        break;
+                    case TYPE_INTEGER:
+                        int zigzag = readVarInt(in);
+                        value = Integer.toString((zigzag >>> 1) ^ -(zigzag & 1));
+                        break;
+                    case TYPE_STRING:
+                        value = readString(in, strings);
+                        break;
+                    default:
+                        throw new IOException(i18n.tr("Malformed binary save file."));
+                }
+                if(ca != null) {
+                    ca.setField(name, value);
+                }
+            }
+            if(ca != null) {
+                ge.setAttribute(ca);
+            }
+        }
+        return ge;
+    }
+
+    /**
+     * Reads a reference to the given string table.
+     * @param in Input
+     * @param strings String table
+     * @return The string referenced
+     * @throws IOException
+     */
+    private static String readString(DataInput in, String[] strings) throws IOException {
+        int index = readVarInt(in);
+        if(index < 0 || index >= strings.length) {
+            throw new IOException(i18n.tr("Malformed binary save file."));
+        }
+        return strings[index];
+    }
+
+    /**
+     * Returns a new instance from the given constructor.
+     * @param constructor Constructor without argument
+     * @return The new instance
+     * @throws IOException
+     */
+    private static <T> T newInstance(Constructor<T> constructor) throws IOException {
+        try {
+            return constructor.newInstance();
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Entry of the index of the sections.
+     */
+    private static class Section {
+        /** Kind of the section */
+        private final byte kind;
+        /** Key of the section : index in the string table of the GraphicalElement class name for an element,
+         * index of the GraphicalElement for a thumbnail */
+        private final int key;
+        /** Index of the identifier of the section in the string table, -1 if there is none */
+        private final int id;
+        /** Position of the section in the file */
+        private final long offset;
+        /** Length of the section */
+        private final int length;
+
+        private Section(byte kind, int key, int id, long offset, int length){
+            this.kind = kind;
+            this.key = key;
+            this.id = id;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Table of the strings of a document being written, each string gets the index of its first occurrence.
+     */
+    private static class StringTable {
+        private final List<String> list = new ArrayList<>();
+        private final Map<String, Integer> indexMap = new HashMap<>();
+
+        /**
+         * Returns the index of the given string, adding it to the table if needed.
+         * @param s String
+         * @return The index of the string
+         */
+        private int intern(String s){
+            Integer index = indexMap.get(s);
+            if(index == null) {
+                index = list.size();
+                list.add(s);
+                indexMap.put(s, index);
+            }
+            return index;
+        }
+    }
+}
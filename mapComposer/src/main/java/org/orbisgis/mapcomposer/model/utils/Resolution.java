@@ -0,0 +1,103 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+
+package org.orbisgis.mapcomposer.model.utils;
+
+import java.awt.GraphicsEnvironment;
+import java.awt.HeadlessException;
+import java.awt.Toolkit;
+
+/**
+ * Utility class giving the resolution used to convert the GraphicalElement sizes, which are in screen pixels, into
+ * real units, and the ratio to apply to render them at an other resolution (i.e. for exporting).
+ * The screen resolution is read once from the default Toolkit. To be run on a server (no GUI), if the environment is
+ * headless, a default value is used.
+ *
+ * @author Sylvain PALOMINOS
+ */
+public final class Resolution {
+
+    /** Resolution used when the screen one can't be read. */
+    public static final int DEFAULT_DPI = 96;
+
+    /** Millimeters per inch. */
+    public static final double MM_PER_INCH = 25.4;
+
+    /** Resolution of the screen, read on the first use. */
+    private static volatile int screenDPI = -1;
+
+    /**
+     * Private constructor, this class only contains static methods.
+     */
+    private Resolution(){}
+
+    /**
+     * Returns the resolution of the screen in dot per inch, or DEFAULT_DPI if there is no screen.
+     * @return The resolution of the screen.
+     */
+    public static int getScreenDPI(){
+        if(screenDPI == -1) {
+            int dpi = DEFAULT_DPI;
+            if(!GraphicsEnvironment.isHeadless()) {
+                try {
+                    dpi = Toolkit.getDefaultToolkit().getScreenResolution();
+                } catch (HeadlessException e) {
+                    dpi = DEFAULT_DPI;
+                }
+            }
+            screenDPI = dpi > 0 ? dpi : DEFAULT_DPI;
+        }
+        return screenDPI;
+    }
+
+    /**
+     * Returns the number of screen pixels per millimeter.
+     * @return The number of screen pixels per millimeter.
+     */
+    public static double getScreenDotPerMM(){
+        return getScreenDPI() / MM_PER_INCH;
+    }
+
+    /**
+     * Returns the ratio to apply to the screen pixel sizes to render them at the given resolution.
+     * @param dpi Target resolution in dot per inch. A value lower than 1 means the screen resolution.
+     * @return The scale ratio from the screen resolution to the given one.
+     */
+    public static double getScaleTo(int dpi){
+        if(dpi < 1) {
+            return 1;
+        }
+        return (double) dpi / getScreenDPI();
+    }
+}
@@ -40,17 +40,24 @@ import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GEIdentifier;
 import org.orbisgis.mapcomposer.model.graphicalelement.utils.GEManager;
 import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GraphicalElement;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
-import org.orbisgis.sif.UIFactory;
-import org.orbisgis.sif.components.OpenFilePanel;
-import org.orbisgis.sif.components.SaveFilePanel;
+import org.slf4j.LoggerFactory;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
@@ -59,6 +66,9 @@ import org.xnap.commons.i18n.I18nFactory;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 /**
  * This class permits to manage the save and the load of a document project and it uses the sax api to do a save into an xml file.
@@ -76,10 +86,10 @@ public class SaveAndLoadHandler extends DefaultHandler {
 
     /** List of all the GraphicalElement to save **/
     private List<GraphicalElement> listGE;
-    /** List of all the class of GraphicalElement that can be used **/
-    private List<Class<? extends GraphicalElement>> listClassGE;
-    /** List of all the class of ConfigurationAttribute that can be used **/
-    private List<Class<? extends ConfigurationAttribute>> listClassCA;
+    /** Constructor of each class of GraphicalElement that can be used, indexed by the class name **/
+    private Map<String, Constructor<? extends GraphicalElement>> geConstructorMap;
+    /** Constructor of each class of ConfigurationAttribute that can be used, indexed by the class name **/
+    private Map<String, Constructor<? extends ConfigurationAttribute>> caConstructorMap;
 
     /** Indicates if the position of the reader is inside a GraphicalElement xml tag **/
     private boolean insideGE = false;
@@ -92,8 +102,12 @@ public class SaveAndLoadHandler extends DefaultHandler {
     private GraphicalElement graphicalElement;
     /** Instance of the ConfigurationAttributes in creation **/
     private ConfigurationAttribute configurationAttribute;
-    /** StringBuffer used to register everything inside Configuration xml tags **/
-    private StringBuffer stringBuffer = null;
+    /** StringBuilder used to register everything inside Configuration xml tags, without the indentation characters if
+     * the document doesn't preserve the whitespaces **/
+    private StringBuilder stringBuffer = null;
+    /** Indicates if the document keeps the whitespaces of the field values (xml:space="preserve" on the root tag).
+     * The older documents indent the values, so their line breaks and tabulations are dropped while parsing. **/
+    private boolean preserveSpace = false;
 
     /** Object for the translation*/
     private static final I18n i18n = I18nFactory.getI18n(SaveAndLoadHandler.class);
@@ -101,26 +115,65 @@ public class SaveAndLoadHandler extends DefaultHandler {
     /**
      * SaveAndLoadHandler constructor.
      * It needs the GEManager and the CAManager to ge the list of GE and CA class registered.
+     * The constructors of the registered classes are indexed by class name, so the xml tags are resolved without
+     * scanning the lists of classes.
      * @param geManager GEManager
      * @param caManager CAManager
      */
     public SaveAndLoadHandler(GEManager geManager, CAManager caManager){
-        // Gets the list of GraphicalElement and Configuration Attributes class
-        listClassGE = geManager.getRegisteredGEClasses();
-        listClassCA = caManager.getRegisteredGEClasses();
+        // Gets the constructor of the GraphicalElement and Configuration Attributes classes
+        geConstructorMap = getConstructorMap(geManager.getRegisteredGEClasses());
+        caConstructorMap = getConstructorMap(caManager.getRegisteredGEClasses());
+    }
+
+    /**
+     * Returns the map of the constructor without argument of each given class, indexed by the class name.
+     * @param listClass List of class
+     * @return The map of constructor
+     */
+    static <T> Map<String, Constructor<? extends T>> getConstructorMap(List<Class<? extends T>> listClass){
+        Map<String, Constructor<? extends T>> map = new HashMap<>();
+        for(Class<? extends T> c : listClass){
+            try {
+                map.put(c.getName(), c.getConstructor());
+            } catch (NoSuchMethodException e) {
+                LoggerFactory.getLogger(SaveAndLoadHandler.class).error(
+                        i18n.tr("The class {0} can't be loaded : {1}", c.getName(), e.getMessage()));
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Returns a new instance from the given constructor.
+     * @param constructor Constructor without argument
+     * @return The new instance
+     * @throws SAXException
+     */
+    private static <T> T newInstance(Constructor<T> constructor) throws SAXException {
+        try {
+            return constructor.newInstance();
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new SAXException(e);
+        }
     }
 
     @Override
     public void startDocument() throws SAXException {
         listGE = new ArrayList<>();
+        preserveSpace = false;
     }
 
     @Override
     public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+        //Test if the tag read is the root one, which tells if the whitespaces of the values are significant.
+        if (qName.equals("synchronized")) {
+            preserveSpace = "preserve".equals(attributes.getValue("xml:space"));
+        }
         //Test if the tag read is the "version" one.
-        if (qName.equals("version")) {
+        else if (qName.equals("version")) {
             //If the tag is the "version" one, start to register with the StringBuffer
-            stringBuffer = new StringBuffer();
+            stringBuffer = new StringBuilder();
         }
         else{
             //Test if the reader is actual inside a GraphicalElement xml tag
@@ -130,40 +183,30 @@ public class SaveAndLoadHandler extends DefaultHandler {
                     //If the reader is inside a GraphicalElement tag and inside a ConfigurationAttribute tag, it's just before a field of the ConfigurationAttribute
                     //Indicate that the reader is entering into a field and start to register with the StringBuffer
                     insideField = true;
-                    stringBuffer = new StringBuffer();
+                    stringBuffer = new StringBuilder();
                 }
                 //If not, it means that the reader is just before a ConfigurationAttribute xml tag.
                 else {
-                    //Test each class in the listClassCA to find which one correspond to the xml tag
-                    for (Class<? extends ConfigurationAttribute> c : listClassCA) {
-                        if (c.getName().equals(qName)) {
-                            //Instantiate the corresponding class and indicate that the reader is inside a ConfigurationAttribute xml tag
-                            try {
-                                configurationAttribute = c.newInstance();
-                                insideCA = true;
-                            } catch (InstantiationException | IllegalAccessException e) {
-                                throw new SAXException(e);
-                            }
-                        }
+                    //Find the class corresponding to the xml tag
+                    Constructor<? extends ConfigurationAttribute> constructor = caConstructorMap.get(qName);
+                    if (constructor != null) {
+                        //Instantiate the corresponding class and indicate that the reader is inside a ConfigurationAttribute xml tag
+                        configurationAttribute = newInstance(constructor);
+                        insideCA = true;
                     }
                 }
             }
             //If not, it means that the reader is just before a GraphicalElement xml tag.
             else {
-                //Test each class in the listClassGE to find which one correspond to the xml tag
-                for (Class<? extends GraphicalElement> c : listClassGE) {
-                    if (c.getName().equals(qName)) {
-                        //Instantiate the corresponding class and indicate that the reader is inside a GraphicalElement xml tag
-                        try {
-                            graphicalElement = c.newInstance();
-                            insideGE = true;
-                            //If the GraphicalElement implements GEIdentifier, set its ID
-                            if(graphicalElement instanceof GEIdentifier){
-                                ((GEIdentifier)graphicalElement).setIdentifier(attributes.getValue("id"));
-                            }
-                        } catch (InstantiationException|IllegalAccessException e) {
-                            throw new SAXException(e);
-                        }
+                //Find the class corresponding to the xml tag
+                Constructor<? extends GraphicalElement> constructor = geConstructorMap.get(qName);
+                if (constructor != null) {
+                    //Instantiate the corresponding class and indicate that the reader is inside a GraphicalElement xml tag
+                    graphicalElement = newInstance(constructor);
+                    insideGE = true;
+                    //If the GraphicalElement implements GEIdentifier, set its ID
+                    if(graphicalElement instanceof GEIdentifier){
+                        ((GEIdentifier)graphicalElement).setIdentifier(attributes.getValue("id"));
                     }
                 }
             }
@@ -174,7 +217,7 @@ public class SaveAndLoadHandler extends DefaultHandler {
     public void endElement(String uri, String localName, String qName) throws SAXException {
         //If the reader is leaving a field xml tag, sets the ConfigurationAttribute configurationAttribute with the data from the String buffer, stop if and indicates that the reader left the field tag.
         if (insideField) {
-            configurationAttribute.setField(qName, stringBuffer.toString().replace("\n", "").replace("\t", ""));
+            configurationAttribute.setField(qName, stringBuffer.toString());
             stringBuffer = null;
             insideField = false;
         }
@@ -189,15 +232,16 @@ public class SaveAndLoadHandler extends DefaultHandler {
             insideGE = false;
         }
 
-        // Check if the version of the saveProject is actually compatible with the MapComposer version.
+        // Check if the version of the save file is actually compatible with the MapComposer version.
         if(qName.equals("version")) {
+            String version = stringBuffer.toString();
             boolean flag=false;
             for (int i = 0; i < COMPATIBLE_VERSIONS.length; i++)
-                if (stringBuffer.toString().equals(COMPATIBLE_VERSIONS[i]))
+                if (version.equals(COMPATIBLE_VERSIONS[i]))
                     flag = true;
             if (!flag) {
                 String message = i18n.tr("File version {0} isn't compatible with the MapComposer version. Should be " +
-                        "{1}.", stringBuffer.toString(), "");
+                        "{1}.", version, "");
                 for (String s : COMPATIBLE_VERSIONS)
                     message += s + ", ";
                 throw new SAXException(message);
@@ -208,24 +252,22 @@ public class SaveAndLoadHandler extends DefaultHandler {
     @Override
     public void characters(char[] ch, int start, int length) throws SAXException {
         //If the StringBuffer isn't null, append the character read from to source to it
-        if (stringBuffer != null) stringBuffer.append(new String(ch, start, length));
-    }
-
-    /**
-     * Open a file chooser and load the selected file.
-     * @return The list of loaded GraphicalElements
-     * @throws IOException
-     * @throws ParserConfigurationException
-     * @throws SAXException
-     */
-    public List<GraphicalElement> loadProject() throws IOException, ParserConfigurationException, SAXException {
-        OpenFilePanel loadFilePanel = new OpenFilePanel("SaveAndLoadHandler", i18n.tr("Load document"));
-        loadFilePanel.addFilter(new String[]{"xml"}, i18n.tr("XML save files"));
-        loadFilePanel.loadState();
-
-        if(UIFactory.showDialog(loadFilePanel))
-            return load(loadFilePanel.getSelectedFile().getAbsolutePath());
-        return null;
+        if (stringBuffer != null) {
+            if (preserveSpace) {
+                stringBuffer.append(ch, start, length);
+            }
+            //Otherwise append the characters between the indentation ones
+            else {
+                int begin = start;
+                for (int i = start; i < start + length; i++) {
+                    if (ch[i] == '\n' || ch[i] == '\t') {
+                        stringBuffer.append(ch, begin, i - begin);
+                        begin = i + 1;
+                    }
+                }
+                stringBuffer.append(ch, begin, start + length - begin);
+            }
+        }
     }
 
     /**
@@ -242,25 +284,6 @@ public class SaveAndLoadHandler extends DefaultHandler {
         return listGE;
     }
 
-    /**
-     * Open a file chooser window and save the given list of GraphicalElement in the selected file.
-     * @param list List of GraphicalElement to save
-     * @return True if the document is saved, false otherwise.
-     * @throws IOException
-     * @throws NoSuchMethodException
-     */
-    public boolean saveProject(List<GraphicalElement> list) throws IOException, NoSuchMethodException {
-        SaveFilePanel saveFilePanel = new SaveFilePanel("SaveAndLoadHandler", i18n.tr("Save document"));
-        saveFilePanel.addFilter(new String[]{"xml"}, i18n.tr("XML save files"));
-        saveFilePanel.loadState();
-
-        if(UIFactory.showDialog(saveFilePanel)){
-            save(list, saveFilePanel.getSelectedFile().getAbsolutePath());
-            return true;
-        }
-        return false;
-    }
-
     /**
      * Save into and xml file the given list of GraphicalElements.
      * The save is shape like that :
@@ -268,12 +291,8 @@ public class SaveAndLoadHandler extends DefaultHandler {
      * <version>XXX.XXX.XXX</version>
      * <GEClass1>
      *     <CAClass1>
-     *         <CAField1>
-     *             value
-     *         </CAField1>
-     *         <CAField2>
-     *             value
-     *         </CAField2>
+     *         <CAField1>value</CAField1>
+     *         <CAField2>value</CAField2>
      *         ...
      *     </CAClass1>
      *     <CAClass2>
@@ -286,41 +305,124 @@ public class SaveAndLoadHandler extends DefaultHandler {
      * </GEClass2>
      * ...
      *
+     * The document is streamed and escaped by a StAX writer into a temporary file of the same folder, which then
+     * replaces the save file, so an interrupted save never corrupts the previous one.
+     *
      * @param list List of GraphicalElement to save
      * @param path Path of the xml save
      * @throws IOException
      */
-    public void save(List<GraphicalElement> list, String path) throws IOException {if(!path.contains(".xml")) path+=".xml";
-        FileWriter fw = new FileWriter(path);
+    public void save(List<GraphicalElement> list, String path) throws IOException {
+        if(!path.contains(".xml")) path+=".xml";
+        File file = new File(path).getAbsoluteFile();
+        File tempFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        try {
+            try (FileOutputStream fos = new FileOutputStream(tempFile)) {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(fos, "UTF-8"));
+                XMLStreamWriter xsw = XMLOutputFactory.newInstance().createXMLStreamWriter(writer);
+                write(list, xsw);
+                xsw.close();
+                writer.flush();
+                //The content is forced on the disk before replacing the save file
+                fos.getFD().sync();
+            }
+            replaceFile(tempFile, file);
+        } catch (XMLStreamException e) {
+            throw new IOException(i18n.tr("Unable to write the file {0} : {1}", path, e.getMessage()), e);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    /**
+     * Replaces the target file by the source one, atomically if the file system supports it.
+     * @param source File replacing the target, i.e. a temporary file of the same folder
+     * @param target File to replace
+     * @throws IOException
+     */
+    static void replaceFile(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Writes the given list of GraphicalElements as an xml document with the given XMLStreamWriter.
+     * @param list List of GraphicalElement to write
+     * @param xsw XMLStreamWriter used
+     * @throws XMLStreamException
+     */
+    private void write(List<GraphicalElement> list, XMLStreamWriter xsw) throws XMLStreamException {
+        xsw.writeStartDocument("UTF-8", "1.0");
+        xsw.writeCharacters("\n");
         //Write the MapComposer version
-        fw.write("<synchronized>\n\t<version>" + STRING_VERSION + "</version>\n");
+        xsw.writeStartElement("synchronized");
+        xsw.writeAttribute("xml:space", "preserve");
+        xsw.writeCharacters("\n\t");
+        xsw.writeStartElement("version");
+        xsw.writeCharacters(STRING_VERSION);
+        xsw.writeEndElement();
+        xsw.writeCharacters("\n");
         //Write all the GraphicalElement from the list argument
         for (GraphicalElement ge : list) {
             //Write the GraphicalElement start xml tag and its identifier if there is one
-            fw.write("\t<" + ge.getClass().getName());
-            if(ge instanceof GEIdentifier){
-                fw.write(" id=\""+((GEIdentifier)ge).getIdentifier()+"\" ");
+            xsw.writeCharacters("\t");
+            xsw.writeStartElement(ge.getClass().getName());
+            if(ge instanceof GEIdentifier && ((GEIdentifier)ge).getIdentifier() != null){
+                xsw.writeAttribute("id", ((GEIdentifier)ge).getIdentifier());
             }
-            fw.write(">\n");
+            xsw.writeCharacters("\n");
             //Write all the ConfigurationAttribute get from the GraphicalElement graphicalElement
             for(ConfigurationAttribute ca : ge.getSavableAttributes()){
                 //Write the ConfigurationAttribute start xml tag
-                fw.write("\t\t<"+ca.getClass().getName()+">\n");
-                //Get all the ConfigurationAttribute fields and write them
+                xsw.writeCharacters("\t\t");
+                xsw.writeStartElement(ca.getClass().getName());
+                xsw.writeCharacters("\n");
+                //Get all the ConfigurationAttribute fields and write them, a null field keeps its default value
                 Iterator<Map.Entry<String, Object>> it =  ca.getAllFields().entrySet().iterator();
                 while(it.hasNext()){
                     Map.Entry<String, Object> entry = it.next();
-                    fw.write("\t\t\t<" + entry.getKey() + ">\n");
-                    fw.write("\t\t\t\t"+entry.getValue().toString()+"\n");
-                    fw.write("\t\t\t</" + entry.getKey() + ">\n");
+                    if(entry.getValue() == null) {
+                        continue;
+                    }
+                    xsw.writeCharacters("\t\t\t");
+                    xsw.writeStartElement(entry.getKey());
+                    writeValue(entry.getValue().toString(), xsw);
+                    xsw.writeEndElement();
+                    xsw.writeCharacters("\n");
                 }
-                //Write the ConfigurationAttribute start xml tag
-                fw.write("\t\t</"+ca.getClass().getName()+">\n");
+                //Write the ConfigurationAttribute end xml tag
+                xsw.writeCharacters("\t\t");
+                xsw.writeEndElement();
+                xsw.writeCharacters("\n");
             }
-            //Write the GraphicalElement start xml tag
-            fw.write("\t</"+ ge.getClass().getName()+">\n");
+            //Write the GraphicalElement end xml tag
+            xsw.writeCharacters("\t");
+            xsw.writeEndElement();
+            xsw.writeCharacters("\n");
+        }
+        xsw.writeEndElement();
+        xsw.writeEndDocument();
+    }
+
+    /**
+     * Writes the given field value. The carriage returns are written as character references because the xml parsers
+     * replace them by line feeds.
+     * @param value Value to write.
+     * @param xsw XMLStreamWriter used
+     * @throws XMLStreamException
+     */
+    private void writeValue(String value, XMLStreamWriter xsw) throws XMLStreamException {
+        int start = 0;
+        int index;
+        while ((index = value.indexOf('\r', start)) != -1) {
+            xsw.writeCharacters(value.substring(start, index));
+            xsw.writeEntityRef("#13");
+            start = index + 1;
         }
-        fw.write("</synchronized>");
-        fw.close();
+        xsw.writeCharacters(value.substring(start));
     }
-}
\ No newline at end of file
+}
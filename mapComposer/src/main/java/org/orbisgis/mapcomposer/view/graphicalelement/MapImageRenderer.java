@@ -34,6 +34,7 @@
 
 package org.orbisgis.mapcomposer.view.graphicalelement;
 
+import com.vividsolutions.jts.geom.Envelope;
 import org.orbisgis.commons.progress.NullProgressMonitor;
 import org.orbisgis.commons.progress.ProgressMonitor;
 import org.orbisgis.mapcomposer.controller.MainController;
@@ -41,10 +42,13 @@ import org.orbisgis.mapcomposer.model.configurationattribute.attribute.OwsContex
 import org.orbisgis.mapcomposer.model.configurationattribute.interfaces.ConfigurationAttribute;
 import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GraphicalElement;
 import org.orbisgis.mapcomposer.model.graphicalelement.element.cartographic.MapImage;
+import org.orbisgis.coremap.layerModel.ILayer;
 import org.orbisgis.mapcomposer.view.utils.Graphics2DRenderer;
+import org.orbisgis.mapcomposer.view.utils.ImageCache;
 import org.orbisgis.mapcomposer.view.utils.MapComposerIcon;
 import org.orbisgis.mapcomposer.view.utils.UIDialogProperties;
 import org.orbisgis.sif.UIPanel;
+import org.slf4j.LoggerFactory;
 import org.xnap.commons.i18n.I18n;
 import org.xnap.commons.i18n.I18nFactory;
 
@@ -52,8 +56,28 @@ import javax.swing.ImageIcon;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.lang.Math.cos;
 import static java.lang.Math.sin;
@@ -61,18 +85,95 @@ import static java.lang.Math.sin;
 /**
  * This renderer is used to get the vector and raster representation of a MapImage object and to get the configuration UIPanel associated.
  *
+ * The layers and the styles of a map aren't thread safe, so all the renderings of a layer model (tiles, whole map or
+ * part of it) are queued and run one at a time by a thread pool. The renderings of different maps run in parallel and a
+ * pool thread never waits for the rendering of another task.
+ *
+ * The progressive rendering splits the map into tiles of TILE_SIZE pixels which are stored in a LRU cache. Each tile is
+ * rendered with a margin, so the symbols and labels crossing its border are complete. The tile grid is anchored on the map coordinates and a tile is identified by the OWS-Context file
+ * (path and modification date), the scale (size of a pixel) and its index in the grid. So panning the map or resizing
+ * a MapImage without changing the scale only renders the tiles missing in the cache.
+ *
  * @author Sylvain PALOMINOS
  */
-public class MapImageRenderer implements RendererRaster, RendererVector, CustomConfigurationPanel {
+public class MapImageRenderer implements RendererProgressive, RendererVectorPartial, CustomConfigurationPanel {
 
     /** Object for the translation*/
     private static final I18n i18n = I18nFactory.getI18n(MapImageRenderer.class);
 
+    /** Size in pixel of the side of the tiles. */
+    public static final int TILE_SIZE = 256;
+
+    /** Default maximum number of pixels of the tile cache (256 tiles). */
+    public static final long DEFAULT_TILE_CACHE_PIXELS = 256L * TILE_SIZE * TILE_SIZE;
+
+    /** Margin in pixels rendered around a part of a map, so the symbols and labels crossing its border are complete. */
+    private static final int RENDER_MARGIN = 64;
+
+    /** Cache of the rendered tiles, shared by all the MapImages. */
+    private static final ImageCache<TileKey> TILE_CACHE = new ImageCache<>(DEFAULT_TILE_CACHE_PIXELS);
+
+    /** Executor running the rendering queues of the layer models. */
+    private static final ExecutorService TILE_EXECUTOR = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "MapComposer-tile-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /** Rendering queue of each layer model. */
+    private static final Map<ILayer, LayerQueue> LAYER_QUEUES = new WeakHashMap<>();
+
     /**ProgressMonitor for the map rendering */
     ProgressMonitor progressMonitor;
 
+    /** True if the progressive rendering uses the tiles, false to render the whole map at once. */
+    private boolean tiledRendering = true;
+
+    /**
+     * Enables or disables the tiled rendering used by the progressive rendering.
+     * @param tiledRendering True to render the map by tiles, false to render it at once.
+     */
+    public void setTiledRendering(boolean tiledRendering){
+        this.tiledRendering = tiledRendering;
+    }
+
+    /**
+     * Returns true if the progressive rendering uses the tiles, false otherwise.
+     * @return True if the tiled rendering is enabled.
+     */
+    public boolean isTiledRendering(){
+        return tiledRendering;
+    }
+
+    /**
+     * Returns the cache of the rendered tiles, e.g. to change its size or to clear it.
+     * @return The tile cache.
+     */
+    public static ImageCache<?> getTileCache(){
+        return TILE_CACHE;
+    }
+
+    /**
+     * Invalidates the rendered tiles and layers as the data of the maps may have changed, i.e. before redrawing a map
+     * or exporting a document.
+     */
+    public static void invalidateCaches(){
+        Graphics2DRenderer.invalidateLayerCache();
+        TILE_CACHE.clear();
+    }
+
     @Override
     public void drawGE(Graphics2D graphics2D, GraphicalElement ge) {
+        drawGE(graphics2D, ge, new NullProgressMonitor());
+    }
+
+    @Override
+    public void drawGE(Graphics2D graphics2D, GraphicalElement ge, ProgressMonitor pm) {
         //Get the MapImageObject
         MapImage mi = (MapImage)ge;
 
@@ -81,16 +182,17 @@ public class MapImageRenderer implements RendererRaster, RendererVector, CustomC
         double newHeight = Math.abs(sin(rad) * ge.getWidth())+Math.abs(cos(rad)*ge.getHeight());
         double newWidth = Math.abs(sin(rad) * ge.getHeight())+Math.abs(cos(rad)*ge.getWidth());
 
-        //If the MapImage object contain a valid OwsMapContext, render it with the Graphics2DRenderer
-        if(mi.getOwsPath() != null) {
+        //If the MapImage object contain a valid OwsMapContext, render it with the Graphics2DRenderer.
+        //Without DataManager, the path is set but the OwsMapContext isn't created.
+        if(mi.getOwsPath() != null && mi.getOwsMapContext() != null) {
             //Translate the Graphics2D to draw the map at its center
             graphics2D.translate((newWidth - ge.getWidth()) / 2, (newHeight - ge.getHeight()) / 2);
             //Apply the rotation
             graphics2D.rotate(rad, ge.getWidth() / 2, ge.getHeight() / 2);
             //Render the map and draw it in the Graphics2D
             Graphics2DRenderer renderer = new Graphics2DRenderer(graphics2D, ge.getWidth(), ge.getHeight());
-            renderer.draw(graphics2D, ge.getWidth(), ge.getHeight(), mi.getMapTransform().getExtent(), mi
-                    .getOwsMapContext().getLayerModel(), new NullProgressMonitor());
+            drawLayers(renderer, graphics2D, ge.getWidth(), ge.getHeight(), mi.getMapTransform().getExtent(), mi
+                    .getOwsMapContext().getLayerModel(), pm);
         }
         //Else, draw the MapImage icon
         else{
@@ -101,6 +203,62 @@ public class MapImageRenderer implements RendererRaster, RendererVector, CustomC
         }
     }
 
+    @Override
+    public void drawGE(Graphics2D graphics2D, GraphicalElement ge, Rectangle2D part, ProgressMonitor pm) {
+        MapImage mi = (MapImage)ge;
+        if(mi.getOwsPath() == null || mi.getOwsMapContext() == null || mi.getMapTransform().getExtent() == null ||
+                ge.getWidth() <= 0 || ge.getHeight() <= 0) {
+            drawGE(graphics2D, ge, pm);
+            return;
+        }
+        int width = ge.getWidth();
+        int height = ge.getHeight();
+        //Extent fitting the size of the MapImage, as done by the MapTransform, and size of a pixel
+        Envelope extent = mi.getMapTransform().getExtent();
+        double pixelSize = Math.max(extent.getWidth() / width, extent.getHeight() / height);
+        if(!(pixelSize > 0)) {
+            drawGE(graphics2D, ge, pm);
+            return;
+        }
+        double minX = (extent.getMinX() + extent.getMaxX()) / 2 - pixelSize * width / 2;
+        double maxY = (extent.getMinY() + extent.getMaxY()) / 2 + pixelSize * height / 2;
+
+        //Same translation and rotation as drawGE()
+        double rad = Math.toRadians(ge.getRotation());
+        double newHeight = Math.abs(sin(rad) * ge.getWidth())+Math.abs(cos(rad)*ge.getHeight());
+        double newWidth = Math.abs(sin(rad) * ge.getHeight())+Math.abs(cos(rad)*ge.getWidth());
+        AffineTransform mapTransform = AffineTransform.getTranslateInstance((newWidth - width) / 2,
+                (newHeight - height) / 2);
+        mapTransform.rotate(rad, width / 2, height / 2);
+        //Pixels of the map drawn in the part
+        Rectangle pixels;
+        try {
+            pixels = mapTransform.createInverse().createTransformedShape(part).getBounds()
+                    .intersection(new Rectangle(0, 0, width, height));
+        } catch (NoninvertibleTransformException ex) {
+            drawGE(graphics2D, ge, pm);
+            return;
+        }
+        if(pixels.isEmpty()) {
+            return;
+        }
+        //The rendered area has a margin, so the symbols and labels crossing the border of the part are complete
+        Rectangle rendered = new Rectangle(pixels);
+        rendered.grow(RENDER_MARGIN, RENDER_MARGIN);
+        Envelope renderedExtent = new Envelope(minX + rendered.x * pixelSize,
+                minX + (rendered.x + rendered.width) * pixelSize, maxY - (rendered.y + rendered.height) * pixelSize,
+                maxY - rendered.y * pixelSize);
+
+        Graphics2D g2 = (Graphics2D) graphics2D.create();
+        g2.transform(mapTransform);
+        g2.clip(pixels);
+        g2.translate(rendered.x, rendered.y);
+        Graphics2DRenderer renderer = new Graphics2DRenderer(g2, rendered.width, rendered.height);
+        drawLayers(renderer, g2, rendered.width, rendered.height, renderedExtent, mi.getOwsMapContext().getLayerModel(),
+                pm);
+        g2.dispose();
+    }
+
     @Override
     public BufferedImage createGEImage(GraphicalElement ge, ProgressMonitor pm) {
         //Calculate the size of the GraphicalElement after rotation
@@ -117,15 +275,18 @@ public class MapImageRenderer implements RendererRaster, RendererVector, CustomC
 
         //Get the MapImageObject
         MapImage mi = (MapImage)ge;
-        //If the MapImage object contain a valid OwsMapContext, render it with the Graphics2DRenderer
-        if(mi.getOwsPath() != null) {
+        //If the MapImage object contain a valid OwsMapContext, render it with the Graphics2DRenderer.
+        //Without DataManager, the path is set but the OwsMapContext isn't created.
+        if(mi.getOwsPath() != null && mi.getOwsMapContext() != null) {
             //Translate the Graphics2D to draw the map at its center
             graphics2D.translate((newWidth - ge.getWidth()) / 2, (newHeight - ge.getHeight()) / 2);
             //Apply the rotation
             graphics2D.rotate(rad, ge.getWidth() / 2, ge.getHeight() / 2);
             //Render the map and draw it in the Graphics2D
             Graphics2DRenderer renderer = new Graphics2DRenderer(graphics2D, ge.getWidth(), ge.getHeight());
-            renderer.draw(graphics2D, ge.getWidth(), ge.getHeight(), mi.getMapTransform().getExtent(), mi
+            //The layers are only drawn from the layer cache if the map isn't rotated
+            renderer.setLayerCacheEnabled(true);
+            drawLayers(renderer, graphics2D, ge.getWidth(), ge.getHeight(), mi.getMapTransform().getExtent(), mi
                     .getOwsMapContext().getLayerModel(), pm);
         }
         //Else, draw the MapImage icon
@@ -139,6 +300,227 @@ public class MapImageRenderer implements RendererRaster, RendererVector, CustomC
         return bi;
     }
 
+    @Override
+    public BufferedImage createGEImage(GraphicalElement ge, ProgressMonitor pm, ImageListener listener) {
+        MapImage mi = (MapImage)ge;
+        //The icon and the rendering without tiles don't need to be progressive
+        if(!tiledRendering || mi.getOwsPath() == null || mi.getOwsMapContext() == null ||
+                mi.getMapTransform().getExtent() == null || ge.getWidth() <= 0 || ge.getHeight() <= 0) {
+            return createGEImage(ge, pm);
+        }
+        //Extent fitting the size of the MapImage, as done by the MapTransform, and size of a pixel
+        int width = ge.getWidth();
+        int height = ge.getHeight();
+        Envelope extent = mi.getMapTransform().getExtent();
+        double pixelSize = Math.max(extent.getWidth() / width, extent.getHeight() / height);
+        if(!(pixelSize > 0)) {
+            return createGEImage(ge, pm);
+        }
+        double centerX = (extent.getMinX() + extent.getMaxX()) / 2;
+        double centerY = (extent.getMinY() + extent.getMaxY()) / 2;
+        Envelope adjusted = new Envelope(centerX - pixelSize * width / 2, centerX + pixelSize * width / 2,
+                centerY - pixelSize * height / 2, centerY + pixelSize * height / 2);
+        final ProgressMonitor monitor = pm == null ? new NullProgressMonitor() : pm;
+
+        //Calculate the size of the GraphicalElement after rotation
+        double rad = Math.toRadians(ge.getRotation());
+        double newHeight = Math.abs(sin(rad)*ge.getWidth())+Math.abs(cos(rad)*ge.getHeight());
+        double newWidth = Math.abs(sin(rad)*ge.getHeight())+Math.abs(cos(rad)*ge.getWidth());
+        //Calculate the bounding box of the GraphicalElement after rotation
+        int maxWidth = Math.max((int) newWidth, ge.getWidth());
+        int maxHeight = Math.max((int)newHeight, ge.getHeight());
+
+        //Create the BufferedImage which will contain the GraphicalElement representation.
+        BufferedImage bi = new BufferedImage(maxWidth, maxHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics2D = bi.createGraphics();
+        //Translate the Graphics2D to draw the map at its center
+        graphics2D.translate((newWidth - ge.getWidth()) / 2, (newHeight - ge.getHeight()) / 2);
+        //Apply the rotation
+        graphics2D.rotate(rad, ge.getWidth() / 2, ge.getHeight() / 2);
+        //The border tiles overflow the map
+        graphics2D.clipRect(0, 0, width, height);
+        final ILayer layerModel = mi.getOwsMapContext().getLayerModel();
+        //The data version is read before the rendering, so the tiles rendered with older data are never reused
+        String source = mi.getOwsPath() + "@" + new File(mi.getOwsPath()).lastModified() + "#" +
+                Graphics2DRenderer.getDataVersion();
+
+        //Position of the map in the tile grid, in pixels. The y axis of the grid is downward.
+        double originX = adjusted.getMinX() / pixelSize;
+        double originY = -adjusted.getMaxY() / pixelSize;
+        long firstCol = (long) Math.floor(originX / TILE_SIZE);
+        long lastCol = (long) Math.floor((originX + width - 1) / TILE_SIZE);
+        long firstRow = (long) Math.floor(originY / TILE_SIZE);
+        long lastRow = (long) Math.floor((originY + height - 1) / TILE_SIZE);
+        final long offsetX = Math.round(originX);
+        final long offsetY = Math.round(originY);
+
+        //Draw the cached tiles
+        List<TileKey> missingKeys = new ArrayList<>();
+        for(long row = firstRow; row <= lastRow; row++) {
+            for(long col = firstCol; col <= lastCol; col++) {
+                TileKey key = new TileKey(source, pixelSize, col, row);
+                BufferedImage tile = TILE_CACHE.get(key);
+                if(tile != null) {
+                    graphics2D.drawImage(tile, (int)(col * TILE_SIZE - offsetX), (int)(row * TILE_SIZE - offsetY), null);
+                }
+                else {
+                    missingKeys.add(key);
+                }
+            }
+        }
+        //Submit the rendering of the other ones, each tile being a step of the rendering
+        LayerQueue queue = getQueue(layerModel);
+        List<Future<Tile>> futures = new ArrayList<>();
+        ProgressMonitor tilesPm = monitor.startTask(i18n.tr("Rendering the map ..."), missingKeys.size());
+        for(final TileKey key : missingKeys) {
+            final ProgressMonitor tilePm = tilesPm.startTask(i18n.tr("Rendering the map ..."), 1);
+            FutureTask<Tile> task = new FutureTask<>(new Callable<Tile>() {
+                @Override
+                public Tile call() throws Exception {
+                    return renderTile(key, layerModel, tilePm);
+                }
+            });
+            queue.execute(task);
+            futures.add(task);
+        }
+        if(listener != null && !futures.isEmpty()) {
+            listener.imageUpdated(bi);
+        }
+
+        //Draw the tiles as soon as they are rendered
+        boolean failed = false;
+        try {
+            for(int i = 0; i < futures.size() && !monitor.isCancelled(); i++) {
+                //The tiles of a layer model are rendered in the submission order
+                Tile tile = futures.get(i).get();
+                if(tile != null) {
+                    TILE_CACHE.put(tile.key, tile.image);
+                    graphics2D.drawImage(tile.image, (int)(tile.key.col * TILE_SIZE - offsetX),
+                            (int)(tile.key.row * TILE_SIZE - offsetY), null);
+                    if(listener != null) {
+                        listener.imageUpdated(bi);
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            LoggerFactory.getLogger(MapImageRenderer.class).error("Unable to render a tile of the map, the map is " +
+                    "rendered at once", ex.getCause());
+            failed = true;
+        } catch (CancellationException ex) {
+            LoggerFactory.getLogger(MapImageRenderer.class).error(ex.getMessage());
+        } finally {
+            //Cancel the tiles which are not rendered yet in case of cancellation or error
+            for(Future<Tile> future : futures) {
+                future.cancel(false);
+            }
+            graphics2D.dispose();
+        }
+        if(failed && !monitor.isCancelled()) {
+            return createGEImage(ge, monitor);
+        }
+        return bi;
+    }
+
+    /**
+     * Returns the rendering queue of the given layer model.
+     * @param layerModel Layer model.
+     * @return The queue running the renderings of the layer model one at a time.
+     */
+    private static LayerQueue getQueue(ILayer layerModel){
+        synchronized (LAYER_QUEUES) {
+            LayerQueue queue = LAYER_QUEUES.get(layerModel);
+            if(queue == null) {
+                queue = new LayerQueue();
+                LAYER_QUEUES.put(layerModel, queue);
+            }
+            return queue;
+        }
+    }
+
+    /**
+     * Draws the given layer model with the Graphics2DRenderer in the rendering queue of the layer model and waits the
+     * end of the drawing. As the Graphics2D belongs to the caller, the wait isn't interrupted : the rendering is stopped
+     * with the ProgressMonitor.
+     * @param renderer Graphics2DRenderer used.
+     * @param graphics2D Graphics2D where the layers are drawn.
+     * @param width Width of the drawing.
+     * @param height Height of the drawing.
+     * @param extent Extent of the map to draw.
+     * @param layerModel Layers to draw.
+     * @param pm ProgressMonitor of the drawing.
+     */
+    private static void drawLayers(final Graphics2DRenderer renderer, final Graphics2D graphics2D, final int width,
+                                   final int height, final Envelope extent, final ILayer layerModel,
+                                   final ProgressMonitor pm){
+        FutureTask<Void> task = new FutureTask<>(new Runnable() {
+            @Override
+            public void run() {
+                renderer.draw(graphics2D, width, height, extent, layerModel, pm);
+            }
+        }, null);
+        getQueue(layerModel).execute(task);
+        boolean interrupted = false;
+        try {
+            while(true) {
+                try {
+                    task.get();
+                    return;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                } catch (ExecutionException ex) {
+                    if(ex.getCause() instanceof Error) {
+                        throw (Error) ex.getCause();
+                    }
+                    throw (RuntimeException) ex.getCause();
+                }
+            }
+        } finally {
+            if(interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Renders the tile corresponding to the given key. The tile is rendered with a margin of RENDER_MARGIN pixels
+     * which is then cropped, so the symbols and labels crossing its border are the same as in the neighbour tiles.
+     * @param key Key of the tile.
+     * @param layerModel Layers to render.
+     * @param pm ProgressMonitor of the tile rendering.
+     * @return The rendered tile or null if the rendering was cancelled.
+     */
+    private static Tile renderTile(TileKey key, ILayer layerModel, ProgressMonitor pm){
+        if(pm.isCancelled()) {
+            return null;
+        }
+        //The y axis of the map is upward and the grid one is downward
+        double tileSize = TILE_SIZE * key.pixelSize;
+        double margin = RENDER_MARGIN * key.pixelSize;
+        int renderedSize = TILE_SIZE + 2 * RENDER_MARGIN;
+        Envelope renderedExtent = new Envelope(key.col * tileSize - margin, (key.col + 1) * tileSize + margin,
+                -(key.row + 1) * tileSize - margin, -key.row * tileSize + margin);
+        BufferedImage rendered = new BufferedImage(renderedSize, renderedSize, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics2D = rendered.createGraphics();
+        Graphics2DRenderer renderer = new Graphics2DRenderer(graphics2D, renderedSize, renderedSize);
+        //The tiles of maps sharing layers at the same scale can share the layer renderings
+        renderer.setLayerCacheEnabled(true);
+        renderer.draw(graphics2D, renderedSize, renderedSize, renderedExtent, layerModel, pm);
+        graphics2D.dispose();
+        //Only the tile itself is kept in the cache
+        BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+        graphics2D = image.createGraphics();
+        graphics2D.drawImage(rendered, -RENDER_MARGIN, -RENDER_MARGIN, null);
+        graphics2D.dispose();
+        //A tile finished after the cancellation is dropped
+        if(pm.isCancelled()) {
+            return null;
+        }
+        pm.endTask();
+        return new Tile(key, image);
+    }
+
     @Override
     public UIPanel createConfigurationPanel(List<ConfigurationAttribute> caList, MainController uic, boolean enableLock){
 
@@ -159,4 +541,96 @@ public class MapImageRenderer implements RendererRaster, RendererVector, CustomC
 
         return uid;
     }
+
+    /**
+     * Queue running its tasks one at a time with the TILE_EXECUTOR. A pool thread runs the tasks of the queue until it
+     * is empty, so it never waits for another task of the same layer model.
+     */
+    private static class LayerQueue implements Executor {
+        /** Tasks waiting to be run. */
+        private final Deque<Runnable> tasks = new ArrayDeque<>();
+        /** True if a pool thread is running the tasks of the queue. */
+        private boolean running = false;
+
+        @Override
+        public synchronized void execute(Runnable task) {
+            tasks.add(task);
+            if(!running) {
+                running = true;
+                TILE_EXECUTOR.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        runTasks();
+                    }
+                });
+            }
+        }
+
+        /**
+         * Runs the tasks of the queue until it is empty.
+         */
+        private void runTasks() {
+            while(true) {
+                Runnable task;
+                synchronized (this) {
+                    task = tasks.poll();
+                    if(task == null) {
+                        running = false;
+                        return;
+                    }
+                }
+                task.run();
+            }
+        }
+    }
+
+    /**
+     * Key identifying a tile in the cache.
+     */
+    private static final class TileKey {
+        /** OWS-Context path, modification date and data version. */
+        private final String source;
+        /** Size of a pixel in the map unit. */
+        private final double pixelSize;
+        /** Index of the tile in the grid. */
+        private final long col;
+        private final long row;
+
+        private TileKey(String source, double pixelSize, long col, long row){
+            this.source = source;
+            this.pixelSize = pixelSize;
+            this.col = col;
+            this.row = row;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof TileKey)) {
+                return false;
+            }
+            TileKey other = (TileKey) o;
+            return source.equals(other.source) && pixelSize == other.pixelSize && col == other.col && row == other.row;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = source.hashCode();
+            hash = 31 * hash + Double.valueOf(pixelSize).hashCode();
+            hash = 31 * hash + Long.valueOf(col).hashCode();
+            return 31 * hash + Long.valueOf(row).hashCode();
+        }
+    }
+
+    /**
+     * Rendered tile with its key.
+     */
+    private static final class Tile {
+        private final TileKey key;
+        private final BufferedImage image;
+
+        private Tile(TileKey key, BufferedImage image){
+            this.key = key;
+            this.image = image;
+        }
+    }
 }
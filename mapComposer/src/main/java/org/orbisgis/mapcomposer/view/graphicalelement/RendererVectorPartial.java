@@ -0,0 +1,62 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+
+package org.orbisgis.mapcomposer.view.graphicalelement;
+
+import org.orbisgis.commons.progress.ProgressMonitor;
+import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GraphicalElement;
+
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * This interface extends the RendererVectorMonitored interface.
+ * A renderer implementing this interface can draw only a part of a GraphicalElement, doing only the rendering work
+ * needed for this part, i.e. to export a big map by bands without rendering the whole map for each band.
+ *
+ * @author Sylvain PALOMINOS
+ */
+
+public interface RendererVectorPartial extends RendererVectorMonitored{
+
+    /**
+     * This method draws the given part of the vector representation of the GraphicalElement in the given Graphics2D.
+     * The content outside of the part may be drawn too, so the Graphics2D should be clipped to the part.
+     * @param graphics2D The Graphics2D where is rendered the GraphicalElement, not null
+     * @param ge The GraphicalElement to render, not null
+     * @param part Part to draw, in the coordinates of the drawGE() rendering.
+     * @param pm ProgressMonitor of the rendering.
+     */
+    public void drawGE(Graphics2D graphics2D, GraphicalElement ge, Rectangle2D part, ProgressMonitor pm);
+}
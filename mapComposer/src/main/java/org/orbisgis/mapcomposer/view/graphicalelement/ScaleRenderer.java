@@ -37,6 +37,7 @@ package org.orbisgis.mapcomposer.view.graphicalelement;
 import org.orbisgis.commons.progress.ProgressMonitor;
 import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GraphicalElement;
 import org.orbisgis.mapcomposer.model.graphicalelement.element.cartographic.Scale;
+import org.orbisgis.mapcomposer.model.utils.Resolution;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
@@ -62,9 +63,8 @@ public class ScaleRenderer implements RendererRaster, RendererVector {
         int y = Math.max((int)newHeight, ge.getHeight())/2;
         graphics2D.rotate(rad, x, y);
 
-        int dpi = Toolkit.getDefaultToolkit().getScreenResolution();
         /*Dot per millimeter screen resolution. */
-        double dpmm = (((double) dpi) / 25.4);
+        double dpmm = Resolution.getScreenDotPerMM();
 
         int resolution=-1;
 
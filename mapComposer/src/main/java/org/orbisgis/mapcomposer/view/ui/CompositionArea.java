@@ -47,8 +47,10 @@ import java.awt.*;
 import java.awt.event.*;
 import java.beans.EventHandler;
 import java.text.DecimalFormat;
+import java.util.List;
 import javax.swing.*;
 import javax.swing.border.Border;
+import javax.swing.event.ChangeListener;
 import javax.swing.plaf.LayerUI;
 
 /**
@@ -140,6 +142,9 @@ public class CompositionArea extends JPanel {
         scrollPane.getHorizontalScrollBar().addAdjustmentListener(EventHandler.create(AdjustmentListener.class, horizontalPositionScale, "setScrollValue", ""));
         scrollPane.getVerticalScrollBar().addAdjustmentListener(EventHandler.create(AdjustmentListener.class, verticalPositionScale, "setScrollValue", ""));
         scrollPane.setCorner(JScrollPane.UPPER_LEFT_CORNER, inchOrCm);
+        //The deferred GraphicalElements are refreshed once they are scrolled into the view
+        scrollPane.getViewport().addChangeListener(EventHandler.create(ChangeListener.class,
+                mainController.getCompositionAreaController(), "refreshVisibleGE"));
 
         //Creates the layer for the whole compositionArea
         this.layerUI = new CompositionAreaOverlay(mainController);
@@ -174,9 +179,15 @@ public class CompositionArea extends JPanel {
         progressBar = new JProgressBar();
         //progressBar.setVisible(false);
 
-        //Adds the two components
+        //Sets the button cancelling the export
+        JButton cancelExport = new JButton(i18n.tr("Cancel"));
+        cancelExport.setToolTipText(i18n.tr("Cancel the export"));
+        cancelExport.addActionListener(EventHandler.create(ActionListener.class, mainController, "cancelExport"));
+
+        //Adds the components
         bottomJToolBar.add(componentPosition, BorderLayout.LINE_START);
         bottomJToolBar.add(progressBar, BorderLayout.CENTER);
+        bottomJToolBar.add(cancelExport, BorderLayout.LINE_END);
         //bottomJToolBar.add(component, BorderLayout.LINE_END);
         bottomJToolBar.setFloatable(false);
 
@@ -306,6 +317,38 @@ public class CompositionArea extends JPanel {
             layeredPane.setComponentZOrder(comp, i);
     }
 
+    /**
+     * Sets the z-order of the drawn elements in one pass, the first element of the list being on the front.
+     * @param panels CompositionJPanels in their new z-order.
+     */
+    public void setZOrder(List<CompositionJPanel> panels) {
+        reorder(layeredPane, panels);
+    }
+
+    /**
+     * Sets the z-order of the children of the container according to the given list, the first one being on the front.
+     * As each move of a component is linear in the number of components, only the components which are not already at
+     * their index are moved. The components of the list which aren't children of the container are ignored.
+     * @param container Container of the components.
+     * @param order Components in their new z-order.
+     * @return The number of moved components.
+     */
+    static int reorder(Container container, List<? extends Component> order) {
+        int moved = 0;
+        int index = 0;
+        for(Component comp : order) {
+            if(comp == null || comp.getParent() != container) {
+                continue;
+            }
+            if(container.getComponent(index) != comp) {
+                container.setComponentZOrder(comp, index);
+                moved++;
+            }
+            index++;
+        }
+        return moved;
+    }
+
     /**
      * Removes all the drawn elements on the CompositionArea.
      */
@@ -464,6 +507,20 @@ public class CompositionArea extends JPanel {
         }
     }
 
+    /**
+     * Returns the area of the document visible in the scroll pane, in the document coordinates.
+     * @return The visible area of the document.
+     */
+    public Rectangle getVisibleDocumentArea(){
+        if(document == null) {
+            return new Rectangle();
+        }
+        JViewport viewport = scrollPane.getViewport();
+        Rectangle visible = SwingUtilities.convertRectangle(viewport.getView(), viewport.getViewRect(), layeredPane);
+        visible.translate(-document.getX(), -document.getY());
+        return visible;
+    }
+
     /**
      * Returns the bounds of the document panel.
      * @return The bounds of the document panel.
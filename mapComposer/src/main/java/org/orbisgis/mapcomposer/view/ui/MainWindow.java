@@ -478,6 +478,7 @@ public class MainWindow extends JFrame implements EditableElement {
     }
 
     public void close(){
+        mainController.stopAutosave();
         if(control != null){
             control.destroy();
         }
@@ -96,6 +96,15 @@ public class CompositionAreaOverlay extends LayerUI<JComponent>{
     /** Tells if the message needs to be drawn */
     private boolean isMessageDrawn;
 
+    /** Rectangle drawn on the last paint, null if none was drawn */
+    private Rectangle lastDrawnRectangle;
+
+    /** Regions of the overlay to repaint, to avoid repainting the whole overlay on each mouse move */
+    private final DirtyRegion dirtyRegion = new DirtyRegion(2);
+
+    /** JLayer using this overlay */
+    private JLayer<? extends JComponent> layer;
+
     /**
      * Main constructor.
      * @param mainController
@@ -130,6 +139,8 @@ public class CompositionAreaOverlay extends LayerUI<JComponent>{
      */
     public void setEnd(Point end) {
         this.end = end;
+        if(layer != null)
+            repaintRectangle(layer);
     }
 
     /**
@@ -147,16 +158,15 @@ public class CompositionAreaOverlay extends LayerUI<JComponent>{
         }
     }
 
-    @Override
-    public void paint (Graphics g, JComponent c) {
-        super.paint(g, c);
+    /**
+     * Returns the rectangle to draw according to the mode and the start and end points, or null if there is nothing to draw.
+     * @return The rectangle to draw or null.
+     */
+    private Rectangle getDrawnRectangle(){
         //Test if the user is doing a modification on a GraphicalElement
         if (mode == Mode.NEW_GE || mode == Mode.RESIZE_GE){
             //Verify that the extreme points of the draw are defined
             if (start != null && end != null) {
-                Graphics2D g2 = (Graphics2D) g.create();
-                float[] dash = {10.0f};
-                g2.setStroke(new BasicStroke(1.0f,BasicStroke.CAP_BUTT,BasicStroke.JOIN_MITER,10.0f,dash,0.0f));
                 int x, y;
                 float width, height;
                 x = (end.x < start.x) ? end.x : start.x;
@@ -172,10 +182,34 @@ public class CompositionAreaOverlay extends LayerUI<JComponent>{
                     height = width/ratio;
 
                 }
-                g2.drawRect(x, y, (int)width, (int)height);
-                g2.dispose();
+                return new Rectangle(x, y, (int)width, (int)height);
             }
         }
+        return null;
+    }
+
+    /**
+     * Repaints only the union of the last drawn rectangle and of the rectangle to draw.
+     * @param l JLayer to repaint.
+     */
+    private void repaintRectangle(JLayer<? extends JComponent> l){
+        dirtyRegion.add(lastDrawnRectangle);
+        dirtyRegion.add(getDrawnRectangle());
+        dirtyRegion.repaint(l);
+    }
+
+    @Override
+    public void paint (Graphics g, JComponent c) {
+        super.paint(g, c);
+        Rectangle rectangle = getDrawnRectangle();
+        if (rectangle != null) {
+            Graphics2D g2 = (Graphics2D) g.create();
+            float[] dash = {10.0f};
+            g2.setStroke(new BasicStroke(1.0f,BasicStroke.CAP_BUTT,BasicStroke.JOIN_MITER,10.0f,dash,0.0f));
+            g2.drawRect(rectangle.x, rectangle.y, rectangle.width, rectangle.height);
+            g2.dispose();
+        }
+        lastDrawnRectangle = rectangle;
         if(isMessageDrawn) {
             int x = MESSAGE_MARGIN / 2;
             int w = c.getWidth() - MESSAGE_MARGIN;
@@ -215,13 +249,13 @@ public class CompositionAreaOverlay extends LayerUI<JComponent>{
             if (e.getID() == MouseEvent.MOUSE_DRAGGED) {
                 end = new Point(e.getLocationOnScreen().x - mainController.getMainWindow().getCompositionArea().getLocationOnScreen().x,
                                 e.getLocationOnScreen().y - mainController.getMainWindow().getCompositionArea().getLocationOnScreen().y);
-                l.repaint();
+                repaintRectangle(l);
             }
             e.consume();
         }
         else if(mode == Mode.RESIZE_GE){
             super.processMouseMotionEvent(e, l);
-            l.repaint();
+            repaintRectangle(l);
         }
     }
 
@@ -271,7 +305,7 @@ public class CompositionAreaOverlay extends LayerUI<JComponent>{
                 start = null;
                 end = null;
                 ratio = -1;
-                l.repaint();
+                repaintRectangle(l);
             }
         }
     }
@@ -303,12 +337,14 @@ public class CompositionAreaOverlay extends LayerUI<JComponent>{
         super.installUI(c);
         JLayer jlayer = (JLayer)c;
         jlayer.setLayerEventMask( AWTEvent.MOUSE_EVENT_MASK | AWTEvent.MOUSE_MOTION_EVENT_MASK );
+        layer = jlayer;
     }
 
     @Override
     public void uninstallUI(JComponent c) {
         JLayer jlayer = (JLayer)c;
         jlayer.setLayerEventMask(0);
+        layer = null;
         super.uninstallUI(c);
     }
 }
@@ -42,14 +42,13 @@ import org.xnap.commons.i18n.I18n;
 import org.xnap.commons.i18n.I18nFactory;
 
 import java.awt.*;
-import java.awt.Image;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
-import java.awt.geom.AffineTransform;
-import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
 import java.beans.EventHandler;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static java.lang.Math.cos;
 import static java.lang.Math.sin;
@@ -108,8 +107,46 @@ public class CompositionJPanel extends JPanel{
     /** Body panel of the CompositionJPanel where is drawn the GraphicalElement.*/
     private JPanel body;
 
-    /** Last BufferedImage rendered used for this CompositionJPanel */
-    private BufferedImage contentImage;
+    /** Last BufferedImage rendered used for this CompositionJPanel, without rotation */
+    private volatile BufferedImage contentImage;
+
+    /** True if the contentImage is a rendering of the GraphicalElement, false if it is a placeholder */
+    private volatile boolean rendered = false;
+
+    /** Partially rendered BufferedImage displayed during a progressive rendering, with rotation */
+    private volatile BufferedImage partialImage;
+
+    /** Component of the body drawing the content of the CompositionJPanel */
+    private final JComponent contentComponent;
+
+    /**
+     * Surface used to draw the content of the CompositionJPanels :
+     * SOFTWARE draws the ARGB BufferedImage as it is,
+     * COMPATIBLE converts it once into an image with the pixel format of the screen,
+     * VOLATILE copies it into an accelerated VolatileImage, restored when its surface is lost.
+     */
+    public enum SurfaceMode {SOFTWARE, COMPATIBLE, VOLATILE}
+
+    /** Surface mode used by all the CompositionJPanels */
+    private static volatile SurfaceMode surfaceMode = SurfaceMode.SOFTWARE;
+
+    /** Image used to draw the content with the COMPATIBLE or VOLATILE surface mode */
+    private Image surfaceImage;
+
+    /** The content image copied into the surfaceImage */
+    private BufferedImage surfaceSource;
+
+    /** Number of paints of the CompositionJPanels content since the last reset */
+    private static final AtomicLong paintCount = new AtomicLong();
+
+    /** Time in nanoseconds spent to paint the CompositionJPanels content since the last reset */
+    private static final AtomicLong paintTime = new AtomicLong();
+
+    /** The contentImage resized to the last size of the GraphicalElement */
+    private BufferedImage scaledContentImage;
+
+    /** The contentImage used to create the scaledContentImage */
+    private BufferedImage scaledContentSource;
 
     /** Object for the translation*/
     private static final I18n i18n = I18nFactory.getI18n(CompositionJPanel.class);
@@ -141,6 +178,9 @@ public class CompositionJPanel extends JPanel{
         }
         //Adds the layer and the body panel
         body = new JPanel(new BorderLayout());
+        contentComponent = new ContentComponent();
+        body.add(contentComponent, BorderLayout.CENTER);
+        body.setOpaque(false);
         waitLayer = new WaitLayerUI();
         JLayer<JPanel> layer = new JLayer<>(body, waitLayer);
         this.add(layer);
@@ -150,105 +190,223 @@ public class CompositionJPanel extends JPanel{
     /**
      * Transform the given BufferedImage to get the unrotated equivalent and store it as contentImage.
      * The stored image will be used to be drawn in the CompositionJPanel without rendering the GraphicalElement.
+     * The un-rotation and the crop are done in one drawing with the inverse rotation as Graphics2D transform.
      * @param renderedBufferedImage BufferedImage to store.
      */
     private void storeLastRenderedImage(BufferedImage renderedBufferedImage){
-        double rad = Math.toRadians(ge.getRotation());
-        //Width and Height of the rectangle containing the rotated bufferedImage
-        final double newWidth = Math.abs(cos(rad)*ge.getWidth())+Math.abs(sin(rad)*ge.getHeight());
-        final double newHeight = Math.abs(cos(rad)*ge.getHeight())+Math.abs(sin(rad)*ge.getWidth());
-        final int maxWidth = Math.max((int)newWidth, ge.getWidth());
-        final int maxHeight = Math.max((int)newHeight, ge.getHeight());
-
-        //create a copy of the given BufferedImage and recover it's form without rotation
-        AffineTransform affineTransform= new AffineTransform();
-        affineTransform.rotate(-Math.toRadians(ge.getRotation()), maxWidth / 2, maxHeight / 2);
-        AffineTransformOp affineTransformOp = new AffineTransformOp(affineTransform, AffineTransformOp.TYPE_BILINEAR);
-        BufferedImage unrotatedBI = affineTransformOp.filter(renderedBufferedImage, null);
-
-        //Crop it to the good size
         BufferedImage croppedBI = new BufferedImage(ge.getWidth(), ge.getHeight(), BufferedImage.TYPE_INT_ARGB);
-        Graphics graph = croppedBI.createGraphics();
-        graph.drawImage(unrotatedBI,
-                0, 0,
-                ge.getWidth(), ge.getHeight(),
-                (maxWidth - ge.getWidth()) / 2, (maxHeight - ge.getHeight()) / 2,
-                maxWidth - ((maxWidth - ge.getWidth()) / 2), maxHeight - ((maxHeight - ge.getHeight()) / 2), null);
+        Graphics2D graph = croppedBI.createGraphics();
+        //The center of the rendered image is the center of the GraphicalElement
+        graph.translate(ge.getWidth() / 2.0, ge.getHeight() / 2.0);
+        if(ge.getRotation() != 0) {
+            graph.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graph.rotate(-Math.toRadians(ge.getRotation()));
+        }
+        graph.translate(-renderedBufferedImage.getWidth() / 2.0, -renderedBufferedImage.getHeight() / 2.0);
+        graph.drawImage(renderedBufferedImage, 0, 0, null);
         graph.dispose();
 
         //Store the copy image as the contentImage
         contentImage = croppedBI;
+        rendered = true;
     }
 
     /**
-     * Returns the contentImage after resizing it and rotating it to fit the GraphicalElement properties (width, height, rotation).
-     * @return The ready to draw BufferedImage of the GraphicalElement.
+     * Returns the contentImage resized to fit the GraphicalElement size. The resized image is cached until the size of
+     * the GraphicalElement or the content change.
+     * @return The unrotated BufferedImage of the GraphicalElement at its size.
      */
     private BufferedImage getContentImage(){
-        double rad = Math.toRadians(ge.getRotation());
-        //Width and Height of the rectangle containing the rotated bufferedImage
-        final double newWidth = Math.abs(cos(rad)*ge.getWidth())+Math.abs(sin(rad)*ge.getHeight());
-        final double newHeight = Math.abs(cos(rad)*ge.getHeight())+Math.abs(sin(rad)*ge.getWidth());
-        final int maxWidth = Math.max((int)newWidth, ge.getWidth());
-        final int maxHeight = Math.max((int)newHeight, ge.getHeight());
-
-        //First scale the contentImage to the new size of the GraphicalELement
-        Image image = contentImage.getScaledInstance(ge.getWidth(), ge.getHeight(), BufferedImage.SCALE_FAST);
-        BufferedImage bi = new BufferedImage(ge.getWidth(), ge.getHeight(), contentImage.getType());
-        Graphics2D graph = bi.createGraphics();
-        graph.drawImage(image, 0, 0, null);
-        graph.dispose();
+        //The contentImage can be replaced by a rendering thread
+        BufferedImage content = contentImage;
+        if(content.getWidth() == ge.getWidth() && content.getHeight() == ge.getHeight()) {
+            return content;
+        }
+        if(scaledContentSource != content || scaledContentImage.getWidth() != ge.getWidth() ||
+                scaledContentImage.getHeight() != ge.getHeight()) {
+            BufferedImage bi = new BufferedImage(ge.getWidth(), ge.getHeight(), BufferedImage.TYPE_INT_ARGB);
+            Graphics2D graph = bi.createGraphics();
+            graph.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graph.drawImage(content, 0, 0, ge.getWidth(), ge.getHeight(), null);
+            graph.dispose();
+            scaledContentImage = bi;
+            scaledContentSource = content;
+        }
+        return scaledContentImage;
+    }
 
-        //Draw the BufferedImage bi into the bigger BufferedImage to prepare it for the rotation (and to avoid cropping the image).
-        BufferedImage bufferedImage = new BufferedImage(maxWidth, maxHeight, bi.getType());
-        graph = bufferedImage.createGraphics();
-        graph.drawImage(bi,
-                (maxWidth - ge.getWidth()) / 2, (maxHeight - ge.getHeight()) / 2,
-                maxWidth - ((maxWidth - ge.getWidth()) / 2), maxHeight - ((maxHeight - ge.getHeight()) / 2),
-                0, 0,
-                ge.getWidth(), ge.getHeight(), null);
+    /**
+     * Draws the contentImage at the size of the GraphicalElement, rotated around the center of the given rectangle.
+     * The rotation is only applied as a transform of the Graphics.
+     * @param g Graphics where the content should be drawn.
+     * @param width Width of the rectangle containing the rotated GraphicalElement.
+     * @param height Height of the rectangle containing the rotated GraphicalElement.
+     */
+    private void paintContentImage(Graphics g, double width, double height){
+        BufferedImage image = getContentImage();
+        Graphics2D graph = (Graphics2D) g.create();
+        graph.translate(width / 2, height / 2);
+        if(ge.getRotation() != 0) {
+            graph.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graph.rotate(Math.toRadians(ge.getRotation()));
+        }
+        graph.translate(-image.getWidth() / 2.0, -image.getHeight() / 2.0);
+        //Without screen, i.e. when painted into an image, the surfaces are created for the destination Graphics
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        if(gc == null) {
+            gc = graph.getDeviceConfiguration();
+        }
+        SurfaceMode mode = surfaceMode;
+        if(mode == SurfaceMode.SOFTWARE || gc == null) {
+            surfaceImage = null;
+            surfaceSource = null;
+            graph.drawImage(image, 0, 0, null);
+        }
+        else if(mode == SurfaceMode.COMPATIBLE) {
+            graph.drawImage(getCompatibleImage(image, gc), 0, 0, null);
+        }
+        else {
+            paintVolatileImage(graph, image, gc);
+        }
         graph.dispose();
+    }
+
+    /**
+     * Returns the given image converted into the pixel format of the screen. The conversion is done once per image.
+     * @param image Image to convert.
+     * @param gc GraphicsConfiguration of the screen.
+     * @return The compatible image.
+     */
+    private Image getCompatibleImage(BufferedImage image, GraphicsConfiguration gc){
+        if(surfaceSource != image || !(surfaceImage instanceof BufferedImage)) {
+            BufferedImage compatible = gc.createCompatibleImage(image.getWidth(), image.getHeight(), Transparency.TRANSLUCENT);
+            Graphics2D graph = compatible.createGraphics();
+            graph.drawImage(image, 0, 0, null);
+            graph.dispose();
+            surfaceImage = compatible;
+            surfaceSource = image;
+        }
+        return surfaceImage;
+    }
 
-        //Create the rotation transform fo the buffered image
-        AffineTransform affineTransform = new AffineTransform();
-        affineTransform.rotate(Math.toRadians(ge.getRotation()), maxWidth / 2, maxHeight / 2);
+    /**
+     * Draws the given image through a VolatileImage. The VolatileImage is created or restored if its surface is lost or
+     * incompatible with the screen, and filled again only if the image or the surface changed.
+     * @param graph Graphics2D where the image should be drawn.
+     * @param image Image to draw.
+     * @param gc GraphicsConfiguration of the screen.
+     */
+    private void paintVolatileImage(Graphics2D graph, BufferedImage image, GraphicsConfiguration gc){
+        VolatileImage volatileImage = surfaceImage instanceof VolatileImage ? (VolatileImage) surfaceImage : null;
+        if(volatileImage != null && (volatileImage.getWidth() != image.getWidth() || volatileImage.getHeight() != image.getHeight())) {
+            volatileImage.flush();
+            volatileImage = null;
+        }
+        do {
+            int valid = volatileImage == null ? VolatileImage.IMAGE_INCOMPATIBLE : volatileImage.validate(gc);
+            if(valid == VolatileImage.IMAGE_INCOMPATIBLE) {
+                if(volatileImage != null) {
+                    volatileImage.flush();
+                }
+                volatileImage = gc.createCompatibleVolatileImage(image.getWidth(), image.getHeight(), Transparency.TRANSLUCENT);
+            }
+            //The surface content is lost if the image was created or restored
+            boolean restore = valid != VolatileImage.IMAGE_OK || surfaceSource != image;
+            if(restore) {
+                Graphics2D vg = volatileImage.createGraphics();
+                vg.setComposite(AlphaComposite.Src);
+                vg.drawImage(image, 0, 0, null);
+                vg.dispose();
+                surfaceSource = image;
+            }
+            graph.drawImage(volatileImage, 0, 0, null);
+        } while(volatileImage.contentsLost());
+        surfaceImage = volatileImage;
+    }
 
-        //Apply the transform to the bufferedImage and draw it
-        AffineTransformOp affineTransformOp = new AffineTransformOp(affineTransform, AffineTransformOp.TYPE_BILINEAR);
-        return affineTransformOp.filter(bufferedImage, null);
+    /**
+     * Sets the surface mode used to draw the content of all the CompositionJPanels.
+     * @param mode Surface mode to use.
+     */
+    public static void setSurfaceMode(SurfaceMode mode){
+        surfaceMode = mode;
+    }
+
+    /**
+     * Returns the surface mode used to draw the content of the CompositionJPanels.
+     * @return The surface mode.
+     */
+    public static SurfaceMode getSurfaceMode(){
+        return surfaceMode;
     }
 
     /**
      * Redraw the GraphicalElement with the given BufferedImage if the argument is not null or with the stored one if the argument is null.
+     * The given BufferedImage is transformed into the stored unrotated image once, in the calling thread (which can be
+     * a rendering thread), so the paint of the CompositionJPanel only draws the stored image.
      *
      * @param bufferedImage New graphical representation of the GE or null.
      */
     public void refresh(final BufferedImage bufferedImage){
+        if(bufferedImage != null) {
+            storeLastRenderedImage(bufferedImage);
+            partialImage = null;
+        }
+        updateBounds();
+    }
+
+    /**
+     * Displays a placeholder of the GraphicalElement which isn't rendered yet, i.e. a thumbnail saved with the
+     * document. The placeholder is resized to the GraphicalElement size and rotated like a rendered image.
+     *
+     * @param placeholder Unrotated placeholder image.
+     */
+    public void refreshPlaceholder(final BufferedImage placeholder){
+        rendered = false;
+        contentImage = placeholder;
+        partialImage = null;
+        updateBounds();
+    }
+
+    /**
+     * Returns the last rendered image of the GraphicalElement, without rotation, or null if it isn't rendered yet.
+     * The placeholder displayed before the first rendering isn't returned.
+     * @return The last rendered image.
+     */
+    public BufferedImage getRenderedImage(){
+        return rendered ? contentImage : null;
+    }
+
+    /**
+     * Displays a partially rendered image of the GraphicalElement during its progressive rendering.
+     * The image is drawn as it is on each paint until the next call to refresh.
+     *
+     * @param bufferedImage Partial graphical representation of the GE, with the rotation applied.
+     */
+    public void refreshPartial(final BufferedImage bufferedImage){
+        partialImage = bufferedImage;
+        updateBounds();
+    }
+
+    /**
+     * Updates the bounds of the CompositionJPanel according to the GraphicalElement and repaints it.
+     * As it modifies Swing components, the update is done in the EDT.
+     */
+    private void updateBounds(){
+        if(!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    updateBounds();
+                }
+            });
+            return;
+        }
         double rad = Math.toRadians(ge.getRotation());
         //Width and Height of the rectangle containing the rotated bufferedImage
         final double newWidth = Math.abs(cos(rad)*ge.getWidth())+Math.abs(sin(rad)*ge.getHeight());
         final double newHeight = Math.abs(cos(rad)*ge.getHeight())+Math.abs(sin(rad)*ge.getWidth());
-        final int maxWidth = Math.max((int)newWidth, ge.getWidth());
-        final int maxHeight = Math.max((int)newHeight, ge.getHeight());
-
-        //Draw the bufferedImage
-        body.removeAll();
-        //Add the BufferedImage into a JComponent in the CompositionJPanel
-        body.add(new JComponent() {
-            //Redefinition of the painComponent method to rotate the component content.
-            @Override
-            protected void paintComponent(Graphics g) {
-                super.paintComponent(g);
-                //If the BufferedImage in argument is not null, use it.
-                if (bufferedImage != null) {
-                    g.drawImage(bufferedImage, -(maxWidth - (int) newWidth) / 2, -(maxHeight - (int) newHeight) / 2, null);
-                    storeLastRenderedImage(bufferedImage);
-                }
-                else if(contentImage != null) {
-                    g.drawImage(getContentImage(), -(maxWidth - (int) newWidth) / 2, -(maxHeight - (int) newHeight) / 2, null);
-                }
-            }
-        }, BorderLayout.CENTER);
+
         body.revalidate();
         if(ge instanceof GEProperties && ((GEProperties)ge).isAlwaysCentered()){
             //Take account of the border width (2 pixels).
@@ -261,8 +419,32 @@ public class CompositionJPanel extends JPanel{
             //Take account of the border width (2 pixels).
             this.setBounds(p.x, p.y, (int) newWidth + 2, (int) newHeight + 2);
         }
-        body.setOpaque(false);
         setBorders();
+        contentComponent.repaint();
+    }
+
+    /**
+     * Returns the number of paints of the CompositionJPanels content since the last reset.
+     * @return The number of paints.
+     */
+    public static long getPaintCount(){
+        return paintCount.get();
+    }
+
+    /**
+     * Returns the time in nanoseconds spent to paint the CompositionJPanels content since the last reset.
+     * @return The paint time in nanoseconds.
+     */
+    public static long getPaintTime(){
+        return paintTime.get();
+    }
+
+    /**
+     * Resets the paint count and the paint time.
+     */
+    public static void resetPaintStatistics(){
+        paintCount.set(0);
+        paintTime.set(0);
     }
 
     /**
@@ -574,15 +756,21 @@ public class CompositionJPanel extends JPanel{
 
         //if the user just want to move the element
         if (moveDirection == CENTER) {
+            int dx = p.x - startPoint.x;
+            int dy = p.y - startPoint.y;
+            //Nothing to do if the mouse hasn't moved. Else, setLocation only repaints the old and new bounds of the panels.
+            if(dx == 0 && dy == 0) {
+                return;
+            }
             //Move the panel to its new location
             if(this.selected) {
                 for (GraphicalElement ge : mainController.getGEController().getSelectedGE()) {
                     JComponent component = mainController.getCompositionAreaController().getCompositionJPanel(ge);
-                    component.setLocation(component.getX() + p.x - startPoint.x, component.getY() + p.y - startPoint.y);
+                    component.setLocation(component.getX() + dx, component.getY() + dy);
                 }
             }
             else {
-                this.setLocation(this.getX() + p.x - startPoint.x, this.getY() + p.y - startPoint.y);
+                this.setLocation(this.getX() + dx, this.getY() + dy);
             }
         }
         //If the user is resizing the element
@@ -759,4 +947,30 @@ public class CompositionJPanel extends JPanel{
     public GraphicalElement getGE(){
         return  ge;
     }
+
+    /**
+     * Component of the body drawing the partial image during a progressive rendering or the stored content image.
+     */
+    private class ContentComponent extends JComponent {
+        @Override
+        protected void paintComponent(Graphics g) {
+            long start = System.nanoTime();
+            super.paintComponent(g);
+            double rad = Math.toRadians(ge.getRotation());
+            //Width and Height of the rectangle containing the rotated image
+            double newWidth = Math.abs(cos(rad)*ge.getWidth())+Math.abs(sin(rad)*ge.getHeight());
+            double newHeight = Math.abs(cos(rad)*ge.getHeight())+Math.abs(sin(rad)*ge.getWidth());
+            BufferedImage partial = partialImage;
+            if (partial != null) {
+                int maxWidth = Math.max((int)newWidth, ge.getWidth());
+                int maxHeight = Math.max((int)newHeight, ge.getHeight());
+                g.drawImage(partial, -(maxWidth - (int) newWidth) / 2, -(maxHeight - (int) newHeight) / 2, null);
+            }
+            else if(contentImage != null) {
+                paintContentImage(g, newWidth, newHeight);
+            }
+            paintCount.incrementAndGet();
+            paintTime.addAndGet(System.nanoTime() - start);
+        }
+    }
 }
@@ -0,0 +1,108 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+
+package org.orbisgis.mapcomposer.view.utils;
+
+import javax.swing.JComponent;
+import java.awt.Rectangle;
+
+/**
+ * This class accumulates the regions of a component which should be repainted (the dirty regions) and repaints only
+ * their union, instead of the whole component.
+ * It is used to repaint only the old and new bounds of what is moving during a drag in the CompositionArea.
+ *
+ * @author Sylvain PALOMINOS
+ */
+public class DirtyRegion {
+
+    /** Union of the dirty regions, null if there is no dirty region. */
+    private Rectangle bounds;
+
+    /** Margin added around each dirty region to take into account the stroke width. */
+    private final int margin;
+
+    /**
+     * Main constructor.
+     * @param margin Margin in pixels added around each dirty region.
+     */
+    public DirtyRegion(int margin){
+        this.margin = margin;
+        this.bounds = null;
+    }
+
+    /**
+     * Adds a dirty region. A null region is ignored.
+     * @param rectangle Region to repaint.
+     */
+    public void add(Rectangle rectangle){
+        if(rectangle == null) {
+            return;
+        }
+        Rectangle region = new Rectangle(rectangle.x - margin, rectangle.y - margin,
+                rectangle.width + 2 * margin + 1, rectangle.height + 2 * margin + 1);
+        if(bounds == null) {
+            bounds = region;
+        }
+        else {
+            bounds.add(region);
+        }
+    }
+
+    /**
+     * Returns true if there is no region to repaint.
+     * @return True if there is no dirty region.
+     */
+    public boolean isEmpty(){
+        return bounds == null;
+    }
+
+    /**
+     * Returns the union of the dirty regions or null if there is no dirty region.
+     * @return The region to repaint.
+     */
+    public Rectangle getBounds(){
+        return bounds == null ? null : new Rectangle(bounds);
+    }
+
+    /**
+     * Asks the given component to repaint the union of the dirty regions and clears them.
+     * @param component Component to repaint.
+     */
+    public void repaint(JComponent component){
+        if(bounds != null) {
+            component.repaint(bounds);
+            bounds = null;
+        }
+    }
+}
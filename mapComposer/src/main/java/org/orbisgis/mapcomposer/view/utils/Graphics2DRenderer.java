@@ -34,19 +34,40 @@
 package org.orbisgis.mapcomposer.view.utils;
 
 import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.StringWriter;
 import java.sql.ResultSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import com.vividsolutions.jts.geom.Envelope;
+import org.orbisgis.commons.progress.NullProgressMonitor;
+import org.orbisgis.commons.progress.ProgressMonitor;
+import org.orbisgis.coremap.layerModel.ILayer;
+import org.orbisgis.coremap.map.JaxbContainer;
 import org.orbisgis.coremap.map.MapTransform;
 import org.orbisgis.coremap.renderer.Renderer;
+import org.orbisgis.coremap.renderer.se.Style;
 import org.orbisgis.coremap.renderer.se.Symbolizer;
+import org.slf4j.LoggerFactory;
 /**
  * This renderer is used to generate rendered-layers in a Graphics2D
  * Adapted from the Renderer class from OrbisGIS written by Maxence Laurent
  *
+ * If the layer cache is enabled, each layer is rendered in its own image which is stored in a cache shared by all
+ * the renderers. The images are identified by the layer data source, the style of the layer, the extent and the size
+ * of the rendering, so a layer used by several maps at the same extent is only rendered once. As the cached images
+ * are raster, the layer cache should only be enabled for raster rendering.
+ * The keys also contain a data version, as the data of a table can be edited without changing its identifier : the
+ * renderings done before a call to invalidateLayerCache() are never drawn again.
+ *
  * @see org.orbisgis.coremap.renderer.Renderer
  * @author Sylvain Palominos
  */
@@ -55,12 +76,137 @@ public class Graphics2DRenderer extends Renderer {
     private int height;
     private Map<Integer, Graphics2D> g2Levels;
     private Graphics2D baseG2;
+    /** Default maximum number of pixels of the layer cache. */
+    public static final long DEFAULT_LAYER_CACHE_PIXELS = 32L * 1024 * 1024;
+    /** Cache of the rendered layers shared by all the renderers. */
+    private static final ImageCache<LayerKey> LAYER_CACHE = new ImageCache<>(DEFAULT_LAYER_CACHE_PIXELS);
+    /** Serialized styles used in the layer keys. The Style instances are replaced when an OWS-Context is reloaded. */
+    private static final Map<Style, String> STYLE_SIGNATURES = Collections.synchronizedMap(new WeakHashMap<Style, String>());
+    /** Version of the layer data, incremented each time the data may have changed. */
+    private static final AtomicLong DATA_VERSION = new AtomicLong();
+    /** True if the layers should be drawn from the layer cache. */
+    private boolean layerCacheEnabled;
     public Graphics2DRenderer(Graphics2D graphics2D, int width, int height) {
         super();
         g2Levels = null;
         baseG2 = graphics2D;
         this.width = width;
         this.height = height;
+        layerCacheEnabled = false;
+    }
+    /**
+     * Enables or disables the drawing of the layers from the layer cache.
+     * @param layerCacheEnabled True to use the layer cache, false to render all the layers.
+     */
+    public void setLayerCacheEnabled(boolean layerCacheEnabled) {
+        this.layerCacheEnabled = layerCacheEnabled;
+    }
+    /**
+     * Returns the cache of the rendered layers, e.g. to change its size or to clear it once the data has changed.
+     * @return The layer cache.
+     */
+    public static ImageCache<?> getLayerCache() {
+        return LAYER_CACHE;
+    }
+    /**
+     * Invalidates the rendered layers as the data of the layers may have changed, i.e. before redrawing a map or
+     * exporting a document. The renderings running during the call are not stored with the new data version.
+     */
+    public static void invalidateLayerCache() {
+        DATA_VERSION.incrementAndGet();
+        LAYER_CACHE.clear();
+    }
+    /**
+     * Returns the current version of the layer data.
+     * @return The data version.
+     */
+    public static long getDataVersion() {
+        return DATA_VERSION.get();
+    }
+    @Override
+    public void draw(Graphics2D g2, int width, int height, Envelope extent, ILayer layer, ProgressMonitor pm) {
+        if (pm == null) {
+            pm = new NullProgressMonitor();
+        }
+        //The cached images can only be drawn without rotation or scale
+        if (!layerCacheEnabled || extent == null || (g2.getTransform().getType() & ~AffineTransform.TYPE_TRANSLATION) != 0) {
+            super.draw(g2, width, height, extent, layer, pm);
+            return;
+        }
+        ILayer[] layers = layer.acceptsChilds() ? layer.getLayersRecursively() : new ILayer[]{layer};
+        //Each layer is a step of the rendering, so the progression and the cancellation are followed layer by layer
+        ProgressMonitor layersPm = pm.startTask(layer.getName(), layers.length);
+        Graphics2D graphics2D = baseG2;
+        try {
+            //Same order as the Renderer : the last layer is drawn first
+            for (int i = layers.length - 1; i >= 0; i--) {
+                if (pm.isCancelled()) {
+                    break;
+                }
+                ILayer l = layers[i];
+                ProgressMonitor layerPm = layersPm.startTask(l.getName(), 1);
+                if (l.acceptsChilds() || !l.isVisible()) {
+                    layerPm.endTask();
+                    continue;
+                }
+                LayerKey key = createLayerKey(l, extent, width, height);
+                if (key == null) {
+                    baseG2 = g2;
+                    super.draw(g2, width, height, extent, l, layerPm);
+                    layerPm.endTask();
+                    continue;
+                }
+                BufferedImage image = LAYER_CACHE.get(key);
+                if (image == null) {
+                    image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+                    Graphics2D layerG2 = image.createGraphics();
+                    baseG2 = layerG2;
+                    super.draw(layerG2, width, height, extent, l, layerPm);
+                    layerG2.dispose();
+                    //Do not store nor draw a partially rendered layer
+                    if (pm.isCancelled()) {
+                        break;
+                    }
+                    LAYER_CACHE.put(key, image);
+                }
+                g2.drawImage(image, 0, 0, null);
+                layerPm.endTask();
+            }
+        } finally {
+            baseG2 = graphics2D;
+        }
+    }
+    /**
+     * Creates the key identifying the rendering of the given layer in the cache.
+     * @param layer Layer to render.
+     * @param extent Extent of the rendering.
+     * @param width Width of the rendering.
+     * @param height Height of the rendering.
+     * @return The key of the layer or null if the layer can't be identified.
+     */
+    private static LayerKey createLayerKey(ILayer layer, Envelope extent, int width, int height) {
+        String source = layer.getDataUri() != null ? layer.getDataUri().toString() : layer.getTableReference();
+        if (source == null || source.isEmpty()) {
+            return null;
+        }
+        StringBuilder styles = new StringBuilder();
+        for (Style style : layer.getStyles()) {
+            String signature = STYLE_SIGNATURES.get(style);
+            if (signature == null) {
+                try {
+                    StringWriter writer = new StringWriter();
+                    Marshaller marshaller = JaxbContainer.JAXBCONTEXT.createMarshaller();
+                    marshaller.marshal(style.getJAXBElement(), writer);
+                    signature = writer.toString();
+                    STYLE_SIGNATURES.put(style, signature);
+                } catch (JAXBException ex) {
+                    LoggerFactory.getLogger(Graphics2DRenderer.class).error(ex.getMessage());
+                    return null;
+                }
+            }
+            styles.append(signature);
+        }
+        return new LayerKey(source + "#" + DATA_VERSION.get(), styles.toString(), extent, width, height);
     }
     @Override
     protected Graphics2D getGraphics2D(Symbolizer s) {
@@ -102,4 +248,48 @@ public class Graphics2DRenderer extends Renderer {
     @Override
     protected void endFeature(long id, ResultSet rs) {
     }
-}
\ No newline at end of file
+    /**
+     * Key identifying the rendering of a layer in the cache.
+     */
+    private static final class LayerKey {
+        private final String source;
+        private final String styles;
+        private final double minX;
+        private final double minY;
+        private final double maxX;
+        private final double maxY;
+        private final int width;
+        private final int height;
+        private LayerKey(String source, String styles, Envelope extent, int width, int height) {
+            this.source = source;
+            this.styles = styles;
+            this.minX = extent.getMinX();
+            this.minY = extent.getMinY();
+            this.maxX = extent.getMaxX();
+            this.maxY = extent.getMaxY();
+            this.width = width;
+            this.height = height;
+        }
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof LayerKey)) {
+                return false;
+            }
+            LayerKey other = (LayerKey) o;
+            return source.equals(other.source) && styles.equals(other.styles) && minX == other.minX &&
+                    minY == other.minY && maxX == other.maxX && maxY == other.maxY && width == other.width &&
+                    height == other.height;
+        }
+        @Override
+        public int hashCode() {
+            int hash = source.hashCode();
+            hash = 31 * hash + styles.hashCode();
+            hash = 31 * hash + Double.valueOf(minX).hashCode();
+            hash = 31 * hash + Double.valueOf(minY).hashCode();
+            hash = 31 * hash + Double.valueOf(maxX).hashCode();
+            hash = 31 * hash + Double.valueOf(maxY).hashCode();
+            hash = 31 * hash + width;
+            return 31 * hash + height;
+        }
+    }
+}
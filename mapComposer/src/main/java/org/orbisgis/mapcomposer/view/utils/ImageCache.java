@@ -0,0 +1,153 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+
+package org.orbisgis.mapcomposer.view.utils;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of BufferedImages.
+ * The size of the cache is bounded by the total number of pixels of the images it contains : once the bound is
+ * reached, the least recently used images are removed.
+ * All the methods are synchronized so the cache can be shared between rendering threads.
+ *
+ * @param <K> Class of the keys identifying the images.
+ *
+ * @author Sylvain PALOMINOS
+ */
+public class ImageCache<K> {
+
+    /** Maximum number of pixels stored in the cache. */
+    private long maxPixels;
+
+    /** Number of pixels stored in the cache. */
+    private long pixelCount;
+
+    /** Images of the cache, ordered from the least recently used to the most recently used. */
+    private final LinkedHashMap<K, BufferedImage> map;
+
+    /**
+     * Main constructor.
+     * @param maxPixels Maximum number of pixels stored in the cache.
+     */
+    public ImageCache(long maxPixels){
+        this.maxPixels = maxPixels;
+        this.pixelCount = 0;
+        //Access order to get the LRU behaviour
+        this.map = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns the image corresponding to the key or null if it isn't in the cache.
+     * @param key Key of the image.
+     * @return The cached image or null.
+     */
+    public synchronized BufferedImage get(K key){
+        return map.get(key);
+    }
+
+    /**
+     * Adds an image in the cache. If the image is bigger than the cache, it is not stored.
+     * @param key Key of the image.
+     * @param image Image to store.
+     */
+    public synchronized void put(K key, BufferedImage image){
+        long pixels = (long)image.getWidth() * image.getHeight();
+        if(pixels > maxPixels) {
+            return;
+        }
+        BufferedImage previous = map.put(key, image);
+        if(previous != null) {
+            pixelCount -= (long)previous.getWidth() * previous.getHeight();
+        }
+        pixelCount += pixels;
+        trim();
+    }
+
+    /**
+     * Removes all the images from the cache.
+     */
+    public synchronized void clear(){
+        map.clear();
+        pixelCount = 0;
+    }
+
+    /**
+     * Sets the maximum number of pixels of the cache, removing the least recently used images if needed.
+     * @param maxPixels Maximum number of pixels stored in the cache.
+     */
+    public synchronized void setMaxPixels(long maxPixels){
+        this.maxPixels = maxPixels;
+        trim();
+    }
+
+    /**
+     * Returns the maximum number of pixels stored in the cache.
+     * @return The maximum number of pixels.
+     */
+    public synchronized long getMaxPixels(){
+        return maxPixels;
+    }
+
+    /**
+     * Returns the number of pixels stored in the cache.
+     * @return The number of pixels.
+     */
+    public synchronized long getPixelCount(){
+        return pixelCount;
+    }
+
+    /**
+     * Returns the number of images stored in the cache.
+     * @return The number of images.
+     */
+    public synchronized int size(){
+        return map.size();
+    }
+
+    /**
+     * Removes the least recently used images until the number of pixels fits the maximum.
+     */
+    private void trim(){
+        Iterator<Map.Entry<K, BufferedImage>> it = map.entrySet().iterator();
+        while(pixelCount > maxPixels && it.hasNext()){
+            BufferedImage image = it.next().getValue();
+            pixelCount -= (long)image.getWidth() * image.getHeight();
+            it.remove();
+        }
+    }
+}
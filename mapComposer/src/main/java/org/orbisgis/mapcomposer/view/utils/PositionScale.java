@@ -34,6 +34,7 @@
 
 package org.orbisgis.mapcomposer.view.utils;
 
+import org.orbisgis.mapcomposer.model.utils.Resolution;
 import org.orbisgis.mapcomposer.view.ui.CompositionArea;
 
 import javax.swing.JComponent;
@@ -49,7 +50,7 @@ import java.awt.event.AdjustmentEvent;
 
 public class PositionScale extends JComponent {
     /** Dot Per Inch value */
-    public static final int DPI = Toolkit.getDefaultToolkit().getScreenResolution();
+    public static final int DPI = Resolution.getScreenDPI();
     /** Indicate if the PositionScale is horizontal.*/
     public static final int HORIZONTAL = 0;
     /** Indicate if the PositionScale is vertical.*/
@@ -90,9 +91,32 @@ public class PositionScale extends JComponent {
      * @param p Position of the mouse in the CompositionJPanel.
      */
     public void setMousePosition(Point p){
+        Point oldPosition = mousePosition;
         mousePosition = new Point(p.x - SIZE, p.y - SIZE);
-        this.revalidate();
-        this.repaint();
+        //Only repaints the strips under the old and the new cursor
+        if (orientation == HORIZONTAL) {
+            if(oldPosition.x != mousePosition.x) {
+                this.repaint(getCursorStrip(oldPosition));
+                this.repaint(getCursorStrip(mousePosition));
+            }
+        }
+        else if(oldPosition.y != mousePosition.y) {
+            this.repaint(getCursorStrip(oldPosition));
+            this.repaint(getCursorStrip(mousePosition));
+        }
+    }
+
+    /**
+     * Returns the strip of the PositionScale where the cursor is drawn for the given mouse position.
+     * @param position Mouse position.
+     * @return The strip containing the cursor.
+     */
+    private Rectangle getCursorStrip(Point position){
+        //The cursor line is drawn at position-1 with a stroke of CURSOR_SIZE pixels
+        if (orientation == HORIZONTAL)
+            return new Rectangle(position.x - 1 - CURSOR_SIZE, 0, 2 * CURSOR_SIZE + 1, getHeight());
+        else
+            return new Rectangle(0, position.y - 1 - CURSOR_SIZE, getWidth(), 2 * CURSOR_SIZE + 1);
     }
 
     @Override
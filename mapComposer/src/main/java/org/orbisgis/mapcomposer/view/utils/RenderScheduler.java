@@ -0,0 +1,231 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+
+package org.orbisgis.mapcomposer.view.utils;
+
+import org.orbisgis.mapcomposer.model.graphicalelement.element.cartographic.MapImage;
+import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GraphicalElement;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class schedules the RenderWorkers of the CompositionArea on a pool of rendering threads.
+ * Each render request gets a priority according to the class of the GraphicalElement to render : the lower the value
+ * is, the sooner the request is executed. So the cheap elements (texts, scales, shapes ...) are not waiting behind the
+ * rendering of the maps.
+ * A GraphicalElement can only have one waiting render request : scheduling a new one cancels the previous one if it
+ * is still in the queue.
+ *
+ * @author Sylvain PALOMINOS
+ */
+public class RenderScheduler {
+
+    /** Priority of the GraphicalElements which don't have a specific priority. */
+    public static final int DEFAULT_PRIORITY = 0;
+    /** Priority of the heavy GraphicalElements like the maps. */
+    public static final int LOW_PRIORITY = 10;
+
+    /** Executor running the render requests. */
+    private final ThreadPoolExecutor executor;
+
+    /** Map linking the GraphicalElement classes to their rendering priority. */
+    private final Map<Class<? extends GraphicalElement>, Integer> priorityMap;
+
+    /** Map of the render requests waiting in the queue, one per GraphicalElement. */
+    private final Map<GraphicalElement, RenderRequest> pendingMap;
+
+    /** Counter giving the submission order of the requests to keep a FIFO order between the same priorities. */
+    private final AtomicLong sequence;
+
+    /**
+     * Main constructor.
+     * @param threadCount Number of rendering threads. If it is lower than 1, one thread per processor is used.
+     */
+    public RenderScheduler(int threadCount){
+        int count = threadCount < 1 ? Runtime.getRuntime().availableProcessors() : threadCount;
+        executor = new ThreadPoolExecutor(count, count, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new RenderThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+        priorityMap = new HashMap<>();
+        pendingMap = new HashMap<>();
+        sequence = new AtomicLong();
+        priorityMap.put(MapImage.class, LOW_PRIORITY);
+    }
+
+    /**
+     * Sets the number of rendering threads.
+     * @param threadCount Number of rendering threads. If it is lower than 1, one thread per processor is used.
+     */
+    public void setThreadCount(int threadCount){
+        int count = threadCount < 1 ? Runtime.getRuntime().availableProcessors() : threadCount;
+        if(count > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(count);
+            executor.setCorePoolSize(count);
+        }
+        else {
+            executor.setCorePoolSize(count);
+            executor.setMaximumPoolSize(count);
+        }
+    }
+
+    /**
+     * Returns the number of rendering threads.
+     * @return The number of rendering threads.
+     */
+    public int getThreadCount(){
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Sets the rendering priority of a GraphicalElement class. The lower the value is, the sooner the GraphicalElements
+     * of this class are rendered.
+     * @param geClass Class of the GraphicalElement.
+     * @param priority Priority of the class.
+     */
+    public synchronized void setPriority(Class<? extends GraphicalElement> geClass, int priority){
+        priorityMap.put(geClass, priority);
+    }
+
+    /**
+     * Returns the rendering priority of the given GraphicalElement class.
+     * @param geClass Class of the GraphicalElement.
+     * @return The priority of the class.
+     */
+    public synchronized int getPriority(Class<? extends GraphicalElement> geClass){
+        Integer priority = priorityMap.get(geClass);
+        return priority == null ? DEFAULT_PRIORITY : priority;
+    }
+
+    /**
+     * Schedules the rendering of a GraphicalElement.
+     * If a render request of the same GraphicalElement is still waiting in the queue, it is cancelled and replaced.
+     * @param ge GraphicalElement to render.
+     * @param worker RenderWorker doing the rendering.
+     */
+    public synchronized void schedule(GraphicalElement ge, RenderWorker worker){
+        RenderRequest previous = pendingMap.remove(ge);
+        if(previous != null && executor.remove(previous)){
+            previous.worker.cancel();
+        }
+        RenderRequest request = new RenderRequest(ge, worker, getPriority(ge.getClass()), sequence.getAndIncrement());
+        pendingMap.put(ge, request);
+        executor.execute(request);
+    }
+
+    /**
+     * Cancels the render request of the given GraphicalElement if it is still waiting in the queue.
+     * @param ge GraphicalElement which rendering should be cancelled.
+     */
+    public synchronized void cancel(GraphicalElement ge){
+        RenderRequest request = pendingMap.remove(ge);
+        if(request != null && executor.remove(request)){
+            request.worker.cancel();
+        }
+    }
+
+    /**
+     * Cancels all the render requests waiting in the queue.
+     */
+    public synchronized void cancelAll(){
+        for(RenderRequest request : pendingMap.values()){
+            if(executor.remove(request)){
+                request.worker.cancel();
+            }
+        }
+        pendingMap.clear();
+    }
+
+    /**
+     * Removes the given request from the waiting ones when it starts to run.
+     * @param request Starting request.
+     */
+    private synchronized void onStart(RenderRequest request){
+        if(pendingMap.get(request.ge) == request){
+            pendingMap.remove(request.ge);
+        }
+    }
+
+    /**
+     * Render request put in the queue of the executor.
+     * The requests are ordered by priority and then by submission order.
+     */
+    private final class RenderRequest implements Runnable, Comparable<RenderRequest> {
+        private final GraphicalElement ge;
+        private final RenderWorker worker;
+        private final int priority;
+        private final long order;
+
+        private RenderRequest(GraphicalElement ge, RenderWorker worker, int priority, long order){
+            this.ge = ge;
+            this.worker = worker;
+            this.priority = priority;
+            this.order = order;
+        }
+
+        @Override
+        public void run() {
+            onStart(this);
+            worker.run();
+        }
+
+        @Override
+        public int compareTo(RenderRequest other) {
+            if(priority != other.priority) {
+                return priority < other.priority ? -1 : 1;
+            }
+            return order < other.order ? -1 : (order == other.order ? 0 : 1);
+        }
+    }
+
+    /**
+     * ThreadFactory creating daemon threads to not block the closing of OrbisGIS.
+     */
+    private static final class RenderThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "MapComposer-render-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -37,21 +37,33 @@ package org.orbisgis.mapcomposer.view.utils;
 import org.orbisgis.commons.progress.SwingWorkerPM;
 import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GraphicalElement;
 import org.orbisgis.mapcomposer.view.graphicalelement.GERenderer;
+import org.orbisgis.mapcomposer.view.graphicalelement.RendererProgressive;
 import org.orbisgis.mapcomposer.view.graphicalelement.RendererRaster;
 
 import javax.swing.*;
 import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Map;
 
 /**
  * This class extends the SwingWorker and is used to do the rendering of a GraphicalElement without freezing the MapComposer.
+ * If the renderer is a RendererProgressive, the partially rendered image is displayed during the rendering.
  *
  * @author Sylvain PALOMINOS
  */
-public class RenderWorker extends SwingWorkerPM {
+public class RenderWorker extends SwingWorkerPM<Object, BufferedImage> {
 
     private CompositionJPanel compPanel;
     private GERenderer geRenderer;
     private GraphicalElement ge;
+    /** Partially rendered image already displayed in the CompositionJPanel. */
+    private BufferedImage displayedImage;
+    /** True once the final image is given to the CompositionJPanel, to ignore the late partial images. */
+    private volatile boolean finished = false;
+    /** Task done in the rendering thread before the rendering, i.e. the opening of a deferred map. Can be null. */
+    private Runnable preparation;
+    /** Map of the current RenderWorker of each GraphicalElement, used to know if this one was replaced. Can be null. */
+    private Map<GraphicalElement, RenderWorker> workerMap;
 
     /**
      * Main Constructor
@@ -65,16 +77,103 @@ public class RenderWorker extends SwingWorkerPM {
         this.ge = ge;
     }
 
+    /**
+     * Sets the task to do in the rendering thread before the rendering, i.e. the long refresh of a GraphicalElement.
+     * @param preparation Task to run before the rendering.
+     */
+    public void setPreparation(Runnable preparation){
+        this.preparation = preparation;
+    }
+
+    /**
+     * Sets the map of the current RenderWorker of each GraphicalElement. Once this worker is replaced in the map by a
+     * newer rendering of its GraphicalElement, it leaves the wait layer and the state of the CompositionJPanel to it.
+     * @param workerMap Map of the current RenderWorker of each GraphicalElement.
+     */
+    public void setWorkerMap(Map<GraphicalElement, RenderWorker> workerMap){
+        this.workerMap = workerMap;
+    }
+
+    /**
+     * Returns true if no newer RenderWorker of the GraphicalElement replaced this one.
+     * @return True if this worker is the current one of its GraphicalElement.
+     */
+    private boolean isCurrentWorker(){
+        if(workerMap == null) {
+            return true;
+        }
+        RenderWorker current = workerMap.get(ge);
+        return current == null || current == this;
+    }
+
+    /**
+     * Returns true if the rendering was cancelled through the ProgressMonitor, false otherwise.
+     * @return True if the rendering was cancelled.
+     */
+    public boolean isRenderingCancelled(){
+        return isCancelled() || this.getProgressMonitor().isCancelled();
+    }
+
     @Override
     protected Object doInBackground() throws Exception {
+        //The rendering was superseded before starting
+        if(isRenderingCancelled()) {
+            return null;
+        }
         //Display the wait layer in the CompositionJPanel
         compPanel.setEnabled(false);
         compPanel.getWaitLayer().start();
-        BufferedImage bi = ((RendererRaster)geRenderer).createGEImage(ge, this.getProgressMonitor());
-        compPanel.refresh(bi);
-        compPanel.getWaitLayer().stop();
-        compPanel.setEnabled(true);
+        try {
+            if(preparation != null) {
+                preparation.run();
+                if(isRenderingCancelled()) {
+                    return null;
+                }
+            }
+            BufferedImage bi;
+            if(geRenderer instanceof RendererProgressive) {
+                bi = ((RendererProgressive)geRenderer).createGEImage(ge, this.getProgressMonitor(),
+                        new RendererProgressive.ImageListener() {
+                            @Override
+                            public void imageUpdated(BufferedImage image) {
+                                if(!isRenderingCancelled()) {
+                                    publish(image);
+                                }
+                            }
+                        });
+            }
+            else {
+                bi = ((RendererRaster) geRenderer).createGEImage(ge, this.getProgressMonitor());
+            }
+            //Do not display the image of a cancelled rendering, it may be incomplete or outdated
+            if(!isRenderingCancelled()) {
+                finished = true;
+                compPanel.refresh(bi);
+            }
+        }
+        finally {
+            //A replacing worker may already display its own wait layer
+            if(isCurrentWorker()) {
+                compPanel.getWaitLayer().stop();
+                compPanel.setEnabled(true);
+            }
+        }
         return null;
     }
-}
 
+    @Override
+    protected void process(List<BufferedImage> chunks) {
+        if(finished || isRenderingCancelled() || chunks.isEmpty()) {
+            return;
+        }
+        BufferedImage image = chunks.get(chunks.size() - 1);
+        //The partial image is updated in place, so it only needs to be repainted once displayed
+        if(image != displayedImage) {
+            displayedImage = image;
+            compPanel.refreshPartial(image);
+        }
+        else {
+            compPanel.repaint();
+        }
+    }
+}
@@ -36,6 +36,7 @@ package org.orbisgis.mapcomposer.view.utils;
 
 import org.orbisgis.mapcomposer.controller.utils.exportThreads.ExportPDFThread;
 import org.orbisgis.mapcomposer.controller.utils.exportThreads.ExportImageThread;
+import org.orbisgis.mapcomposer.controller.utils.exportThreads.ExportSVGThread;
 import org.orbisgis.mapcomposer.controller.utils.exportThreads.ExportThread;
 import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GraphicalElement;
 import org.orbisgis.mapcomposer.model.graphicalelement.utils.GEManager;
@@ -99,6 +100,7 @@ public class UIDialogExportConfiguration implements UIPanel {
         //Instantiate the basics ExportThread
         this.addExportThread(new ExportPDFThread());
         this.addExportThread(new ExportImageThread());
+        this.addExportThread(new ExportSVGThread());
     }
 
     /**
@@ -0,0 +1,111 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+package org.orbisgis.mapcomposer.controller;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.orbisgis.mapcomposer.controller.utils.exportThreads.ExportJob;
+import org.orbisgis.mapcomposer.model.configurationattribute.attribute.OwsContextCA;
+import org.orbisgis.mapcomposer.model.configurationattribute.interfaces.ConfigurationAttribute;
+import org.orbisgis.mapcomposer.model.configurationattribute.utils.CAManager;
+import org.orbisgis.mapcomposer.model.graphicalelement.element.Document;
+import org.orbisgis.mapcomposer.model.graphicalelement.element.cartographic.MapImage;
+import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GraphicalElement;
+import org.orbisgis.mapcomposer.model.graphicalelement.utils.GEManager;
+import org.orbisgis.mapcomposer.model.utils.SaveAndLoadHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class HeadlessExporterTest {
+
+    @Test
+    public final void mapImageWithoutDataManagerTest() throws IOException {
+        new SaveAndLoadHandler(new GEManager(), new CAManager()).save(createDocument(),
+                "target/mapImageWithoutDataManagerTest.xml");
+        HeadlessExporter exporter = new HeadlessExporter(null);
+        for(String extension : new String[]{"png", "pdf", "svg"}) {
+            File file = new File("target/mapImageWithoutDataManagerTest." + extension);
+            ExportJob job = new ExportJob("target/mapImageWithoutDataManagerTest.xml", file.getPath());
+            //The MapImage is drawn as an icon, as its OwsMapContext can't be opened
+            Assert.assertTrue(exporter.export(job));
+            Assert.assertTrue(file.length() > 0);
+        }
+    }
+
+    @Test
+    public final void renderingOverrideTest() throws IOException {
+        new SaveAndLoadHandler(new GEManager(), new CAManager()).save(createDocument(),
+                "target/renderingOverrideTest.xml");
+        HeadlessExporter exporter = new HeadlessExporter(null);
+        for(boolean isVector : new boolean[]{true, false}) {
+            File file = new File("target/renderingOverrideTest" + isVector + ".png");
+            ExportJob job = new ExportJob("target/renderingOverrideTest.xml", file.getPath());
+            job.setVector(MapImage.class, isVector);
+            Assert.assertTrue(exporter.export(job));
+            job.setDPI(300);
+            Assert.assertTrue(exporter.export(job));
+            Assert.assertTrue(file.length() > 0);
+        }
+        //The resolution is only available for the image exports
+        for(String extension : new String[]{"pdf", "svg"}) {
+            ExportJob job = new ExportJob("target/renderingOverrideTest.xml", "target/renderingOverrideTest." + extension);
+            job.setDPI(300);
+            Assert.assertFalse(exporter.export(job));
+        }
+    }
+
+    /**
+     * Returns a Document containing a MapImage whose OWS-Context path is set.
+     */
+    private static List<GraphicalElement> createDocument(){
+        List<GraphicalElement> listGE = new ArrayList<>();
+        listGE.add(new Document());
+        MapImage mapImage = new MapImage();
+        mapImage.setWidth(200);
+        mapImage.setHeight(100);
+        for(ConfigurationAttribute ca : mapImage.getAllAttributes()) {
+            if(ca instanceof OwsContextCA) {
+                String path = new File("target/mapImageWithoutDataManagerTest.ows").getAbsolutePath();
+                ((OwsContextCA) ca).add(path);
+                ((OwsContextCA) ca).select(path);
+            }
+        }
+        Assert.assertNotNull(mapImage.getOwsPath());
+        listGE.add(mapImage);
+        return listGE;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+package org.orbisgis.mapcomposer.controller.utils.exportThreads;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AtlasTest {
+
+    @Test
+    public final void extentTest() {
+        Atlas atlas = new Atlas(null, "SELECT 1");
+        atlas.setMargin(0.1);
+        Envelope extent = atlas.getExtent(new Envelope(0, 100, 0, 50), null);
+        Assert.assertEquals(new Envelope(-10, 110, -5, 55), extent);
+
+        //A vertical line takes its length as width
+        extent = atlas.getExtent(new Envelope(10, 10, 0, 100), null);
+        Assert.assertEquals(new Envelope(-50, 70, -10, 110), extent);
+
+        //A point takes the size of the template extent
+        extent = atlas.getExtent(new Envelope(10, 10, 20, 20), new Envelope(0, 200, 0, 100));
+        Assert.assertEquals(new Envelope(-110, 130, -40, 80), extent);
+
+        //A point without template extent gets a minimum size
+        extent = atlas.getExtent(new Envelope(10, 10, 20, 20), new Envelope());
+        Assert.assertTrue(extent.getWidth() > 0);
+        Assert.assertTrue(extent.getHeight() > 0);
+        Assert.assertEquals(10, extent.centre().x, 1e-9);
+        Assert.assertEquals(20, extent.centre().y, 1e-9);
+    }
+}
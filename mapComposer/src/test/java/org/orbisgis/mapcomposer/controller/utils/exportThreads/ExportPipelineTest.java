@@ -0,0 +1,155 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+package org.orbisgis.mapcomposer.controller.utils.exportThreads;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ExportPipelineTest {
+
+    @Test
+    public final void runTest() throws InterruptedException {
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for(int i = 0; i < 20; i++) {
+            final int value = i;
+            tasks.add(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    if(value == 5) {
+                        throw new Exception("Rendering failure");
+                    }
+                    return value * value;
+                }
+            });
+        }
+        final List<Integer> encoded = Collections.synchronizedList(new ArrayList<Integer>());
+        boolean[] result = new ExportPipeline<Integer>(4, 2).run(tasks, new ExportPipeline.Encoder<Integer>() {
+            @Override
+            public void encode(int index, Integer item) throws Exception {
+                Assert.assertEquals(index * index, item.intValue());
+                if(index == 7) {
+                    throw new Exception("Encoding failure");
+                }
+                encoded.add(index);
+            }
+        });
+
+        //A failed rendering or encoding doesn't stop the other items
+        Assert.assertEquals(20, result.length);
+        Assert.assertEquals(18, encoded.size());
+        for(int i = 0; i < 20; i++) {
+            Assert.assertEquals(i != 5 && i != 7, result[i]);
+            Assert.assertEquals(i != 5 && i != 7, encoded.contains(i));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public final void errorRunTest() throws InterruptedException {
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for(int i = 0; i < 4; i++) {
+            final int value = i;
+            tasks.add(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    if(value == 1) {
+                        throw new OutOfMemoryError("Rendering error");
+                    }
+                    return value;
+                }
+            });
+        }
+        //The Error doesn't block the encoding stage
+        boolean[] result = new ExportPipeline<Integer>(2, 1).run(tasks, new ExportPipeline.Encoder<Integer>() {
+            @Override
+            public void encode(int index, Integer item) throws Exception {
+                Assert.assertEquals(index, item.intValue());
+            }
+        });
+        Assert.assertTrue(result[0]);
+        Assert.assertFalse(result[1]);
+        Assert.assertTrue(result[2]);
+        Assert.assertTrue(result[3]);
+    }
+
+    @Test(timeout = 10000)
+    public final void queueDepthTest() throws InterruptedException {
+        final AtomicInteger inMemory = new AtomicInteger();
+        final AtomicInteger maxInMemory = new AtomicInteger();
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for(int i = 0; i < 50; i++) {
+            final int value = i;
+            tasks.add(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    int count = inMemory.incrementAndGet();
+                    synchronized (maxInMemory) {
+                        maxInMemory.set(Math.max(maxInMemory.get(), count));
+                    }
+                    Thread.sleep(1);
+                    return value;
+                }
+            });
+        }
+        //The items being rendered, waiting and being encoded are bounded by the queue depth, not by the thread count
+        boolean[] result = new ExportPipeline<Integer>(8, 3).run(tasks, new ExportPipeline.Encoder<Integer>() {
+            @Override
+            public void encode(int index, Integer item) throws Exception {
+                Thread.sleep(2);
+                inMemory.decrementAndGet();
+            }
+        });
+        for(boolean encoded : result) {
+            Assert.assertTrue(encoded);
+        }
+        Assert.assertTrue(maxInMemory.get() <= 3);
+    }
+
+    @Test
+    public final void emptyRunTest() throws InterruptedException {
+        boolean[] result = new ExportPipeline<Integer>(2, 1).run(new ArrayList<Callable<Integer>>(),
+                new ExportPipeline.Encoder<Integer>() {
+            @Override
+            public void encode(int index, Integer item) throws Exception {
+                Assert.fail();
+            }
+        });
+        Assert.assertEquals(0, result.length);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+package org.orbisgis.mapcomposer.controller.utils.exportThreads;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+public class PNGStreamWriterTest {
+
+    @Test
+    public final void writeByBandsTest() throws IOException {
+        int width = 301;
+        int height = 257;
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(0);
+        for(int y = 0; y < height; y++) {
+            for(int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+
+        //Write the image by bands of 50 rows
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PNGStreamWriter writer = new PNGStreamWriter(out, width, height);
+        for(int y = 0; y < height; y += 50) {
+            int rows = Math.min(50, height - y);
+            writer.writeRows(image.getSubimage(0, y, width, rows), rows);
+        }
+        Assert.assertEquals(height, writer.getRowCount());
+        writer.finish();
+
+        BufferedImage read = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertEquals(width, read.getWidth());
+        Assert.assertEquals(height, read.getHeight());
+        for(int y = 0; y < height; y++) {
+            for(int x = 0; x < width; x++) {
+                Assert.assertEquals(image.getRGB(x, y), read.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public final void missingRowsTest() throws IOException {
+        PNGStreamWriter writer = new PNGStreamWriter(new ByteArrayOutputStream(), 10, 10);
+        writer.writeRows(new BufferedImage(10, 5, BufferedImage.TYPE_INT_ARGB), 5);
+        writer.finish();
+    }
+}
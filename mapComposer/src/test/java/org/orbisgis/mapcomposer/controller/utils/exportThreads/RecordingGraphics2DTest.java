@@ -0,0 +1,172 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+package org.orbisgis.mapcomposer.controller.utils.exportThreads;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.LinearGradientPaint;
+import java.awt.Paint;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.TexturePaint;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RecordingGraphics2DTest {
+
+    @Test
+    public void digestTest() throws NoSuchAlgorithmException {
+        String first = record(Color.BLUE, AlphaComposite.SrcOver, null).getDigest();
+        Assert.assertEquals(first, record(Color.BLUE, AlphaComposite.SrcOver, null).getDigest());
+        Assert.assertFalse(first.equals(record(Color.GREEN, AlphaComposite.SrcOver, null).getDigest()));
+        Assert.assertFalse(first.equals(record(Color.BLUE, AlphaComposite.SrcOver.derive(0.5f), null).getDigest()));
+        Assert.assertFalse(first.equals(record(Color.BLUE, AlphaComposite.Src, null).getDigest()));
+    }
+
+    @Test
+    public void paintDigestTest() throws NoSuchAlgorithmException {
+        Paint gradient = new LinearGradientPaint(0, 0, 20, 0, new float[]{0, 1}, new Color[]{Color.RED, Color.BLUE});
+        Paint otherGradient = new LinearGradientPaint(0, 0, 20, 0, new float[]{0, 1},
+                new Color[]{Color.RED, Color.GREEN});
+        String gradientDigest = record(gradient, AlphaComposite.SrcOver, null).getDigest();
+        Assert.assertEquals(gradientDigest, record(new LinearGradientPaint(0, 0, 20, 0, new float[]{0, 1},
+                new Color[]{Color.RED, Color.BLUE}), AlphaComposite.SrcOver, null).getDigest());
+        Assert.assertFalse(gradientDigest.equals(record(otherGradient, AlphaComposite.SrcOver, null).getDigest()));
+
+        String textureDigest = record(texture(Color.RED), AlphaComposite.SrcOver, null).getDigest();
+        Assert.assertEquals(textureDigest, record(texture(Color.RED), AlphaComposite.SrcOver, null).getDigest());
+        Assert.assertFalse(textureDigest.equals(record(texture(Color.BLUE), AlphaComposite.SrcOver, null)
+                .getDigest()));
+        //The paint of the current color is never mistaken for a texture
+        Assert.assertFalse(textureDigest.equals(record(Color.BLACK, AlphaComposite.SrcOver, null).getDigest()));
+    }
+
+    @Test
+    public void imageDigestTest() throws NoSuchAlgorithmException {
+        String first = record(Color.BLUE, AlphaComposite.SrcOver, image(Color.RED)).getDigest();
+        Assert.assertEquals(first, record(Color.BLUE, AlphaComposite.SrcOver, image(Color.RED)).getDigest());
+        Assert.assertFalse(first.equals(record(Color.BLUE, AlphaComposite.SrcOver, image(Color.GREEN)).getDigest()));
+    }
+
+    @Test
+    public void replayTest() throws IOException, NoSuchAlgorithmException {
+        BufferedImage direct = new BufferedImage(40, 40, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = direct.createGraphics();
+        draw(g2, texture(Color.RED), AlphaComposite.SrcOver.derive(0.5f), image(Color.GREEN));
+        g2.dispose();
+
+        RecordingGraphics2D recorder = record(texture(Color.RED), AlphaComposite.SrcOver.derive(0.5f),
+                image(Color.GREEN));
+        BufferedImage replayed = new BufferedImage(40, 40, BufferedImage.TYPE_INT_ARGB);
+        g2 = replayed.createGraphics();
+        recorder.replay(g2, null).dispose();
+        for(int x = 0; x < 40; x++) {
+            for(int y = 0; y < 40; y++) {
+                Assert.assertEquals(direct.getRGB(x, y), replayed.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void imageDrawerTest() throws IOException, NoSuchAlgorithmException {
+        RecordingGraphics2D recorder = record(Color.BLUE, AlphaComposite.SrcOver, image(Color.GREEN));
+        final List<AffineTransform> transforms = new ArrayList<>();
+        final List<Shape> clips = new ArrayList<>();
+        BufferedImage replayed = new BufferedImage(40, 40, BufferedImage.TYPE_INT_ARGB);
+        recorder.replay(replayed.createGraphics(), new RecordingGraphics2D.ImageDrawer() {
+            @Override
+            public Graphics2D drawImage(Graphics2D g, BufferedImage image, AffineTransform transform, Shape clip,
+                                        Composite composite) {
+                Assert.assertEquals(Color.GREEN.getRGB(), image.getRGB(0, 0));
+                transforms.add(transform);
+                clips.add(clip);
+                return g;
+            }
+        }).dispose();
+        Assert.assertEquals(1, transforms.size());
+        Assert.assertEquals(new AffineTransform(2, 0, 0, 2, 25, 25), transforms.get(0));
+        Assert.assertEquals(new Rectangle(0, 0, 35, 35), clips.get(0).getBounds());
+        //The image isn't drawn in the Graphics2D
+        Assert.assertEquals(0, replayed.getRGB(30, 30));
+    }
+
+    /**
+     * Records the drawing of a circle with the given paint and composite, and of the given image.
+     */
+    private static RecordingGraphics2D record(Paint paint, Composite composite, BufferedImage image)
+            throws NoSuchAlgorithmException {
+        RecordingGraphics2D recorder = new RecordingGraphics2D(
+                new BufferedImage(40, 40, BufferedImage.TYPE_INT_ARGB).createGraphics());
+        draw(recorder, paint, composite, image);
+        recorder.dispose();
+        return recorder;
+    }
+
+    private static void draw(Graphics2D g2, Paint paint, Composite composite, BufferedImage image) {
+        g2.setClip(0, 0, 35, 35);
+        g2.setPaint(paint);
+        Graphics2D child = (Graphics2D) g2.create();
+        child.setComposite(composite);
+        child.fill(new Ellipse2D.Double(2, 2, 30, 30));
+        child.dispose();
+        if(image != null) {
+            g2.translate(5, 5);
+            g2.scale(2, 2);
+            g2.drawImage(image, 10, 10, null);
+        }
+    }
+
+    private static TexturePaint texture(Color color) {
+        return new TexturePaint(image(color), new Rectangle(0, 0, 4, 4));
+    }
+
+    private static BufferedImage image(Color color) {
+        BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = image.createGraphics();
+        g2.setColor(color);
+        g2.fillRect(0, 0, 2, 2);
+        g2.dispose();
+        return image;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+package org.orbisgis.mapcomposer.controller.utils.exportThreads;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import javax.imageio.ImageIO;
+import javax.xml.bind.DatatypeConverter;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.LinearGradientPaint;
+import java.awt.MultipleGradientPaint;
+import java.awt.Paint;
+import java.awt.PaintContext;
+import java.awt.RadialGradientPaint;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.TexturePaint;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+public class SVGGraphics2DTest {
+
+    private static final String SVG_NS = "http://www.w3.org/2000/svg";
+
+    @Test
+    public final void writeDocumentTest() throws IOException, ParserConfigurationException, SAXException {
+        StringWriter writer = new StringWriter();
+        SVGGraphics2D svg = new SVGGraphics2D(writer, 200, 100);
+        svg.startGroup("Document 0");
+        svg.setColor(Color.WHITE);
+        svg.fillRect(0, 0, 200, 100);
+        svg.endGroup();
+
+        svg.startGroup("Map 1");
+        Graphics2D g2 = (Graphics2D) svg.create();
+        g2.translate(10, 20);
+        g2.clipRect(0, 0, 50, 50);
+        g2.setColor(new Color(255, 0, 0, 128));
+        g2.setStroke(new BasicStroke(2, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND, 1, new float[]{4, 2}, 0));
+        g2.draw(new Ellipse2D.Double(0, 0, 40, 40));
+        g2.setPaint(new GradientPaint(0, 0, Color.BLUE, 10, 0, Color.GREEN));
+        g2.fillRect(5, 5, 10, 10);
+        g2.dispose();
+        svg.endGroup();
+
+        svg.startGroup("Text 2");
+        svg.setColor(Color.BLACK);
+        svg.setFont(new Font(Font.SERIF, Font.BOLD, 14));
+        svg.drawString("a < b & \"c\"", 10.5f, 90);
+        BufferedImage image = new BufferedImage(3, 2, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(1, 1, 0xFF00FF00);
+        svg.drawImage(image, 150, 10, 30, 20, null);
+        svg.endGroup();
+        svg.finish();
+
+        Document document = parse(writer.toString());
+        Element root = document.getDocumentElement();
+        Assert.assertEquals("svg", root.getLocalName());
+        Assert.assertEquals("200", root.getAttribute("width"));
+        Assert.assertEquals("0 0 200 100", root.getAttribute("viewBox"));
+
+        //One group per GraphicalElement and one for the clip
+        NodeList groups = document.getElementsByTagNameNS(SVG_NS, "g");
+        Assert.assertEquals(4, groups.getLength());
+        Element clipGroup = (Element) ((Element) groups.item(1)).getElementsByTagNameNS(SVG_NS, "g").item(0);
+        String clipId = ((Element) document.getElementsByTagNameNS(SVG_NS, "clipPath").item(0)).getAttribute("id");
+        Assert.assertEquals("url(#" + clipId + ")", clipGroup.getAttribute("clip-path"));
+        Assert.assertEquals(2, clipGroup.getElementsByTagNameNS(SVG_NS, "path").getLength());
+
+        Element ellipse = (Element) clipGroup.getElementsByTagNameNS(SVG_NS, "path").item(0);
+        Assert.assertEquals("#ff0000", ellipse.getAttribute("stroke"));
+        Assert.assertEquals("0.502", ellipse.getAttribute("stroke-opacity"));
+        Assert.assertEquals("4,2", ellipse.getAttribute("stroke-dasharray"));
+        Assert.assertEquals("translate(10 20)", ellipse.getAttribute("transform"));
+        Element gradientRect = (Element) clipGroup.getElementsByTagNameNS(SVG_NS, "path").item(1);
+        String gradientId = ((Element) document.getElementsByTagNameNS(SVG_NS, "linearGradient").item(0)).getAttribute("id");
+        Assert.assertEquals("url(#" + gradientId + ")", gradientRect.getAttribute("fill"));
+
+        Element text = (Element) document.getElementsByTagNameNS(SVG_NS, "text").item(0);
+        Assert.assertEquals("a < b & \"c\"", text.getTextContent());
+        Assert.assertEquals("10.5", text.getAttribute("x"));
+        Assert.assertEquals("bold", text.getAttribute("font-weight"));
+        Assert.assertEquals("serif", text.getAttribute("font-family"));
+
+        Element imageElement = (Element) document.getElementsByTagNameNS(SVG_NS, "image").item(0);
+        Assert.assertEquals("matrix(10 0 0 10 150 10)", imageElement.getAttribute("transform"));
+        String href = imageElement.getAttributeNS("http://www.w3.org/1999/xlink", "href");
+        Assert.assertTrue(href.startsWith("data:image/png;base64,"));
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(
+                DatatypeConverter.parseBase64Binary(href.substring("data:image/png;base64,".length()))));
+        Assert.assertEquals(3, decoded.getWidth());
+        Assert.assertEquals(0xFF00FF00, decoded.getRGB(1, 1));
+    }
+
+    @Test
+    public final void paintTest() throws IOException, ParserConfigurationException, SAXException {
+        StringWriter writer = new StringWriter();
+        SVGGraphics2D svg = new SVGGraphics2D(writer, 200, 100);
+        svg.setPaint(new LinearGradientPaint(0, 0, 50, 0, new float[]{0, 0.25f, 1},
+                new Color[]{Color.RED, new Color(0, 255, 0, 51), Color.BLUE}, MultipleGradientPaint.CycleMethod.REPEAT));
+        svg.fillRect(0, 0, 50, 50);
+        svg.setPaint(new RadialGradientPaint(new Point2D.Float(75, 25), 20, new Point2D.Float(70, 25),
+                new float[]{0, 1}, new Color[]{Color.WHITE, Color.BLACK}, MultipleGradientPaint.CycleMethod.NO_CYCLE));
+        svg.fillRect(50, 0, 50, 50);
+        BufferedImage tile = new BufferedImage(2, 2, BufferedImage.TYPE_INT_ARGB);
+        tile.setRGB(0, 0, 0xFFFF0000);
+        svg.setPaint(new TexturePaint(tile, new Rectangle2D.Double(1, 2, 8, 4)));
+        svg.fillRect(100, 0, 50, 50);
+        //A paint without SVG equivalent is rasterized
+        svg.setPaint(new Paint() {
+            @Override
+            public PaintContext createContext(ColorModel cm, Rectangle deviceBounds, Rectangle2D userBounds,
+                                              AffineTransform xform, RenderingHints hints) {
+                return Color.ORANGE.createContext(cm, deviceBounds, userBounds, xform, hints);
+            }
+
+            @Override
+            public int getTransparency() {
+                return OPAQUE;
+            }
+        });
+        svg.fillRect(160, 10, 20, 30);
+        svg.finish();
+
+        Document document = parse(writer.toString());
+        NodeList paths = document.getElementsByTagNameNS(SVG_NS, "path");
+        Assert.assertEquals(3, paths.getLength());
+
+        Element linear = (Element) document.getElementsByTagNameNS(SVG_NS, "linearGradient").item(0);
+        Assert.assertEquals("url(#" + linear.getAttribute("id") + ")", ((Element) paths.item(0)).getAttribute("fill"));
+        Assert.assertEquals("50", linear.getAttribute("x2"));
+        Assert.assertEquals("repeat", linear.getAttribute("spreadMethod"));
+        NodeList stops = linear.getElementsByTagNameNS(SVG_NS, "stop");
+        Assert.assertEquals(3, stops.getLength());
+        Assert.assertEquals("0.25", ((Element) stops.item(1)).getAttribute("offset"));
+        Assert.assertEquals("#00ff00", ((Element) stops.item(1)).getAttribute("stop-color"));
+        Assert.assertEquals("0.2", ((Element) stops.item(1)).getAttribute("stop-opacity"));
+
+        Element radial = (Element) document.getElementsByTagNameNS(SVG_NS, "radialGradient").item(0);
+        Assert.assertEquals("url(#" + radial.getAttribute("id") + ")", ((Element) paths.item(1)).getAttribute("fill"));
+        Assert.assertEquals("75", radial.getAttribute("cx"));
+        Assert.assertEquals("70", radial.getAttribute("fx"));
+        Assert.assertEquals("20", radial.getAttribute("r"));
+
+        Element pattern = (Element) document.getElementsByTagNameNS(SVG_NS, "pattern").item(0);
+        Assert.assertEquals("url(#" + pattern.getAttribute("id") + ")", ((Element) paths.item(2)).getAttribute("fill"));
+        Assert.assertEquals("userSpaceOnUse", pattern.getAttribute("patternUnits"));
+        Assert.assertEquals("2", pattern.getAttribute("y"));
+        Assert.assertEquals("8", pattern.getAttribute("width"));
+        Element patternImage = (Element) pattern.getElementsByTagNameNS(SVG_NS, "image").item(0);
+        Assert.assertEquals("matrix(4 0 0 2 0 0)", patternImage.getAttribute("transform"));
+        Assert.assertEquals(0xFFFF0000, decode(patternImage).getRGB(0, 0));
+
+        //The pattern image and the rasterized rectangle
+        NodeList images = document.getElementsByTagNameNS(SVG_NS, "image");
+        Assert.assertEquals(2, images.getLength());
+        Element raster = (Element) images.item(1);
+        Assert.assertEquals("translate(160 10)", raster.getAttribute("transform"));
+        BufferedImage rasterImage = decode(raster);
+        Assert.assertEquals(20, rasterImage.getWidth());
+        Assert.assertEquals(30, rasterImage.getHeight());
+        Assert.assertEquals(Color.ORANGE.getRGB(), rasterImage.getRGB(10, 10));
+    }
+
+    @Test
+    public final void appendNumberTest() {
+        Assert.assertEquals("0", number(0.0001, 3));
+        Assert.assertEquals("12", number(12, 3));
+        Assert.assertEquals("-0.05", number(-0.05, 3));
+        Assert.assertEquals("1.005", number(1.005, 3));
+        Assert.assertEquals("12345678.5", number(12345678.5, 3));
+        Assert.assertEquals("0.707107", number(Math.sqrt(0.5), 6));
+    }
+
+    private static String number(double value, int decimals){
+        StringBuilder sb = new StringBuilder();
+        SVGGraphics2D.appendNumber(sb, value, decimals);
+        return sb.toString();
+    }
+
+    private static BufferedImage decode(Element image) throws IOException {
+        String href = image.getAttributeNS("http://www.w3.org/1999/xlink", "href");
+        return ImageIO.read(new ByteArrayInputStream(
+                DatatypeConverter.parseBase64Binary(href.substring("data:image/png;base64,".length()))));
+    }
+
+    private static Document parse(String svg) throws ParserConfigurationException, IOException, SAXException {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().parse(new InputSource(new StringReader(svg)));
+    }
+}
@@ -0,0 +1,143 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+package org.orbisgis.mapcomposer.model.graphicalelement.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.orbisgis.mapcomposer.model.graphicalelement.element.shape.RectangleGE;
+import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GraphicalElement;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ZOrderListTest {
+
+    private static List<GraphicalElement> createGEList(int size){
+        List<GraphicalElement> list = new ArrayList<>();
+        for(int i = 0; i < size; i++) {
+            list.add(new RectangleGE());
+        }
+        return list;
+    }
+
+    @Test
+    public final void addRemoveTest(){
+        List<GraphicalElement> ge = createGEList(4);
+        ZOrderList list = new ZOrderList(ge);
+        Assert.assertEquals(4, list.size());
+        Assert.assertEquals(2, list.indexOf(ge.get(2)));
+        //Adding twice the same GE does nothing
+        list.add(ge.get(0));
+        Assert.assertEquals(4, list.size());
+
+        Assert.assertTrue(list.remove(ge.get(1)));
+        Assert.assertFalse(list.remove(ge.get(1)));
+        Assert.assertEquals(-1, list.indexOf(ge.get(1)));
+        Assert.assertEquals(1, list.indexOf(ge.get(2)));
+        Assert.assertEquals(2, list.indexOf(ge.get(3)));
+
+        list.removeAll(Arrays.asList(ge.get(0), ge.get(3)));
+        Assert.assertEquals(1, list.size());
+        Assert.assertEquals(0, list.indexOf(ge.get(2)));
+
+        list.clear();
+        Assert.assertTrue(list.isEmpty());
+    }
+
+    @Test
+    public final void moveToFrontAndBackTest(){
+        List<GraphicalElement> ge = createGEList(5);
+        ZOrderList list = new ZOrderList(ge);
+        list.moveToFront(Arrays.asList(ge.get(3), ge.get(1)));
+        Assert.assertEquals(Arrays.asList(ge.get(1), ge.get(3), ge.get(0), ge.get(2), ge.get(4)), list.asList());
+        Assert.assertEquals(1, list.indexOf(ge.get(3)));
+
+        list.moveToBack(Arrays.asList(ge.get(1), ge.get(0)));
+        Assert.assertEquals(Arrays.asList(ge.get(3), ge.get(2), ge.get(4), ge.get(1), ge.get(0)), list.asList());
+        Assert.assertEquals(4, list.indexOf(ge.get(0)));
+    }
+
+    @Test
+    public final void moveForwardAndBackwardTest(){
+        List<GraphicalElement> ge = createGEList(5);
+        ZOrderList list = new ZOrderList(ge);
+        //The GE on the front doesn't move and the one behind it stays behind
+        list.moveForward(Arrays.asList(ge.get(0), ge.get(1), ge.get(3)));
+        Assert.assertEquals(Arrays.asList(ge.get(0), ge.get(1), ge.get(3), ge.get(2), ge.get(4)), list.asList());
+        Assert.assertEquals(2, list.indexOf(ge.get(3)));
+
+        list.moveBackward(Arrays.asList(ge.get(0), ge.get(4)));
+        Assert.assertEquals(Arrays.asList(ge.get(1), ge.get(0), ge.get(3), ge.get(2), ge.get(4)), list.asList());
+        Assert.assertEquals(1, list.indexOf(ge.get(0)));
+        Assert.assertEquals(4, list.indexOf(ge.get(4)));
+    }
+
+    @Test
+    public final void toBackToFrontListTest(){
+        List<GraphicalElement> ge = createGEList(3);
+        ZOrderList list = new ZOrderList(ge);
+        Assert.assertEquals(Arrays.asList(ge.get(2), ge.get(1), ge.get(0)), list.toBackToFrontList());
+    }
+
+    @Test
+    public final void largeListTest(){
+        int size = 5000;
+        List<GraphicalElement> ge = createGEList(size);
+        ZOrderList list = new ZOrderList(ge);
+        //Select one GE out of two
+        List<GraphicalElement> selected = new ArrayList<>();
+        for(int i = 0; i < size; i += 2) {
+            selected.add(ge.get(i));
+        }
+        long time = System.currentTimeMillis();
+        for(int i = 0; i < 20; i++) {
+            list.moveToBack(selected);
+            list.moveToFront(selected);
+            list.moveBackward(selected);
+            list.moveForward(selected);
+            for(GraphicalElement g : ge) {
+                list.indexOf(g);
+            }
+        }
+        time = System.currentTimeMillis() - time;
+        Assert.assertEquals(size, list.size());
+        for(int i = 0; i < size; i++) {
+            Assert.assertEquals(i, list.indexOf(list.get(i)));
+        }
+        LoggerFactory.getLogger(ZOrderListTest.class).info("Z-order changes of " + size + " elements : " + time +
+                "ms");
+    }
+}
@@ -0,0 +1,195 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+package org.orbisgis.mapcomposer.model.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.orbisgis.mapcomposer.model.configurationattribute.utils.CAManager;
+import org.orbisgis.mapcomposer.model.graphicalelement.element.text.TextElement;
+import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GraphicalElement;
+import org.orbisgis.mapcomposer.model.graphicalelement.utils.GEManager;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+public class AutosaveJournalTest {
+
+    @Test
+    public final void recoverTest() throws Exception {
+        File file = new File("target/recoverTest.mcj");
+        file.delete();
+        AutosaveJournal journal = new AutosaveJournal(file, new BinaryProjectHandler(new GEManager(), new CAManager()));
+        List<TextElement> listText = createTexts(journal, 100);
+        journal.checkpoint().get();
+
+        //Only the position change and the removal should be appended
+        long size = file.length();
+        listText.get(10).setX(1000);
+        journal.elementRemoved(listText.get(20));
+        journal.checkpoint().get();
+        Assert.assertTrue(file.length() - size < size / 10);
+        Assert.assertNull(journal.checkpoint());
+        journal.close();
+
+        AutosaveJournal recovery = new AutosaveJournal(file, new BinaryProjectHandler(new GEManager(), new CAManager()));
+        Assert.assertTrue(recovery.isRecoverable());
+        List<GraphicalElement> list = recovery.recover();
+        Assert.assertEquals(99, list.size());
+        boolean found = false;
+        for(GraphicalElement ge : list) {
+            TextElement text = (TextElement) ge;
+            Assert.assertFalse(text.getText().equals("text 20"));
+            if(text.getText().equals("text 10")) {
+                Assert.assertEquals(1000, text.getX());
+                found = true;
+            }
+        }
+        Assert.assertTrue(found);
+        recovery.close();
+    }
+
+    @Test
+    public final void savedTest() throws InterruptedException, ExecutionException {
+        File file = new File("target/savedTest.mcj");
+        file.delete();
+        AutosaveJournal journal = new AutosaveJournal(file, new BinaryProjectHandler(new GEManager(), new CAManager()));
+        List<TextElement> listText = createTexts(journal, 10);
+        journal.checkpoint().get();
+        journal.markSaved().get();
+        journal.close();
+        Assert.assertFalse(new AutosaveJournal(file, new BinaryProjectHandler(new GEManager(), new CAManager()))
+                .isRecoverable());
+
+        journal = new AutosaveJournal(file, new BinaryProjectHandler(new GEManager(), new CAManager()));
+        for(TextElement text : listText) {
+            journal.elementAdded(text);
+        }
+        journal.checkpoint().get();
+        journal.markSaved().get();
+        listText.get(0).setText("modified");
+        journal.elementModified(listText.get(0));
+        journal.checkpoint().get();
+        journal.close();
+        Assert.assertTrue(new AutosaveJournal(file, new BinaryProjectHandler(new GEManager(), new CAManager()))
+                .isRecoverable());
+    }
+
+    @Test
+    public final void compactionTest() throws Exception {
+        File file = new File("target/compactionTest.mcj");
+        file.delete();
+        AutosaveJournal journal = new AutosaveJournal(file, new BinaryProjectHandler(new GEManager(), new CAManager()));
+        List<TextElement> listText = createTexts(journal, 100);
+        journal.checkpoint().get();
+        long size = file.length();
+        for(int i = 0; i < 50; i++) {
+            for(TextElement text : listText) {
+                text.setY(text.getY() + 1);
+            }
+            journal.checkpoint().get();
+        }
+        //Without compaction, the journal would contain 51 records for each element
+        Assert.assertTrue(file.length() < 10 * Math.max(size, 64 * 1024));
+        journal.close();
+
+        List<GraphicalElement> list = new AutosaveJournal(file,
+                new BinaryProjectHandler(new GEManager(), new CAManager())).recover();
+        Assert.assertEquals(100, list.size());
+        for(GraphicalElement ge : list) {
+            Assert.assertEquals(50 + Integer.parseInt(((TextElement) ge).getText().substring(5)), ge.getY());
+        }
+    }
+
+    @Test
+    public final void lockTest() throws Exception {
+        File folder = new File("target/lockTest");
+        AutosaveJournal first = AutosaveJournal.open(folder, new BinaryProjectHandler(new GEManager(), new CAManager()));
+        AutosaveJournal second = AutosaveJournal.open(folder, new BinaryProjectHandler(new GEManager(), new CAManager()));
+        //Each open journal has its own file
+        Assert.assertFalse(first.getFile().equals(second.getFile()));
+        createTexts(first, 10);
+        first.checkpoint().get();
+        first.close();
+
+        //Once closed, the journal can be recovered by another window
+        AutosaveJournal recovery = AutosaveJournal.open(folder,
+                new BinaryProjectHandler(new GEManager(), new CAManager()));
+        Assert.assertEquals(first.getFile(), recovery.getFile());
+        Assert.assertTrue(recovery.isRecoverable());
+        Assert.assertEquals(10, recovery.recover().size());
+        recovery.close();
+        second.close();
+    }
+
+    @Test
+    public final void truncatedRecordTest() throws Exception {
+        File file = new File("target/truncatedRecordTest.mcj");
+        file.delete();
+        AutosaveJournal journal = new AutosaveJournal(file, new BinaryProjectHandler(new GEManager(), new CAManager()));
+        List<TextElement> listText = createTexts(journal, 10);
+        journal.checkpoint().get();
+        long size = file.length();
+        listText.get(0).setText("modified");
+        journal.elementModified(listText.get(0));
+        journal.checkpoint().get();
+        journal.close();
+
+        //Simulates a crash during the writing of the last record
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(size + (file.length() - size) / 2);
+        }
+        List<GraphicalElement> list = new AutosaveJournal(file,
+                new BinaryProjectHandler(new GEManager(), new CAManager())).recover();
+        Assert.assertEquals(10, list.size());
+        for(GraphicalElement ge : list) {
+            Assert.assertFalse(((TextElement) ge).getText().equals("modified"));
+        }
+    }
+
+    private List<TextElement> createTexts(AutosaveJournal journal, int count){
+        List<TextElement> listText = new ArrayList<>();
+        for(int i = 0; i < count; i++) {
+            TextElement text = new TextElement();
+            text.setText("text " + i);
+            text.setX(i);
+            text.setY(i);
+            journal.elementAdded(text);
+            listText.add(text);
+        }
+        return listText;
+    }
+}
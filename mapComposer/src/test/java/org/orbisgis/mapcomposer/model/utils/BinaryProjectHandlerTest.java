@@ -0,0 +1,147 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+package org.orbisgis.mapcomposer.model.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.orbisgis.mapcomposer.model.configurationattribute.utils.CAManager;
+import org.orbisgis.mapcomposer.model.graphicalelement.element.Document;
+import org.orbisgis.mapcomposer.model.graphicalelement.element.text.TextElement;
+import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GraphicalElement;
+import org.orbisgis.mapcomposer.model.graphicalelement.utils.GEManager;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BinaryProjectHandlerTest {
+
+    @Test
+    public final void conversionTest() throws IOException, ParserConfigurationException, SAXException {
+        SaveAndLoadHandler xmlHandler = new SaveAndLoadHandler(new GEManager(), new CAManager());
+        BinaryProjectHandler binaryHandler = new BinaryProjectHandler(new GEManager(), new CAManager());
+        xmlHandler.save(createDocument(1000), "target/conversionTest.xml");
+
+        binaryHandler.convertFromXml("target/conversionTest.xml", "target/conversionTest.mcb");
+        Assert.assertTrue(BinaryProjectHandler.isBinaryProject("target/conversionTest.mcb"));
+        Assert.assertFalse(BinaryProjectHandler.isBinaryProject("target/conversionTest.xml"));
+        Assert.assertTrue(new File("target/conversionTest.mcb").length() < new File("target/conversionTest.xml").length());
+
+        binaryHandler.convertToXml("target/conversionTest.mcb", "target/conversionTest1.xml");
+        Assert.assertTrue(FileUtils.contentEquals(new File("target/conversionTest.xml"),
+                new File("target/conversionTest1.xml")));
+    }
+
+    @Test
+    public final void multiLineConversionTest() throws IOException, ParserConfigurationException, SAXException {
+        BinaryProjectHandler binaryHandler = new BinaryProjectHandler(new GEManager(), new CAManager());
+        List<GraphicalElement> listGE = createDocument(2);
+        String multiLine = "\n\tfirst line\n\t\tsecond\tline\r\nthird line \n\t";
+        ((TextElement) listGE.get(1)).setText(multiLine);
+        binaryHandler.save(listGE, "target/multiLineConversionTest.mcb");
+
+        binaryHandler.convertToXml("target/multiLineConversionTest.mcb", "target/multiLineConversionTest.xml");
+        binaryHandler.convertFromXml("target/multiLineConversionTest.xml", "target/multiLineConversionTest1.mcb");
+        List<GraphicalElement> list = binaryHandler.load("target/multiLineConversionTest1.mcb");
+        Assert.assertEquals(3, list.size());
+        Assert.assertEquals(multiLine, ((TextElement) list.get(1)).getText());
+        Assert.assertEquals("<text> & \"quotes\" 1", ((TextElement) list.get(2)).getText());
+    }
+
+    @Test
+    public final void lazyLoadingTest() throws IOException {
+        BinaryProjectHandler binaryHandler = new BinaryProjectHandler(new GEManager(), new CAManager());
+        binaryHandler.save(createDocument(1000), "target/lazyLoadingTest.mcb");
+
+        try (BinaryProjectHandler.Project project = binaryHandler.open("target/lazyLoadingTest.mcb")) {
+            Assert.assertEquals(1001, project.getElementCount());
+            Assert.assertEquals(Document.class.getName(), project.getElementClassName(0));
+            Assert.assertEquals(TextElement.class.getName(), project.getElementClassName(500));
+            TextElement text = (TextElement) project.loadElement(500);
+            Assert.assertEquals("<text> & \"quotes\" " + 499, text.getText());
+            Assert.assertEquals(-499, text.getX());
+            Assert.assertEquals(499 * 1000, text.getY());
+        }
+        Assert.assertEquals(1001, binaryHandler.load("target/lazyLoadingTest.mcb").size());
+    }
+
+    @Test
+    public final void thumbnailTest() throws IOException {
+        BinaryProjectHandler binaryHandler = new BinaryProjectHandler(new GEManager(), new CAManager());
+        List<GraphicalElement> listGE = createDocument(10);
+        BufferedImage thumbnail = new BufferedImage(64, 32, BufferedImage.TYPE_INT_ARGB);
+        thumbnail.setRGB(10, 20, Color.RED.getRGB());
+        Map<GraphicalElement, BufferedImage> thumbnailMap = new HashMap<>();
+        thumbnailMap.put(listGE.get(5), thumbnail);
+        binaryHandler.save(listGE, "target/thumbnailTest.mcb", thumbnailMap);
+
+        try (BinaryProjectHandler.Project project = binaryHandler.open("target/thumbnailTest.mcb")) {
+            Assert.assertEquals(11, project.getElementCount());
+            Assert.assertNull(project.loadThumbnail(4));
+            BufferedImage image = project.loadThumbnail(5);
+            Assert.assertEquals(64, image.getWidth());
+            Assert.assertEquals(32, image.getHeight());
+            Assert.assertEquals(Color.RED.getRGB(), image.getRGB(10, 20));
+        }
+        Map<GraphicalElement, BufferedImage> loadedMap = new HashMap<>();
+        List<GraphicalElement> list = binaryHandler.load("target/thumbnailTest.mcb", loadedMap);
+        Assert.assertEquals(11, list.size());
+        Assert.assertEquals(1, loadedMap.size());
+        Assert.assertEquals(64, loadedMap.get(list.get(5)).getWidth());
+    }
+
+    /**
+     * Returns a Document GraphicalElement followed by the given number of TextElements.
+     */
+    private static List<GraphicalElement> createDocument(int textCount){
+        List<GraphicalElement> listGE = new ArrayList<>();
+        listGE.add(new Document());
+        for(int i = 0; i < textCount; i++) {
+            TextElement text = new TextElement();
+            text.setText("<text> & \"quotes\" " + i);
+            text.setX(-i);
+            text.setY(i * 1000);
+            listGE.add(text);
+        }
+        return listGE;
+    }
+}
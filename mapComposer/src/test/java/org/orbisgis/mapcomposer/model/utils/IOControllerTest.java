@@ -45,6 +45,7 @@ import org.orbisgis.mapcomposer.model.graphicalelement.element.illustration.Imag
 import org.orbisgis.mapcomposer.model.graphicalelement.element.text.TextElement;
 import org.orbisgis.mapcomposer.model.graphicalelement.interfaces.GraphicalElement;
 import org.orbisgis.mapcomposer.model.graphicalelement.utils.GEManager;
+import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -109,4 +110,64 @@ public class IOControllerTest {
             Assert.assertNotSame("\nSaved and loaded file are different.", new File("target/loadTest.xml"), new File("target/loadTest1.xml"));
         }
     }
+
+    @Test
+    public final void roundTripTest() throws IOException, ParserConfigurationException, SAXException {
+        SaveAndLoadHandler sh = new SaveAndLoadHandler(new GEManager(), new CAManager());
+        List<GraphicalElement> listGE = new ArrayList<>();
+        listGE.add(new Document());
+        for(int i = 0; i < 10000; i++) {
+            TextElement text = new TextElement();
+            text.setText("<text> & \"quotes\" 'n' " + i);
+            text.setX(i);
+            text.setY(2 * i);
+            listGE.add(text);
+        }
+        File file = new File("target/roundTripTest.xml");
+        FileUtils.writeStringToFile(file, "previous save");
+
+        long start = System.nanoTime();
+        sh.save(listGE, file.getPath());
+        long saveTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        List<GraphicalElement> list = new SaveAndLoadHandler(new GEManager(), new CAManager()).load(file.getPath());
+        long loadTime = System.nanoTime() - start;
+        LoggerFactory.getLogger(IOControllerTest.class).info("Round trip of 10000 elements : save " +
+                saveTime / 1000000 + " ms, load " + loadTime / 1000000 + " ms, " + file.length() + " bytes.");
+
+        Assert.assertEquals(listGE.size(), list.size());
+        for(int i = 1; i < list.size(); i++) {
+            TextElement text = (TextElement) list.get(i);
+            Assert.assertEquals("<text> & \"quotes\" 'n' " + (i - 1), text.getText());
+            Assert.assertEquals(i - 1, text.getX());
+            Assert.assertEquals(2 * (i - 1), text.getY());
+        }
+        //The temporary file replaced the previous save
+        File[] files = file.getParentFile().listFiles();
+        Assert.assertNotNull(files);
+        for(File f : files) {
+            Assert.assertFalse(f.getName().startsWith(file.getName()) && f.getName().endsWith(".tmp"));
+        }
+    }
+
+    @Test
+    public final void whitespaceTest() throws IOException, ParserConfigurationException, SAXException {
+        SaveAndLoadHandler sh = new SaveAndLoadHandler(new GEManager(), new CAManager());
+        List<GraphicalElement> listGE = new ArrayList<>();
+        listGE.add(new Document());
+        TextElement text = new TextElement();
+        text.setText("first line\n\tsecond line");
+        listGE.add(text);
+        File file = new File("target/whitespaceTest.xml");
+        sh.save(listGE, file.getPath());
+        List<GraphicalElement> list = new SaveAndLoadHandler(new GEManager(), new CAManager()).load(file.getPath());
+        Assert.assertEquals("first line\n\tsecond line", ((TextElement) list.get(1)).getText());
+
+        //The documents without xml:space="preserve" have their line breaks and tabulations dropped
+        String xml = FileUtils.readFileToString(file).replace(" xml:space=\"preserve\"", "");
+        FileUtils.writeStringToFile(file, xml);
+        list = new SaveAndLoadHandler(new GEManager(), new CAManager()).load(file.getPath());
+        Assert.assertEquals(2, list.size());
+        Assert.assertEquals("first linesecond line", ((TextElement) list.get(1)).getText());
+    }
 }
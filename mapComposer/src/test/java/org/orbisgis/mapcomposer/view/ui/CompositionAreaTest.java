@@ -0,0 +1,88 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+package org.orbisgis.mapcomposer.view.ui;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.swing.JComponent;
+import javax.swing.JLayeredPane;
+import javax.swing.JPanel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class CompositionAreaTest {
+
+    @Test
+    public final void reorderTest(){
+        int size = 5000;
+        JLayeredPane pane = new JLayeredPane();
+        List<JComponent> order = new ArrayList<>();
+        for(int i = 0; i < size; i++) {
+            JPanel panel = new JPanel();
+            pane.add(panel);
+            order.add(panel);
+        }
+        //Nothing to move
+        Assert.assertEquals(0, CompositionArea.reorder(pane, order));
+        assertOrder(pane, order);
+
+        //Only the element moved to the front is moved in the pane
+        order.add(0, order.remove(size - 1));
+        Assert.assertEquals(1, CompositionArea.reorder(pane, order));
+        assertOrder(pane, order);
+
+        //One element out of two moved to the back, each one is moved once
+        List<JComponent> selected = new ArrayList<>();
+        for(int i = 0; i < size; i += 2) {
+            selected.add(order.get(i));
+        }
+        order.removeAll(selected);
+        order.addAll(selected);
+        Assert.assertTrue(CompositionArea.reorder(pane, order) <= size);
+        assertOrder(pane, order);
+
+        Collections.reverse(order);
+        Assert.assertTrue(CompositionArea.reorder(pane, order) <= size);
+        assertOrder(pane, order);
+    }
+
+    private static void assertOrder(JLayeredPane pane, List<JComponent> order){
+        Assert.assertEquals(order.size(), pane.getComponentCount());
+        for(int i = 0; i < order.size(); i++) {
+            Assert.assertSame(order.get(i), pane.getComponent(i));
+        }
+    }
+}
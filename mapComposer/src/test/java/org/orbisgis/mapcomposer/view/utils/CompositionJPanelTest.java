@@ -0,0 +1,182 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+package org.orbisgis.mapcomposer.view.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.orbisgis.mapcomposer.model.graphicalelement.element.Document;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CompositionJPanelTest {
+
+    /** Number of paints measured for each surface mode. */
+    private static final int PAINT_COUNT = 200;
+
+    @Test
+    public final void surfaceModeBenchmarkTest() throws Exception {
+        Document document = new Document();
+        document.setWidth(800);
+        document.setHeight(600);
+        final CompositionJPanel panel = new CompositionJPanel(document, null);
+        BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graph = image.createGraphics();
+        graph.setPaint(new GradientPaint(0, 0, Color.RED, 800, 600, new Color(0, 0, 255, 128)));
+        graph.fillRect(0, 0, 800, 600);
+        graph.dispose();
+        panel.refresh(image);
+
+        //With a display, the panel is painted on the screen, else it is painted into an image
+        final boolean headless = GraphicsEnvironment.isHeadless();
+        final JFrame frame = headless ? null : new JFrame();
+        final BufferedImage destination = new BufferedImage(802, 602, BufferedImage.TYPE_INT_ARGB);
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                if(headless) {
+                    panel.setSize(802, 602);
+                    layout(panel);
+                }
+                else {
+                    frame.add(panel);
+                    frame.pack();
+                    frame.setVisible(true);
+                }
+            }
+        });
+
+        CompositionJPanel.SurfaceMode previous = CompositionJPanel.getSurfaceMode();
+        List<CompositionJPanel.SurfaceMode> measured = new ArrayList<>();
+        try {
+            for(CompositionJPanel.SurfaceMode mode : CompositionJPanel.SurfaceMode.values()) {
+                if(mode == CompositionJPanel.SurfaceMode.VOLATILE && !isVolatileAvailable(panel, destination)) {
+                    continue;
+                }
+                CompositionJPanel.setSurfaceMode(mode);
+                final long[] statistics = new long[2];
+                SwingUtilities.invokeAndWait(new Runnable() {
+                    @Override
+                    public void run() {
+                        //The first paint converts the content for the surface mode
+                        paint(panel, destination, headless);
+                        CompositionJPanel.resetPaintStatistics();
+                        for(int i = 0; i < PAINT_COUNT; i++) {
+                            paint(panel, destination, headless);
+                        }
+                        statistics[0] = CompositionJPanel.getPaintCount();
+                        statistics[1] = CompositionJPanel.getPaintTime();
+                    }
+                });
+                Assert.assertEquals(PAINT_COUNT, statistics[0]);
+                measured.add(mode);
+                LoggerFactory.getLogger(CompositionJPanelTest.class).info(mode + " surface painted " +
+                        (headless ? "into an image" : "on the screen") + " : " + PAINT_COUNT + " paints in " +
+                        statistics[1] / 1000000 + "ms, " + PAINT_COUNT * 1000000000L / Math.max(1, statistics[1]) +
+                        " paints per second");
+            }
+        } finally {
+            CompositionJPanel.setSurfaceMode(previous);
+            if(frame != null) {
+                SwingUtilities.invokeAndWait(new Runnable() {
+                    @Override
+                    public void run() {
+                        frame.dispose();
+                    }
+                });
+            }
+        }
+        LoggerFactory.getLogger(CompositionJPanelTest.class).info("Measured surface modes : " + measured);
+        Assert.assertTrue(measured.contains(CompositionJPanel.SurfaceMode.SOFTWARE));
+        Assert.assertTrue(measured.contains(CompositionJPanel.SurfaceMode.COMPATIBLE));
+    }
+
+    /**
+     * Returns true if a VolatileImage can be created for the screen of the panel or, without screen, for the image.
+     */
+    private static boolean isVolatileAvailable(CompositionJPanel panel, BufferedImage destination){
+        GraphicsConfiguration gc = panel.getGraphicsConfiguration();
+        if(gc == null) {
+            Graphics2D graph = destination.createGraphics();
+            gc = graph.getDeviceConfiguration();
+            graph.dispose();
+        }
+        try {
+            VolatileImage volatileImage = gc.createCompatibleVolatileImage(1, 1, Transparency.TRANSLUCENT);
+            if(volatileImage == null) {
+                return false;
+            }
+            volatileImage.flush();
+            return true;
+        } catch (UnsupportedOperationException ex) {
+            return false;
+        }
+    }
+
+    private static void paint(CompositionJPanel panel, BufferedImage destination, boolean headless){
+        if(headless) {
+            Graphics2D graph = destination.createGraphics();
+            panel.paint(graph);
+            graph.dispose();
+        }
+        else {
+            panel.paintImmediately(0, 0, panel.getWidth(), panel.getHeight());
+        }
+    }
+
+    /**
+     * Lays out the given container and its children, as a container without screen isn't validated.
+     */
+    private static void layout(Container container){
+        container.doLayout();
+        for(Component component : container.getComponents()) {
+            if(component instanceof Container) {
+                layout((Container) component);
+            }
+        }
+    }
+}
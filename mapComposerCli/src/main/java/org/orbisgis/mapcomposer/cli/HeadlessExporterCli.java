@@ -0,0 +1,186 @@
+/*
+* MapComposer is an OrbisGIS plugin dedicated to the creation of cartographic
+* documents.
+*
+* This plugin was firstly developed  at French IRSTV institute as part of the MApUCE project,
+* funded by the French Agence Nationale de la Recherche (ANR) under contract ANR-13-VBDU-0004.
+* 
+* Since 2015, MapComposer is developed and maintened by the GIS group of the DECIDE team of the 
+* Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+*
+* The GIS group of the DECIDE team is located at :
+*
+* Laboratoire Lab-STICC – CNRS UMR 6285
+* Equipe DECIDE
+* UNIVERSITÉ DE BRETAGNE-SUD
+* Institut Universitaire de Technologie de Vannes
+* 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+*
+* Copyright (C) 2007-2014 CNRS (IRSTV FR CNRS 2488)
+* Copyright (C) 2015-2017 CNRS (Lab-STICC UMR CNRS 6285)
+*
+* The MapComposer plugin is distributed under GPL 3 license. 
+* This file is part of the MapComposer plugin.
+*
+* The MapComposer plugin is free software: you can redistribute it and/or modify it under the
+* terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* The MapComposer plugin is distributed in the hope that it will be useful, but WITHOUT ANY
+* WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+* A PARTICULAR PURPOSE. See the GNU General Public License for more details <http://www.gnu.org/licenses/>.
+*/
+
+package org.orbisgis.mapcomposer.cli;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.orbisgis.corejdbc.DataManager;
+import org.orbisgis.corejdbc.internal.DataManagerImpl;
+import org.orbisgis.mapcomposer.controller.HeadlessExporter;
+import org.orbisgis.mapcomposer.controller.utils.exportThreads.ExportJob;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line exporting saved documents with the HeadlessExporter.
+ * This class is outside of the map-composer bundle as it creates the DataManager from its implementation.
+ *
+ * @author Sylvain PALOMINOS
+ */
+public class HeadlessExporterCli {
+
+    /** Usage of the command line. */
+    private static final String USAGE = "Usage : HeadlessExporterCli [-db jdbcUrl] [-dpi n] [-threads n] [-bands] " +
+            "[-raster|-vector] [-intern] [-atlas query [-atlasGeom column]] document.xml export.ext " +
+            "[document.xml export.ext ...]";
+
+    /** Highest exit code, as the exit status of a process is truncated to 8 bits. */
+    private static final int MAX_EXIT_CODE = 125;
+
+    /**
+     * Command line entry point.
+     * Usage : HeadlessExporterCli [-db jdbcUrl] [-dpi n] [-threads n] [-bands] [-raster|-vector] [-intern]
+     * [-atlas query [-atlasGeom column]] document.xml export.ext ...
+     * The exit code is the number of failed exports, limited to 125, or -1 if the arguments are wrong.
+     * @param args Command line arguments.
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        String jdbcUrl = null;
+        int dpi = 0;
+        int threads = 0;
+        boolean bands = false;
+        boolean intern = false;
+        Boolean vector = null;
+        String atlasQuery = null;
+        String atlasGeometry = null;
+        List<String> paths = new ArrayList<>();
+        for(int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-db":
+                    jdbcUrl = getValue(args, ++i);
+                    break;
+                case "-dpi":
+                    dpi = getIntValue(args, ++i);
+                    break;
+                case "-threads":
+                    threads = getIntValue(args, ++i);
+                    break;
+                case "-bands":
+                    bands = true;
+                    break;
+                case "-raster":
+                    vector = false;
+                    break;
+                case "-vector":
+                    vector = true;
+                    break;
+                case "-intern":
+                    intern = true;
+                    break;
+                case "-atlas":
+                    atlasQuery = getValue(args, ++i);
+                    break;
+                case "-atlasGeom":
+                    atlasGeometry = getValue(args, ++i);
+                    break;
+                default:
+                    paths.add(args[i]);
+            }
+        }
+        if(paths.isEmpty() || paths.size() % 2 != 0) {
+            exitWithUsage(null);
+        }
+
+        DataManager dataManager = null;
+        if(jdbcUrl != null) {
+            JdbcDataSource dataSource = new JdbcDataSource();
+            dataSource.setURL(jdbcUrl);
+            dataManager = new DataManagerImpl(dataSource);
+        }
+        HeadlessExporter exporter = new HeadlessExporter(dataManager);
+        exporter.setThreadCount(threads);
+        exporter.setDefaultVector(vector);
+        List<ExportJob> jobs = new ArrayList<>();
+        for(int i = 0; i < paths.size(); i += 2) {
+            ExportJob job = new ExportJob(paths.get(i), paths.get(i + 1));
+            job.setDPI(dpi);
+            job.setBandExport(bands);
+            job.setResourceInterning(intern);
+            job.setAtlas(atlasQuery, atlasGeometry);
+            jobs.add(job);
+        }
+        List<ExportJob> failedJobs = exporter.exportAll(jobs);
+        for(ExportJob job : failedJobs) {
+            System.err.println("Export failed : " + job);
+        }
+        System.exit(Math.min(failedJobs.size(), MAX_EXIT_CODE));
+    }
+
+    /**
+     * Returns the value of the option whose name is before the given index.
+     * @param args Command line arguments.
+     * @param i Index of the value.
+     * @return The value of the option.
+     */
+    private static String getValue(String[] args, int i){
+        if(i >= args.length) {
+            exitWithUsage("Missing value for the option " + args[i - 1]);
+        }
+        return args[i];
+    }
+
+    /**
+     * Returns the positive integer value of the option whose name is before the given index.
+     * @param args Command line arguments.
+     * @param i Index of the value.
+     * @return The value of the option.
+     */
+    private static int getIntValue(String[] args, int i){
+        String value = getValue(args, i);
+        int intValue;
+        try {
+            intValue = Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            intValue = 0;
+        }
+        if(intValue < 1) {
+            exitWithUsage("Wrong value for the option " + args[i - 1] + " : " + value);
+        }
+        return intValue;
+    }
+
+    /**
+     * Prints the given error and the usage, then exits.
+     * @param error Error to print, null to only print the usage.
+     */
+    private static void exitWithUsage(String error){
+        if(error != null) {
+            System.err.println(error);
+        }
+        System.err.println(USAGE);
+        System.exit(-1);
+    }
+}